@@ -1,5 +1,6 @@
 package ca.sukhni.net.android.api.client;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -7,14 +8,28 @@ import java.net.NoRouteToHostException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.http.ConnectionClosedException;
 import org.apache.http.conn.ConnectTimeoutException;
 
+import ca.sukhni.net.android.api.executor.Priority;
+import ca.sukhni.net.android.api.socket.HttpClientConfig;
+import ca.sukhni.net.android.api.transport.AsyncHttpTransport;
+import ca.sukhni.net.android.api.transport.CancellationSignal;
+import ca.sukhni.net.android.api.transport.HttpTransport;
 import ca.sukhni.net.android.logger.Logger;
 import android.os.AsyncTask;
 /**
- * 
+ * client of a rest api.
+ * <p>the request set on the client with the builder is executed by {@link #executeAndBlock()}, {@link #executeOnThread(ApiClientHandler)}
+ * and {@link #executeOnAsyncTask(ApiClientHandler)}. requests built with {@link #newRequest()} are executed by {@link #execute(ApiRequest)}
+ * and {@link #executeOnThread(ApiRequest, ApiClientHandler)} without touching the client, so one configured client
+ * can be shared by any number of threads.</p>
  * @author malsukhni
  *
  */
@@ -38,256 +53,605 @@ public class ApiClient extends RestClient
 		execute();
 	}
 	/**
-	 * execute the request using thread
+	 * execute the request on a worker of the executor in the order of its priority, the handler is called on the worker.
+	 * when the transport is an {@link AsyncHttpTransport} no worker is used and the handler is called on a transport thread.
+	 * a request rejected by the executor is reported to the handler as an exception
 	 * @param handler an ApiClientHandler to handle the result
 	 */
 	public void executeOnThread(final ApiClientHandler handler)
 	{
-		new Thread(new Runnable()
+		ApiRequest request;
+		try
 		{
-			
-			@Override
-			public void run()
+			request = newRequest().build();
+		}
+		catch (IllegalStateException e)
+		{
+			dispatchException(handler, e);
+			return;
+		}
+		executeOnThread(request, true, handler);
+	}
+
+	/**
+	 * execute the given request on a worker of the executor, like {@link #executeOnThread(ApiClientHandler)}.
+	 * the request is queued with its own priority, or the priority of this client when it has none.
+	 * <p>nothing is stored on the client, so one configured client can serve any number of requests at once.
+	 * configure the client before it is shared, its settings are read by every request.</p>
+	 * @param request the request to execute
+	 * @param handler an ApiClientHandler to handle the result
+	 */
+	public void executeOnThread(ApiRequest request, ApiClientHandler handler)
+	{
+		executeOnThread(request, false, handler);
+	}
+
+	private void executeOnThread(final ApiRequest request, final boolean record, final ApiClientHandler handler)
+	{
+		if(mTransport instanceof AsyncHttpTransport)
+		{
+			executeNonBlocking(request, null, record, new ExecutionListener()
 			{
-				try
+				@Override
+				public void onExecuted(ApiResponse response)
 				{
-					executeAndBlock();
-					int responseCode = getResponseCode();
-					if(handler!=null)
-					{
-						if(responseCode>=100 && responseCode<200)
-						{
-							handler.onInformational(Status.fromStatusCode(responseCode), getResponseStatusLine(), getResponseEntity());
-						}
-						else if(responseCode>=200 && responseCode<300)
-						{
-							handler.onSuccessful(Status.fromStatusCode(responseCode), getResponseStatusLine(), getResponseEntity());
-						}
-						else if(responseCode>=300 && responseCode<400)
-						{
-							handler.onClientError(Status.fromStatusCode(responseCode), getResponseStatusLine(), getResponseEntity());
-						}
-						else if(responseCode>=500)
-						{
-							handler.onServerError(Status.fromStatusCode(responseCode), getResponseStatusLine(), getResponseEntity());
-						}
-					}
+					dispatchResponse(handler, response);
 				}
-				catch (UnresolvedAddressException e)
+
+				@Override
+				public void onFailed(Exception e)
 				{
 					Logger.printStackTrace(e);
-					if(handler!=null)
-					{
-						handler.onException(ExceptionStatus.UNRESOLVED_ADDRESS_EXCEPTION, e);
-					}
+					dispatchException(handler, e);
 				}
-				catch (NoRouteToHostException e)
+			});
+			return;
+		}
+		Priority priority = (request.getPriority()!=null) ? request.getPriority() : mPriority;
+		try
+		{
+			mExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
 				{
-					Logger.printStackTrace(e);
-					if(handler!=null)
+					try
 					{
-						handler.onException(ExceptionStatus.NO_ROUTE_TO_HOST_EXCEPTION, e);
+						ApiResponse response = record ? executeRecorded(request) : execute(request);
+						dispatchResponse(handler, response);
 					}
-				}
-				catch (ConnectTimeoutException e)
-				{
-					Logger.printStackTrace(e);
-					if(handler!=null)
+					catch (Exception e)
 					{
-						handler.onException(ExceptionStatus.CONNECT_TIMEOUT_EXCEPTION, e);
+						Logger.printStackTrace(e);
+						dispatchException(handler, e);
 					}
 				}
-				catch (SocketTimeoutException e)
+			}, priority);
+		}
+		catch (RejectedExecutionException e)
+		{
+			Logger.error(TAG, "request rejected by " + mExecutor, e);
+			dispatchException(handler, e);
+		}
+	}
+
+	/**
+	 * execute the request set on the client without blocking, like {@link #executeAsync(ApiRequest)}
+	 * @return the future of the response
+	 * @throws IllegalStateException if the base uri is not set
+	 */
+	public ApiFuture<ApiResponse> executeAsync()
+	{
+		return executeAsync(newRequest().build());
+	}
+
+	/**
+	 * execute the given request on a worker of the executor, or on the transport threads when the transport is
+	 * an {@link AsyncHttpTransport}. the returned future is completed with the response or the failure,
+	 * canceling it aborts the request and releases its connection
+	 * @param request the request to execute
+	 * @return the future of the response
+	 */
+	public ApiFuture<ApiResponse> executeAsync(final ApiRequest request)
+	{
+		final CancellationSignal signal = new CancellationSignal();
+		final ApiFuture<ApiResponse> future = new ApiFuture<ApiResponse>(signal);
+		if(mTransport instanceof AsyncHttpTransport)
+		{
+			executeNonBlocking(request, signal, false, new ExecutionListener()
+			{
+				@Override
+				public void onExecuted(ApiResponse response)
 				{
-					Logger.printStackTrace(e);
-					if(handler!=null)
-					{
-						handler.onException(ExceptionStatus.SOCKET_TIMEOUT_EXCEPTION, e);
-					}
+					future.set(response);
 				}
-				catch (UnsupportedEncodingException e)
+
+				@Override
+				public void onFailed(Exception e)
 				{
-					Logger.printStackTrace(e);
-					if(handler!=null)
-					{
-						handler.onException(ExceptionStatus.UNSUPPORTED_ENCODING_EXCEPTION, e);
-					}
+					future.setException(e);
 				}
-				catch (UnknownHostException e)
+			});
+			return future;
+		}
+		Priority priority = (request.getPriority()!=null) ? request.getPriority() : mPriority;
+		try
+		{
+			mExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
 				{
-					Logger.printStackTrace(e);
-					if(handler!=null)
+					// canceled while queued, never sent
+					if(future.isDone()) return;
+					try
 					{
-						handler.onException(ExceptionStatus.UNKNOWN_HOST_EXCEPTION, e);
+						future.set(execute(request, signal));
+					}
+					catch (Exception e)
+					{
+						future.setException(e);
 					}
 				}
-				catch (ConnectionClosedException e)
+			}, priority);
+		}
+		catch (RejectedExecutionException e)
+		{
+			Logger.error(TAG, "request rejected by " + mExecutor, e);
+			future.setException(e);
+		}
+		return future;
+	}
+
+	/**
+	 * execute the given request on a worker of the executor and give the content of the response to the consumer
+	 * in chunks as it is read, SEE {@link #execute(ApiRequest, ContentConsumer)}. the returned future is completed
+	 * with the response once the content is consumed, canceling it aborts the request and releases its connection
+	 * @param request the request to execute
+	 * @param consumer the consumer of the content, called on the worker
+	 * @return the future of the response
+	 */
+	public ApiFuture<ApiResponse> executeAsync(final ApiRequest request, final ContentConsumer consumer)
+	{
+		final CancellationSignal signal = new CancellationSignal();
+		final ApiFuture<ApiResponse> future = new ApiFuture<ApiResponse>(signal);
+		Priority priority = (request.getPriority()!=null) ? request.getPriority() : mPriority;
+		try
+		{
+			mExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
 				{
-					Logger.printStackTrace(e);
-					if(handler!=null)
+					// canceled while queued, never sent
+					if(future.isDone()) return;
+					try
+					{
+						future.set(execute(request, consumer, signal));
+					}
+					catch (Exception e)
 					{
-						handler.onException(ExceptionStatus.CONNECTION_CLOSED_EXCEPTION, e);
+						future.setException(e);
 					}
 				}
-				catch (FileNotFoundException e)
+			}, priority);
+		}
+		catch (RejectedExecutionException e)
+		{
+			Logger.error(TAG, "request rejected by " + mExecutor, e);
+			future.setException(e);
+		}
+		return future;
+	}
+
+	/**
+	 * download the content of the given request to the given file on a worker of the executor,
+	 * SEE {@link #download(ApiRequest, File, boolean)}. canceling the returned future aborts the download,
+	 * the content written so far is kept in the file and can be resumed
+	 * @param request the request of the content
+	 * @param file the file to write the content to
+	 * @param resume true to resume the content already in the file, false to replace it
+	 * @return the future of the outcome of the download
+	 */
+	public ApiFuture<DownloadResult> downloadAsync(final ApiRequest request, final File file, final boolean resume)
+	{
+		final CancellationSignal signal = new CancellationSignal();
+		final ApiFuture<DownloadResult> future = new ApiFuture<DownloadResult>(signal);
+		Priority priority = (request.getPriority()!=null) ? request.getPriority() : mPriority;
+		try
+		{
+			mExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
 				{
-					Logger.printStackTrace(e);
-					if(handler!=null)
+					// canceled while queued, never sent
+					if(future.isDone()) return;
+					try
+					{
+						future.set(download(request, file, resume, signal));
+					}
+					catch (Exception e)
 					{
-						handler.onException(ExceptionStatus.FILE_NOT_FOUND_EXCEPTION, e);
+						future.setException(e);
 					}
 				}
-				catch (IOException e)
+			}, priority);
+		}
+		catch (RejectedExecutionException e)
+		{
+			Logger.error(TAG, "request rejected by " + mExecutor, e);
+			future.setException(e);
+		}
+		return future;
+	}
+
+	/**
+	 * download the content of the given request to the given file in segments, SEE {@link #download(ApiRequest, File, int)}.
+	 * the download is run by a worker of the executor, canceling the returned future aborts all the segments
+	 * @param request the request of the content
+	 * @param file the file to write the content to
+	 * @param segments the max number of segments
+	 * @return the future of the outcome of the download
+	 */
+	public ApiFuture<DownloadResult> downloadAsync(final ApiRequest request, final File file, final int segments)
+	{
+		final CancellationSignal signal = new CancellationSignal();
+		final ApiFuture<DownloadResult> future = new ApiFuture<DownloadResult>(signal);
+		Priority priority = (request.getPriority()!=null) ? request.getPriority() : mPriority;
+		try
+		{
+			mExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
 				{
-					Logger.printStackTrace(e);
-					if(handler!=null)
+					// canceled while queued, never sent
+					if(future.isDone()) return;
+					try
 					{
-						handler.onException(ExceptionStatus.IO_EXCEPTION, e);
+						future.set(download(request, file, segments, signal));
+					}
+					catch (Exception e)
+					{
+						future.setException(e);
 					}
 				}
-				catch (Exception e)
+			}, priority);
+		}
+		catch (RejectedExecutionException e)
+		{
+			Logger.error(TAG, "request rejected by " + mExecutor, e);
+			future.setException(e);
+		}
+		return future;
+	}
+
+	/**
+	 * execute the given requests like {@link #executeAll(Collection, int, BatchMode, ApiClientHandler)}, every request is executed
+	 * @param requests the requests to execute
+	 * @param maxConcurrency the maximum number of requests in flight at once
+	 * @return the future of the outcome of the batch
+	 */
+	public ApiFuture<BatchResult> executeAll(Collection<ApiRequest> requests, int maxConcurrency)
+	{
+		return executeAll(requests, maxConcurrency, BatchMode.COLLECT_ALL, null);
+	}
+
+	/**
+	 * execute the given requests with {@link #executeAsync(ApiRequest)}, at most maxConcurrency at once: a request is
+	 * started as soon as another one completes. the handler is called with the outcome of each request as it completes,
+	 * on the thread that completes it. the returned future is completed once every request has an outcome,
+	 * canceling it cancels the requests in flight and the requests not started yet
+	 * @param requests the requests to execute
+	 * @param maxConcurrency the maximum number of requests in flight at once
+	 * @param mode what a failed request does to the others, SEE {@link BatchMode}
+	 * @param handler an ApiClientHandler to handle the result of each request, may be null
+	 * @return the future of the outcome of the batch
+	 */
+	public ApiFuture<BatchResult> executeAll(Collection<ApiRequest> requests, int maxConcurrency, BatchMode mode, ApiClientHandler handler)
+	{
+		if(maxConcurrency<1) throw new IllegalArgumentException("maxConcurrency must be at least 1");
+		Batch batch = new Batch(new ArrayList<ApiRequest>(requests), maxConcurrency, (mode!=null) ? mode : BatchMode.COLLECT_ALL, handler);
+		batch.start();
+		return batch.future;
+	}
+
+	/**
+	 * open connections to the base uri on a low priority worker of the executor, failures are only logged. See {@link #prewarm(int)}
+	 * <p>the base uri, the transport and the connection settings are taken when it is called, later changes to this client
+	 * do not apply to the connections being opened.</p>
+	 * @param connections how many connections to have ready
+	 */
+	public void prewarmOnThread(final int connections)
+	{
+		final String baseUri = getBaseUri();
+		if(baseUri==null) throw new IllegalStateException("The base uri is not set");
+		final HttpTransport transport = mTransport;
+		final HttpClientConfig config = getHttpClientConfig();
+		try
+		{
+			mExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
 				{
-					Logger.printStackTrace(e);
-					if(handler!=null)
+					try
+					{
+						int ready = prewarm(baseUri, transport, config, connections);
+						Logger.debug(TAG + ": " + ready + " connection(s) ready to " + baseUri);
+					}
+					catch (Exception e)
 					{
-						handler.onException(ExceptionStatus.EXCEPTION, e);
+						Logger.error(TAG, "prewarm of " + baseUri + " failed", e);
 					}
 				}
-				
-			}
-		}).start();
+			}, Priority.LOW);
+		}
+		catch (RejectedExecutionException e)
+		{
+			Logger.error(TAG, "prewarm of " + baseUri + " rejected by " + mExecutor, e);
+		}
 	}
 
 	/**
-	 * execute the request using async task, result will be handled when onPostExecute get called 
-	 * @param handler an ApiClientHandler to handle the result
+	 * call the handler event that matches the range of the response code
+	 * @param handler the handler, may be null
+	 * @param response
 	 */
-	public void executeOnAsyncTask(ApiClientHandler handler)
+	private void dispatchResponse(ApiClientHandler handler, ApiResponse response)
 	{
-		new ExecuterTask(handler).execute();
+		if(handler==null) return;
+		int responseCode = response.getStatusCode();
+		Status status = response.getStatus();
+		if(responseCode>=100 && responseCode<200)
+		{
+			handler.onInformational(status, response.getStatusLine(), response.getEntity());
+		}
+		else if(responseCode>=200 && responseCode<300)
+		{
+			handler.onSuccessful(status, response.getStatusLine(), response.getEntity());
+		}
+		else if(responseCode>=300 && responseCode<400)
+		{
+			handler.onRedirection(status, response.getStatusLine(), response.getEntity());
+		}
+		else if(responseCode>=400 && responseCode<500)
+		{
+			handler.onClientError(status, response.getStatusLine(), response.getEntity());
+		}
+		else if(responseCode>=500)
+		{
+			handler.onServerError(status, response.getStatusLine(), response.getEntity());
+		}
 	}
+
 	/**
-	 * 
-	 * @author malsukhni
-	 *
+	 * call the exception event of the handler
+	 * @param handler the handler, may be null
+	 * @param e
 	 */
-	private class ExecuterTask extends AsyncTask<Void, Void, Integer>
+	private void dispatchException(ApiClientHandler handler, Exception e)
 	{
-		public final String EXECUTER_TASK_TAG = ExecuterTask.class.getSimpleName();
-		private Exception exception = null;
-		private ExceptionStatus exceptionStatus = null;
-		private ApiClientHandler handler = null;
-		public ExecuterTask(ApiClientHandler handler)
+		if(handler!=null)
 		{
-			Logger.debug(EXECUTER_TASK_TAG + ": Constructor");
+			handler.onException(ExceptionStatus.fromException(e), e);
+		}
+	}
+
+	/**
+	 * the requests of one {@link #executeAll(Collection, int, BatchMode, ApiClientHandler)} and their outcomes
+	 */
+	private final class Batch
+	{
+		final List<ApiRequest>					requests;
+		final int								maxConcurrency;
+		final BatchMode							mode;
+		final ApiClientHandler					handler;
+		final CancellationSignal				signal			= new CancellationSignal();
+		final ApiFuture<BatchResult>			future			= new ApiFuture<BatchResult>(signal);
+		final long								startTime		= System.currentTimeMillis();
+		final ApiResponse[]						responses;
+		final Exception[]						failures;
+		final long[]							durations;
+		final List<ApiFuture<ApiResponse>>		running			= new ArrayList<ApiFuture<ApiResponse>>();
+		Exception								firstFailure;
+		int										next;			// requests handed out to be launched
+		int										completed;
+		boolean									stopped;
+
+		Batch(List<ApiRequest> requests, int maxConcurrency, BatchMode mode, ApiClientHandler handler)
+		{
+			this.requests = requests;
+			this.maxConcurrency = maxConcurrency;
+			this.mode = mode;
 			this.handler = handler;
+			this.responses = new ApiResponse[requests.size()];
+			this.failures = new Exception[requests.size()];
+			this.durations = new long[requests.size()];
 		}
-		@Override
-		protected Integer doInBackground(Void... params)
+
+		void start()
 		{
-			Logger.debug(TAG + ": Background");
-			try
+			signal.setOnCancelListener(new CancellationSignal.OnCancelListener()
 			{
-				executeAndBlock();
-				return getResponseCode();
+				@Override
+				public void onCancel()
+				{
+					stop();
+				}
+			});
+			int count;
+			synchronized(this)
+			{
+				count = Math.min(maxConcurrency, requests.size());
+				next = count;
 			}
-			catch (UnresolvedAddressException e)
+			if(count==0) finish();
+			for(int i=0; i<count; i++)
 			{
-				Logger.printStackTrace(e);
-				exception = e;
-				exceptionStatus = ExceptionStatus.UNRESOLVED_ADDRESS_EXCEPTION;
+				launch(i);
 			}
-			catch (NoRouteToHostException e)
+		}
+
+		private void launch(final int index)
+		{
+			final long begin = System.currentTimeMillis();
+			final ApiFuture<ApiResponse> item = executeAsync(requests.get(index));
+			boolean cancel;
+			synchronized(this)
 			{
-				Logger.printStackTrace(e);
-				exception = e;
-				exceptionStatus = ExceptionStatus.NO_ROUTE_TO_HOST_EXCEPTION;
+				running.add(item);
+				cancel = stopped;
 			}
-			catch (ConnectTimeoutException e)
+			if(cancel) item.cancel(false);
+			item.addListener(new ApiFuture.Listener<ApiResponse>()
 			{
-				Logger.printStackTrace(e);
-				exception = e;
-				exceptionStatus = ExceptionStatus.CONNECT_TIMEOUT_EXCEPTION;
+				@Override
+				public void onComplete(ApiFuture<ApiResponse> future)
+				{
+					onItemComplete(index, future, System.currentTimeMillis() - begin);
+				}
+			});
+		}
+
+		private void onItemComplete(int index, ApiFuture<ApiResponse> item, long duration)
+		{
+			ApiResponse response = null;
+			Exception failure = null;
+			if(!item.isCancelled())
+			{
+				try
+				{
+					response = item.get();
+				}
+				catch(Exception e)
+				{
+					failure = (e instanceof ExecutionException) ? (Exception) e.getCause() : e;
+				}
 			}
-			catch (SocketTimeoutException e)
+			if(response!=null) dispatchResponse(handler, response);
+			else if(failure!=null) dispatchException(handler, failure);
+			boolean failFast = false;
+			int launch = -1;
+			boolean done;
+			synchronized(this)
 			{
-				Logger.printStackTrace(e);
-				exception = e;
-				exceptionStatus = ExceptionStatus.SOCKET_TIMEOUT_EXCEPTION;
+				running.remove(item);
+				responses[index] = response;
+				failures[index] = failure;
+				durations[index] = duration;
+				completed++;
+				if(failure!=null && firstFailure==null) firstFailure = failure;
+				if(failure!=null && mode==BatchMode.FAIL_FAST && !stopped) failFast = true;
+				else if(!stopped && next<requests.size()) launch = next++;
+				// a request counts from the moment it is handed out, it may still be launching on another thread
+				done = (launch<0 && !failFast && completed==next && (stopped || next==requests.size()));
 			}
-			catch (UnsupportedEncodingException e)
+			if(failFast)
 			{
-				Logger.printStackTrace(e);
-				exception = e;
-				exceptionStatus = ExceptionStatus.UNSUPPORTED_ENCODING_EXCEPTION;
+				Logger.debug(TAG + ": batch failed fast at request " + index + ", canceling the others");
+				stop();
 			}
-			catch (UnknownHostException e)
+			else if(launch>=0)
 			{
-				Logger.printStackTrace(e);
-				exception = e;
-				exceptionStatus = ExceptionStatus.UNKNOWN_HOST_EXCEPTION;
+				launch(launch);
 			}
-			catch (ConnectionClosedException e)
+			else if(done)
 			{
-				Logger.printStackTrace(e);
-				exception = e;
-				exceptionStatus = ExceptionStatus.CONNECTION_CLOSED_EXCEPTION;
+				finish();
 			}
-			catch (FileNotFoundException e)
+		}
+
+		/**
+		 * start no more requests and cancel those in flight
+		 */
+		private void stop()
+		{
+			List<ApiFuture<ApiResponse>> inFlight;
+			synchronized(this)
 			{
-				Logger.printStackTrace(e);
-				exception = e;
-				exceptionStatus = ExceptionStatus.FILE_NOT_FOUND_EXCEPTION;
+				stopped = true;
+				inFlight = new ArrayList<ApiFuture<ApiResponse>>(running);
 			}
-			catch (IOException e)
+			for(ApiFuture<ApiResponse> item : inFlight)
 			{
-				Logger.printStackTrace(e);
-				exception = e;
-				exceptionStatus = ExceptionStatus.IO_EXCEPTION;
+				item.cancel(false);
+			}
+			boolean done;
+			synchronized(this)
+			{
+				done = (completed==next);
+			}
+			if(done) finish();
+		}
+
+		private void finish()
+		{
+			BatchResult result;
+			synchronized(this)
+			{
+				result = new BatchResult(responses.clone(), failures.clone(), durations.clone(), System.currentTimeMillis() - startTime, firstFailure);
+			}
+			if(future.set(result))
+			{
+				Logger.debug(TAG + ": " + result);
+			}
+		}
+	}
+
+	/**
+	 * execute the request using async task, result will be handled when onPostExecute get called 
+	 * @param handler an ApiClientHandler to handle the result
+	 */
+	public void executeOnAsyncTask(ApiClientHandler handler)
+	{
+		new ExecuterTask(handler).execute();
+	}
+	/**
+	 * 
+	 * @author malsukhni
+	 *
+	 */
+	private class ExecuterTask extends AsyncTask<Void, Void, ApiResponse>
+	{
+		public final String EXECUTER_TASK_TAG = ExecuterTask.class.getSimpleName();
+		private Exception exception = null;
+		private ExceptionStatus exceptionStatus = null;
+		private ApiClientHandler handler = null;
+		public ExecuterTask(ApiClientHandler handler)
+		{
+			Logger.debug(EXECUTER_TASK_TAG + ": Constructor");
+			this.handler = handler;
+		}
+		@Override
+		protected ApiResponse doInBackground(Void... params)
+		{
+			Logger.debug(TAG + ": Background");
+			try
+			{
+				return executeRecorded(newRequest().build());
 			}
 			catch (Exception e)
 			{
 				Logger.printStackTrace(e);
 				exception = e;
-				exceptionStatus = ExceptionStatus.EXCEPTION;
+				exceptionStatus = ExceptionStatus.fromException(e);
 			}
 			return null;
 		}
 
 		@Override
-		protected void onPostExecute(Integer result)
+		protected void onPostExecute(ApiResponse result)
 		{
 			Logger.debug(TAG + ": PostExecute");
-			if(handler!=null)
+			if(result!=null)
 			{
-				if(result!=null)
-				{
-					int responseCode = result.intValue();
-					if(responseCode>=100 && responseCode<200)
-					{
-						handler.onInformational(ca.sukhni.net.android.api.client.Status.fromStatusCode(responseCode), getResponseStatusLine(), getResponseEntity());
-					}
-					else if(responseCode>=200 && responseCode<300)
-					{
-						handler.onSuccessful(ca.sukhni.net.android.api.client.Status.fromStatusCode(responseCode), getResponseStatusLine(), getResponseEntity());
-					}
-					else if(responseCode>=300 && responseCode<400)
-					{
-						handler.onRedirection(ca.sukhni.net.android.api.client.Status.fromStatusCode(responseCode), getResponseStatusLine(), getResponseEntity());
-					}
-					else if(responseCode>=400 && responseCode<500)
-					{
-						handler.onClientError(ca.sukhni.net.android.api.client.Status.fromStatusCode(responseCode), getResponseStatusLine(), getResponseEntity());
-					}
-					else if(responseCode>=500)
-					{
-						handler.onServerError(ca.sukhni.net.android.api.client.Status.fromStatusCode(responseCode), getResponseStatusLine(), getResponseEntity());
-					}
-				}
-				else
-				{
-					handler.onException(exceptionStatus, exception);
-				}
+				dispatchResponse(handler, result);
+			}
+			else if(handler!=null)
+			{
+				handler.onException(exceptionStatus, exception);
 			}
 		}
 
@@ -5,6 +5,17 @@ import java.net.URLEncoder;
 
 import org.apache.http.NameValuePair;
 
+import ca.sukhni.net.android.api.executor.Priority;
+import ca.sukhni.net.android.api.executor.RequestExecutor;
+import ca.sukhni.net.android.api.policy.CircuitBreaker;
+import ca.sukhni.net.android.api.policy.HedgePolicy;
+import ca.sukhni.net.android.api.policy.RateLimiter;
+import ca.sukhni.net.android.api.policy.RetryPolicy;
+import ca.sukhni.net.android.api.socket.HostResolver;
+import ca.sukhni.net.android.api.transport.ApacheHttpTransport;
+import ca.sukhni.net.android.api.transport.Http2Transport;
+import ca.sukhni.net.android.api.transport.HttpTransport;
+import ca.sukhni.net.android.api.transport.UrlConnectionTransport;
 import ca.sukhni.net.android.logger.Logger;
 
 interface BuilderInterface
@@ -57,6 +68,165 @@ interface BuilderInterface
 	 * @return
 	 */
 	public abstract ApiClientBuilder setEnableSocketTimeoutRetry(boolean enableSocketTimeoutRetry);
+	/**
+	 * set the trust all certificates flag, default is true
+	 * @param trustAllCertificates the trustAllCertificates to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setTrustAllCertificates(boolean trustAllCertificates);
+	/**
+	 * set the maximum number of cached tls sessions, zero means no limit
+	 * @param sslSessionCacheSize the sslSessionCacheSize to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setSslSessionCacheSize(int sslSessionCacheSize);
+	/**
+	 * set the lifetime of a cached tls session in seconds, zero means no limit
+	 * @param sslSessionTimeout the sslSessionTimeout to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setSslSessionTimeout(int sslSessionTimeout);
+	/**
+	 * set the maximum number of pooled connections
+	 * @param maxTotalConnections the maxTotalConnections to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setMaxTotalConnections(int maxTotalConnections);
+	/**
+	 * set the maximum number of pooled connections to a single host
+	 * @param maxConnectionsPerHost the maxConnectionsPerHost to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setMaxConnectionsPerHost(int maxConnectionsPerHost);
+	/**
+	 * set the keep-alive duration of idle connections in milliseconds
+	 * @param keepAliveDuration the keepAliveDuration to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setKeepAliveDuration(long keepAliveDuration);
+	/**
+	 * set how long in milliseconds a connection may stay idle in the pool before it is closed
+	 * @param idleConnectionTimeout the idleConnectionTimeout to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setIdleConnectionTimeout(long idleConnectionTimeout);
+	/**
+	 * set the total time in milliseconds a request may take, across the waits for a connection, the retries and
+	 * the reading of the response. a request still running at its deadline fails with {@link ExceptionStatus#DEADLINE_EXCEEDED_EXCEPTION}
+	 * @param requestDeadline the requestDeadline to set, 0 for no deadline
+	 * @return
+	 */
+	public abstract ApiClientBuilder setRequestDeadline(long requestDeadline);
+	/**
+	 * set the resolver used to look up hosts when opening new connections
+	 * @param hostResolver the hostResolver to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setHostResolver(HostResolver hostResolver);
+	/**
+	 * set how long in milliseconds a connect attempt may run before the next resolved address is tried beside it,
+	 * zero or less tries the addresses one after the other
+	 * @param connectAttemptDelay the connectAttemptDelay to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setConnectAttemptDelay(long connectAttemptDelay);
+	/**
+	 * send small writes right away instead of coalescing them with nagle's algorithm, default is true
+	 * @param tcpNoDelay the tcpNoDelay to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setTcpNoDelay(boolean tcpNoDelay);
+	/**
+	 * set the socket send buffer size in bytes, zero or less keeps the system default
+	 * @param sendBufferSize the sendBufferSize to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setSendBufferSize(int sendBufferSize);
+	/**
+	 * set the socket receive buffer size in bytes, zero or less keeps the system default
+	 * @param receiveBufferSize the receiveBufferSize to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setReceiveBufferSize(int receiveBufferSize);
+	/**
+	 * test a pooled connection for a server side close before it is reused, default is true. turning it off saves a blocking read per reused connection of the apache transport
+	 * @param staleCheckingEnabled the staleCheckingEnabled to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setStaleCheckingEnabled(boolean staleCheckingEnabled);
+	/**
+	 * set how long in seconds closing a socket waits for unsent data, less than zero turns linger off (default)
+	 * @param socketLinger the socketLinger to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setSocketLinger(int socketLinger);
+	/**
+	 * set the http engine that executes the request, i.e. {@link ApacheHttpTransport} or {@link UrlConnectionTransport}
+	 * @param transport the transport to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setTransport(HttpTransport transport);
+	/**
+	 * set the worker pool that runs the request when it is executed on a thread, default is {@link RequestExecutor#getDefault()}
+	 * which never rejects. an executor with a queue limit and {@link java.util.concurrent.ThreadPoolExecutor.AbortPolicy} rejects
+	 * requests once its queue is full
+	 * @param executor the executor to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setExecutor(RequestExecutor executor);
+	/**
+	 * set the priority of the request in the queue of the executor, user facing calls should use {@link Priority#HIGH}
+	 * @param priority the priority to set
+	 * @return
+	 */
+	public abstract ApiClientBuilder setPriority(Priority priority);
+	/**
+	 * share one network call between identical GET requests in flight at the same time, off by default.
+	 * clients share calls only when they share the coalescer, i.e. {@link RequestCoalescer#getDefault()}
+	 * @param requestCoalescer the coalescer to set, or null to turn coalescing off
+	 * @return
+	 */
+	public abstract ApiClientBuilder setRequestCoalescer(RequestCoalescer requestCoalescer);
+	/**
+	 * throttle the requests per host before they are sent, a request over the limit waits for a permit
+	 * or fails with {@link ExceptionStatus#RATE_LIMIT_EXCEEDED_EXCEPTION}. SEE {@link RateLimiter}
+	 * @param rateLimiter the limiter to set, or null to send the requests right away
+	 * @return
+	 */
+	public abstract ApiClientBuilder setRateLimiter(RateLimiter rateLimiter);
+	/**
+	 * fail the requests to a failing host right away instead of waiting out the timeouts, the requests
+	 * fail with {@link ExceptionStatus#CIRCUIT_OPEN_EXCEPTION} while its circuit is open. SEE {@link CircuitBreaker}
+	 * @param circuitBreaker the circuit breaker to set, or null to always send the requests
+	 * @return
+	 */
+	public abstract ApiClientBuilder setCircuitBreaker(CircuitBreaker circuitBreaker);
+	/**
+	 * retry the failed requests with backoff, within a retry budget. the policy replaces the timeout retry settings. SEE {@link RetryPolicy}
+	 * @param retryPolicy the policy to set, or null to retry the timeouts right away as configured
+	 * @return
+	 */
+	public abstract ApiClientBuilder setRetryPolicy(RetryPolicy retryPolicy);
+	/**
+	 * send a GET request a second time when it is slow to respond, the first response wins. SEE {@link HedgePolicy}
+	 * @param hedgePolicy the policy to set, or null to send the requests once
+	 * @return
+	 */
+	public abstract ApiClientBuilder setHedgePolicy(HedgePolicy hedgePolicy);
+	/**
+	 * execute the request with the shared {@link Http2Transport}, servers that do not negotiate http/2 are reached over http/1.1.
+	 * disabling it restores the default transport
+	 * @param http2Enabled true to multiplex requests over http/2
+	 * @return
+	 */
+	public abstract ApiClientBuilder setHttp2Enabled(boolean http2Enabled);
+	/**
+	 * open connections to the base uri in the background once the client is built, so the first request finds them ready.
+	 * the connections are opened with the base uri, the connection settings and the transport the client is built with
+	 * @param connections how many connections to have ready, limited by the connections per host
+	 * @return
+	 */
+	public abstract ApiClientBuilder prewarm(int connections);
 	/**
 	 * add path to the request uri, the path can consist of one or more elements
 	 * i.e. addPath("route"), addPath("route/to/home")
@@ -104,6 +274,8 @@ interface BuilderInterface
 public class ApiClientBuilder implements BuilderInterface
 {
 	private ApiClient apiClient;
+	// connections to prewarm once built, 0 for none
+	private int prewarmConnections;
 
 	public ApiClientBuilder()
 	{
@@ -146,6 +318,11 @@ public class ApiClientBuilder implements BuilderInterface
 	@Override
 	public ApiClient build()
 	{
+		if(prewarmConnections>0)
+		{
+			apiClient.prewarmOnThread(prewarmConnections);
+			prewarmConnections = 0;
+		}
 		return apiClient;
 	}
 	@Override
@@ -185,6 +362,156 @@ public class ApiClientBuilder implements BuilderInterface
 		return this;
 	}
 	@Override
+	public ApiClientBuilder setTrustAllCertificates(boolean trustAllCertificates)
+	{
+		apiClient.setTrustAllCertificates(trustAllCertificates);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setSslSessionCacheSize(int sslSessionCacheSize)
+	{
+		apiClient.setSslSessionCacheSize(sslSessionCacheSize);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setSslSessionTimeout(int sslSessionTimeout)
+	{
+		apiClient.setSslSessionTimeout(sslSessionTimeout);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setMaxTotalConnections(int maxTotalConnections)
+	{
+		apiClient.setMaxTotalConnections(maxTotalConnections);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setMaxConnectionsPerHost(int maxConnectionsPerHost)
+	{
+		apiClient.setMaxConnectionsPerHost(maxConnectionsPerHost);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setKeepAliveDuration(long keepAliveDuration)
+	{
+		apiClient.setKeepAliveDuration(keepAliveDuration);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setIdleConnectionTimeout(long idleConnectionTimeout)
+	{
+		apiClient.setIdleConnectionTimeout(idleConnectionTimeout);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setRequestDeadline(long requestDeadline)
+	{
+		apiClient.setRequestDeadline(requestDeadline);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setHostResolver(HostResolver hostResolver)
+	{
+		apiClient.setHostResolver(hostResolver);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setConnectAttemptDelay(long connectAttemptDelay)
+	{
+		apiClient.setConnectAttemptDelay(connectAttemptDelay);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setTcpNoDelay(boolean tcpNoDelay)
+	{
+		apiClient.setTcpNoDelay(tcpNoDelay);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setSendBufferSize(int sendBufferSize)
+	{
+		apiClient.setSendBufferSize(sendBufferSize);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setReceiveBufferSize(int receiveBufferSize)
+	{
+		apiClient.setReceiveBufferSize(receiveBufferSize);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setStaleCheckingEnabled(boolean staleCheckingEnabled)
+	{
+		apiClient.setStaleCheckingEnabled(staleCheckingEnabled);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setSocketLinger(int socketLinger)
+	{
+		apiClient.setSocketLinger(socketLinger);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setTransport(HttpTransport transport)
+	{
+		apiClient.setTransport(transport);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setExecutor(RequestExecutor executor)
+	{
+		apiClient.setExecutor(executor);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setPriority(Priority priority)
+	{
+		apiClient.setPriority(priority);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setRequestCoalescer(RequestCoalescer requestCoalescer)
+	{
+		apiClient.setRequestCoalescer(requestCoalescer);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setRateLimiter(RateLimiter rateLimiter)
+	{
+		apiClient.setRateLimiter(rateLimiter);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setCircuitBreaker(CircuitBreaker circuitBreaker)
+	{
+		apiClient.setCircuitBreaker(circuitBreaker);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setRetryPolicy(RetryPolicy retryPolicy)
+	{
+		apiClient.setRetryPolicy(retryPolicy);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setHedgePolicy(HedgePolicy hedgePolicy)
+	{
+		apiClient.setHedgePolicy(hedgePolicy);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder setHttp2Enabled(boolean http2Enabled)
+	{
+		apiClient.setTransport(http2Enabled ? Http2Transport.getInstance() : null);
+		return this;
+	}
+	@Override
+	public ApiClientBuilder prewarm(int connections)
+	{
+		prewarmConnections = connections;
+		return this;
+	}
+	@Override
 	public ApiClientBuilder addPath(String path)
 	{
 		apiClient.addPath(path);
@@ -207,7 +534,8 @@ public class ApiClientBuilder implements BuilderInterface
 				+ "Content: " + apiClient.getContent() + "\n"
 				+ "Method: " + apiClient.getMethod().name() + "\n"
 				+ "Connection timeout:" + apiClient.getConnectionTimeout() + "\n"
-				+ "Socket timeout:" + apiClient.getSocketTimeout() + "\n";
+				+ "Socket timeout:" + apiClient.getSocketTimeout() + "\n"
+				+ "Transport:" + apiClient.getTransport().getName() + "\n";
 				
 		return combine;
 	}
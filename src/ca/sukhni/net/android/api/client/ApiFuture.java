@@ -0,0 +1,356 @@
+package ca.sukhni.net.android.api.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import ca.sukhni.net.android.api.transport.CancellationSignal;
+import ca.sukhni.net.android.logger.Logger;
+
+/**
+ * handle to the outcome of a request executed by {@link ApiClient#executeAsync(ApiRequest)}.
+ * <p>{@link #cancel(boolean)} aborts the request and releases its connection, a queued request is never sent.
+ * listeners are called once the outcome is known, on the thread that completes the future,
+ * or right away on the calling thread when it is already done.</p>
+ * @author malsukhni
+ *
+ * @param <V> the type of the outcome
+ */
+public class ApiFuture<V> implements Future<V>
+{
+	public static final String					TAG				= ApiFuture.class.getSimpleName();
+
+	private static final int					PENDING			= 0;
+	private static final int					SUCCEEDED		= 1;
+	private static final int					FAILED			= 2;
+	private static final int					CANCELED		= 3;
+
+	private final CountDownLatch				mDone			= new CountDownLatch(1);
+	private final CancellationSignal			mSignal;
+	private int									mState			= PENDING;
+	private V									mValue;
+	private Exception							mFailure;
+	private List<Listener<V>>					mListeners		= new ArrayList<Listener<V>>();
+	private volatile Future<?>					mUpstream;
+
+	/**
+	 * @param signal the signal canceled with this future, or null
+	 */
+	ApiFuture(CancellationSignal signal)
+	{
+		mSignal = signal;
+	}
+
+	/**
+	 * cancel the request, a request in flight is aborted and its connection released.
+	 * a future returned by {@link #transform(Transformation)} or {@link #chain(Continuation)} cancels the future it waits for
+	 * @param mayInterruptIfRunning ignored, the request is always aborted
+	 * @return false if the future is already done
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		if(!complete(CANCELED, null, null)) return false;
+		if(mSignal!=null) mSignal.cancel();
+		Future<?> upstream = mUpstream;
+		if(upstream!=null) upstream.cancel(mayInterruptIfRunning);
+		return true;
+	}
+
+	@Override
+	public synchronized boolean isCancelled()
+	{
+		return mState==CANCELED;
+	}
+
+	@Override
+	public synchronized boolean isDone()
+	{
+		return mState!=PENDING;
+	}
+
+	@Override
+	public V get() throws InterruptedException, ExecutionException
+	{
+		mDone.await();
+		return getOutcome();
+	}
+
+	@Override
+	public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+	{
+		if(!mDone.await(timeout, unit)) throw new TimeoutException("No outcome after " + unit.toMillis(timeout) + "ms");
+		return getOutcome();
+	}
+
+	/**
+	 * get the failure of the request
+	 * @return the failure, or null when the future is pending, succeeded or canceled
+	 */
+	public synchronized Exception getFailure()
+	{
+		return mFailure;
+	}
+
+	/**
+	 * add a listener called once the future is done, succeeded, failed or canceled
+	 * @param listener
+	 * @return this future
+	 */
+	public ApiFuture<V> addListener(Listener<V> listener)
+	{
+		synchronized(this)
+		{
+			if(mState==PENDING)
+			{
+				mListeners.add(listener);
+				return this;
+			}
+		}
+		notify(listener);
+		return this;
+	}
+
+	/**
+	 * create a future of the outcome of this future converted by the given transformation,
+	 * the transformation runs on the thread that completes this future
+	 * @param transformation
+	 * @return
+	 */
+	public <R> ApiFuture<R> transform(final Transformation<? super V, ? extends R> transformation)
+	{
+		final ApiFuture<R> next = new ApiFuture<R>(null);
+		next.mUpstream = this;
+		addListener(new Listener<V>()
+		{
+			@Override
+			public void onComplete(ApiFuture<V> future)
+			{
+				if(future.isCancelled())
+				{
+					next.cancel(false);
+					return;
+				}
+				try
+				{
+					next.set(transformation.apply(future.get()));
+				}
+				catch(ExecutionException e)
+				{
+					next.setException(getFailure(e));
+				}
+				catch(Exception e)
+				{
+					next.setException(e);
+				}
+			}
+		});
+		return next;
+	}
+
+	/**
+	 * create a future of the outcome of the future returned by the given continuation, to run requests one after another.
+	 * the continuation runs on the thread that completes this future, a failure of this future skips it.
+	 * a continuation that returns null fails the resulting future with a {@link NullPointerException}
+	 * @param continuation
+	 * @return
+	 */
+	public <R> ApiFuture<R> chain(final Continuation<? super V, R> continuation)
+	{
+		final ApiFuture<R> next = new ApiFuture<R>(null);
+		next.mUpstream = this;
+		addListener(new Listener<V>()
+		{
+			@Override
+			public void onComplete(ApiFuture<V> future)
+			{
+				if(future.isCancelled())
+				{
+					next.cancel(false);
+					return;
+				}
+				ApiFuture<R> then;
+				try
+				{
+					then = continuation.then(future.get());
+				}
+				catch(ExecutionException e)
+				{
+					next.setException(getFailure(e));
+					return;
+				}
+				catch(Exception e)
+				{
+					next.setException(e);
+					return;
+				}
+				if(then==null)
+				{
+					next.setException(new NullPointerException("Continuation returned null"));
+					return;
+				}
+				next.mUpstream = then;
+				if(next.isCancelled())
+				{
+					then.cancel(false);
+					return;
+				}
+				then.addListener(new Listener<R>()
+				{
+					@Override
+					public void onComplete(ApiFuture<R> future)
+					{
+						if(future.isCancelled())
+						{
+							next.cancel(false);
+							return;
+						}
+						Exception failure = future.getFailure();
+						if(failure!=null) next.setException(failure);
+						else next.set(future.getValue());
+					}
+				});
+			}
+		});
+		return next;
+	}
+
+	/**
+	 * complete the future with the outcome of the request
+	 * @param value
+	 * @return false if the future is already done
+	 */
+	boolean set(V value)
+	{
+		return complete(SUCCEEDED, value, null);
+	}
+
+	/**
+	 * complete the future with the failure of the request
+	 * @param e
+	 * @return false if the future is already done
+	 */
+	boolean setException(Exception e)
+	{
+		return complete(FAILED, null, e);
+	}
+
+	/**
+	 * get the failure of a request from the exception of its future, a cause that is not an exception stays wrapped
+	 * @param e
+	 * @return
+	 */
+	private static Exception getFailure(ExecutionException e)
+	{
+		Throwable cause = e.getCause();
+		return (cause instanceof Exception) ? (Exception) cause : e;
+	}
+
+	private synchronized V getValue()
+	{
+		return mValue;
+	}
+
+	private synchronized V getOutcome() throws ExecutionException
+	{
+		if(mState==CANCELED) throw new CancellationException("Request canceled");
+		if(mState==FAILED) throw new ExecutionException(mFailure);
+		return mValue;
+	}
+
+	private boolean complete(int state, V value, Exception failure)
+	{
+		List<Listener<V>> listeners;
+		synchronized(this)
+		{
+			if(mState!=PENDING) return false;
+			mState = state;
+			mValue = value;
+			mFailure = failure;
+			listeners = mListeners;
+			mListeners = null;
+		}
+		mDone.countDown();
+		for(Listener<V> listener : listeners)
+		{
+			notify(listener);
+		}
+		return true;
+	}
+
+	private void notify(Listener<V> listener)
+	{
+		try
+		{
+			listener.onComplete(this);
+		}
+		catch(RuntimeException e)
+		{
+			Logger.error(TAG, "listener failed", e);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		String[] states = {"pending", "succeeded", "failed", "canceled"};
+		synchronized(this)
+		{
+			return "ApiFuture(" + states[mState] + ")";
+		}
+	}
+
+	/**
+	 * interface to be told when a future is done
+	 * @author malsukhni
+	 *
+	 * @param <V>
+	 */
+	public interface Listener<V>
+	{
+		/**
+		 * called once the future is done, {@link ApiFuture#get()} returns without blocking
+		 * @param future
+		 */
+		public abstract void onComplete(ApiFuture<V> future);
+	}
+
+	/**
+	 * interface to convert the outcome of a future, SEE {@link ApiFuture#transform(Transformation)}
+	 * @author malsukhni
+	 *
+	 * @param <V>
+	 * @param <R>
+	 */
+	public interface Transformation<V, R>
+	{
+		/**
+		 * @param value the outcome of the future
+		 * @return the converted outcome
+		 * @throws Exception fails the resulting future
+		 */
+		public abstract R apply(V value) throws Exception;
+	}
+
+	/**
+	 * interface to start the next request from the outcome of a future, SEE {@link ApiFuture#chain(Continuation)}
+	 * @author malsukhni
+	 *
+	 * @param <V>
+	 * @param <R>
+	 */
+	public interface Continuation<V, R>
+	{
+		/**
+		 * @param value the outcome of the future
+		 * @return the future of the next request
+		 * @throws Exception fails the resulting future
+		 */
+		public abstract ApiFuture<R> then(V value) throws Exception;
+	}
+}
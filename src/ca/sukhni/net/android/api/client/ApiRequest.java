@@ -0,0 +1,346 @@
+package ca.sukhni.net.android.api.client;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+
+import ca.sukhni.net.android.api.executor.Priority;
+import ca.sukhni.net.android.api.transport.CancellationSignal;
+import ca.sukhni.net.android.api.transport.TransportRequest;
+
+/**
+ * immutable description of a request: method, uri, parameters, headers and content.
+ * <p>a request can be executed any number of times, by any number of threads, with {@link ApiClient#execute(ApiRequest)}.
+ * use {@link ApiClient#newRequest()} to start from the request configured on a client.</p>
+ * @author malsukhni
+ *
+ */
+public final class ApiRequest
+{
+	private final Method					method;
+	private final String					baseUri;
+	private final List<String>				paths;
+	private final List<NameValuePair>		params;
+	private final List<NameValuePair>		headers;
+	private final String					content;
+	private final String					charSetType;
+	private final String					contentType;
+	private final Priority					priority;
+
+	private ApiRequest(Builder builder)
+	{
+		this.method = builder.method;
+		this.baseUri = builder.baseUri;
+		this.paths = Collections.unmodifiableList(new ArrayList<String>(builder.paths));
+		this.params = Collections.unmodifiableList(new ArrayList<NameValuePair>(builder.params));
+		this.headers = Collections.unmodifiableList(new ArrayList<NameValuePair>(builder.headers));
+		this.content = builder.content;
+		this.charSetType = builder.charSetType;
+		this.contentType = builder.contentType;
+		this.priority = builder.priority;
+	}
+
+	/**
+	 * get the http request method
+	 * @return
+	 */
+	public Method getMethod()
+	{
+		return method;
+	}
+
+	/**
+	 * get the base uri the paths and parameters are added to
+	 * @return
+	 */
+	public String getBaseUri()
+	{
+		return baseUri;
+	}
+
+	/**
+	 * get the paths added to the base uri
+	 * @return an unmodifiable list
+	 */
+	public List<String> getPaths()
+	{
+		return paths;
+	}
+
+	/**
+	 * get the query parameters
+	 * @return an unmodifiable list
+	 */
+	public List<NameValuePair> getParams()
+	{
+		return params;
+	}
+
+	/**
+	 * get the request headers
+	 * @return an unmodifiable list
+	 */
+	public List<NameValuePair> getHeaders()
+	{
+		return headers;
+	}
+
+	/**
+	 * get the text content sent with POST and PUT
+	 * @return the content, or null
+	 */
+	public String getContent()
+	{
+		return content;
+	}
+
+	/**
+	 * get the char set used to encode the parameters and the content
+	 * @return
+	 */
+	public String getCharSetType()
+	{
+		return charSetType;
+	}
+
+	/**
+	 * get the media type of the content
+	 * @return
+	 */
+	public String getContentType()
+	{
+		return contentType;
+	}
+
+	/**
+	 * get the priority of the request in the queue of the executor
+	 * @return the priority, or null to use the priority of the client
+	 */
+	public Priority getPriority()
+	{
+		return priority;
+	}
+
+	/**
+	 * build the full request url from the base uri, the paths and the url encoded parameters
+	 * @return
+	 * @throws UnsupportedEncodingException if the parameters can not be encoded in the request char set
+	 */
+	public String getUrl() throws UnsupportedEncodingException
+	{
+		StringBuilder url = new StringBuilder(baseUri);
+		for(String path : paths)
+		{
+			url.append('/').append(path.replace("/", "").replace("\\", ""));
+		}
+		char separator = '?';
+		for(NameValuePair p : params)
+		{
+			url.append(separator).append(p.getName()).append('=').append(URLEncoder.encode(p.getValue(), charSetType));
+			separator = '&';
+		}
+		return url.toString();
+	}
+
+	/**
+	 * build the transport request sent to the given url
+	 * @param url the full request url, SEE {@link #getUrl()}
+	 * @param signal the signal that aborts the request, or null
+	 * @return
+	 * @throws UnsupportedEncodingException if the content can not be encoded in the request char set
+	 */
+	TransportRequest toTransportRequest(String url, CancellationSignal signal) throws UnsupportedEncodingException
+	{
+		TransportRequest.Builder request = new TransportRequest.Builder()
+				.setMethod(method)
+				.setUrl(url)
+				.addHeaders(headers)
+				.setCancellationSignal(signal);
+		if(content!=null && (method==Method.POST || method==Method.PUT))
+		{
+			request.setBody(content.getBytes(charSetType), contentType, charSetType);
+		}
+		return request.build();
+	}
+
+	/**
+	 * create a builder that starts from this request
+	 * @return
+	 */
+	public Builder newBuilder()
+	{
+		Builder builder = new Builder()
+				.setMethod(method)
+				.setBaseUri(baseUri)
+				.setTextContent(content)
+				.setCharSetType(charSetType)
+				.setContentType(contentType)
+				.setPriority(priority);
+		builder.paths.addAll(paths);
+		builder.params.addAll(params);
+		builder.headers.addAll(headers);
+		return builder;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ApiRequest(" + method + " " + baseUri + " paths=" + paths + " params=" + params + ")";
+	}
+
+	/**
+	 * builder for {@link ApiRequest}, the default method is GET, the default char set UTF-8
+	 * and the default content type application/xml
+	 * @author malsukhni
+	 *
+	 */
+	public static class Builder
+	{
+		private Method						method			= Method.GET;
+		private String						baseUri;
+		private final List<String>			paths			= new ArrayList<String>();
+		private final List<NameValuePair>	params			= new ArrayList<NameValuePair>();
+		private final List<NameValuePair>	headers			= new ArrayList<NameValuePair>();
+		private String						content;
+		private String						charSetType		= "UTF-8";
+		private String						contentType		= MediaType.APPLICATION_XML;
+		private Priority					priority;
+
+		/**
+		 * set the http request method, null restores GET
+		 * @param method
+		 * @return
+		 */
+		public Builder setMethod(Method method)
+		{
+			this.method = (method!=null) ? method : Method.GET;
+			return this;
+		}
+
+		/**
+		 * set base uri. i.e. http://www.yoursite.com/path/path
+		 * @param baseUri
+		 * @return
+		 */
+		public Builder setBaseUri(String baseUri)
+		{
+			this.baseUri = baseUri;
+			return this;
+		}
+
+		/**
+		 * add path to the request uri, null or empty paths will not be added
+		 * @param path
+		 * @return
+		 */
+		public Builder addPath(String path)
+		{
+			if(path!=null && path.trim().length()!=0)
+			{
+				paths.add(path.trim());
+			}
+			return this;
+		}
+
+		/**
+		 * add paths to the request uri, null or empty paths will not be added
+		 * @param paths
+		 * @return
+		 */
+		public Builder addPaths(String... paths)
+		{
+			if(paths!=null)
+			{
+				for(String path : paths)
+				{
+					addPath(path);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * add a query parameter, a null value is sent empty
+		 * @param name
+		 * @param value
+		 * @return
+		 */
+		public Builder addParam(String name, String value)
+		{
+			params.add(new BasicNameValuePair(name, (value!=null) ? value : ""));
+			return this;
+		}
+
+		/**
+		 * add a request header, a null value is sent empty
+		 * @param name
+		 * @param value
+		 * @return
+		 */
+		public Builder addHeader(String name, String value)
+		{
+			headers.add(new BasicNameValuePair(name, (value!=null) ? value : ""));
+			return this;
+		}
+
+		/**
+		 * set the text content sent with POST and PUT
+		 * @param content
+		 * @return
+		 */
+		public Builder setTextContent(String content)
+		{
+			this.content = content;
+			return this;
+		}
+
+		/**
+		 * set the char set used to encode the parameters and the content
+		 * @param charSetType
+		 * @return
+		 */
+		public Builder setCharSetType(String charSetType)
+		{
+			this.charSetType = charSetType;
+			return this;
+		}
+
+		/**
+		 * set the media type of the content, SEE {@link MediaType}
+		 * @param contentType
+		 * @return
+		 */
+		public Builder setContentType(String contentType)
+		{
+			this.contentType = contentType;
+			return this;
+		}
+
+		/**
+		 * set the priority of the request in the queue of the executor, null uses the priority of the client
+		 * @param priority
+		 * @return
+		 */
+		public Builder setPriority(Priority priority)
+		{
+			this.priority = priority;
+			return this;
+		}
+
+		/**
+		 * build the request
+		 * @return
+		 * @throws IllegalStateException if the base uri is not set
+		 */
+		public ApiRequest build()
+		{
+			if(baseUri==null) throw new IllegalStateException("The base uri is not set");
+			return new ApiRequest(this);
+		}
+	}
+}
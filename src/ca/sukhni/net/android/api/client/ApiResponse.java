@@ -0,0 +1,326 @@
+package ca.sukhni.net.android.api.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import ca.sukhni.net.android.api.transport.TransportResponse;
+
+/**
+ * immutable result of one execution of an {@link ApiRequest}.
+ * <p>the content of a streamed response, SEE {@link ApiClient#executeStreaming(ApiRequest)}, is not read: it is
+ * read from {@link #getContent()} while the response holds its connection, and {@link #close()} must be called
+ * to release the connection.</p>
+ * @author malsukhni
+ *
+ */
+public final class ApiResponse implements Closeable
+{
+	private final String					url;
+	private final int						statusCode;
+	private final String					statusLine;
+	private final ResponseEntity			entity;
+	private final TransportResponse			stream;		// the live response of a streamed response, otherwise null
+	private final StreamListener			listener;
+	private ContentStream					content;
+	private boolean							closed;
+
+	/**
+	 * @param url the full url the request was sent to
+	 * @param statusCode the response status code
+	 * @param statusLine the reason phrase of the status line
+	 * @param entity the response entity, or null when the response has no body
+	 */
+	ApiResponse(String url, int statusCode, String statusLine, ResponseEntity entity)
+	{
+		this.url = url;
+		this.statusCode = statusCode;
+		this.statusLine = statusLine;
+		this.entity = entity;
+		this.stream = null;
+		this.listener = null;
+	}
+
+	/**
+	 * create a streamed response, its content is read from the live response
+	 * @param url the full url the request was sent to
+	 * @param response the live response, released by {@link #close()}
+	 * @param listener told when the content fails to be read and when the response is closed
+	 */
+	ApiResponse(String url, TransportResponse response, StreamListener listener)
+	{
+		this.url = url;
+		this.statusCode = response.getStatusCode();
+		this.statusLine = response.getReasonPhrase();
+		this.entity = null;
+		this.stream = response;
+		this.listener = listener;
+	}
+
+	/**
+	 * get the full url the request was sent to
+	 * @return
+	 */
+	public String getUrl()
+	{
+		return url;
+	}
+
+	/**
+	 * get the response code
+	 * @return
+	 */
+	public int getStatusCode()
+	{
+		return statusCode;
+	}
+
+	/**
+	 * get the response status, SEE {@link Status}
+	 * @return the status, or null for an unknown code
+	 */
+	public Status getStatus()
+	{
+		return Status.fromStatusCode(statusCode);
+	}
+
+	/**
+	 * get the response status line
+	 * @return
+	 */
+	public String getStatusLine()
+	{
+		return statusLine;
+	}
+
+	/**
+	 * get the response entity, SEE {@link ResponseEntity}
+	 * @return the entity, or null when the response has no body
+	 */
+	public ResponseEntity getEntity()
+	{
+		return entity;
+	}
+
+	/**
+	 * get the response content as string
+	 * @return the content, or null when the response has no body or is streamed
+	 */
+	public String getContentAsString()
+	{
+		return (entity!=null) ? entity.getResponseContentAsString() : null;
+	}
+
+	/**
+	 * get the response content length
+	 * @return the length, or -1 when the response has no body or the length is unknown
+	 */
+	public long getContentLength()
+	{
+		if(stream!=null) return stream.hasEntity() ? stream.getContentLength() : -1;
+		return (entity!=null) ? entity.getContentLength() : -1;
+	}
+
+	/**
+	 * get the Content-Type header value of the response
+	 * @return the value, or null
+	 */
+	public String getContentType()
+	{
+		if(stream!=null) return stream.getContentType();
+		return (entity!=null && entity.getContentType()!=null) ? entity.getContentType().getValue() : null;
+	}
+
+	/**
+	 * get the first value of the given header of a streamed response
+	 * @param name the header name, case insensitive
+	 * @return the header value, or null when the response has no such header or is not streamed
+	 */
+	String getHeader(String name)
+	{
+		return (stream!=null) ? stream.getHeader(name) : null;
+	}
+
+	/**
+	 * check if the content of this response is streamed, SEE {@link ApiClient#executeStreaming(ApiRequest)}
+	 * @return
+	 */
+	public boolean isStreaming()
+	{
+		return stream!=null;
+	}
+
+	/**
+	 * get the response content as received, SEE {@link ResponseEntity#getContentAsBytes()}
+	 * @return a copy of the content, or null when the response has no body or is streamed
+	 */
+	public byte[] getContentAsBytes()
+	{
+		return (entity!=null) ? entity.getContentAsBytes() : null;
+	}
+
+	/**
+	 * get the response content as received without copying it, SEE {@link ResponseEntity#getContentAsByteBuffer()}
+	 * @return a read only buffer over the content, or null when the response has no body or is streamed
+	 */
+	public ByteBuffer getContentAsByteBuffer()
+	{
+		return (entity!=null) ? entity.getContentAsByteBuffer() : null;
+	}
+
+	/**
+	 * get the response content as a stream. the content of a streamed response is read from the connection
+	 * as the stream is read and closing the stream closes the response, otherwise the stream reads the content
+	 * held by the entity
+	 * @return the stream, or null when the response has no body
+	 * @throws IOException if the streamed response is closed
+	 */
+	public synchronized InputStream getContent() throws IOException
+	{
+		if(stream==null)
+		{
+			if(entity==null) return null;
+			byte[] bytes = (entity instanceof ResponseEntityImpt) ? ((ResponseEntityImpt) entity).getContent() : entity.getContentAsBytes();
+			return (bytes!=null) ? new ByteArrayInputStream(bytes) : null;
+		}
+		if(closed) throw new IOException("The response is closed: " + url);
+		if(content==null)
+		{
+			InputStream in = stream.hasEntity() ? stream.getContent() : null;
+			if(in==null) return null;
+			content = new ContentStream(in);
+		}
+		return content;
+	}
+
+	/**
+	 * release the connection of a streamed response. when the content was read to its end the connection is reused,
+	 * otherwise it is closed so the rest of the content is not read. does nothing for a response that is not streamed
+	 */
+	@Override
+	public void close()
+	{
+		synchronized(this)
+		{
+			if(stream==null || closed) return;
+			closed = true;
+		}
+		try
+		{
+			if(content==null || content.eof) stream.close();
+			else stream.abort();
+		}
+		finally
+		{
+			listener.onClosed();
+		}
+	}
+
+	/**
+	 * release the connection of a streamed response that is not returned, i.e. before it is sent again
+	 */
+	void discard()
+	{
+		synchronized(this)
+		{
+			if(stream==null || closed) return;
+			closed = true;
+		}
+		stream.close();
+	}
+
+	/**
+	 * check if the response code is in the range [200,299]
+	 * @return
+	 */
+	public boolean isSuccessful()
+	{
+		return statusCode>=200 && statusCode<300;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ApiResponse(" + statusCode + " " + statusLine + " " + url + ")";
+	}
+
+	/**
+	 * the content of a streamed response, it knows when it was read to its end
+	 */
+	private final class ContentStream extends FilterInputStream
+	{
+		volatile boolean	eof;
+
+		ContentStream(InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			try
+			{
+				ensureOpen();
+				int b = super.read();
+				if(b<0) eof = true;
+				return b;
+			}
+			catch(IOException e)
+			{
+				throw listener.onReadFailed(e, url);
+			}
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException
+		{
+			try
+			{
+				ensureOpen();
+				int n = super.read(buffer, offset, length);
+				if(n<0) eof = true;
+				return n;
+			}
+			catch(IOException e)
+			{
+				throw listener.onReadFailed(e, url);
+			}
+		}
+
+		@Override
+		public void close()
+		{
+			ApiResponse.this.close();
+		}
+
+		private void ensureOpen() throws IOException
+		{
+			synchronized(ApiResponse.this)
+			{
+				if(closed) throw new IOException("The response is closed: " + url);
+			}
+		}
+	}
+
+	/**
+	 * the call that produced a streamed response
+	 */
+	interface StreamListener
+	{
+		/**
+		 * called when the content fails to be read
+		 * @param e the failure
+		 * @param url
+		 * @return the failure to throw to the reader
+		 */
+		public abstract IOException onReadFailed(IOException e, String url);
+		/**
+		 * called once when the response is closed
+		 */
+		public abstract void onClosed();
+	}
+}
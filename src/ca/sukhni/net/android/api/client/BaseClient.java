@@ -10,6 +10,19 @@ import java.nio.channels.UnresolvedAddressException;
 import org.apache.http.ConnectionClosedException;
 import org.apache.http.conn.ConnectTimeoutException;
 
+import ca.sukhni.net.android.api.executor.Priority;
+import ca.sukhni.net.android.api.executor.RequestExecutor;
+import ca.sukhni.net.android.api.policy.CircuitBreaker;
+import ca.sukhni.net.android.api.policy.HedgePolicy;
+import ca.sukhni.net.android.api.policy.RateLimiter;
+import ca.sukhni.net.android.api.policy.RetryPolicy;
+import ca.sukhni.net.android.api.socket.CachingHostResolver;
+import ca.sukhni.net.android.api.socket.EasySSLSocketFactory;
+import ca.sukhni.net.android.api.socket.HostResolver;
+import ca.sukhni.net.android.api.socket.HttpClientConfig;
+import ca.sukhni.net.android.api.transport.ApacheHttpTransport;
+import ca.sukhni.net.android.api.transport.HttpTransport;
+
 public abstract class BaseClient
 {
 	public static String		TAG									= BaseClient.class.getSimpleName();
@@ -19,6 +32,29 @@ public abstract class BaseClient
 	protected boolean			mEnableSocketTimeoutRetry			= true;
 	protected int				mConnectionTimeoutRetry				= 0;
 	protected int				mSocketTimeoutRetry					= 0;
+	protected boolean			mTrustAllCertificates				= true;
+	protected int				mSslSessionCacheSize				= EasySSLSocketFactory.DEFAULT_SESSION_CACHE_SIZE;
+	protected int				mSslSessionTimeout					= EasySSLSocketFactory.DEFAULT_SESSION_TIMEOUT;
+	protected int				mMaxTotalConnections				= HttpClientConfig.DEFAULT_MAX_TOTAL_CONNECTIONS;
+	protected int				mMaxConnectionsPerHost				= HttpClientConfig.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	protected long				mKeepAliveDuration					= HttpClientConfig.DEFAULT_KEEP_ALIVE_DURATION;
+	protected long				mIdleConnectionTimeout				= HttpClientConfig.DEFAULT_IDLE_CONNECTION_TIMEOUT;
+	protected long				mRequestDeadline					= 0;
+	protected HostResolver		mHostResolver						= CachingHostResolver.getDefault();
+	protected long				mConnectAttemptDelay				= HttpClientConfig.DEFAULT_CONNECT_ATTEMPT_DELAY;
+	protected boolean			mTcpNoDelay							= true;
+	protected int				mSendBufferSize						= 0;
+	protected int				mReceiveBufferSize					= 0;
+	protected boolean			mStaleCheckingEnabled				= true;
+	protected int				mSocketLinger						= -1;
+	protected HttpTransport		mTransport							= ApacheHttpTransport.getInstance();
+	protected RequestExecutor	mExecutor							= RequestExecutor.getDefault();
+	protected Priority			mPriority							= Priority.NORMAL;
+	protected RequestCoalescer	mRequestCoalescer					= null;
+	protected RateLimiter		mRateLimiter						= null;
+	protected CircuitBreaker	mCircuitBreaker						= null;
+	protected RetryPolicy		mRetryPolicy						= null;
+	protected HedgePolicy		mHedgePolicy						= null;
 	/**
 	 * add parameter to the request
 	 * @param name the parameter name
@@ -224,5 +260,430 @@ public abstract class BaseClient
 		this.mEnableSocketTimeoutRetry = enableSocketTimeoutRetry;
 	}
 	
+	/**
+	 * check if every server certificate and host name is accepted, default is true
+	 * @return the trustAllCertificates
+	 */
+	public boolean isTrustAllCertificates()
+	{
+		return mTrustAllCertificates;
+	}
+	
+	/**
+	 * set the trust all certificates flag, when false the platform trust store and host name verifier are used
+	 * @param trustAllCertificates the trustAllCertificates to set
+	 */
+	public void setTrustAllCertificates(boolean trustAllCertificates)
+	{
+		this.mTrustAllCertificates = trustAllCertificates;
+	}
+	
+	/**
+	 * get the maximum number of cached tls sessions
+	 * @return the sslSessionCacheSize
+	 */
+	public int getSslSessionCacheSize()
+	{
+		return mSslSessionCacheSize;
+	}
+	
+	/**
+	 * set the maximum number of cached tls sessions, zero means no limit
+	 * @param sslSessionCacheSize the sslSessionCacheSize to set
+	 */
+	public void setSslSessionCacheSize(int sslSessionCacheSize)
+	{
+		this.mSslSessionCacheSize = sslSessionCacheSize;
+	}
+	
+	/**
+	 * get the lifetime of a cached tls session in seconds
+	 * @return the sslSessionTimeout
+	 */
+	public int getSslSessionTimeout()
+	{
+		return mSslSessionTimeout;
+	}
+	
+	/**
+	 * set the lifetime of a cached tls session in seconds, zero means no limit
+	 * @param sslSessionTimeout the sslSessionTimeout to set
+	 */
+	public void setSslSessionTimeout(int sslSessionTimeout)
+	{
+		this.mSslSessionTimeout = sslSessionTimeout;
+	}
+	
+	/**
+	 * get the maximum number of pooled connections
+	 * @return the maxTotalConnections
+	 */
+	public int getMaxTotalConnections()
+	{
+		return mMaxTotalConnections;
+	}
+	
+	/**
+	 * set the maximum number of pooled connections
+	 * @param maxTotalConnections the maxTotalConnections to set
+	 */
+	public void setMaxTotalConnections(int maxTotalConnections)
+	{
+		this.mMaxTotalConnections = maxTotalConnections;
+	}
+	
+	/**
+	 * get the maximum number of pooled connections to a single host
+	 * @return the maxConnectionsPerHost
+	 */
+	public int getMaxConnectionsPerHost()
+	{
+		return mMaxConnectionsPerHost;
+	}
+	
+	/**
+	 * set the maximum number of pooled connections to a single host
+	 * @param maxConnectionsPerHost the maxConnectionsPerHost to set
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost)
+	{
+		this.mMaxConnectionsPerHost = maxConnectionsPerHost;
+	}
+	
+	/**
+	 * get the keep-alive duration of idle connections in milliseconds
+	 * @return the keepAliveDuration
+	 */
+	public long getKeepAliveDuration()
+	{
+		return mKeepAliveDuration;
+	}
+	
+	/**
+	 * set the keep-alive duration of idle connections in milliseconds, used when the server does not send a shorter Keep-Alive timeout
+	 * @param keepAliveDuration the keepAliveDuration to set
+	 */
+	public void setKeepAliveDuration(long keepAliveDuration)
+	{
+		this.mKeepAliveDuration = keepAliveDuration;
+	}
+	
+	/**
+	 * get how long in milliseconds a connection may stay idle in the pool
+	 * @return the idleConnectionTimeout
+	 */
+	public long getIdleConnectionTimeout()
+	{
+		return mIdleConnectionTimeout;
+	}
+	
+	/**
+	 * set how long in milliseconds a connection may stay idle in the pool before it is closed, zero or less disables idle eviction
+	 * @param idleConnectionTimeout the idleConnectionTimeout to set
+	 */
+	public void setIdleConnectionTimeout(long idleConnectionTimeout)
+	{
+		this.mIdleConnectionTimeout = idleConnectionTimeout;
+	}
+	
+	/**
+	 * get the resolver used to look up hosts when opening new connections
+	 * @return the hostResolver
+	 */
+	public HostResolver getHostResolver()
+	{
+		return mHostResolver;
+	}
+	
+	/**
+	 * set the resolver used to look up hosts when opening new connections, default is {@link CachingHostResolver#getDefault()}
+	 * @param hostResolver the hostResolver to set
+	 */
+	public void setHostResolver(HostResolver hostResolver)
+	{
+		this.mHostResolver = (hostResolver!=null) ? hostResolver : CachingHostResolver.getDefault();
+	}
+
+	/**
+	 * get how long in milliseconds a connect attempt may run before the next address of the host is tried beside it
+	 * @return the connectAttemptDelay
+	 */
+	public long getConnectAttemptDelay()
+	{
+		return mConnectAttemptDelay;
+	}
+
+	/**
+	 * set how long in milliseconds a connect attempt may run before the next resolved address is tried beside it,
+	 * zero or less tries the addresses one after the other
+	 * @param connectAttemptDelay the connectAttemptDelay to set
+	 */
+	public void setConnectAttemptDelay(long connectAttemptDelay)
+	{
+		this.mConnectAttemptDelay = connectAttemptDelay;
+	}
+
+	/**
+	 * check if small writes are sent right away instead of being coalesced by nagle's algorithm
+	 * @return the tcpNoDelay
+	 */
+	public boolean isTcpNoDelay()
+	{
+		return mTcpNoDelay;
+	}
+
+	/**
+	 * send small writes right away instead of coalescing them with nagle's algorithm, default is true
+	 * @param tcpNoDelay the tcpNoDelay to set
+	 */
+	public void setTcpNoDelay(boolean tcpNoDelay)
+	{
+		this.mTcpNoDelay = tcpNoDelay;
+	}
+
+	/**
+	 * get the socket send buffer size in bytes, zero or less means the system default
+	 * @return the sendBufferSize
+	 */
+	public int getSendBufferSize()
+	{
+		return mSendBufferSize;
+	}
+
+	/**
+	 * set the socket send buffer size in bytes, zero or less keeps the system default
+	 * @param sendBufferSize the sendBufferSize to set
+	 */
+	public void setSendBufferSize(int sendBufferSize)
+	{
+		this.mSendBufferSize = sendBufferSize;
+	}
+
+	/**
+	 * get the socket receive buffer size in bytes, zero or less means the system default
+	 * @return the receiveBufferSize
+	 */
+	public int getReceiveBufferSize()
+	{
+		return mReceiveBufferSize;
+	}
+
+	/**
+	 * set the socket receive buffer size in bytes, zero or less keeps the system default
+	 * @param receiveBufferSize the receiveBufferSize to set
+	 */
+	public void setReceiveBufferSize(int receiveBufferSize)
+	{
+		this.mReceiveBufferSize = receiveBufferSize;
+	}
+
+	/**
+	 * check if a pooled connection is tested for a server side close before it is reused
+	 * @return the staleCheckingEnabled
+	 */
+	public boolean isStaleCheckingEnabled()
+	{
+		return mStaleCheckingEnabled;
+	}
+
+	/**
+	 * test a pooled connection for a server side close before it is reused, default is true. turning it off saves a blocking read per reused connection of the apache transport
+	 * @param staleCheckingEnabled the staleCheckingEnabled to set
+	 */
+	public void setStaleCheckingEnabled(boolean staleCheckingEnabled)
+	{
+		this.mStaleCheckingEnabled = staleCheckingEnabled;
+	}
+
+	/**
+	 * get the linger time of a closed socket in seconds, less than zero means linger is off
+	 * @return the socketLinger
+	 */
+	public int getSocketLinger()
+	{
+		return mSocketLinger;
+	}
+
+	/**
+	 * set how long in seconds closing a socket waits for unsent data, less than zero turns linger off (default)
+	 * @param socketLinger the socketLinger to set
+	 */
+	public void setSocketLinger(int socketLinger)
+	{
+		this.mSocketLinger = socketLinger;
+	}
+	
+	/**
+	 * get the http engine that executes the request
+	 * @return the transport
+	 */
+	public HttpTransport getTransport()
+	{
+		return mTransport;
+	}
+	
+	/**
+	 * set the http engine that executes the request, default is {@link ApacheHttpTransport}
+	 * @param transport the transport to set
+	 */
+	public void setTransport(HttpTransport transport)
+	{
+		this.mTransport = (transport!=null) ? transport : ApacheHttpTransport.getInstance();
+	}
+
+	/**
+	 * get the worker pool that runs the request when it is executed on a thread
+	 * @return the executor
+	 */
+	public RequestExecutor getExecutor()
+	{
+		return mExecutor;
+	}
+
+	/**
+	 * set the worker pool that runs the request when it is executed on a thread, default is {@link RequestExecutor#getDefault()}
+	 * which never rejects. an executor with a queue limit and {@link java.util.concurrent.ThreadPoolExecutor.AbortPolicy} rejects
+	 * requests once its queue is full
+	 * @param executor the executor to set
+	 */
+	public void setExecutor(RequestExecutor executor)
+	{
+		this.mExecutor = (executor!=null) ? executor : RequestExecutor.getDefault();
+	}
+
+	/**
+	 * get the priority of the request in the queue of the executor
+	 * @return the priority
+	 */
+	public Priority getPriority()
+	{
+		return mPriority;
+	}
+
+	/**
+	 * set the priority of the request in the queue of the executor, default is {@link Priority#NORMAL}
+	 * @param priority the priority to set
+	 */
+	public void setPriority(Priority priority)
+	{
+		this.mPriority = (priority!=null) ? priority : Priority.NORMAL;
+	}
+
+	/**
+	 * get the coalescer that shares the calls of identical GET requests in flight
+	 * @return the coalescer, or null when coalescing is off
+	 */
+	public RequestCoalescer getRequestCoalescer()
+	{
+		return mRequestCoalescer;
+	}
+
+	/**
+	 * set the coalescer that shares the calls of identical GET requests in flight, default is null which turns coalescing off.
+	 * SEE {@link RequestCoalescer#getDefault()}
+	 * @param requestCoalescer the coalescer to set, or null
+	 */
+	public void setRequestCoalescer(RequestCoalescer requestCoalescer)
+	{
+		this.mRequestCoalescer = requestCoalescer;
+	}
+
+	/**
+	 * get the rate limiter applied to the requests before they are sent
+	 * @return the limiter, or null when the requests are not limited
+	 */
+	public RateLimiter getRateLimiter()
+	{
+		return mRateLimiter;
+	}
+
+	/**
+	 * set the rate limiter applied to the requests before they are sent, default is null which sends them right away.
+	 * clients share the buckets of the hosts when they share the limiter
+	 * @param rateLimiter the limiter to set, or null
+	 */
+	public void setRateLimiter(RateLimiter rateLimiter)
+	{
+		this.mRateLimiter = rateLimiter;
+	}
+
+	/**
+	 * get the circuit breaker applied to the requests before they are sent
+	 * @return the circuit breaker, or null when the requests are always sent
+	 */
+	public CircuitBreaker getCircuitBreaker()
+	{
+		return mCircuitBreaker;
+	}
+
+	/**
+	 * set the circuit breaker applied to the requests before they are sent, default is null which always sends them.
+	 * clients share the circuits of the hosts when they share the circuit breaker
+	 * @param circuitBreaker the circuit breaker to set, or null
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker)
+	{
+		this.mCircuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * get the retry policy of the failed requests
+	 * @return the policy, or null when only the timeouts are retried as configured
+	 */
+	public RetryPolicy getRetryPolicy()
+	{
+		return mRetryPolicy;
+	}
+
+	/**
+	 * set the retry policy of the failed requests, default is null which retries the timeouts right away as configured
+	 * with {@link #setConnectionTimeoutRetry(int)} and {@link #setSocketTimeoutRetry(int)}. the policy replaces these settings.
+	 * clients share the retry budget when they share the policy
+	 * @param retryPolicy the policy to set, or null
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy)
+	{
+		this.mRetryPolicy = retryPolicy;
+	}
+
+	/**
+	 * get the hedge policy of the GET requests
+	 * @return the policy, or null when the requests are sent once
+	 */
+	public HedgePolicy getHedgePolicy()
+	{
+		return mHedgePolicy;
+	}
+
+	/**
+	 * set the hedge policy of the GET requests, default is null which sends them once. with a blocking transport the copy
+	 * of a request runs on the executor of the client. clients share the latencies and the budgets of the hosts
+	 * when they share the policy
+	 * @param hedgePolicy the policy to set, or null
+	 */
+	public void setHedgePolicy(HedgePolicy hedgePolicy)
+	{
+		this.mHedgePolicy = hedgePolicy;
+	}
+
+	/**
+	 * get the total time in milliseconds a request may take
+	 * @return the deadline, 0 when the requests are only bound by the connection and socket timeouts
+	 */
+	public long getRequestDeadline()
+	{
+		return mRequestDeadline;
+	}
+
+	/**
+	 * set the total time in milliseconds a request may take, from the time it is executed to the time its response is read,
+	 * across the waits for a connection, the retries and the reading of the response. a request still running
+	 * at its deadline is aborted with a {@link DeadlineExceededException}. default is 0 for no deadline
+	 * @param requestDeadline the requestDeadline to set
+	 */
+	public void setRequestDeadline(long requestDeadline)
+	{
+		this.mRequestDeadline = Math.max(requestDeadline, 0);
+	}
 	
 }
@@ -0,0 +1,14 @@
+package ca.sukhni.net.android.api.client;
+
+/**
+ * how a batch of requests reacts to a failed request, SEE {@link ApiClient#executeAll(java.util.Collection, int, BatchMode, ApiClientHandler)}
+ * <li>COLLECT_ALL: every request is executed, the failures are collected with the responses</li>
+ * <li>FAIL_FAST: the first failure cancels the requests in flight and the requests not started yet</li>
+ * <p>a failure is an exception, a response with an error status is a response.</p>
+ * @author malsukhni
+ *
+ */
+public enum BatchMode
+{
+	COLLECT_ALL, FAIL_FAST;
+}
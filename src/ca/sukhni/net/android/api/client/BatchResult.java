@@ -0,0 +1,159 @@
+package ca.sukhni.net.android.api.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * immutable outcome of a batch of requests, SEE {@link ApiClient#executeAll(java.util.Collection, int, BatchMode, ApiClientHandler)}.
+ * <p>the outcomes are in the order of the requests: each request has a response, a failure, or was canceled.</p>
+ * @author malsukhni
+ *
+ */
+public final class BatchResult
+{
+	private final ApiResponse[]				responses;
+	private final Exception[]				failures;
+	private final long[]					durations;
+	private final long						elapsedTime;
+	private final Exception					firstFailure;
+	private final int						succeededCount;
+	private final int						failedCount;
+
+	/**
+	 * @param responses the response of each request, null when it has none
+	 * @param failures the failure of each request, null when it has none
+	 * @param durations milliseconds from the start of each request to its outcome, zero when it never started
+	 * @param elapsedTime milliseconds from the start of the batch to the last outcome
+	 * @param firstFailure the first failure in time, or null
+	 */
+	BatchResult(ApiResponse[] responses, Exception[] failures, long[] durations, long elapsedTime, Exception firstFailure)
+	{
+		this.responses = responses;
+		this.failures = failures;
+		this.durations = durations;
+		this.elapsedTime = elapsedTime;
+		this.firstFailure = firstFailure;
+		int succeeded = 0;
+		int failed = 0;
+		for(int i=0; i<responses.length; i++)
+		{
+			if(responses[i]!=null) succeeded++;
+			else if(failures[i]!=null) failed++;
+		}
+		this.succeededCount = succeeded;
+		this.failedCount = failed;
+	}
+
+	/**
+	 * get the number of requests in the batch
+	 * @return
+	 */
+	public int size()
+	{
+		return responses.length;
+	}
+
+	/**
+	 * get the response of the request at the given index
+	 * @param index
+	 * @return the response, or null when the request failed or was canceled
+	 */
+	public ApiResponse getResponse(int index)
+	{
+		return responses[index];
+	}
+
+	/**
+	 * get the failure of the request at the given index
+	 * @param index
+	 * @return the failure, or null when the request has a response or was canceled
+	 */
+	public Exception getFailure(int index)
+	{
+		return failures[index];
+	}
+
+	/**
+	 * check if the request at the given index was canceled, or never started
+	 * @param index
+	 * @return
+	 */
+	public boolean isCanceled(int index)
+	{
+		return responses[index]==null && failures[index]==null;
+	}
+
+	/**
+	 * get the milliseconds from the start of the request at the given index to its outcome, the wait for a worker included
+	 * @param index
+	 * @return the duration, or zero when the request never started
+	 */
+	public long getDuration(int index)
+	{
+		return durations[index];
+	}
+
+	/**
+	 * get the responses in the order of the requests, null for the requests without response
+	 * @return an unmodifiable list
+	 */
+	public List<ApiResponse> getResponses()
+	{
+		List<ApiResponse> list = new ArrayList<ApiResponse>(responses.length);
+		Collections.addAll(list, responses);
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * get the number of requests with a response, whatever its status
+	 * @return
+	 */
+	public int getSucceededCount()
+	{
+		return succeededCount;
+	}
+
+	/**
+	 * get the number of failed requests
+	 * @return
+	 */
+	public int getFailedCount()
+	{
+		return failedCount;
+	}
+
+	/**
+	 * get the number of canceled requests, including those never started
+	 * @return
+	 */
+	public int getCanceledCount()
+	{
+		return responses.length - succeededCount - failedCount;
+	}
+
+	/**
+	 * get the first failure in time
+	 * @return the failure, or null when no request failed
+	 */
+	public Exception getFirstFailure()
+	{
+		return firstFailure;
+	}
+
+	/**
+	 * get the milliseconds from the start of the batch to the last outcome
+	 * @return
+	 */
+	public long getElapsedTime()
+	{
+		return elapsedTime;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "BatchResult(size=" + size() + ", succeeded=" + succeededCount + ", failed=" + failedCount
+				+ ", canceled=" + getCanceledCount() + ", elapsed=" + elapsedTime + "ms)";
+	}
+}
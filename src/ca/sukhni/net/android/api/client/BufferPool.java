@@ -0,0 +1,46 @@
+package ca.sukhni.net.android.api.client;
+
+/**
+ * bounded pool of read buffers, so reading the content of a response does not allocate a new read buffer each time.
+ * at most the max buffers are kept: a buffer acquired from an empty pool is allocated, a buffer released
+ * to a full pool is dropped
+ * @author malsukhni
+ *
+ */
+final class BufferPool
+{
+	private final int			bufferSize;
+	private final byte[][]		buffers;
+	private int					count;
+
+	/**
+	 * @param bufferSize the size of the buffers
+	 * @param maxBuffers the max number of buffers kept
+	 */
+	BufferPool(int bufferSize, int maxBuffers)
+	{
+		this.bufferSize = bufferSize;
+		this.buffers = new byte[maxBuffers][];
+	}
+
+	/**
+	 * take a buffer from the pool, release it once done
+	 * @return
+	 */
+	synchronized byte[] acquire()
+	{
+		if(count==0) return new byte[bufferSize];
+		byte[] buffer = buffers[--count];
+		buffers[count] = null;
+		return buffer;
+	}
+
+	/**
+	 * give a buffer back to the pool, it must not be used afterwards
+	 * @param buffer
+	 */
+	synchronized void release(byte[] buffer)
+	{
+		if(buffer.length==bufferSize && count<buffers.length) buffers[count++] = buffer;
+	}
+}
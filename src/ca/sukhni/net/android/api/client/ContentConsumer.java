@@ -0,0 +1,21 @@
+package ca.sukhni.net.android.api.client;
+
+import java.io.IOException;
+
+/**
+ * interface to a consumer of the content of a response, the content is given in chunks as it is read from
+ * the connection instead of being held in memory, SEE {@link ApiClient#execute(ApiRequest, ContentConsumer)}
+ * @author malsukhni
+ *
+ */
+public interface ContentConsumer
+{
+	/**
+	 * this event triggered for each chunk of the content, on the thread that executes the request
+	 * @param response the response the content belongs to, for its status code and headers
+	 * @param buffer the chunk, only valid during the call
+	 * @param length the number of bytes of the chunk, from the start of the buffer
+	 * @throws IOException to stop reading, the request fails with it and its connection is closed
+	 */
+	public abstract void onContent(ApiResponse response, byte[] buffer, int length) throws IOException;
+}
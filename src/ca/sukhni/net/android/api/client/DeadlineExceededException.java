@@ -0,0 +1,35 @@
+package ca.sukhni.net.android.api.client;
+
+import java.io.InterruptedIOException;
+
+/**
+ * signals that a request was aborted because it did not complete within the deadline of the client,
+ * the deadline spans the connection, the retries and the reading of the response. SEE {@link BaseClient#setRequestDeadline(long)}
+ * @author malsukhni
+ *
+ */
+public class DeadlineExceededException extends InterruptedIOException
+{
+	private static final long	serialVersionUID	= 1L;
+
+	private final long			deadline;
+
+	/**
+	 * @param message
+	 * @param deadline the deadline of the request in milliseconds
+	 */
+	public DeadlineExceededException(String message, long deadline)
+	{
+		super(message);
+		this.deadline = deadline;
+	}
+
+	/**
+	 * get the deadline of the request in milliseconds
+	 * @return
+	 */
+	public long getDeadline()
+	{
+		return deadline;
+	}
+}
@@ -0,0 +1,131 @@
+package ca.sukhni.net.android.api.client;
+
+import java.io.File;
+
+/**
+ * immutable outcome of a download to a file, SEE {@link ApiClient#download(ApiRequest, File, boolean)}
+ * @author malsukhni
+ *
+ */
+public final class DownloadResult
+{
+	private final File						file;
+	private final int						statusCode;
+	private final boolean					complete;
+	private final long						length;
+	private final long						bytesWritten;
+	private final long						elapsedTime;
+	private final int						resumeCount;
+	private final int						segmentCount;
+
+	/**
+	 * @param file the file the content was written to
+	 * @param statusCode the status code of the last response
+	 * @param complete true when the file holds the whole content
+	 * @param length the length of the content in the file
+	 * @param bytesWritten the bytes written by this download
+	 * @param elapsedTime milliseconds from the start of the download to its end
+	 * @param resumeCount the number of times the download resumed after its content failed to be read
+	 * @param segmentCount the number of segments downloaded at once, 1 for a download over one connection
+	 */
+	DownloadResult(File file, int statusCode, boolean complete, long length, long bytesWritten, long elapsedTime, int resumeCount, int segmentCount)
+	{
+		this.file = file;
+		this.statusCode = statusCode;
+		this.complete = complete;
+		this.length = length;
+		this.bytesWritten = bytesWritten;
+		this.elapsedTime = elapsedTime;
+		this.resumeCount = resumeCount;
+		this.segmentCount = segmentCount;
+	}
+
+	/**
+	 * get the file the content was written to
+	 * @return
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * get the status code of the last response
+	 * @return
+	 */
+	public int getStatusCode()
+	{
+		return statusCode;
+	}
+
+	/**
+	 * check if the file holds the whole content, false when the server did not return the content,
+	 * the file is not changed then
+	 * @return
+	 */
+	public boolean isComplete()
+	{
+		return complete;
+	}
+
+	/**
+	 * get the length of the content in the file
+	 * @return
+	 */
+	public long getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * get the bytes written by this download, less than the length when a previous download was resumed
+	 * @return
+	 */
+	public long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	/**
+	 * get the milliseconds from the start of the download to its end
+	 * @return
+	 */
+	public long getElapsedTime()
+	{
+		return elapsedTime;
+	}
+
+	/**
+	 * get the throughput of the download
+	 * @return the bytes written per second
+	 */
+	public long getThroughput()
+	{
+		return (elapsedTime>0) ? bytesWritten * 1000 / elapsedTime : bytesWritten * 1000;
+	}
+
+	/**
+	 * get the number of times the download resumed after its content failed to be read, over all its segments
+	 * @return
+	 */
+	public int getResumeCount()
+	{
+		return resumeCount;
+	}
+
+	/**
+	 * get the number of segments downloaded at once, SEE {@link ApiClient#download(ApiRequest, File, int)}
+	 * @return the number of segments, 1 for a download over one connection
+	 */
+	public int getSegmentCount()
+	{
+		return segmentCount;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "DownloadResult(" + statusCode + (complete ? " complete" : " incomplete") + ", length=" + length + ", written=" + bytesWritten
+				+ ", elapsed=" + elapsedTime + "ms, throughput=" + getThroughput() + "B/s, resumes=" + resumeCount + ", segments=" + segmentCount + ", " + file + ")";
+	}
+}
@@ -1,5 +1,21 @@
 package ca.sukhni.net.android.api.client;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.NoRouteToHostException;
+import java.net.PortUnreachableException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.UnresolvedAddressException;
+
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import ca.sukhni.net.android.api.policy.CircuitOpenException;
+import ca.sukhni.net.android.api.policy.RateLimitExceededException;
+
 /**
  * list of exception that can happen when executing the http request
  * <li>CLIENT_PROTOCOL_EXCEPTION</li>
@@ -12,6 +28,9 @@ package ca.sukhni.net.android.api.client;
  * <li>CONNECTION_CLOSED_EXCEPTION</li>
  * <li>FILE_NOT_FOUND_EXCEPTION</li>
  * <li>UNSUPPORTED_ENCODING_EXCEPTION</li>
+ * <li>RATE_LIMIT_EXCEEDED_EXCEPTION</li>
+ * <li>CIRCUIT_OPEN_EXCEPTION</li>
+ * <li>DEADLINE_EXCEEDED_EXCEPTION</li>
  * <li>IO_EXCEPTION</li>
  * <li>EXCEPTION</li>
  * @author malsukhni
@@ -30,7 +49,10 @@ public enum ExceptionStatus
 	FILE_NOT_FOUND_EXCEPTION(0x0100," Signals that an attempt to open the file denoted by a specified pathname has failed."),
 	UNSUPPORTED_ENCODING_EXCEPTION(0x0200,"The Character Encoding is not supported."),
 	IO_EXCEPTION(0x0400," Signals that an I/O exception of some sort has occurred. This class is the general class of exceptions produced by failed or interrupted I/O operations."),
-	EXCEPTION(0x0800,"Generic Exception.");
+	EXCEPTION(0x0800,"Generic Exception."),
+	RATE_LIMIT_EXCEEDED_EXCEPTION(0x1000,"Signals that the request was not sent because its host is over the rate limit of the client."),
+	CIRCUIT_OPEN_EXCEPTION(0x2000,"Signals that the request was not sent because its host is failing and the circuit breaker of the client is open."),
+	DEADLINE_EXCEEDED_EXCEPTION(0x4000,"Signals that the request was aborted because it did not complete within the deadline of the client.");
 	
 	private final int code;
 	private final String desc;
@@ -49,4 +71,27 @@ public enum ExceptionStatus
 	 * @return string
 	 */
 	public String desc(){return this.desc;}
+	/**
+	 * get the exception status of the failure of a request
+	 * @param e the failure
+	 * @return the status, EXCEPTION when the failure is not an {@link IOException}
+	 */
+	public static ExceptionStatus fromException(Exception e)
+	{
+		if(e instanceof ClientProtocolException) return CLIENT_PROTOCOL_EXCEPTION;
+		if(e instanceof UnresolvedAddressException) return UNRESOLVED_ADDRESS_EXCEPTION;
+		if(e instanceof PortUnreachableException) return PORT_UNREACHABLE_EXCEPTION;
+		if(e instanceof NoRouteToHostException) return NO_ROUTE_TO_HOST_EXCEPTION;
+		if(e instanceof ConnectTimeoutException) return CONNECT_TIMEOUT_EXCEPTION;
+		if(e instanceof SocketTimeoutException) return SOCKET_TIMEOUT_EXCEPTION;
+		if(e instanceof UnsupportedEncodingException) return UNSUPPORTED_ENCODING_EXCEPTION;
+		if(e instanceof UnknownHostException) return UNKNOWN_HOST_EXCEPTION;
+		if(e instanceof ConnectionClosedException) return CONNECTION_CLOSED_EXCEPTION;
+		if(e instanceof FileNotFoundException) return FILE_NOT_FOUND_EXCEPTION;
+		if(e instanceof RateLimitExceededException) return RATE_LIMIT_EXCEEDED_EXCEPTION;
+		if(e instanceof CircuitOpenException) return CIRCUIT_OPEN_EXCEPTION;
+		if(e instanceof DeadlineExceededException) return DEADLINE_EXCEEDED_EXCEPTION;
+		if(e instanceof IOException) return IO_EXCEPTION;
+		return EXCEPTION;
+	}
 }
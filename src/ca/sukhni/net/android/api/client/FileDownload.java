@@ -0,0 +1,513 @@
+package ca.sukhni.net.android.api.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+
+import ca.sukhni.net.android.api.executor.Priority;
+import ca.sukhni.net.android.api.executor.RequestExecutor;
+import ca.sukhni.net.android.api.transport.CancellationSignal;
+import ca.sukhni.net.android.logger.Logger;
+
+/**
+ * download of the content of a request to a file. the content is streamed from the connection to the file
+ * channel, it is never held in memory. the transport of the client must not be a
+ * {@link ca.sukhni.net.android.api.transport.BufferingTransport}, SEE {@link RestClient#download(ApiRequest, File)}.
+ * <p>when the content fails to be read the download resumes where it stopped with a Range request, up to
+ * {@link #MAX_RESUMES} times. the If-Range header makes the server send the whole content again when it changed
+ * in the meantime. the Last-Modified time of the content is kept as the modification time of the file,
+ * so a later download can resume the file.</p>
+ * <p>a content of a server that supports ranges can also be downloaded in segments fetched at once,
+ * SEE {@link #run(int, RequestExecutor, Priority)}.</p>
+ * @author malsukhni
+ *
+ */
+final class FileDownload
+{
+	public static final String			TAG					= FileDownload.class.getSimpleName();
+
+	/** the max number of times a download resumes after its content failed to be read */
+	static final int					MAX_RESUMES			= 3;
+	/** the smallest segment of a segmented download */
+	static final long					MIN_SEGMENT_SIZE	= 256 * 1024;
+	private static final long			TRANSFER_SIZE		= 64 * 1024;
+
+	private final RestClient			client;
+	private final ApiRequest			request;
+	private final File					file;
+	private final CancellationSignal	signal;
+	private String						validator;			// the ETag or Last-Modified of the content in the file
+	private long						lastModified		= -1;
+	private volatile Exception			failure;			// the first failure of a segment
+
+	/**
+	 * @param client the client that executes the requests
+	 * @param request the request of the content
+	 * @param file the file to write the content to
+	 * @param signal the signal that aborts the download, or null
+	 */
+	FileDownload(RestClient client, ApiRequest request, File file, CancellationSignal signal)
+	{
+		this.client = client;
+		this.request = request;
+		this.file = file;
+		this.signal = signal;
+	}
+
+	/**
+	 * download the content to the file, this is blocking code
+	 * @param resume true to resume the content already in the file, false to replace it
+	 * @return the outcome of the download
+	 * @throws Exception
+	 */
+	DownloadResult run(boolean resume) throws Exception
+	{
+		long start = System.currentTimeMillis();
+		long offset = (resume && file.isFile()) ? file.length() : 0;
+		if(offset>0) validator = DateUtils.formatDate(new Date(file.lastModified()));
+		return download(offset, null, start);
+	}
+
+	/**
+	 * download the content to the file in segments fetched at once over several connections, this is blocking code.
+	 * <p>the first request asks for the whole content with a Range request, its response gives the length of the
+	 * content and is used for the first segment. the file is allocated to that length and the other segments
+	 * are requested with Range and If-Range requests on workers of the executor. a segment that is not started
+	 * by a worker when the calling thread is done with its segment is downloaded by the calling thread,
+	 * so a busy executor slows the download down but does not block it.</p>
+	 * <p>the content is downloaded over one connection when the server does not support ranges, returns no
+	 * validator or the content is smaller than two segments of {@link #MIN_SEGMENT_SIZE}.</p>
+	 * @param segments the max number of segments
+	 * @param executor the executor of the segments
+	 * @param priority the priority of the segments
+	 * @return the outcome of the download
+	 * @throws Exception the first failure of a segment, the other segments are aborted
+	 */
+	DownloadResult run(int segments, RequestExecutor executor, Priority priority) throws Exception
+	{
+		long start = System.currentTimeMillis();
+		if(segments<2) return download(0, null, start);
+		final CancellationSignal[] signals = new CancellationSignal[segments];
+		for(int i=0; i<segments; i++)
+		{
+			signals[i] = new CancellationSignal();
+		}
+		if(signal!=null)
+		{
+			signal.setOnCancelListener(new CancellationSignal.OnCancelListener()
+			{
+				@Override
+				public void onCancel()
+				{
+					cancel(signals);
+				}
+			});
+		}
+		ApiResponse response = client.executeStreaming(request.newBuilder().addHeader("Range", "bytes=0-").build(), signals[0]);
+		if(response.getStatusCode()==Status.REQUESTED_RANGE_NOT_SATISFIABLE.code())
+		{
+			// an empty content has no range
+			response.close();
+			return download(0, null, start);
+		}
+		long length = (response.getStatusCode()==Status.PARTIAL_CONTENT.code() && getRangeStart(response)==0) ? getCompleteLength(response) : -1;
+		String contentValidator = getValidator(response);
+		if(length<2 * MIN_SEGMENT_SIZE || contentValidator==null)
+		{
+			Logger.debug(TAG + ": content of " + length + " bytes without segments, downloading " + file + " over one connection");
+			return download(0, response, start);
+		}
+		validator = contentValidator;
+		updateLastModified(response);
+		int count = (int) Math.min(segments, length / MIN_SEGMENT_SIZE);
+		long size = (length + count - 1) / count;
+		Logger.debug(TAG + ": downloading " + length + " bytes to " + file + " in " + count + " segments of " + size + " bytes");
+		RandomAccessFile output = null;
+		try
+		{
+			output = new RandomAccessFile(file, "rw");
+			output.setLength(length);
+			FileChannel channel = output.getChannel();
+			Segment[] parts = new Segment[count];
+			for(int i=0; i<count; i++)
+			{
+				parts[i] = new Segment(channel, i * size, Math.min(length, (i + 1) * size) - 1, i, signals);
+			}
+			parts[0].response = response;
+			response = null;
+			for(int i=1; i<count; i++)
+			{
+				try
+				{
+					executor.execute(parts[i], priority);
+				}
+				catch(RejectedExecutionException e)
+				{
+					// downloaded by the calling thread
+					Logger.debug(TAG + ": segment " + i + " rejected by " + executor);
+				}
+			}
+			for(Segment part : parts)
+			{
+				part.run();
+			}
+			long written = 0;
+			int resumes = 0;
+			for(Segment part : parts)
+			{
+				try
+				{
+					part.await();
+				}
+				catch(InterruptedException e)
+				{
+					// the file is closed on return, stop the segments first
+					cancel(signals);
+					throw e;
+				}
+				written += part.position - part.first;
+				resumes += part.resumes;
+			}
+			if(failure!=null) throw failure;
+			return new DownloadResult(file, Status.PARTIAL_CONTENT.code(), true, length, written, System.currentTimeMillis() - start, resumes, count);
+		}
+		finally
+		{
+			if(response!=null) response.close();
+			if(output!=null)
+			{
+				output.close();
+				if(lastModified>0) file.setLastModified(lastModified);
+			}
+		}
+	}
+
+	/**
+	 * download the content from the given offset to the end, resuming when the content fails to be read
+	 * @param offset the first byte to download
+	 * @param first the response of the first request, or null to send it
+	 * @param start the start time of the download
+	 */
+	private DownloadResult download(long offset, ApiResponse first, long start) throws Exception
+	{
+		long written = 0;
+		int resumes = 0;
+		RandomAccessFile output = null;
+		try
+		{
+			while(true)
+			{
+				ApiResponse response = (first!=null) ? first : client.executeStreaming(toRangeRequest(offset), signal);
+				first = null;
+				try
+				{
+					int statusCode = response.getStatusCode();
+					if(statusCode==Status.REQUESTED_RANGE_NOT_SATISFIABLE.code() && offset>0)
+					{
+						if(getCompleteLength(response)==offset)
+						{
+							Logger.debug(TAG + ": " + file + " is already complete");
+							return new DownloadResult(file, statusCode, true, offset, written, System.currentTimeMillis() - start, resumes, 1);
+						}
+						// the file is longer than the content
+						Logger.debug(TAG + ": range not satisfiable, downloading " + file + " again");
+						offset = 0;
+						resumes++;
+						continue;
+					}
+					if(!response.isSuccessful())
+					{
+						return new DownloadResult(file, statusCode, false, (output!=null) ? output.length() : 0, written, System.currentTimeMillis() - start, resumes, 1);
+					}
+					if(statusCode!=Status.PARTIAL_CONTENT.code())
+					{
+						// the whole content, the server does not support ranges or the content changed
+						offset = 0;
+					}
+					else if(getRangeStart(response)!=offset)
+					{
+						Logger.debug(TAG + ": unexpected Content-Range " + response.getHeader("Content-Range") + ", downloading " + file + " again");
+						offset = 0;
+						resumes++;
+						continue;
+					}
+					if(offset==0 || validator==null) validator = getValidator(response);
+					updateLastModified(response);
+					if(output==null) output = new RandomAccessFile(file, "rw");
+					FileChannel channel = output.getChannel();
+					channel.truncate(offset);
+					long position = offset;
+					long contentLength = response.getContentLength();
+					try
+					{
+						InputStream content = response.getContent();
+						if(content!=null)
+						{
+							ReadableByteChannel source = Channels.newChannel(content);
+							long n;
+							while((n = channel.transferFrom(source, position, TRANSFER_SIZE))>0)
+							{
+								position += n;
+								written += n;
+							}
+						}
+						// a connection closed early can end the content without a failure
+						if(contentLength>=0 && position - offset<contentLength)
+						{
+							throw new ConnectionClosedException("Premature end of the content after " + (position - offset) + " of " + contentLength + " bytes");
+						}
+					}
+					catch(IOException e)
+					{
+						if((signal!=null && signal.isCanceled()) || e instanceof DeadlineExceededException || resumes>=MAX_RESUMES) throw e;
+						resumes++;
+						Logger.debug(TAG + ": " + e.getClass().getSimpleName() + " after " + position + " bytes, resuming " + file + " (" + resumes + " of " + MAX_RESUMES + ")");
+						offset = position;
+						continue;
+					}
+					return new DownloadResult(file, statusCode, true, position, written, System.currentTimeMillis() - start, resumes, 1);
+				}
+				finally
+				{
+					response.close();
+				}
+			}
+		}
+		finally
+		{
+			if(output!=null)
+			{
+				output.close();
+				if(lastModified>0) file.setLastModified(lastModified);
+			}
+		}
+	}
+
+	/**
+	 * create the request of the content from the given offset
+	 */
+	private ApiRequest toRangeRequest(long offset)
+	{
+		if(offset==0) return request;
+		ApiRequest.Builder builder = request.newBuilder().addHeader("Range", "bytes=" + offset + "-");
+		if(validator!=null) builder.addHeader("If-Range", validator);
+		return builder.build();
+	}
+
+	private static void cancel(CancellationSignal[] signals)
+	{
+		for(CancellationSignal segmentSignal : signals)
+		{
+			segmentSignal.cancel();
+		}
+	}
+
+	/**
+	 * keep the first failure of a segment and abort the other segments
+	 */
+	private void fail(Exception e, CancellationSignal[] signals)
+	{
+		synchronized(this)
+		{
+			if(failure!=null) return;
+			failure = e;
+		}
+		cancel(signals);
+	}
+
+	/**
+	 * one byte range of a segmented download, run by a worker or by the calling thread, whichever starts it first
+	 */
+	private final class Segment implements Runnable
+	{
+		final FileChannel					channel;
+		final long							first;
+		final long							last;
+		final CancellationSignal			segmentSignal;
+		final CancellationSignal[]			signals;
+		ApiResponse							response;		// the response of the first request, or null to send it
+		volatile long						position;
+		volatile int						resumes;
+		private boolean						started;
+		private boolean						done;
+
+		/**
+		 * @param channel the channel of the file
+		 * @param first the first byte of the segment
+		 * @param last the last byte of the segment
+		 * @param index the index of the segment
+		 * @param signals the signals of all the segments
+		 */
+		Segment(FileChannel channel, long first, long last, int index, CancellationSignal[] signals)
+		{
+			this.channel = channel;
+			this.first = first;
+			this.last = last;
+			this.segmentSignal = signals[index];
+			this.signals = signals;
+			this.position = first;
+		}
+
+		@Override
+		public void run()
+		{
+			synchronized(this)
+			{
+				if(started) return;
+				started = true;
+			}
+			try
+			{
+				if(failure==null) download();
+			}
+			catch(Exception e)
+			{
+				fail(e, signals);
+			}
+			finally
+			{
+				if(response!=null) response.close();
+				synchronized(this)
+				{
+					done = true;
+					notifyAll();
+				}
+			}
+		}
+
+		synchronized void await() throws InterruptedException
+		{
+			while(!done)
+			{
+				wait();
+			}
+		}
+
+		private void download() throws Exception
+		{
+			while(true)
+			{
+				ApiResponse current = response;
+				response = null;
+				if(current==null)
+				{
+					ApiRequest rangeRequest = request.newBuilder().addHeader("Range", "bytes=" + position + "-" + last).addHeader("If-Range", validator).build();
+					current = client.executeStreaming(rangeRequest, segmentSignal);
+				}
+				try
+				{
+					if(current.getStatusCode()!=Status.PARTIAL_CONTENT.code() || getRangeStart(current)!=position)
+					{
+						throw new IOException("The server did not return the bytes " + position + "-" + last + " of " + current.getUrl()
+								+ ", status " + current.getStatusCode() + ", the content may have changed");
+					}
+					try
+					{
+						InputStream content = current.getContent();
+						if(content!=null)
+						{
+							ReadableByteChannel source = Channels.newChannel(content);
+							long n;
+							while(position<=last && (n = channel.transferFrom(source, position, Math.min(TRANSFER_SIZE, last + 1 - position)))>0)
+							{
+								position += n;
+							}
+						}
+						if(position<=last)
+						{
+							throw new ConnectionClosedException("Premature end of the content at " + position + " of the bytes " + first + "-" + last);
+						}
+					}
+					catch(IOException e)
+					{
+						if(segmentSignal.isCanceled() || e instanceof DeadlineExceededException || resumes>=MAX_RESUMES) throw e;
+						resumes++;
+						Logger.debug(TAG + ": " + e.getClass().getSimpleName() + " at " + position + ", resuming the bytes " + first + "-" + last
+								+ " of " + file + " (" + resumes + " of " + MAX_RESUMES + ")");
+						continue;
+					}
+					return;
+				}
+				finally
+				{
+					// aborts the connection of the first segment, its content goes on past the segment
+					current.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * get the If-Range validator of the content of the response, a strong ETag or else the Last-Modified date
+	 */
+	private static String getValidator(ApiResponse response)
+	{
+		String etag = response.getHeader("ETag");
+		if(etag!=null && !etag.startsWith("W/")) return etag;
+		return response.getHeader("Last-Modified");
+	}
+
+	private void updateLastModified(ApiResponse response)
+	{
+		String value = response.getHeader("Last-Modified");
+		if(value==null) return;
+		try
+		{
+			lastModified = DateUtils.parseDate(value).getTime();
+		}
+		catch(DateParseException e)
+		{
+			Logger.debug(TAG + ": invalid Last-Modified " + value);
+		}
+	}
+
+	/**
+	 * get the first byte of the Content-Range of the response, i.e. 100 for "bytes 100-199/1000"
+	 * @return the first byte, or -1 when the header is missing or invalid
+	 */
+	static long getRangeStart(ApiResponse response)
+	{
+		String range = response.getHeader("Content-Range");
+		if(range==null || !range.startsWith("bytes ")) return -1;
+		int dash = range.indexOf('-');
+		if(dash<0) return -1;
+		try
+		{
+			return Long.parseLong(range.substring(6, dash).trim());
+		}
+		catch(NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * get the complete length of the Content-Range of the response, i.e. 1000 for "bytes 100-199/1000" or "bytes *&#47;1000"
+	 * @return the complete length, or -1 when the header is missing, invalid or the length is unknown
+	 */
+	static long getCompleteLength(ApiResponse response)
+	{
+		String range = response.getHeader("Content-Range");
+		if(range==null) return -1;
+		int slash = range.indexOf('/');
+		if(slash<0) return -1;
+		try
+		{
+			return Long.parseLong(range.substring(slash + 1).trim());
+		}
+		catch(NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+}
@@ -1,18 +1,33 @@
 package ca.sukhni.net.android.api.client;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
+import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicHeaderValueParser;
 
 import ca.sukhni.net.android.logger.Logger;
 
 public class HttpEntityHelper
 {
+	/** the charset of a content without a charset in its Content-Type header */
+	public static final String		DEFAULT_CHARSET		= "UTF-8";
+
+	private static final int		BUFFER_SIZE			= 8192;
+	/** the initial size of a content of unknown length, most responses are small */
+	private static final int		INITIAL_SIZE		= 1024;
+	/** the largest content allocated up front from its Content-Length, a wrong length cannot allocate more */
+	private static final int		MAX_PRESIZE			= 1024 * 1024;
+
+	private static final BufferPool	sBuffers			= new BufferPool(BUFFER_SIZE, 16);
+
 	/**
-	 * read the response entity as string
+	 * read the response entity as string, decoded with the charset of its Content-Type header
 	 * @param entity
 	 * @return
 	 * @throws IllegalStateException
@@ -20,38 +35,144 @@ public class HttpEntityHelper
 	 */
 	public static String readEntityAsString(HttpEntity entity) throws IllegalStateException, IOException 
 	{
-		InputStream inputStream  = null;
-		StringBuilder stringBuilder = new StringBuilder();
+		String contentType = (entity.getContentType()!=null) ? entity.getContentType().getValue() : null;
+		return decode(readStreamAsBytes(entity.getContent(), entity.getContentLength()), getCharset(contentType));
+	}
+	/**
+	 * read the given stream as string decoded with the default charset, the stream is closed when done
+	 * @param inputStream
+	 * @return
+	 * @throws IllegalStateException
+	 * @throws IOException
+	 */
+	public static String readStreamAsString(InputStream inputStream) throws IllegalStateException, IOException 
+	{
+		return decode(readStreamAsBytes(inputStream), DEFAULT_CHARSET);
+	}
+	/**
+	 * read the given stream as bytes, the stream is closed when done
+	 * @param inputStream
+	 * @return the bytes, empty when the stream is null
+	 * @throws IOException
+	 */
+	public static byte[] readStreamAsBytes(InputStream inputStream) throws IOException 
+	{
+		return readStreamAsBytes(inputStream, -1);
+	}
+	/**
+	 * read the given stream as bytes, the stream is closed when done. when the length is known the content is read
+	 * straight into an array of that length, otherwise it is read through a pooled buffer
+	 * @param inputStream
+	 * @param contentLength the Content-Length of the content, or -1 if unknown
+	 * @return the bytes, empty when the stream is null
+	 * @throws IOException
+	 */
+	public static byte[] readStreamAsBytes(InputStream inputStream, long contentLength) throws IOException 
+	{
+		if(inputStream==null) return new byte[0];
 		try
 		{
-			inputStream = entity.getContent();
-			BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-			String line = null;
-			while((line = reader.readLine())!=null)
+			if(contentLength>=0 && contentLength<=MAX_PRESIZE) return readFully(inputStream, (int) contentLength);
+			int size = (contentLength>0) ? MAX_PRESIZE : INITIAL_SIZE;
+			return readToEnd(inputStream, new ByteArrayOutputStream(size));
+		}
+		finally
+		{
+			try
 			{
-				stringBuilder.append(line);
+				inputStream.close();
+			}
+			catch(Exception ex)
+			{
+				Logger.printStackTrace(ex);
 			}
 		}
-		catch(IllegalStateException ex)
+	}
+	/**
+	 * read a content of the given length into an array of that length, a shorter content is trimmed
+	 * and a longer content is read to its end
+	 */
+	private static byte[] readFully(InputStream inputStream, int length) throws IOException
+	{
+		byte[] content = new byte[length];
+		int offset = 0;
+		while(offset<length)
 		{
-			throw ex;
+			int n = inputStream.read(content, offset, length - offset);
+			if(n<0) return Arrays.copyOf(content, offset);
+			offset += n;
 		}
-		catch(IOException ex)
+		int next = inputStream.read();
+		if(next<0) return content;
+		// the Content-Length was wrong
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream(length + BUFFER_SIZE);
+		outputStream.write(content, 0, length);
+		outputStream.write(next);
+		return readToEnd(inputStream, outputStream);
+	}
+	private static byte[] readToEnd(InputStream inputStream, ByteArrayOutputStream outputStream) throws IOException
+	{
+		byte[] buffer = sBuffers.acquire();
+		try
 		{
-			throw ex;
+			int n;
+			while((n = inputStream.read(buffer))!=-1)
+			{
+				outputStream.write(buffer, 0, n);
+			}
 		}
 		finally
 		{
-			try
-			{
-				if(inputStream!=null) inputStream.close();
-			}
-			catch(Exception ex)
+			sBuffers.release(buffer);
+		}
+		return outputStream.toByteArray();
+	}
+	/**
+	 * get the charset parameter of the given Content-Type header value
+	 * @param contentType the header value, i.e. "text/html; charset=ISO-8859-1", may be null
+	 * @return the charset, or {@link #DEFAULT_CHARSET} when the header has none
+	 */
+	public static String getCharset(String contentType)
+	{
+		if(contentType==null) return DEFAULT_CHARSET;
+		return getCharset(BasicHeaderValueParser.parseElements(contentType, null));
+	}
+	/**
+	 * get the charset parameter of the given parsed Content-Type header
+	 * @param elements the header elements, may be null
+	 * @return the charset, or {@link #DEFAULT_CHARSET} when the header has none
+	 */
+	public static String getCharset(HeaderElement[] elements)
+	{
+		if(elements!=null)
+		{
+			for (HeaderElement element : elements)
 			{
-				Logger.printStackTrace(ex);
+				NameValuePair charset = element.getParameterByName("charset");
+				if(charset!=null && charset.getValue()!=null && charset.getValue().length()>0) return charset.getValue();
 			}
 		}
-		
-		return stringBuilder.toString();
+		return DEFAULT_CHARSET;
+	}
+	/**
+	 * decode the given bytes with the given charset, an unknown charset decodes with the default charset
+	 * @param content
+	 * @param charset
+	 * @return
+	 */
+	public static String decode(byte[] content, String charset)
+	{
+		Charset decoder;
+		try
+		{
+			decoder = Charset.forName(charset);
+		}
+		catch(IllegalArgumentException ex)
+		{
+			// IllegalCharsetNameException and UnsupportedCharsetException
+			Logger.debug("HttpEntityHelper: unknown charset " + charset + ", decoding with " + DEFAULT_CHARSET);
+			decoder = Charset.forName(DEFAULT_CHARSET);
+		}
+		return new String(content, decoder);
 	}
 }
@@ -12,4 +12,13 @@ public enum Method
     	}
     	return null;
     }
+    
+    /**
+     * check if sending the request more than once has the same effect as sending it once, GET, PUT and DELETE are idempotent
+     * @return
+     */
+    public boolean isIdempotent()
+    {
+    	return this!=POST;
+    }
 }
\ No newline at end of file
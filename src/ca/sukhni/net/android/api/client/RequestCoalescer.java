@@ -0,0 +1,285 @@
+package ca.sukhni.net.android.api.client;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.NameValuePair;
+
+import ca.sukhni.net.android.api.socket.HttpClientConfig;
+import ca.sukhni.net.android.api.transport.CancellationSignal;
+import ca.sukhni.net.android.api.transport.HttpTransport;
+
+/**
+ * shares one network call between identical GET requests in flight at the same time.
+ * <p>requests are identical when they have the same url and the same headers, and are sent with the same transport
+ * and connection settings. every header is part of the key since any of them may select a variant of the response.
+ * the first request goes to the network, the others wait for it and receive the same response or the same failure.
+ * when the first request is canceled the others are sent again.</p>
+ * <p>set a coalescer on the clients with {@link ApiClientBuilder#setRequestCoalescer(RequestCoalescer)}, clients
+ * share calls only when they share the coalescer.</p>
+ * @author malsukhni
+ *
+ */
+public class RequestCoalescer
+{
+	public static final String					TAG					= RequestCoalescer.class.getSimpleName();
+
+	private static RequestCoalescer				sDefault;
+
+	private final Map<Object, Flight>			flights				= new HashMap<Object, Flight>();
+	private final AtomicLong					calls				= new AtomicLong();
+	private final AtomicLong					coalesced			= new AtomicLong();
+
+	/**
+	 * get the coalescer shared by the clients of the application
+	 * @return
+	 */
+	public static synchronized RequestCoalescer getDefault()
+	{
+		if(sDefault==null)
+		{
+			sDefault = new RequestCoalescer();
+		}
+		return sDefault;
+	}
+
+	/**
+	 * get the number of network calls started through this coalescer
+	 * @return
+	 */
+	public long getCallCount()
+	{
+		return calls.get();
+	}
+
+	/**
+	 * get the number of requests answered by the call of an identical request
+	 * @return
+	 */
+	public long getCoalescedCount()
+	{
+		return coalesced.get();
+	}
+
+	/**
+	 * get the number of network calls in flight
+	 * @return
+	 */
+	public int getInFlightCount()
+	{
+		synchronized(flights)
+		{
+			return flights.size();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return TAG + "(inFlight=" + getInFlightCount() + ", calls=" + getCallCount() + ", coalesced=" + getCoalescedCount() + ")";
+	}
+
+	/**
+	 * create the key of a request
+	 * @param url the full request url
+	 * @param headers the request headers
+	 * @param transport the transport that sends the request
+	 * @param config the connection settings of the request
+	 * @return
+	 */
+	static Object getKey(String url, List<NameValuePair> headers, HttpTransport transport, HttpClientConfig config)
+	{
+		List<String> names = new ArrayList<String>(headers.size());
+		for(NameValuePair header : headers)
+		{
+			names.add(header.getName().toLowerCase(Locale.US) + ": " + header.getValue());
+		}
+		return Arrays.asList(url, names, transport, config);
+	}
+
+	/**
+	 * get the flight of the key, a new flight is started when none is in the air.
+	 * the caller that wins {@link Flight#takeLead()} sends the request and lands the flight
+	 * @param key
+	 * @return
+	 */
+	Flight join(Object key)
+	{
+		synchronized(flights)
+		{
+			Flight flight = flights.get(key);
+			if(flight!=null)
+			{
+				coalesced.incrementAndGet();
+				return flight;
+			}
+			flight = new Flight(key);
+			flights.put(key, flight);
+			calls.incrementAndGet();
+			return flight;
+		}
+	}
+
+	/**
+	 * complete the flight with the outcome of its call, a flight without outcome is abandoned
+	 * and its passengers send the request again
+	 * @param flight
+	 * @param response the response, or null
+	 * @param failure the failure, or null
+	 */
+	void land(Flight flight, ApiResponse response, Exception failure)
+	{
+		synchronized(flights)
+		{
+			if(flights.get(flight.key)==flight) flights.remove(flight.key);
+		}
+		flight.complete(response, failure);
+	}
+
+	/**
+	 * interface to receive the outcome of a flight without waiting for it
+	 * @author malsukhni
+	 *
+	 */
+	interface FlightListener
+	{
+		/**
+		 * called with the shared response
+		 * @param response
+		 */
+		public abstract void onLanded(ApiResponse response);
+		/**
+		 * called with the shared failure
+		 * @param e
+		 */
+		public abstract void onFailed(Exception e);
+		/**
+		 * called when the call was canceled, the request must be sent again
+		 */
+		public abstract void onAbandoned();
+	}
+
+	/**
+	 * one network call and the requests waiting for it
+	 */
+	static final class Flight
+	{
+		private final Object						key;
+		private final List<FlightListener>			listeners		= new ArrayList<FlightListener>();
+		private boolean								led;
+		private boolean								done;
+		private ApiResponse							response;
+		private Exception							failure;
+
+		Flight(Object key)
+		{
+			this.key = key;
+		}
+
+		/**
+		 * claim the call of the flight
+		 * @return true for the one caller that must send the request
+		 */
+		synchronized boolean takeLead()
+		{
+			if(led) return false;
+			led = true;
+			return true;
+		}
+
+		synchronized boolean isDone()
+		{
+			return done;
+		}
+
+		/**
+		 * wait for the outcome of the call
+		 * @param signal the signal of the waiting request, or null
+		 * @param url the request url, for the messages
+		 * @return the shared response, or null when the flight was abandoned
+		 * @throws Exception the shared failure, or an {@link InterruptedIOException} when the waiting request is canceled
+		 */
+		ApiResponse await(CancellationSignal signal, String url) throws Exception
+		{
+			if(signal!=null)
+			{
+				signal.setOnCancelListener(new CancellationSignal.OnCancelListener()
+				{
+					@Override
+					public void onCancel()
+					{
+						synchronized(Flight.this)
+						{
+							Flight.this.notifyAll();
+						}
+					}
+				});
+			}
+			synchronized(this)
+			{
+				while(!done)
+				{
+					if(signal!=null) signal.throwIfCanceled(url);
+					try
+					{
+						wait();
+					}
+					catch(InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while waiting for " + url);
+					}
+				}
+				if(failure!=null) throw failure;
+				return response;
+			}
+		}
+
+		/**
+		 * add a listener called with the outcome of the call, right away when the flight already landed
+		 * @param listener
+		 */
+		void addListener(FlightListener listener)
+		{
+			synchronized(this)
+			{
+				if(!done)
+				{
+					listeners.add(listener);
+					return;
+				}
+			}
+			notify(listener);
+		}
+
+		private void complete(ApiResponse response, Exception failure)
+		{
+			synchronized(this)
+			{
+				if(done) return;
+				done = true;
+				this.response = response;
+				this.failure = failure;
+				notifyAll();
+			}
+			for(FlightListener listener : listeners)
+			{
+				notify(listener);
+			}
+			listeners.clear();
+		}
+
+		private void notify(FlightListener listener)
+		{
+			if(failure!=null) listener.onFailed(failure);
+			else if(response!=null) listener.onLanded(response);
+			else listener.onAbandoned();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package ca.sukhni.net.android.api.client;
+
+import java.nio.ByteBuffer;
+
+import org.apache.http.HeaderElement;
+
+/**
+ * response entity that holds the content in memory, SEE {@link ResponseEntity}
+ * @author malsukhni
+ *
+ */
+class ResponseEntityImpt implements ResponseEntity
+{
+	private long 				contentLength;
+	private boolean 			isChuncked;
+	private boolean 			isRepeatable;
+	private boolean 			isStreaming;
+	private byte[]				content;
+	private String				charset		= HttpEntityHelper.DEFAULT_CHARSET;
+	private String				strEntity;
+	private ResponseHeaderImpt 	responseHeaderImpt;
+	
+	public ResponseEntityImpt()
+	{
+		responseHeaderImpt = new ResponseHeaderImpt();
+	}
+	public class ResponseHeaderImpt implements ResponseHeader
+	{
+		private String 				name;
+		private String 				value;
+		private HeaderElement[] 	elements;
+		@Override
+		public String getName()
+		{
+			return name;
+		}
+		@Override
+		public String getValue()
+		{
+			return value;
+		}
+		@Override
+		public HeaderElement[] getElements()
+		{
+			return elements;
+		}
+		public void setName(String name)
+		{
+			this.name = name;
+		}
+		public void setValue(String value)
+		{
+			this.value = value;
+		}
+		public void setElements(HeaderElement[] elements)
+		{
+			this.elements = elements;
+		}
+		
+	}
+
+	@Override
+	public long getContentLength()
+	{
+		return contentLength;
+	}
+
+	@Override
+	public boolean isChuncked()
+	{
+		return isChuncked;
+	}
+
+	@Override
+	public boolean isStreaming()
+	{
+		return isStreaming;
+	}
+
+	@Override
+	public boolean isRepeatable()
+	{
+		return isRepeatable;
+	}
+
+	@Override
+	public ResponseHeader getContentType()
+	{
+		return responseHeaderImpt;
+	}
+
+	@Override
+	public ResponseHeader getContentEncoding()
+	{
+		return responseHeaderImpt;
+	}
+
+	@Override
+	public synchronized String getResponseContentAsString()
+	{
+		if(strEntity==null && content!=null) strEntity = HttpEntityHelper.decode(content, charset);
+		return strEntity;
+	}
+
+	@Override
+	public byte[] getContentAsBytes()
+	{
+		return (content!=null) ? content.clone() : null;
+	}
+
+	@Override
+	public ByteBuffer getContentAsByteBuffer()
+	{
+		return (content!=null) ? ByteBuffer.wrap(content).asReadOnlyBuffer() : null;
+	}
+
+	@Override
+	public String getCharset()
+	{
+		return charset;
+	}
+
+	public void setContentLength(long contentLength)
+	{
+		this.contentLength = contentLength;
+	}
+
+	public void setChuncked(boolean isChuncked)
+	{
+		this.isChuncked = isChuncked;
+	}
+
+	public void setRepeatable(boolean isRepeatable)
+	{
+		this.isRepeatable = isRepeatable;
+	}
+
+	public void setStreaming(boolean isStreaming)
+	{
+		this.isStreaming = isStreaming;
+	}
+
+	/**
+	 * get the content without copying it, it must not be modified
+	 * @return
+	 */
+	byte[] getContent()
+	{
+		return content;
+	}
+
+	public void setContent(byte[] content)
+	{
+		this.content = content;
+	}
+
+	public void setCharset(String charset)
+	{
+		this.charset = charset;
+	}
+
+	public void setResponseHeaderImpt(ResponseHeaderImpt responseHeaderImpt)
+	{
+		this.responseHeaderImpt = responseHeaderImpt;
+	}
+
+	public ResponseHeaderImpt getResponseHeaderImpt()
+	{
+		return responseHeaderImpt;
+	}
+	
+	
+}
@@ -0,0 +1,15 @@
+package ca.sukhni.net.android.api.client;
+
+import org.apache.http.HeaderElement;
+
+/**
+ * interface for a header of the response entity
+ * @author malsukhni
+ *
+ */
+interface ResponseHeader
+{
+	public abstract String getName();
+	public abstract String getValue();
+	public abstract HeaderElement[] getElements();
+}
@@ -17,43 +17,57 @@
  **/
 package ca.sukhni.net.android.api.client;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.NoRouteToHostException;
 import java.net.PortUnreachableException;
 import java.net.SocketTimeoutException;
-import java.net.URLEncoder;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.nio.channels.UnresolvedAddressException;
 import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.http.ConnectionClosedException;
-import org.apache.http.Header;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
+import org.apache.http.HeaderElement;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpDelete;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpPut;
-import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.ConnectTimeoutException;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeaderValueParser;
 import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HTTP;
 
-import ca.sukhni.net.android.api.socket.HttpUtils;
+import ca.sukhni.net.android.api.executor.Priority;
+import ca.sukhni.net.android.api.executor.RequestExecutor;
+import ca.sukhni.net.android.api.policy.CircuitBreaker;
+import ca.sukhni.net.android.api.policy.CircuitOpenException;
+import ca.sukhni.net.android.api.policy.HedgePolicy;
+import ca.sukhni.net.android.api.policy.RateLimitExceededException;
+import ca.sukhni.net.android.api.policy.RateLimiter;
+import ca.sukhni.net.android.api.policy.RetryPolicy;
+import ca.sukhni.net.android.api.policy.Scheduler;
+import ca.sukhni.net.android.api.socket.HttpClientConfig;
+import ca.sukhni.net.android.api.transport.AsyncHttpTransport;
+import ca.sukhni.net.android.api.transport.BufferingTransport;
+import ca.sukhni.net.android.api.transport.CancellationSignal;
+import ca.sukhni.net.android.api.transport.HttpTransport;
+import ca.sukhni.net.android.api.transport.PrewarmableTransport;
+import ca.sukhni.net.android.api.transport.TransportCallback;
+import ca.sukhni.net.android.api.transport.TransportRequest;
+import ca.sukhni.net.android.api.transport.TransportResponse;
 import ca.sukhni.net.android.logger.Logger;
 
 
 abstract class RestClient extends BaseClient
 {
 	public final static String							TAG							= RestClient.class.getSimpleName();
+	private final static int							CONTENT_BUFFER_SIZE			= 8192;
 	
 	protected ArrayList<NameValuePair> 					mParams						= null;
     protected ArrayList<NameValuePair> 					mHeaders					= null;
@@ -112,13 +126,15 @@ abstract class RestClient extends BaseClient
 		return mBaseUri;
 	}
 	/**
-	 * set base uri. 
+	 * set base uri, the host is resolved in the background so the first request does not wait for it.
 	 * <p>i.e. http://www.yoursite.com/path/path</P>
 	 * @param baseUri
 	 */
 	public void setBaseUri(String baseUri)
 	{
 		this.mBaseUri = baseUri;
+		String host = getHost(baseUri);
+		if(host!=null) mHostResolver.prefetch(host);
 	}
 
 	/**
@@ -226,230 +242,904 @@ abstract class RestClient extends BaseClient
 	@Override
 	protected void execute(Method method) throws UnsupportedEncodingException,UnresolvedAddressException, NoRouteToHostException, ConnectTimeoutException, SocketTimeoutException, UnknownHostException, ConnectionClosedException, FileNotFoundException, IOException, Exception
 	{
-		// add paths
-		StringBuilder pathBuilder = new StringBuilder();
-		if(mPath!=null)
+		executeRecorded(newRequest().setMethod(method).build());
+	}
+	
+	/**
+	 * create a request builder that starts from the method, uri, parameters, headers and content set on this client
+	 * @return
+	 */
+	public ApiRequest.Builder newRequest()
+	{
+		ApiRequest.Builder builder = new ApiRequest.Builder()
+				.setMethod(mMethod)
+				.setBaseUri(mBaseUri)
+				.setTextContent(mContent)
+				.setCharSetType(mCharSetType)
+				.setContentType(mContentType);
+		for(String path : mPath)
+		{
+			builder.addPath(path);
+		}
+		for(NameValuePair param : mParams)
+		{
+			builder.addParam(param.getName(), param.getValue());
+		}
+		for(NameValuePair header : mHeaders)
 		{
-			int size = mPath.size();
-			for(int i=0;i<size;i++)
+			builder.addHeader(header.getName(), header.getValue());
+		}
+		return builder;
+	}
+	
+	/**
+	 * execute the given request with the connection settings and the transport of this client, this is blocking code.
+	 * <p>nothing is stored on the client, so one configured client can execute any number of requests
+	 * from any number of threads at once. timeouts are retried as configured, the retry counts apply to each call.</p>
+	 * @param request the request to execute
+	 * @return the response of this execution
+	 * @throws UnsupportedEncodingException
+	 * @throws UnresolvedAddressException
+	 * @throws UnknownHostException
+	 * @throws NoRouteToHostException
+	 * @throws ConnectTimeoutException
+	 * @throws SocketTimeoutException
+	 * @throws ConnectionClosedException
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 * @throws Exception
+	 */
+	public ApiResponse execute(ApiRequest request) throws UnsupportedEncodingException,UnresolvedAddressException, NoRouteToHostException, ConnectTimeoutException, SocketTimeoutException, UnknownHostException, ConnectionClosedException, FileNotFoundException, IOException, Exception
+	{
+		return execute(request, new CallState(null));
+	}
+	
+	/**
+	 * execute the given request like {@link #execute(ApiRequest)}, canceling the signal aborts it
+	 * @param request the request to execute
+	 * @param signal the signal that aborts the request
+	 * @return the response of this execution
+	 * @throws Exception
+	 */
+	protected ApiResponse execute(ApiRequest request, CancellationSignal signal) throws Exception
+	{
+		return execute(request, new CallState(signal));
+	}
+	
+	/**
+	 * execute the given request like {@link #execute(ApiRequest)} without reading the content of the response:
+	 * the content is read from {@link ApiResponse#getContent()} as it arrives, so a large body is never held in memory
+	 * unless the transport is a {@link BufferingTransport}.
+	 * <p>the response holds its connection until it is closed, the caller must close it, also when the status code
+	 * is not the expected one. the request deadline covers the reading of the content. identical requests are not
+	 * shared and the request is not hedged.</p>
+	 * @param request the request to execute
+	 * @return the streamed response, SEE {@link ApiResponse#isStreaming()}
+	 * @throws Exception
+	 */
+	public ApiResponse executeStreaming(ApiRequest request) throws Exception
+	{
+		return executeStreaming(request, null);
+	}
+	
+	/**
+	 * execute the given request like {@link #executeStreaming(ApiRequest)}, canceling the signal aborts it,
+	 * also while the content is read
+	 * @param request the request to execute
+	 * @param signal the signal that aborts the request, or null
+	 * @return the streamed response
+	 * @throws Exception
+	 */
+	protected ApiResponse executeStreaming(ApiRequest request, CancellationSignal signal) throws Exception
+	{
+		CallState state = new CallState(signal);
+		state.streaming = true;
+		return execute(request, state);
+	}
+	
+	/**
+	 * execute the given request and give the content of the response to the consumer in chunks as it is read,
+	 * the connection is released once the content is read or the consumer fails. this is blocking code.
+	 * @param request the request to execute
+	 * @param consumer the consumer of the content, SEE {@link ContentConsumer}
+	 * @return the response, its content was given to the consumer
+	 * @throws Exception
+	 */
+	public ApiResponse execute(ApiRequest request, ContentConsumer consumer) throws Exception
+	{
+		return execute(request, consumer, null);
+	}
+	
+	/**
+	 * execute the given request like {@link #execute(ApiRequest, ContentConsumer)}, canceling the signal aborts it
+	 * @param request the request to execute
+	 * @param consumer the consumer of the content
+	 * @param signal the signal that aborts the request, or null
+	 * @return the response
+	 * @throws Exception
+	 */
+	protected ApiResponse execute(ApiRequest request, ContentConsumer consumer, CancellationSignal signal) throws Exception
+	{
+		ApiResponse response = executeStreaming(request, signal);
+		try
+		{
+			InputStream content = response.getContent();
+			if(content!=null)
 			{
-				String path = mPath.get(i).replace("/", "").replace("\\", "");
-				if(i<size) pathBuilder.append("/");
-				pathBuilder.append(path);
+				byte[] buffer = new byte[CONTENT_BUFFER_SIZE];
+				int n;
+				while((n = content.read(buffer))!=-1)
+				{
+					consumer.onContent(response, buffer, n);
+				}
 			}
+			return response;
+		}
+		finally
+		{
+			// aborts the connection when the content was not read to its end
+			response.close();
+		}
+	}
+	
+	/**
+	 * download the content of the given request to the given file, replacing its content. the content is streamed
+	 * from the connection to the file, it is never held in memory. this is blocking code.
+	 * <p>the transport must stream its responses: a {@link BufferingTransport}, like the nio and http/2 transports,
+	 * receives the whole content in memory and is refused.</p>
+	 * <p>when the content fails to be read the download resumes where it stopped with a Range request,
+	 * SEE {@link #download(ApiRequest, File, boolean)}</p>
+	 * @param request the request of the content
+	 * @param file the file to write the content to
+	 * @return the outcome of the download, with the bytes written and the throughput
+	 * @throws IllegalStateException if the transport is a {@link BufferingTransport}
+	 * @throws Exception
+	 */
+	public DownloadResult download(ApiRequest request, File file) throws Exception
+	{
+		return download(request, file, false);
+	}
+	
+	/**
+	 * download the content of the given request to the given file like {@link #download(ApiRequest, File)}.
+	 * <p>with resume the content already in the file is kept and only the rest is requested, with a Range request.
+	 * the file must come from an earlier download of the same content: its modification time is sent as If-Range,
+	 * so the server sends the whole content again when it changed since.</p>
+	 * @param request the request of the content
+	 * @param file the file to write the content to
+	 * @param resume true to resume the content already in the file, false to replace it
+	 * @return the outcome of the download
+	 * @throws Exception
+	 */
+	public DownloadResult download(ApiRequest request, File file, boolean resume) throws Exception
+	{
+		return download(request, file, resume, null);
+	}
+	
+	/**
+	 * download the content of the given request to the given file like {@link #download(ApiRequest, File)}, in segments
+	 * fetched at once over several connections. a single connection often cannot use the bandwidth of a link
+	 * with a high latency.
+	 * <p>when the server supports ranges the content is split in up to the given number of segments of at least 256KB,
+	 * the file is allocated to the length of the content and the segments are requested with Range requests on
+	 * workers of the executor, each on its own pooled connection. the If-Range header makes a segment fail when
+	 * the content changes during the download. otherwise the content is downloaded over one connection.</p>
+	 * <p>a segment that fails to be read resumes where it stopped, the download fails with the first failure
+	 * of a segment and the other segments are aborted. the connections per host of the client limit the segments
+	 * in flight.</p>
+	 * @param request the request of the content
+	 * @param file the file to write the content to, its content is replaced
+	 * @param segments the max number of segments
+	 * @return the outcome of the download, SEE {@link DownloadResult#getSegmentCount()}
+	 * @throws Exception
+	 */
+	public DownloadResult download(ApiRequest request, File file, int segments) throws Exception
+	{
+		return download(request, file, segments, null);
+	}
+	
+	/**
+	 * download the content of the given request like {@link #download(ApiRequest, File, int)}, canceling the signal aborts it
+	 * @param request the request of the content
+	 * @param file the file to write the content to
+	 * @param segments the max number of segments
+	 * @param signal the signal that aborts the download, or null
+	 * @return the outcome of the download
+	 * @throws Exception
+	 */
+	protected DownloadResult download(ApiRequest request, File file, int segments, CancellationSignal signal) throws Exception
+	{
+		checkDownloadTransport();
+		Priority priority = (request.getPriority()!=null) ? request.getPriority() : mPriority;
+		return new FileDownload(this, request, file, signal).run(segments, mExecutor, priority);
+	}
+	
+	/**
+	 * download the content of the given request like {@link #download(ApiRequest, File, boolean)}, canceling the signal aborts it
+	 * @param request the request of the content
+	 * @param file the file to write the content to
+	 * @param resume true to resume the content already in the file, false to replace it
+	 * @param signal the signal that aborts the download, or null
+	 * @return the outcome of the download
+	 * @throws Exception
+	 */
+	protected DownloadResult download(ApiRequest request, File file, boolean resume, CancellationSignal signal) throws Exception
+	{
+		checkDownloadTransport();
+		return new FileDownload(this, request, file, signal).run(resume);
+	}
+	
+	/**
+	 * refuse to download with a transport that receives the content in memory, a large content would not fit
+	 * @throws IllegalStateException if the transport is a {@link BufferingTransport}
+	 */
+	private void checkDownloadTransport()
+	{
+		HttpTransport transport = mTransport;
+		if(transport instanceof BufferingTransport)
+		{
+			throw new IllegalStateException("Transport " + transport.getName() + " receives the content in memory and can not download to a file");
+		}
+	}
+	
+	/**
+	 * execute the given request and record its outcome on this client, for the getters of the response
+	 * @param request
+	 * @return the response
+	 * @throws Exception
+	 */
+	protected ApiResponse executeRecorded(ApiRequest request) throws Exception
+	{
+		CallState state = new CallState(null);
+		try
+		{
+			ApiResponse response = execute(request, state);
+			recordResponse(response);
+			return response;
+		}
+		catch(Exception e)
+		{
+			mExceptionMessage = state.exceptionMessage;
+			throw e;
+		}
+	}
+	
+	private ApiResponse execute(ApiRequest request, CallState state) throws Exception
+	{
+		String url;
+		try
+		{
+			url = request.getUrl();
+		}
+		catch(Exception e)
+		{
+			state.finish();
+			throw e;
+		}
+		ApiResponse response = null;
+		try
+		{
+			response = execute(request, url, state);
+			return response;
+		}
+		catch(Exception e)
+		{
+			if(!state.isDeadlineExceeded()) throw e;
+			Exception failure = state.toDeadlineFailure(e, url);
+			state.exceptionMessage = recordException(failure, url);
+			throw failure;
+		}
+		finally
+		{
+			// a streamed response finishes the call once it is closed
+			if(response==null || !response.isStreaming()) state.finish();
+		}
+	}
+	
+	private ApiResponse execute(ApiRequest request, String url, CallState state) throws Exception
+	{
+		Logger.debug("RestClient " + request.getMethod().name() + ": " + url);
+		TransportRequest transportRequest = request.toTransportRequest(url, state.signal);
+		HttpTransport transport = mTransport;
+		HttpClientConfig config = getHttpClientConfig();
+		Logger.debug(TAG + ": execute(ApiRequest request) using " + transport.getName());
+		RequestCoalescer coalescer = mRequestCoalescer;
+		if(coalescer==null || request.getMethod()!=Method.GET || state.streaming)
+		{
+			return sendHedged(transport, config, transportRequest, url, state);
 		}
-		
-		// add parameters
-		String combinedParams = "";
-		if (!mParams.isEmpty())
+		Object key = RequestCoalescer.getKey(url, request.getHeaders(), transport, config);
+		while(true)
 		{
-			combinedParams += "?";
-			for (NameValuePair p : mParams)
+			RequestCoalescer.Flight flight = coalescer.join(key);
+			if(flight.takeLead())
 			{
-				String paramString = p.getName() + "=" + URLEncoder.encode(p.getValue(), mCharSetType);
-
-				if (combinedParams.length() > 1)
+				ApiResponse response = null;
+				Exception failure = null;
+				try
 				{
-					combinedParams += "&" + paramString;
+					response = sendHedged(transport, config, transportRequest, url, state);
+					return response;
 				}
-				else
+				catch(Exception e)
 				{
-					combinedParams += paramString;
+					failure = e;
+					throw e;
 				}
+				finally
+				{
+					// a canceled call is not shared, the waiting requests send it again
+					coalescer.land(flight, response, state.isCanceled() ? null : failure);
+				}
+			}
+			Logger.debug(TAG + ": waiting for the identical request in flight to " + url);
+			try
+			{
+				ApiResponse response = flight.await(state.signal, url);
+				if(response!=null) return response;
+			}
+			catch(Exception e)
+			{
+				if(!state.isCanceled()) state.exceptionMessage = recordException(e, url);
+				throw e;
 			}
 		}
-
-		switch (method)
+	}
+	
+	/**
+	 * send the request, a GET is sent a second time when it is slow to respond and a hedge policy is set
+	 */
+	private ApiResponse sendHedged(final HttpTransport transport, final HttpClientConfig config, final TransportRequest transportRequest, final String url, CallState state) throws Exception
+	{
+		final HedgePolicy hedgePolicy = mHedgePolicy;
+		if(hedgePolicy==null || transportRequest.getMethod()!=Method.GET || state.streaming)
+		{
+			return send(transport, config, transportRequest, url, state);
+		}
+		final Hedge hedge = new Hedge(hedgePolicy, url, state, null);
+		final RequestExecutor executor = mExecutor;
+		final long delay = hedgePolicy.getHedgeDelay(url);
+		int first = hedge.launch();
+		Scheduler.schedule(new Runnable()
 		{
-			case GET:
+			@Override
+			public void run()
 			{
-				fullUrl = mBaseUri + pathBuilder.toString() + combinedParams;
-				Logger.debug("RestClient GET: " + fullUrl);
-				HttpGet request = new HttpGet(fullUrl);
-				// add headers
-				for (NameValuePair h : mHeaders)
+				if(hedge.isDone() || !hedgePolicy.tryHedge(url)) return;
+				final int copy = hedge.launch();
+				if(copy<0) return;
+				Logger.debug(TAG + ": no response after " + delay + "ms, sending a copy of " + url);
+				try
 				{
-					request.addHeader(h.getName(), h.getValue());
+					executor.execute(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							hedge.sendCopy(copy, transport, config, transportRequest);
+						}
+					}, Priority.HIGH);
+				}
+				catch(RejectedExecutionException e)
+				{
+					hedge.complete(copy, null, e);
 				}
-				executeRequest(request, mBaseUri);
-				break;
 			}
-			case POST:
+		}, delay);
+		hedge.sendCopy(first, transport, config, transportRequest);
+		return hedge.await();
+	}
+	
+	/**
+	 * send the request, the failures are retried as decided by the retry policy, SEE {@link CallState#getRetryDelay(Method, Exception)}
+	 */
+	private ApiResponse send(HttpTransport transport, HttpClientConfig config, TransportRequest transportRequest, String url, CallState state) throws Exception
+	{
+		RateLimiter rateLimiter = mRateLimiter;
+		CircuitBreaker circuitBreaker = mCircuitBreaker;
+		Method method = transportRequest.getMethod();
+		while(true)
+		{
+			long delay;
+			CircuitBreaker.Permit permit = null;
+			try
 			{
-				fullUrl = mBaseUri + pathBuilder.toString() + combinedParams;
-				Logger.debug("RestClient POST: " + fullUrl);
-				HttpPost request = new HttpPost(fullUrl);
-				// add headers
-				for (NameValuePair h : mHeaders)
+				if(circuitBreaker!=null) permit = circuitBreaker.acquire(url);
+				if(rateLimiter!=null) rateLimiter.acquire(url, state.signal);
+				TransportResponse transportResponse = transport.execute(transportRequest, config);
+				ApiResponse response = state.streaming ? new ApiResponse(url, transportResponse, state)
+						: toResponse(url, transportResponse, transportRequest.getCancellationSignal());
+				if(permit!=null) permit.onResponse(response.getStatusCode());
+				delay = state.getRetryDelay(method, response.getStatusCode());
+				if(delay<0) return response;
+				response.discard();
+			}
+			catch(Exception e)
+			{
+				reportFailure(permit, e, state);
+				if(state.isCanceled())
 				{
-					request.addHeader(h.getName(), h.getValue());
+					Logger.debug(TAG + ": request canceled " + url);
+					throw e;
 				}
-				if (mContent!=null)
+				state.exceptionMessage = recordException(e, url);
+				delay = state.getRetryDelay(method, e);
+				if(delay<0) throw e;
+			}
+			state.await(delay, url);
+		}
+	}
+	
+	/**
+	 * open connections to the base uri ahead of time, so the first request does not pay for the dns lookup,
+	 * the tcp connect and the tls handshake. the connections are opened with the connection settings of this client
+	 * and are used by every client with the same settings. this is blocking code.
+	 * <p>call it at start up and after a network change. when the transport cannot open connections ahead of time
+	 * only the host is resolved.</p>
+	 * @param connections how many connections to have ready, limited by the connections per host
+	 * @return the number of connections ready
+	 * @throws IOException if no connection could be opened
+	 */
+	public int prewarm(int connections) throws IOException
+	{
+		if(mBaseUri==null) throw new IllegalStateException("The base uri is not set");
+		return prewarm(mBaseUri, mTransport, getHttpClientConfig(), connections);
+	}
+
+	/**
+	 * open connections to the base uri with settings taken from a client beforehand, so they do not change while
+	 * the connections are opened on another thread. SEE {@link #prewarm(int)}
+	 * @param baseUri the base uri of the client
+	 * @param transport the transport of the client
+	 * @param config the connection settings of the client
+	 * @param connections how many connections to have ready
+	 * @return the number of connections ready
+	 * @throws IOException if no connection could be opened
+	 */
+	protected static int prewarm(String baseUri, HttpTransport transport, HttpClientConfig config, int connections) throws IOException
+	{
+		Logger.debug(TAG + ": prewarm(" + connections + ") " + baseUri + " using " + transport.getName());
+		if(transport instanceof PrewarmableTransport)
+		{
+			return ((PrewarmableTransport) transport).prewarm(baseUri, connections, config);
+		}
+		String host = getHost(baseUri);
+		if(host!=null) config.getHostResolver().resolve(host);
+		return 0;
+	}
+
+	/**
+	 * execute the request without blocking the calling thread, the transport must be an {@link AsyncHttpTransport}.
+	 * timeouts are retried like the blocking path
+	 * @param request the request to execute
+	 * @param signal the signal that aborts the request, or null
+	 * @param record true to record the outcome on this client, for the getters of the response
+	 * @param listener receives the outcome on a transport thread
+	 */
+	protected void executeNonBlocking(ApiRequest request, CancellationSignal signal, final boolean record, final ExecutionListener listener)
+	{
+		HttpTransport transport = mTransport;
+		if(!(transport instanceof AsyncHttpTransport))
+		{
+			throw new IllegalStateException("Transport " + transport.getName() + " does not support non-blocking execution");
+		}
+		final CallState state = new CallState(signal);
+		String url = request.getBaseUri();
+		TransportRequest transportRequest;
+		try
+		{
+			url = request.getUrl();
+			Logger.debug("RestClient " + request.getMethod().name() + ": " + url);
+			transportRequest = request.toTransportRequest(url, state.signal);
+		}
+		catch(UnsupportedEncodingException e)
+		{
+			state.finish();
+			String message = recordException(e, url);
+			if(record) mExceptionMessage = message;
+			listener.onFailed(e);
+			return;
+		}
+		final String requestUrl = url;
+		HttpClientConfig config = getHttpClientConfig();
+		RequestCoalescer coalescer = (request.getMethod()==Method.GET) ? mRequestCoalescer : null;
+		Object key = (coalescer!=null) ? RequestCoalescer.getKey(url, request.getHeaders(), transport, config) : null;
+		executeNonBlocking((AsyncHttpTransport) transport, config, transportRequest, url, state, coalescer, key, new ExecutionListener()
+		{
+			@Override
+			public void onExecuted(ApiResponse response)
+			{
+				state.finish();
+				if(record) recordResponse(response);
+				listener.onExecuted(response);
+			}
+
+			@Override
+			public void onFailed(Exception e)
+			{
+				state.finish();
+				if(state.isDeadlineExceeded())
 				{
-					StringEntity entity = new StringEntity(mContent, mCharSetType);
-					entity.setContentEncoding(mCharSetType);
-					entity.setContentType("application/xml");
-					request.setEntity(entity);
+					e = state.toDeadlineFailure(e, requestUrl);
+					state.exceptionMessage = recordException(e, requestUrl);
 				}
-				executeRequest(request, fullUrl);
-				break;
+				if(record) mExceptionMessage = state.exceptionMessage;
+				listener.onFailed(e);
 			}
-			case PUT:
+		});
+	}
+	
+	/**
+	 * send the request, or wait for the identical request in flight when a coalescer is given
+	 */
+	private void executeNonBlocking(final AsyncHttpTransport transport, final HttpClientConfig config, final TransportRequest request, final String url,
+			final CallState state, final RequestCoalescer coalescer, final Object key, final ExecutionListener listener)
+	{
+		if(coalescer==null)
+		{
+			sendHedged(transport, config, request, url, state, listener);
+			return;
+		}
+		final RequestCoalescer.Flight flight = coalescer.join(key);
+		if(flight.takeLead())
+		{
+			sendHedged(transport, config, request, url, state, new ExecutionListener()
 			{
-				fullUrl = mBaseUri + pathBuilder.toString() + combinedParams;
-				Logger.debug("RestClient PUT: " + fullUrl);
-				HttpPut request = new HttpPut(mBaseUri + combinedParams);
-				// add headers
-				for (NameValuePair h : mHeaders)
+				@Override
+				public void onExecuted(ApiResponse response)
 				{
-					request.addHeader(h.getName(), h.getValue());
+					coalescer.land(flight, response, null);
+					listener.onExecuted(response);
 				}
-				
-				if (mContent!=null)
+
+				@Override
+				public void onFailed(Exception e)
 				{
-					StringEntity entity = new StringEntity(mContent, mCharSetType);
-					entity.setContentEncoding(mCharSetType);
-					entity.setContentType("application/xml");
-					request.setEntity(entity);
+					// a canceled call is not shared, the waiting requests send it again
+					coalescer.land(flight, null, state.isCanceled() ? null : e);
+					listener.onFailed(e);
 				}
-				executeRequest(request, fullUrl);
-				break;
+			});
+			return;
+		}
+		Logger.debug(TAG + ": waiting for the identical request in flight to " + url);
+		flight.addListener(new RequestCoalescer.FlightListener()
+		{
+			@Override
+			public void onLanded(ApiResponse response)
+			{
+				listener.onExecuted(response);
 			}
-			case DELETE:
+
+			@Override
+			public void onFailed(Exception e)
 			{
-				fullUrl = mBaseUri + pathBuilder.toString() + combinedParams;
-				Logger.debug("RestClient DELETE: " + fullUrl);
-				HttpDelete request = new HttpDelete(mBaseUri + combinedParams);
-				// add headers
-				for (NameValuePair h : mHeaders)
+				state.exceptionMessage = recordException(e, url);
+				listener.onFailed(e);
+			}
+
+			@Override
+			public void onAbandoned()
+			{
+				if(state.isCanceled())
 				{
-					request.addHeader(h.getName(), h.getValue());
+					listener.onFailed(new InterruptedIOException("Request canceled: " + url));
+					return;
 				}
-				executeRequest(request, fullUrl);
-				break;
+				executeNonBlocking(transport, config, request, url, state, coalescer, key, listener);
 			}
+		});
+	}
+	
+	/**
+	 * send the request without blocking, a GET is sent a second time when it is slow to respond and a hedge policy is set
+	 */
+	private void sendHedged(final AsyncHttpTransport transport, final HttpClientConfig config, final TransportRequest request, final String url,
+			CallState state, ExecutionListener listener)
+	{
+		final HedgePolicy hedgePolicy = mHedgePolicy;
+		if(hedgePolicy==null || request.getMethod()!=Method.GET)
+		{
+			executeNonBlocking(transport, config, request, url, state, listener);
+			return;
 		}
+		final Hedge hedge = new Hedge(hedgePolicy, url, state, listener);
+		final long delay = hedgePolicy.getHedgeDelay(url);
+		int first = hedge.launch();
+		Scheduler.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(hedge.isDone() || !hedgePolicy.tryHedge(url)) return;
+				int copy = hedge.launch();
+				if(copy<0) return;
+				Logger.debug(TAG + ": no response after " + delay + "ms, sending a copy of " + url);
+				hedge.sendCopy(copy, transport, config, request);
+			}
+		}, delay);
+		hedge.sendCopy(first, transport, config, request);
 	}
-	private void executeRequest(HttpUriRequest request, String url) throws UnresolvedAddressException,UnknownHostException,
-	NoRouteToHostException,ConnectTimeoutException,SocketTimeoutException,ConnectionClosedException,FileNotFoundException,IOException,Exception
+	
+	private void executeNonBlocking(final AsyncHttpTransport transport, final HttpClientConfig config, final TransportRequest request, final String url,
+			final CallState state, final ExecutionListener listener)
 	{
-		Logger.debug(TAG + ": executeRequest(HttpUriRequest request, String url)");
-		HttpParams conParams = new BasicHttpParams();
-        HttpConnectionParams.setConnectionTimeout(conParams, mConnectionTimeout);
-        HttpConnectionParams.setSoTimeout(conParams, mSocketTimeout);
-        HttpClient client = HttpUtils.getNewHttpClient(conParams);
-        
-        try
+		CircuitBreaker circuitBreaker = mCircuitBreaker;
+		CircuitBreaker.Permit acquired = null;
+		if(circuitBreaker!=null)
+		{
+			try
+			{
+				acquired = circuitBreaker.acquire(url);
+			}
+			catch(CircuitOpenException e)
+			{
+				state.exceptionMessage = recordException(e, url);
+				listener.onFailed(e);
+				return;
+			}
+		}
+		final CircuitBreaker.Permit permit = acquired;
+		RateLimiter rateLimiter = mRateLimiter;
+		if(rateLimiter!=null)
 		{
-			HttpResponse httpResponse = client.execute(request);
-			mResponseCode = httpResponse.getStatusLine().getStatusCode();
-			mReponseStatusLine = httpResponse.getStatusLine().getReasonPhrase();
-			Logger.debug(TAG + ":executeRequest(HttpUriRequest request, String url): ResponseCode= " + mResponseCode + ", ReponseStatusLine= " + mReponseStatusLine);
-			mResponseEntity = iniResponseEntity(httpResponse.getEntity());
+			long wait;
 			try
 			{
-				if(httpResponse.getEntity()!=null) mReponseContentLength = mResponseEntity.getContentLength();
-			}
-			catch(Exception ex){}
-			
-			
-		}
-        catch (ClientProtocolException e)
-        {
-        	Logger.error("E0001:RestClient:ClientProtocolException:executeRequest: " + url + "\n" + e.getMessage());
-        	mExceptionMessage = "There was an error requesting information from the servers. [E0001]";
-        	Logger.error(e.getCause().getLocalizedMessage());
-        	//e.printStackTrace();
-            client.getConnectionManager().shutdown();
-            throw e;
-        }
-        catch (UnresolvedAddressException e)
-        {
-        	Logger.error("E0002:RestClient:UnresolvedAddressException:executeRequest: " + url + "\n" + e.getMessage());
-        	mExceptionMessage = "There was an error resolving the server internet address. [E0002]";
-        	client.getConnectionManager().shutdown();
-        	throw e;
-        }
-        catch (UnknownHostException e)
-        {
-        	Logger.error("E0003:RestClient:UnknownHostException:executeRequest: " + url + "\n" + e.getMessage());
-        	mExceptionMessage = "There was an error resolving the server internet address. [E0003]";
-            client.getConnectionManager().shutdown();
-            throw e;
-        }
-        catch(PortUnreachableException e)
-        {
-        	Logger.debug("E0004:RestClient:NoRouteToHostException:executeRequest: " + url + "\n" + e.getMessage());
-        	mExceptionMessage = "There was an error finding a route to the server. An intermediate router, access point or gateway may be failing or a firewall is blocking the connection to the internet. [E0004]";
-            client.getConnectionManager().shutdown();
-            throw e;
-        }
-        catch (NoRouteToHostException e)
-        {
-        	Logger.debug("E0005:RestClient:NoRouteToHostException:executeRequest: " + url + "\n" + e.getMessage());
-        	mExceptionMessage = "There was an error finding a route to the server. An intermediate router, access point or gateway may be failing or a firewall is blocking the connection to the internet. [E0004]";
-            client.getConnectionManager().shutdown();
-            throw e;
-        }
-        catch (ConnectTimeoutException e)
-        {
-        	Logger.error("E0006:RestClient:ConnectTimeoutException:executeRequest: " + url + "\n" + e.getMessage());
-        	Logger.debug("RestClient:ConnectTimeoutException:remain try count: " + mConnectionTimeoutRetry);
-        	mExceptionMessage = "The attempt to connect to the server has timed out. The server is temporarily busy or otherwise congested at this time. [E0005]";
-        	if(mConnectionTimeoutRetry>0 && mEnableConntectionTimeoutRetry==true)
-        	{
-        		mSocketTimeoutRetry--;
-        		executeRequest(request,  url);
-        		
-        	}
-        	else
-        	{
-        		client.getConnectionManager().shutdown();
-        		throw e;
-        	}
-        }
-        catch(SocketTimeoutException e)
-        {
-        	Logger.error("E0007:RestClient:SocketTimeoutException:executeRequest: " + url +"\n" + e.getMessage());
-        	Logger.debug("RestClient:SocketTimeoutException:remain try count: " + mSocketTimeoutRetry);
-        	mExceptionMessage = "The connection with the server has timed out. This could be due to a slow connection or poor signal strength. [E0006]";
-        	if(mSocketTimeoutRetry>0 && mEnableSocketTimeoutRetry==true)
-        	{
-        		mSocketTimeoutRetry--;
-        		executeRequest(request,  url);
-        	}
-        	else
-        	{
-        		client.getConnectionManager().shutdown();
-        		throw e;
-        	}
-        }
-        catch(ConnectionClosedException e)
-        {
-        	Logger.error("E0008:RestClient:ConnectionClosedException:executeRequest: " + url +"\n" + e.getMessage());
-        	mExceptionMessage = "The internet connection as closed unexpectedly. This could be due to a slow connection or poor signal strength. [E0007]";
-        	throw e;
-        }
-        catch(FileNotFoundException e)
-        {
-        	Logger.error("E0009:RestClient:FileNotFoundException:executeRequest: " + url +"\n" + e.getMessage());
-        	mExceptionMessage = "The file requested was not found. [E0008]";
-        	throw e;
-        }
-        catch (IOException e)
-        {
-        	Logger.error("E0010:RestClient:IOException:executeRequest: " + url + "\n" + e.getMessage());
-        	mExceptionMessage = "There is a problem with internet connection, please check your internet connection. [E0009]";
-            client.getConnectionManager().shutdown();
-            throw e;
-        }
-        catch(Exception e)
-        {
-        	Logger.error("E0011:RestClient:Exception:executeRequest: " + url + "\n" + e.getMessage());
-        	mExceptionMessage = "Unexpected error occurred ("+e.getMessage()+"). [E0010]";
-            client.getConnectionManager().shutdown();
-            throw e;
-        }
+				wait = rateLimiter.reserve(url);
+			}
+			catch(RateLimitExceededException e)
+			{
+				reportFailure(permit, e, state);
+				state.exceptionMessage = recordException(e, url);
+				listener.onFailed(e);
+				return;
+			}
+			if(wait>0)
+			{
+				// send it once the permit is due, without holding a thread
+				Scheduler.schedule(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						send(transport, config, request, url, state, permit, listener);
+					}
+				}, wait);
+				return;
+			}
+		}
+		send(transport, config, request, url, state, permit, listener);
+	}
+	
+	private void send(final AsyncHttpTransport transport, final HttpClientConfig config, final TransportRequest request, final String url,
+			final CallState state, final CircuitBreaker.Permit permit, final ExecutionListener listener)
+	{
+		Logger.debug(TAG + ": executeNonBlocking(TransportRequest request, String url) using " + transport.getName());
+		transport.executeAsync(request, config, new TransportCallback()
+		{
+			@Override
+			public void onResponse(TransportResponse response)
+			{
+				ApiResponse apiResponse;
+				try
+				{
+					apiResponse = toResponse(url, response, request.getCancellationSignal());
+				}
+				catch(IOException e)
+				{
+					onFailure(e);
+					return;
+				}
+				if(permit!=null) permit.onResponse(apiResponse.getStatusCode());
+				long delay = state.getRetryDelay(request.getMethod(), apiResponse.getStatusCode());
+				if(delay<0)
+				{
+					listener.onExecuted(apiResponse);
+					return;
+				}
+				retry(transport, config, request, url, state, listener, delay);
+			}
+
+			@Override
+			public void onFailure(IOException e)
+			{
+				reportFailure(permit, e, state);
+				if(state.isCanceled())
+				{
+					Logger.debug(TAG + ": request canceled " + url);
+					listener.onFailed(e);
+					return;
+				}
+				state.exceptionMessage = recordException(e, url);
+				long delay = state.getRetryDelay(request.getMethod(), e);
+				if(delay<0)
+				{
+					listener.onFailed(e);
+					return;
+				}
+				retry(transport, config, request, url, state, listener, delay);
+			}
+		});
+	}
+	
+	/**
+	 * send the request again once the delay is over, without holding a thread
+	 */
+	private void retry(final AsyncHttpTransport transport, final HttpClientConfig config, final TransportRequest request, final String url,
+			final CallState state, final ExecutionListener listener, long delay)
+	{
+		if(delay<=0)
+		{
+			executeNonBlocking(transport, config, request, url, state, listener);
+			return;
+		}
+		Scheduler.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(state.isCanceled())
+				{
+					listener.onFailed(new InterruptedIOException("Request canceled: " + url));
+					return;
+				}
+				executeNonBlocking(transport, config, request, url, state, listener);
+			}
+		}, delay);
+	}
+	
+	/**
+	 * report the failure of a request let through the circuit breaker, a canceled request is not counted
+	 * @param permit the permit of the request, null when there is no circuit breaker or the request was not let through
+	 * @param e
+	 * @param state
+	 */
+	private static void reportFailure(CircuitBreaker.Permit permit, Exception e, CallState state)
+	{
+		if(permit==null) return;
+		if(state.isCanceled()) permit.onCanceled();
+		else permit.onException(ExceptionStatus.fromException(e));
+	}
+	
+	/**
+	 * record the status and the entity of the response on this client
+	 * @param response
+	 */
+	private void recordResponse(ApiResponse response)
+	{
+		fullUrl = response.getUrl();
+		mResponseCode = response.getStatusCode();
+		mReponseStatusLine = response.getStatusLine();
+		mResponseEntity = response.getEntity();
+		mReponseContentLength = response.getContentLength();
+	}
+	
+	/**
+	 * log the failure of the request
+	 * @param e
+	 * @param url
+	 * @return the user readable exception message
+	 */
+	protected static String recordException(Exception e, String url)
+	{
+		String message;
+		if(e instanceof ClientProtocolException)
+		{
+			Logger.error("E0001:RestClient:ClientProtocolException:executeRequest: " + url + "\n" + e.getMessage());
+			message = "There was an error requesting information from the servers. [E0001]";
+			if(e.getCause()!=null) Logger.error(e.getCause().getLocalizedMessage());
+		}
+		else if(e instanceof UnresolvedAddressException)
+		{
+			Logger.error("E0002:RestClient:UnresolvedAddressException:executeRequest: " + url + "\n" + e.getMessage());
+			message = "There was an error resolving the server internet address. [E0002]";
+		}
+		else if(e instanceof UnknownHostException)
+		{
+			Logger.error("E0003:RestClient:UnknownHostException:executeRequest: " + url + "\n" + e.getMessage());
+			message = "There was an error resolving the server internet address. [E0003]";
+		}
+		else if(e instanceof PortUnreachableException)
+		{
+			Logger.debug("E0004:RestClient:NoRouteToHostException:executeRequest: " + url + "\n" + e.getMessage());
+			message = "There was an error finding a route to the server. An intermediate router, access point or gateway may be failing or a firewall is blocking the connection to the internet. [E0004]";
+		}
+		else if(e instanceof NoRouteToHostException)
+		{
+			Logger.debug("E0005:RestClient:NoRouteToHostException:executeRequest: " + url + "\n" + e.getMessage());
+			message = "There was an error finding a route to the server. An intermediate router, access point or gateway may be failing or a firewall is blocking the connection to the internet. [E0004]";
+		}
+		else if(e instanceof ConnectTimeoutException)
+		{
+			Logger.error("E0006:RestClient:ConnectTimeoutException:executeRequest: " + url + "\n" + e.getMessage());
+			message = "The attempt to connect to the server has timed out. The server is temporarily busy or otherwise congested at this time. [E0005]";
+		}
+		else if(e instanceof SocketTimeoutException)
+		{
+			Logger.error("E0007:RestClient:SocketTimeoutException:executeRequest: " + url +"\n" + e.getMessage());
+			message = "The connection with the server has timed out. This could be due to a slow connection or poor signal strength. [E0006]";
+		}
+		else if(e instanceof ConnectionClosedException)
+		{
+			Logger.error("E0008:RestClient:ConnectionClosedException:executeRequest: " + url +"\n" + e.getMessage());
+			message = "The internet connection as closed unexpectedly. This could be due to a slow connection or poor signal strength. [E0007]";
+		}
+		else if(e instanceof FileNotFoundException)
+		{
+			Logger.error("E0009:RestClient:FileNotFoundException:executeRequest: " + url +"\n" + e.getMessage());
+			message = "The file requested was not found. [E0008]";
+		}
+		else if(e instanceof RateLimitExceededException)
+		{
+			Logger.error("E0012:RestClient:RateLimitExceededException:executeRequest: " + url + "\n" + e.getMessage());
+			message = "Too many requests were sent, please try again in a moment. [E0011]";
+		}
+		else if(e instanceof CircuitOpenException)
+		{
+			Logger.error("E0013:RestClient:CircuitOpenException:executeRequest: " + url + "\n" + e.getMessage());
+			message = "The server is not responding at this time, please try again later. [E0012]";
+		}
+		else if(e instanceof DeadlineExceededException)
+		{
+			Logger.error("E0014:RestClient:DeadlineExceededException:executeRequest: " + url + "\n" + e.getMessage());
+			message = "The server took too long to respond. This could be due to a slow connection or poor signal strength. [E0013]";
+		}
+		else if(e instanceof IOException)
+		{
+			Logger.error("E0010:RestClient:IOException:executeRequest: " + url + "\n" + e.getMessage());
+			message = "There is a problem with internet connection, please check your internet connection. [E0009]";
+		}
+		else
+		{
+			Logger.error("E0011:RestClient:Exception:executeRequest: " + url + "\n" + e.getMessage());
+			message = "Unexpected error occurred ("+e.getMessage()+"). [E0010]";
+		}
+		return message;
+	}
+	
+	/**
+	 * get the host of the given uri
+	 * @param uri
+	 * @return the host, or null if the uri is not valid
+	 */
+	protected static String getHost(String uri)
+	{
+		if(uri==null) return null;
+		try
+		{
+			return new URI(uri).getHost();
+		}
+		catch(URISyntaxException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * get the configuration of the pooled http client used by this request
+	 * @return
+	 */
+	protected HttpClientConfig getHttpClientConfig()
+	{
+		return new HttpClientConfig.Builder()
+				.setConnectionTimeout(mConnectionTimeout)
+				.setSocketTimeout(mSocketTimeout)
+				.setTrustAllCertificates(mTrustAllCertificates)
+				.setSslSessionCacheSize(mSslSessionCacheSize)
+				.setSslSessionTimeout(mSslSessionTimeout)
+				.setMaxTotalConnections(mMaxTotalConnections)
+				.setMaxConnectionsPerHost(mMaxConnectionsPerHost)
+				.setKeepAliveDuration(mKeepAliveDuration)
+				.setIdleConnectionTimeout(mIdleConnectionTimeout)
+				.setHostResolver(mHostResolver)
+				.setConnectAttemptDelay(mConnectAttemptDelay)
+				.setTcpNoDelay(mTcpNoDelay)
+				.setSendBufferSize(mSendBufferSize)
+				.setReceiveBufferSize(mReceiveBufferSize)
+				.setStaleCheckingEnabled(mStaleCheckingEnabled)
+				.setSocketLinger(mSocketLinger)
+				.build();
 	}
 
 	@Override
@@ -483,41 +1173,50 @@ abstract class RestClient extends BaseClient
 	}
 	
 	/**
-	 * 
-	 * @param entity
+	 * read the transport response into an {@link ApiResponse}, the transport response is closed
+	 * @param url the full url the request was sent to
+	 * @param response
+	 * @param signal the signal of the request, or null
 	 * @return
-	 * @throws IllegalStateException
-	 * @throws IOException
+	 * @throws InterruptedIOException if the request is canceled while its content is read
+	 * @throws IOException if the content could not be read, so the failure is retried and reported like a failed request
 	 */
-	private String readEntity(HttpEntity entity) throws IllegalStateException, IOException 
+	private static ApiResponse toResponse(String url, TransportResponse response, CancellationSignal signal) throws IOException
 	{
-		return HttpEntityHelper.readEntityAsString(entity);
+		return new ApiResponse(url, response.getStatusCode(), response.getReasonPhrase(), toResponseEntity(url, response, signal));
 	}
 	
-	private ResponseEntity iniResponseEntity(HttpEntity httpEntity)
+	private static ResponseEntity toResponseEntity(String url, TransportResponse response, CancellationSignal signal) throws IOException
 	{
-		ResponseEntityImpt responseEntity = new ResponseEntityImpt();
-		if(httpEntity!=null)
+		try
 		{
-			responseEntity.setStreaming(httpEntity.isStreaming());
-			responseEntity.setRepeatable(httpEntity.isRepeatable());
-			responseEntity.setContentLength(httpEntity.getContentLength());
-			responseEntity.setChuncked(httpEntity.isChunked());
-			String strEntity = null;
+			if(!response.hasEntity())
+			{
+				return null;
+			}
+			ResponseEntityImpt responseEntity = new ResponseEntityImpt();
+			responseEntity.setStreaming(response.isStreaming());
+			responseEntity.setRepeatable(response.isRepeatable());
+			responseEntity.setContentLength(response.getContentLength());
+			responseEntity.setChuncked(response.isChunked());
 			try
 			{
-				strEntity = readEntity(httpEntity);}
-			catch(Exception ex)
+				responseEntity.setContent(HttpEntityHelper.readStreamAsBytes(response.getContent(), response.getContentLength()));
+			}
+			catch(IOException ex)
 			{
-				Logger.printStackTrace(ex);
+				// a read aborted on purpose is reported as canceled
+				if(signal!=null) signal.throwIfCanceled(url);
+				throw ex;
 			}
-			responseEntity.setStrEntity(strEntity);
-			Header header = httpEntity.getContentType();
-			if(header!=null)
+			String contentType = response.getContentType();
+			if(contentType!=null)
 			{
-				responseEntity.getResponseHeaderImpt().setName(httpEntity.getContentType().getName());
-				responseEntity.getResponseHeaderImpt().setValue(httpEntity.getContentType().getValue());
-				responseEntity.getResponseHeaderImpt().setElements(httpEntity.getContentType().getElements());
+				HeaderElement[] elements = BasicHeaderValueParser.parseElements(contentType, null);
+				responseEntity.getResponseHeaderImpt().setName(HTTP.CONTENT_TYPE);
+				responseEntity.getResponseHeaderImpt().setValue(contentType);
+				responseEntity.getResponseHeaderImpt().setElements(elements);
+				responseEntity.setCharset(HttpEntityHelper.getCharset(elements));
 			}
 			else
 			{
@@ -525,9 +1224,392 @@ abstract class RestClient extends BaseClient
 			}
 			return responseEntity;
 		}
-		else 
+		finally
+		{
+			response.close();
+		}
+	}
+	
+	/**
+	 * the state of one execution: the retries left, the message of the last failure, the cancellation signal and the deadline.
+	 * the signal of a request with a deadline is canceled by the signal of the caller or by the deadline
+	 */
+	private final class CallState implements ApiResponse.StreamListener
+	{
+		final CancellationSignal	signal;
+		final long					deadline;
+		private final Future<?>		deadlineTimer;
+		private volatile boolean	deadlineExceeded;
+		final RetryPolicy			retryPolicy				= mRetryPolicy;
+		int							retries;
+		boolean						streaming;				// the content of the response is not read, SEE ApiResponse#isStreaming()
+		int							connectionTimeoutRetry	= mEnableConntectionTimeoutRetry ? mConnectionTimeoutRetry : 0;
+		int							socketTimeoutRetry		= mEnableSocketTimeoutRetry ? mSocketTimeoutRetry : 0;
+		String						exceptionMessage;
+
+		CallState(CancellationSignal signal)
+		{
+			this(signal, true);
+		}
+
+		/**
+		 * @param signal the signal that aborts the request, or null
+		 * @param root true for the state of a request, counted in the retry budget and bound by the deadline,
+		 * false for the copy of a hedged request
+		 */
+		CallState(CancellationSignal signal, boolean root)
+		{
+			this.deadline = root ? mRequestDeadline : 0;
+			if(deadline>0)
+			{
+				final CancellationSignal callSignal = new CancellationSignal();
+				if(signal!=null)
+				{
+					signal.setOnCancelListener(new CancellationSignal.OnCancelListener()
+					{
+						@Override
+						public void onCancel()
+						{
+							callSignal.cancel();
+						}
+					});
+				}
+				this.signal = callSignal;
+				this.deadlineTimer = Scheduler.schedule(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						deadlineExceeded = true;
+						Logger.debug(TAG + ": request deadline of " + deadline + "ms exceeded, aborting the request");
+						callSignal.cancel();
+					}
+				}, deadline);
+			}
+			else
+			{
+				this.signal = signal;
+				this.deadlineTimer = null;
+			}
+			if(retryPolicy!=null && root) retryPolicy.onRequest();
+		}
+
+		/**
+		 * stop the deadline timer once the request is complete
+		 */
+		void finish()
+		{
+			if(deadlineTimer!=null) deadlineTimer.cancel(false);
+		}
+
+		boolean isDeadlineExceeded()
+		{
+			return deadlineExceeded;
+		}
+
+		@Override
+		public IOException onReadFailed(IOException e, String url)
+		{
+			return deadlineExceeded ? toDeadlineFailure(e, url) : e;
+		}
+
+		@Override
+		public void onClosed()
 		{
-			 return null;
+			finish();
 		}
+
+		/**
+		 * create the failure of a request aborted by its deadline
+		 * @param e the failure of the aborted request
+		 * @param url
+		 * @return
+		 */
+		DeadlineExceededException toDeadlineFailure(Exception e, String url)
+		{
+			DeadlineExceededException failure = new DeadlineExceededException("The request did not complete within its deadline of " + deadline + "ms: " + url, deadline);
+			failure.initCause(e);
+			return failure;
+		}
+
+		boolean isCanceled()
+		{
+			return signal!=null && signal.isCanceled();
+		}
+
+		/**
+		 * get the delay before the failed request is sent again. the retry policy decides when one is set,
+		 * otherwise the timeouts are retried right away as configured
+		 * @param method the request method
+		 * @param e the failure
+		 * @return milliseconds, or -1 when the request must not be sent again
+		 */
+		long getRetryDelay(Method method, Exception e)
+		{
+			if(retryPolicy==null) return consumeRetry(e) ? 0 : -1;
+			long delay = retryPolicy.getRetryDelay(method, ExceptionStatus.fromException(e), retries);
+			if(delay>=0) Logger.debug("RestClient:" + e.getClass().getSimpleName() + ":retry " + (++retries) + " of " + retryPolicy.getMaxRetries() + " in " + delay + "ms");
+			return delay;
+		}
+
+		/**
+		 * get the delay before the request that received the given status code is sent again, only the retry policy
+		 * retries status codes
+		 * @param method the request method
+		 * @param statusCode
+		 * @return milliseconds, or -1 when the response must be returned
+		 */
+		long getRetryDelay(Method method, int statusCode)
+		{
+			if(retryPolicy==null) return -1;
+			long delay = retryPolicy.getRetryDelay(method, statusCode, retries);
+			if(delay>=0) Logger.debug("RestClient:status " + statusCode + ":retry " + (++retries) + " of " + retryPolicy.getMaxRetries() + " in " + delay + "ms");
+			return delay;
+		}
+
+		/**
+		 * wait before a retry, this is blocking code
+		 * @param delay milliseconds
+		 * @param url the request url, for the messages
+		 * @throws InterruptedIOException if the request is canceled or the thread interrupted while waiting
+		 */
+		void await(long delay, String url) throws InterruptedIOException
+		{
+			if(delay<=0) return;
+			final Object lock = new Object();
+			if(signal!=null)
+			{
+				signal.setOnCancelListener(new CancellationSignal.OnCancelListener()
+				{
+					@Override
+					public void onCancel()
+					{
+						synchronized(lock)
+						{
+							lock.notifyAll();
+						}
+					}
+				});
+			}
+			long deadline = System.currentTimeMillis() + delay;
+			synchronized(lock)
+			{
+				while(true)
+				{
+					if(signal!=null) signal.throwIfCanceled(url);
+					long left = deadline - System.currentTimeMillis();
+					if(left<=0) return;
+					try
+					{
+						lock.wait(left);
+					}
+					catch(InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while waiting to retry " + url);
+					}
+				}
+			}
+		}
+
+		/**
+		 * check if the failed request should be sent again, a connect timeout uses up a connection timeout retry
+		 * and a read timeout a socket timeout retry
+		 * @param e the failure
+		 * @return true if a retry is left
+		 */
+		boolean consumeRetry(Exception e)
+		{
+			if(e instanceof ConnectTimeoutException && connectionTimeoutRetry>0)
+			{
+				connectionTimeoutRetry--;
+				Logger.debug("RestClient:ConnectTimeoutException:remain try count: " + connectionTimeoutRetry);
+				return true;
+			}
+			if(e instanceof SocketTimeoutException && !(e instanceof ConnectTimeoutException) && socketTimeoutRetry>0)
+			{
+				socketTimeoutRetry--;
+				Logger.debug("RestClient:SocketTimeoutException:remain try count: " + socketTimeoutRetry);
+				return true;
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * the copies of one hedged request: the first response wins and the other copy is aborted,
+	 * the request fails when every copy sent failed
+	 */
+	private final class Hedge
+	{
+		final HedgePolicy				hedgePolicy;
+		final String					url;
+		final CallState					state;
+		final ExecutionListener			listener;		// null for the blocking path
+		final CancellationSignal[]		signals			= { new CancellationSignal(), new CancellationSignal() };
+		final CallState[]				states			= new CallState[2];
+		final Exception[]				failures		= new Exception[2];
+		// the first copy is sent right after the hedge is created
+		final long						start			= System.currentTimeMillis();
+		int								launched;
+		int								completed;
+		boolean							done;
+		ApiResponse						response;
+		Exception						failure;
+
+		Hedge(HedgePolicy hedgePolicy, String url, CallState state, ExecutionListener listener)
+		{
+			this.hedgePolicy = hedgePolicy;
+			this.url = url;
+			this.state = state;
+			this.listener = listener;
+			for(int i=0; i<states.length; i++)
+			{
+				states[i] = new CallState(signals[i], false);
+			}
+			if(state.signal!=null)
+			{
+				state.signal.setOnCancelListener(new CancellationSignal.OnCancelListener()
+				{
+					@Override
+					public void onCancel()
+					{
+						for(CancellationSignal signal : signals)
+						{
+							signal.cancel();
+						}
+					}
+				});
+			}
+		}
+
+		/**
+		 * claim the next copy
+		 * @return the index of the copy, or -1 when the request is done
+		 */
+		synchronized int launch()
+		{
+			if(done || launched==signals.length) return -1;
+			return launched++;
+		}
+
+		synchronized boolean isDone()
+		{
+			return done;
+		}
+
+		/**
+		 * send a copy with a transport that blocks, this is blocking code
+		 */
+		void sendCopy(int copy, HttpTransport transport, HttpClientConfig config, TransportRequest request)
+		{
+			try
+			{
+				ApiResponse response = send(transport, config, request.newBuilder().setCancellationSignal(signals[copy]).build(), url, states[copy]);
+				complete(copy, response, null);
+			}
+			catch(Exception e)
+			{
+				complete(copy, null, e);
+			}
+		}
+
+		/**
+		 * send a copy without blocking
+		 */
+		void sendCopy(final int copy, AsyncHttpTransport transport, HttpClientConfig config, TransportRequest request)
+		{
+			executeNonBlocking(transport, config, request.newBuilder().setCancellationSignal(signals[copy]).build(), url, states[copy], new ExecutionListener()
+			{
+				@Override
+				public void onExecuted(ApiResponse response)
+				{
+					complete(copy, response, null);
+				}
+
+				@Override
+				public void onFailed(Exception e)
+				{
+					complete(copy, null, e);
+				}
+			});
+		}
+
+		/**
+		 * complete a copy, the first response or the last failure completes the request.
+		 * the first response records one latency sample for the request, timed from the first copy, so a response to
+		 * the hedge counts at least the hedge delay and the delay does not drift down
+		 */
+		void complete(int copy, ApiResponse response, Exception failure)
+		{
+			synchronized(this)
+			{
+				completed++;
+				if(done) return;
+				if(response==null)
+				{
+					failures[copy] = failure;
+					if(completed<launched) return;
+					// the failure of the first copy is reported
+					int reported = (failures[0]!=null) ? 0 : copy;
+					this.failure = failures[reported];
+					state.exceptionMessage = states[reported].exceptionMessage;
+				}
+				else
+				{
+					hedgePolicy.onResponse(url, System.currentTimeMillis() - start);
+				}
+				this.response = response;
+				done = true;
+				notifyAll();
+			}
+			for(int i=0; i<signals.length; i++)
+			{
+				if(i!=copy) signals[i].cancel();
+			}
+			if(listener==null) return;
+			if(response!=null) listener.onExecuted(response);
+			else listener.onFailed(this.failure);
+		}
+
+		/**
+		 * wait for the outcome of the copies
+		 * @return the first response
+		 * @throws Exception the failure of the request
+		 */
+		synchronized ApiResponse await() throws Exception
+		{
+			while(!done)
+			{
+				try
+				{
+					wait();
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for " + url);
+				}
+			}
+			if(failure!=null) throw failure;
+			return response;
+		}
+	}
+	
+	/**
+	 * interface to receive the outcome of {@link RestClient#executeNonBlocking(ApiRequest, CancellationSignal, boolean, ExecutionListener)}
+	 */
+	protected interface ExecutionListener
+	{
+		/**
+		 * called once the response is read
+		 * @param response the response
+		 */
+		public abstract void onExecuted(ApiResponse response);
+		/**
+		 * called when the request failed and no retry is left
+		 * @param e the failure
+		 */
+		public abstract void onFailed(Exception e);
 	}
-}
+}
\ No newline at end of file
@@ -0,0 +1,14 @@
+package ca.sukhni.net.android.api.executor;
+
+/**
+ * priority of a request waiting for a worker of the {@link RequestExecutor}, a higher priority is always taken first
+ * <li>HIGH: user facing calls, the user is waiting for the result</li>
+ * <li>NORMAL: the default</li>
+ * <li>LOW: background work such as sync and prefetching</li>
+ * @author malsukhni
+ *
+ */
+public enum Priority
+{
+	HIGH, NORMAL, LOW;
+}
@@ -0,0 +1,292 @@
+package ca.sukhni.net.android.api.executor;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.sukhni.net.android.logger.Logger;
+
+/**
+ * bounded pool of worker threads that runs blocking requests in priority order.
+ * <p>the pool has a fixed number of workers, idle workers die after the keep alive time. waiting tasks are queued
+ * by {@link Priority} then in order of arrival, up to the queue limit if there is one. a task that does not fit is handed
+ * to the rejection policy, i.e. {@link ThreadPoolExecutor.AbortPolicy} throws a {@link RejectedExecutionException}.
+ * the default executor has no queue limit so it never rejects a task while it runs.</p>
+ * <p>the queue depth and the time tasks wait for a worker are reported for diagnostics.</p>
+ * @author malsukhni
+ *
+ */
+public class RequestExecutor
+{
+	public static final String					TAG						= RequestExecutor.class.getSimpleName();
+	public static final int						DEFAULT_POOL_SIZE		= 4;
+	public static final int						DEFAULT_QUEUE_LIMIT		= 64;
+	public static final int						UNBOUNDED_QUEUE			= 0;
+	public static final long					KEEP_ALIVE_TIME			= 30 * 1000;
+
+	private static RequestExecutor				sDefault;
+
+	private final ThreadPoolExecutor			executor;
+	private final int							queueLimit;
+	private final AtomicLong					sequence		= new AtomicLong();
+	private final AtomicLong					executed		= new AtomicLong();
+	private final AtomicLong					rejected		= new AtomicLong();
+	private final AtomicLong					totalWaitTime	= new AtomicLong();
+	private final AtomicLong					maxWaitTime		= new AtomicLong();
+
+	/**
+	 * get the shared executor used by default, it has {@link #DEFAULT_POOL_SIZE} workers and an unbounded queue.
+	 * to reject tasks under load set an executor with a queue limit, i.e. {@link #DEFAULT_QUEUE_LIMIT}, on the client
+	 * @return
+	 */
+	public static synchronized RequestExecutor getDefault()
+	{
+		if(sDefault==null)
+		{
+			sDefault = new RequestExecutor(DEFAULT_POOL_SIZE, UNBOUNDED_QUEUE, new ThreadPoolExecutor.AbortPolicy());
+		}
+		return sDefault;
+	}
+
+	/**
+	 * @param poolSize maximum number of worker threads
+	 * @param queueLimit maximum number of tasks waiting for a worker, {@link #UNBOUNDED_QUEUE} for no limit
+	 * @param rejectionPolicy called with the task when the queue is full or the executor is shut down,
+	 * i.e. {@link ThreadPoolExecutor.AbortPolicy} or {@link ThreadPoolExecutor.CallerRunsPolicy}
+	 */
+	public RequestExecutor(int poolSize, int queueLimit, final RejectedExecutionHandler rejectionPolicy)
+	{
+		if(poolSize<=0) throw new IllegalArgumentException("Pool size must be positive");
+		this.queueLimit = queueLimit;
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+				new BoundedPriorityQueue(queueLimit), new ThreadFactory()
+				{
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r)
+					{
+						Thread thread = new Thread(r, TAG + "-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new RejectedExecutionHandler()
+				{
+					@Override
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+					{
+						rejected.incrementAndGet();
+						Logger.debug(TAG + ": rejected a task, queue depth " + executor.getQueue().size());
+						rejectionPolicy.rejectedExecution(r, executor);
+					}
+				})
+		{
+			@Override
+			protected void beforeExecute(Thread t, Runnable r)
+			{
+				super.beforeExecute(t, r);
+				recordWait(((Task) r).queuedAt);
+			}
+		};
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * run the task on a worker thread
+	 * @param task
+	 * @param priority the priority of the task in the queue, null means {@link Priority#NORMAL}
+	 * @throws RejectedExecutionException by {@link ThreadPoolExecutor.AbortPolicy}, if the queue is full or the executor is shut down
+	 */
+	public void execute(Runnable task, Priority priority)
+	{
+		executor.execute(new Task(task, (priority!=null) ? priority : Priority.NORMAL, sequence.incrementAndGet()));
+	}
+
+	private void recordWait(long queuedAt)
+	{
+		long wait = System.currentTimeMillis() - queuedAt;
+		executed.incrementAndGet();
+		totalWaitTime.addAndGet(wait);
+		long max;
+		while(wait>(max = maxWaitTime.get()) && !maxWaitTime.compareAndSet(max, wait))
+		{
+			// retry, another worker updated the maximum
+		}
+	}
+
+	/**
+	 * get the maximum number of worker threads
+	 * @return
+	 */
+	public int getPoolSize()
+	{
+		return executor.getMaximumPoolSize();
+	}
+
+	/**
+	 * change the maximum number of worker threads
+	 * @param poolSize
+	 */
+	public void setPoolSize(int poolSize)
+	{
+		if(poolSize>executor.getMaximumPoolSize())
+		{
+			executor.setMaximumPoolSize(poolSize);
+			executor.setCorePoolSize(poolSize);
+		}
+		else
+		{
+			executor.setCorePoolSize(poolSize);
+			executor.setMaximumPoolSize(poolSize);
+		}
+	}
+
+	/**
+	 * get the maximum number of tasks waiting for a worker
+	 * @return the limit, {@link #UNBOUNDED_QUEUE} for no limit
+	 */
+	public int getQueueLimit()
+	{
+		return queueLimit;
+	}
+
+	/**
+	 * get the number of tasks waiting for a worker
+	 * @return
+	 */
+	public int getQueueDepth()
+	{
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * get the number of workers running a task
+	 * @return
+	 */
+	public int getActiveCount()
+	{
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * get the number of tasks handed to a worker since the last reset
+	 * @return
+	 */
+	public long getExecutedCount()
+	{
+		return executed.get();
+	}
+
+	/**
+	 * get the number of tasks rejected since the last reset
+	 * @return
+	 */
+	public long getRejectedCount()
+	{
+		return rejected.get();
+	}
+
+	/**
+	 * get the average time in milliseconds a task waited for a worker since the last reset
+	 * @return
+	 */
+	public long getAverageWaitTime()
+	{
+		long count = executed.get();
+		return (count>0) ? totalWaitTime.get() / count : 0;
+	}
+
+	/**
+	 * get the longest time in milliseconds a task waited for a worker since the last reset
+	 * @return
+	 */
+	public long getMaxWaitTime()
+	{
+		return maxWaitTime.get();
+	}
+
+	/**
+	 * reset the counters and the wait times
+	 */
+	public void resetStats()
+	{
+		executed.set(0);
+		rejected.set(0);
+		totalWaitTime.set(0);
+		maxWaitTime.set(0);
+	}
+
+	/**
+	 * stop accepting tasks, the queued tasks still run
+	 */
+	public void shutdown()
+	{
+		executor.shutdown();
+	}
+
+	@Override
+	public String toString()
+	{
+		return TAG + "(poolSize=" + getPoolSize() + ", active=" + getActiveCount() + ", queueDepth=" + getQueueDepth()
+				+ ", executed=" + getExecutedCount() + ", rejected=" + getRejectedCount()
+				+ ", averageWait=" + getAverageWaitTime() + "ms, maxWait=" + getMaxWaitTime() + "ms)";
+	}
+
+	/**
+	 * a queued task, ordered by priority then by arrival
+	 */
+	private static final class Task implements Runnable, Comparable<Task>
+	{
+		final Runnable					runnable;
+		final Priority					priority;
+		final long						sequence;
+		final long						queuedAt		= System.currentTimeMillis();
+
+		Task(Runnable runnable, Priority priority, long sequence)
+		{
+			this.runnable = runnable;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public void run()
+		{
+			runnable.run();
+		}
+
+		@Override
+		public int compareTo(Task other)
+		{
+			if(priority!=other.priority) return priority.ordinal() - other.priority.ordinal();
+			return (sequence<other.sequence) ? -1 : ((sequence==other.sequence) ? 0 : 1);
+		}
+	}
+
+	/**
+	 * priority queue that refuses new tasks beyond its limit, so the executor applies its rejection policy. no limit when it is not positive
+	 */
+	private static final class BoundedPriorityQueue extends PriorityBlockingQueue<Runnable>
+	{
+		private static final long	serialVersionUID	= 1L;
+
+		private final int			limit;
+
+		BoundedPriorityQueue(int limit)
+		{
+			this.limit = limit;
+		}
+
+		@Override
+		public synchronized boolean offer(Runnable task)
+		{
+			if(limit>0 && size()>=limit) return false;
+			return super.offer(task);
+		}
+	}
+}
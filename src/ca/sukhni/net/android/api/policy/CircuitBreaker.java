@@ -0,0 +1,440 @@
+package ca.sukhni.net.android.api.policy;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.sukhni.net.android.api.client.ExceptionStatus;
+import ca.sukhni.net.android.api.client.Status;
+import ca.sukhni.net.android.logger.Logger;
+
+/**
+ * circuit breaker applied to the requests before they are sent, so the requests to a host that is down fail right away
+ * instead of waiting out the connect and socket timeouts.
+ * <p>each host has its own circuit. while it is closed the outcomes of the last requests are kept, when enough of them
+ * failed the circuit opens and the requests fail with a {@link CircuitOpenException} without being sent. once the open
+ * duration is over the circuit is half open: a few trial requests are sent, the circuit closes when they all succeed
+ * and opens again when one of them fails. only the outcomes of the trial requests decide, the late outcomes of requests
+ * sent before the circuit opened are ignored.</p>
+ * <p>every request let through holds a {@link Permit}, its outcome is reported on the permit.</p>
+ * <p>a request fails when it ends with one of the failure exception statuses, or with a failure status code,
+ * by default any 5xx. other outcomes, like a canceled request, are not counted.</p>
+ * @author malsukhni
+ *
+ */
+public class CircuitBreaker
+{
+	public static final String					TAG					= CircuitBreaker.class.getSimpleName();
+
+	/**
+	 * the states of the circuit of a host
+	 */
+	public enum State
+	{
+		/** the requests are sent and their outcomes counted */
+		CLOSED,
+		/** the requests fail without being sent */
+		OPEN,
+		/** the trial requests are sent, the others fail without being sent */
+		HALF_OPEN
+	}
+
+	private final double						failureRateThreshold;
+	private final int							minimumRequests;
+	private final int							windowSize;
+	private final long							openDuration;
+	private final int							trialRequests;
+	private final Set<ExceptionStatus>			failureExceptions;
+	private final Set<Integer>					failureStatusCodes;
+	private final Map<String, Circuit>			circuits			= new HashMap<String, Circuit>();
+	private final AtomicLong					opened				= new AtomicLong();
+	private final AtomicLong					rejected			= new AtomicLong();
+
+	private CircuitBreaker(Builder builder)
+	{
+		this.failureRateThreshold = builder.failureRateThreshold;
+		this.minimumRequests = Math.min(builder.minimumRequests, builder.windowSize);
+		this.windowSize = builder.windowSize;
+		this.openDuration = builder.openDuration;
+		this.trialRequests = builder.trialRequests;
+		this.failureExceptions = EnumSet.copyOf(builder.failureExceptions);
+		this.failureStatusCodes = (builder.failureStatusCodes!=null) ? new HashSet<Integer>(builder.failureStatusCodes) : null;
+	}
+
+	/**
+	 * get the state of the circuit of the host of the given url
+	 * @param url
+	 * @return
+	 */
+	public State getState(String url)
+	{
+		Circuit circuit = getCircuit(url, false);
+		return (circuit!=null) ? circuit.getState() : State.CLOSED;
+	}
+
+	/**
+	 * get the number of times a circuit opened
+	 * @return
+	 */
+	public long getOpenedCount()
+	{
+		return opened.get();
+	}
+
+	/**
+	 * get the number of requests failed without being sent
+	 * @return
+	 */
+	public long getRejectedCount()
+	{
+		return rejected.get();
+	}
+
+	/**
+	 * let a request through the circuit of its host. every request let through must report its outcome on the returned
+	 * permit with {@link Permit#onResponse(int)}, {@link Permit#onException(ExceptionStatus)} or {@link Permit#onCanceled()}
+	 * @param url the full request url
+	 * @return the permit of the request
+	 * @throws CircuitOpenException if the circuit is open, or half open with all its trial requests in flight
+	 */
+	public Permit acquire(String url) throws CircuitOpenException
+	{
+		Circuit circuit = getCircuit(url, true);
+		if(circuit==null) return new Permit(null, false, 0);
+		Permit permit = circuit.acquire(System.currentTimeMillis());
+		if(permit.wait>0)
+		{
+			rejected.incrementAndGet();
+			throw new CircuitOpenException("The circuit of " + circuit.host + " is open, request not sent to " + url, permit.wait);
+		}
+		return permit;
+	}
+
+	private Circuit getCircuit(String url, boolean create)
+	{
+		String host = Hosts.getKey(url);
+		if(host==null) return null;
+		synchronized(circuits)
+		{
+			Circuit circuit = circuits.get(host);
+			if(circuit==null && create)
+			{
+				circuit = new Circuit(host);
+				circuits.put(host, circuit);
+			}
+			return circuit;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return TAG + "(failureRate=" + failureRateThreshold + ", minimumRequests=" + minimumRequests + ", window=" + windowSize
+				+ ", openDuration=" + openDuration + "ms, trials=" + trialRequests + ", opened=" + opened.get() + ", rejected=" + rejected.get() + ")";
+	}
+
+	/**
+	 * the pass of one request through the circuit of its host, the outcome of the request is reported on it once.
+	 * a permit handed out while the circuit is half open is a trial, only the outcomes of trials close or open it again
+	 */
+	public final class Permit
+	{
+		private final Circuit			circuit;		// null when the url has no host
+		private final boolean			trial;
+		private final int				generation;		// the half open period of the trial
+		private final long				wait;			// milliseconds until a trial may be sent, when refused
+		private boolean					reported;
+
+		private Permit(Circuit circuit, boolean trial, int generation)
+		{
+			this(circuit, trial, generation, 0);
+		}
+
+		private Permit(Circuit circuit, boolean trial, int generation, long wait)
+		{
+			this.circuit = circuit;
+			this.trial = trial;
+			this.generation = generation;
+			this.wait = wait;
+		}
+
+		/**
+		 * check if the request is a trial request of a half open circuit
+		 * @return
+		 */
+		public boolean isTrial()
+		{
+			return trial;
+		}
+
+		/**
+		 * report the response of the request, a failure status code counts as a failure
+		 * @param statusCode
+		 */
+		public void onResponse(int statusCode)
+		{
+			if(!report()) return;
+			boolean failure = (failureStatusCodes!=null) ? failureStatusCodes.contains(statusCode) : (statusCode>=500 && statusCode<600);
+			circuit.record(this, failure);
+		}
+
+		/**
+		 * report the failure of the request, the statuses that are not failure statuses are not counted
+		 * @param status
+		 */
+		public void onException(ExceptionStatus status)
+		{
+			if(!report()) return;
+			if(failureExceptions.contains(status)) circuit.record(this, true);
+			else circuit.release(this);
+		}
+
+		/**
+		 * report that the request was canceled, it is not counted
+		 */
+		public void onCanceled()
+		{
+			if(report()) circuit.release(this);
+		}
+
+		private synchronized boolean report()
+		{
+			if(circuit==null || reported) return false;
+			reported = true;
+			return true;
+		}
+	}
+
+	/**
+	 * the state of one host and the outcomes of its last requests
+	 */
+	private final class Circuit
+	{
+		final String					host;
+		private final boolean[]			outcomes		= new boolean[windowSize];	// true for a failure
+		private int						count;
+		private int						next;
+		private int						failures;
+		private State					state			= State.CLOSED;
+		private long					openedAt;
+		private int						trials;			// trial requests let through since the circuit is half open
+		private int						succeeded;		// trial requests succeeded
+		private int						generation;		// counts the half open periods, so late trials are told apart
+
+		Circuit(String host)
+		{
+			this.host = host;
+		}
+
+		synchronized State getState()
+		{
+			return state;
+		}
+
+		/**
+		 * @return the permit of the request, refused with the milliseconds until the circuit lets a trial request through
+		 */
+		synchronized Permit acquire(long now)
+		{
+			if(state==State.OPEN)
+			{
+				long left = openedAt + openDuration - now;
+				if(left>0) return new Permit(this, false, generation, left);
+				state = State.HALF_OPEN;
+				trials = 0;
+				succeeded = 0;
+				generation++;
+				Logger.debug(TAG + ": circuit of " + host + " half open");
+			}
+			if(state==State.HALF_OPEN)
+			{
+				// the trial requests in flight decide, try again shortly
+				if(trials>=trialRequests) return new Permit(this, false, generation, 1);
+				trials++;
+				return new Permit(this, true, generation);
+			}
+			return new Permit(this, false, generation);
+		}
+
+		private boolean isCurrentTrial(Permit permit)
+		{
+			return permit.trial && permit.generation==generation;
+		}
+
+		synchronized void record(Permit permit, boolean failure)
+		{
+			if(state==State.HALF_OPEN)
+			{
+				// a request sent before the circuit opened, or a trial of an earlier half open period
+				if(!isCurrentTrial(permit)) return;
+				if(failure) open(1, 1);
+				else if(++succeeded>=trialRequests) close();
+				return;
+			}
+			// a request sent before the circuit opened
+			if(state==State.OPEN) return;
+			if(count==outcomes.length)
+			{
+				if(outcomes[next]) failures--;
+			}
+			else
+			{
+				count++;
+			}
+			outcomes[next] = failure;
+			if(failure) failures++;
+			next = (next + 1) % outcomes.length;
+			if(count>=minimumRequests && failures>=failureRateThreshold * count) open(failures, count);
+		}
+
+		synchronized void release(Permit permit)
+		{
+			if(state==State.HALF_OPEN && isCurrentTrial(permit) && trials>0) trials--;
+		}
+
+		private void open(int failures, int count)
+		{
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+			reset();
+			opened.incrementAndGet();
+			Logger.debug(TAG + ": circuit of " + host + " open for " + openDuration + "ms after " + failures + " failures of " + count + " requests");
+		}
+
+		private void close()
+		{
+			state = State.CLOSED;
+			reset();
+			Logger.debug(TAG + ": circuit of " + host + " closed");
+		}
+
+		private void reset()
+		{
+			count = 0;
+			next = 0;
+			failures = 0;
+		}
+	}
+
+	/**
+	 * builder for {@link CircuitBreaker}, by default the circuit of a host opens for 30 seconds when half of its
+	 * last 20 requests failed, after at least 5 requests, and closes after 1 successful trial request
+	 * @author malsukhni
+	 *
+	 */
+	public static class Builder
+	{
+		private double					failureRateThreshold	= 0.5;
+		private int						minimumRequests			= 5;
+		private int						windowSize				= 20;
+		private long					openDuration			= 30000;
+		private int						trialRequests			= 1;
+		private Set<ExceptionStatus>	failureExceptions		= EnumSet.of(
+				ExceptionStatus.NO_ROUTE_TO_HOST_EXCEPTION,
+				ExceptionStatus.PORT_UNREACHABLE_EXCEPTION,
+				ExceptionStatus.CONNECT_TIMEOUT_EXCEPTION,
+				ExceptionStatus.SOCKET_TIMEOUT_EXCEPTION,
+				ExceptionStatus.CONNECTION_CLOSED_EXCEPTION,
+				ExceptionStatus.IO_EXCEPTION);
+		private Set<Integer>			failureStatusCodes		= null;
+
+		/**
+		 * set the rate of failed requests that opens the circuit
+		 * @param failureRateThreshold in (0,1]
+		 * @return
+		 */
+		public Builder setFailureRateThreshold(double failureRateThreshold)
+		{
+			if(failureRateThreshold<=0 || failureRateThreshold>1) throw new IllegalArgumentException("The failure rate must be in (0,1]: " + failureRateThreshold);
+			this.failureRateThreshold = failureRateThreshold;
+			return this;
+		}
+
+		/**
+		 * set the number of outcomes needed before the failure rate can open the circuit
+		 * @param minimumRequests
+		 * @return
+		 */
+		public Builder setMinimumRequests(int minimumRequests)
+		{
+			this.minimumRequests = Math.max(minimumRequests, 1);
+			return this;
+		}
+
+		/**
+		 * set the number of last outcomes the failure rate is computed on
+		 * @param windowSize
+		 * @return
+		 */
+		public Builder setWindowSize(int windowSize)
+		{
+			this.windowSize = Math.max(windowSize, 1);
+			return this;
+		}
+
+		/**
+		 * set how long the circuit stays open before the trial requests are sent
+		 * @param openDuration milliseconds
+		 * @return
+		 */
+		public Builder setOpenDuration(long openDuration)
+		{
+			this.openDuration = Math.max(openDuration, 0);
+			return this;
+		}
+
+		/**
+		 * set the number of trial requests sent while the circuit is half open, they must all succeed to close it
+		 * @param trialRequests
+		 * @return
+		 */
+		public Builder setTrialRequests(int trialRequests)
+		{
+			this.trialRequests = Math.max(trialRequests, 1);
+			return this;
+		}
+
+		/**
+		 * set the exception statuses counted as failures, the default are the statuses of a host that cannot be reached:
+		 * no route, port unreachable, connect timeout, socket timeout, connection closed and io exception
+		 * @param statuses
+		 * @return
+		 */
+		public Builder setFailureExceptions(ExceptionStatus... statuses)
+		{
+			this.failureExceptions = EnumSet.noneOf(ExceptionStatus.class);
+			for(ExceptionStatus status : statuses)
+			{
+				failureExceptions.add(status);
+			}
+			return this;
+		}
+
+		/**
+		 * set the response statuses counted as failures, the default is any 5xx status code
+		 * @param statuses
+		 * @return
+		 */
+		public Builder setFailureStatuses(Status... statuses)
+		{
+			this.failureStatusCodes = new HashSet<Integer>();
+			for(Status status : statuses)
+			{
+				failureStatusCodes.add(status.code());
+			}
+			return this;
+		}
+
+		/**
+		 * build the circuit breaker
+		 * @return
+		 */
+		public CircuitBreaker build()
+		{
+			return new CircuitBreaker(this);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package ca.sukhni.net.android.api.policy;
+
+import java.io.IOException;
+
+/**
+ * signals that a request was not sent because the circuit of its host is open, SEE {@link CircuitBreaker}
+ * @author malsukhni
+ *
+ */
+public class CircuitOpenException extends IOException
+{
+	private static final long	serialVersionUID	= 1L;
+
+	private final long			retryAfter;
+
+	/**
+	 * @param message
+	 * @param retryAfter milliseconds until the circuit lets a trial request through
+	 */
+	public CircuitOpenException(String message, long retryAfter)
+	{
+		super(message);
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * get the milliseconds until the circuit lets a trial request through
+	 * @return
+	 */
+	public long getRetryAfter()
+	{
+		return retryAfter;
+	}
+}
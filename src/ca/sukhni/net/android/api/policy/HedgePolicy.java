@@ -0,0 +1,247 @@
+package ca.sukhni.net.android.api.policy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * decides when a GET request that is slow to respond is sent a second time, the first response wins and the other
+ * copy is aborted. this cuts the latency of the requests that hit a slow server node, at the cost of a few extra requests.
+ * <p>each host has its own hedge delay: the percentile of the latencies of its last responses, i.e. with the 95th
+ * percentile a copy is sent for the 5% slowest requests. until enough latencies are known the initial delay is used.</p>
+ * <p>the copies are limited by a budget per host: over the last 10 seconds the copies may not exceed a ratio
+ * of the requests of the host, so the load of a slow host is not doubled.</p>
+ * @author malsukhni
+ *
+ */
+public class HedgePolicy
+{
+	public static final String					TAG					= HedgePolicy.class.getSimpleName();
+
+	private final double						percentile;
+	private final long							initialDelay;
+	private final long							minDelay;
+	private final int							sampleSize;
+	private final int							minSamples;
+	private final double						budgetRatio;
+	private final int							budgetMinPerSecond;
+	private final Map<String, Host>				hosts				= new HashMap<String, Host>();
+	private final AtomicLong					hedged				= new AtomicLong();
+	private final AtomicLong					exhausted			= new AtomicLong();
+
+	private HedgePolicy(Builder builder)
+	{
+		this.percentile = builder.percentile;
+		this.initialDelay = builder.initialDelay;
+		this.minDelay = builder.minDelay;
+		this.sampleSize = builder.sampleSize;
+		this.minSamples = Math.min(builder.minSamples, builder.sampleSize);
+		this.budgetRatio = builder.budgetRatio;
+		this.budgetMinPerSecond = builder.budgetMinPerSecond;
+	}
+
+	/**
+	 * get the number of copies sent
+	 * @return
+	 */
+	public long getHedgedCount()
+	{
+		return hedged.get();
+	}
+
+	/**
+	 * get the number of copies not sent because the budget of the host was used up
+	 * @return
+	 */
+	public long getBudgetExhaustedCount()
+	{
+		return exhausted.get();
+	}
+
+	/**
+	 * count a request in the budget of its host and get the delay after which a copy may be sent
+	 * @param url the full request url
+	 * @return milliseconds, or -1 when the request is not hedged
+	 */
+	public long getHedgeDelay(String url)
+	{
+		Host host = getHost(url);
+		if(host==null) return -1;
+		return host.onRequest(System.currentTimeMillis());
+	}
+
+	/**
+	 * take a copy of a request from the budget of its host
+	 * @param url the full request url
+	 * @return false when the copy must not be sent
+	 */
+	public boolean tryHedge(String url)
+	{
+		Host host = getHost(url);
+		if(host==null) return false;
+		if(!host.budget.tryAcquire(System.currentTimeMillis()))
+		{
+			exhausted.incrementAndGet();
+			return false;
+		}
+		hedged.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * record the latency of a response, the hedge delay of the host follows the latencies of its responses
+	 * @param url the full request url
+	 * @param latency milliseconds from the time the request was sent
+	 */
+	public void onResponse(String url, long latency)
+	{
+		Host host = getHost(url);
+		if(host!=null) host.record(latency);
+	}
+
+	private Host getHost(String url)
+	{
+		String key = Hosts.getKey(url);
+		if(key==null) return null;
+		synchronized(hosts)
+		{
+			Host host = hosts.get(key);
+			if(host==null)
+			{
+				host = new Host();
+				hosts.put(key, host);
+			}
+			return host;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return TAG + "(percentile=" + percentile + ", initialDelay=" + initialDelay + "ms, minDelay=" + minDelay + "ms, hedged=" + hedged.get()
+				+ ", budgetExhausted=" + exhausted.get() + ")";
+	}
+
+	/**
+	 * the last latencies and the budget of one host
+	 */
+	private final class Host
+	{
+		final RequestBudget				budget			= new RequestBudget(budgetRatio, budgetMinPerSecond);
+		private final long[]			latencies		= new long[sampleSize];
+		private int						count;
+		private int						next;
+		private long					delay			= initialDelay;
+		private boolean					changed;
+
+		synchronized long onRequest(long now)
+		{
+			budget.onRequest(now);
+			if(changed && count>=minSamples)
+			{
+				long[] sorted = Arrays.copyOf(latencies, count);
+				Arrays.sort(sorted);
+				delay = Math.max(minDelay, sorted[(int) Math.min(count - 1, Math.floor(percentile * count))]);
+				changed = false;
+			}
+			return delay;
+		}
+
+		synchronized void record(long latency)
+		{
+			latencies[next] = latency;
+			next = (next + 1) % latencies.length;
+			if(count<latencies.length) count++;
+			changed = true;
+		}
+	}
+
+	/**
+	 * builder for {@link HedgePolicy}, by default a copy is sent when no response arrived after the 95th percentile
+	 * of the last 100 latencies of the host, or after 1 second until 20 latencies are known. the default budget
+	 * is 10% of the requests of the host
+	 * @author malsukhni
+	 *
+	 */
+	public static class Builder
+	{
+		private double					percentile			= 0.95;
+		private long					initialDelay		= 1000;
+		private long					minDelay			= 10;
+		private int						sampleSize			= 100;
+		private int						minSamples			= 20;
+		private double					budgetRatio			= 0.1;
+		private int						budgetMinPerSecond	= 0;
+
+		/**
+		 * set the percentile of the latencies of the host after which a copy is sent
+		 * @param percentile in (0,1), i.e. 0.95 for the 95th percentile
+		 * @return
+		 */
+		public Builder setPercentile(double percentile)
+		{
+			if(percentile<=0 || percentile>=1) throw new IllegalArgumentException("The percentile must be in (0,1): " + percentile);
+			this.percentile = percentile;
+			return this;
+		}
+
+		/**
+		 * set the delay used until enough latencies of the host are known
+		 * @param initialDelay milliseconds
+		 * @return
+		 */
+		public Builder setInitialDelay(long initialDelay)
+		{
+			this.initialDelay = Math.max(initialDelay, 0);
+			return this;
+		}
+
+		/**
+		 * set the shortest delay, so the requests to a fast host are not all sent twice
+		 * @param minDelay milliseconds
+		 * @return
+		 */
+		public Builder setMinDelay(long minDelay)
+		{
+			this.minDelay = Math.max(minDelay, 0);
+			return this;
+		}
+
+		/**
+		 * set the number of last latencies of a host the percentile is computed on, and how many are needed before it is used
+		 * @param sampleSize
+		 * @param minSamples
+		 * @return
+		 */
+		public Builder setSampleSize(int sampleSize, int minSamples)
+		{
+			this.sampleSize = Math.max(sampleSize, 1);
+			this.minSamples = Math.max(minSamples, 1);
+			return this;
+		}
+
+		/**
+		 * set the budget of each host: over the last 10 seconds the copies may not exceed the ratio of the requests
+		 * of the host plus the minimum copies per second
+		 * @param ratio the copies allowed per request, i.e. 0.1 for 10%
+		 * @param minHedgesPerSecond the copies allowed when few requests are sent
+		 * @return
+		 */
+		public Builder setHedgeBudget(double ratio, int minHedgesPerSecond)
+		{
+			this.budgetRatio = Math.max(ratio, 0);
+			this.budgetMinPerSecond = Math.max(minHedgesPerSecond, 0);
+			return this;
+		}
+
+		/**
+		 * build the hedge policy
+		 * @return
+		 */
+		public HedgePolicy build()
+		{
+			return new HedgePolicy(this);
+		}
+	}
+}
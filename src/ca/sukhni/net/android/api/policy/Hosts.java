@@ -0,0 +1,36 @@
+package ca.sukhni.net.android.api.policy;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+
+/**
+ * the host keys of the policies that keep a state per host
+ * @author malsukhni
+ *
+ */
+final class Hosts
+{
+	private Hosts()
+	{
+	}
+
+	/**
+	 * get the key of the host of the given url: the lower case host, followed by the port when the url has one
+	 * @param url
+	 * @return the key, or null when the url has no host
+	 */
+	static String getKey(String url)
+	{
+		try
+		{
+			URI uri = new URI(url);
+			if(uri.getHost()==null) return null;
+			return uri.getHost().toLowerCase(Locale.US) + ((uri.getPort()!=-1) ? ":" + uri.getPort() : "");
+		}
+		catch(URISyntaxException e)
+		{
+			return null;
+		}
+	}
+}
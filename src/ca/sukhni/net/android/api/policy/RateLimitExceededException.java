@@ -0,0 +1,34 @@
+package ca.sukhni.net.android.api.policy;
+
+import java.io.IOException;
+
+/**
+ * signals that a request was not sent because its host or endpoint is over its rate limit, SEE {@link RateLimiter}
+ * @author malsukhni
+ *
+ */
+public class RateLimitExceededException extends IOException
+{
+	private static final long	serialVersionUID	= 1L;
+
+	private final long			retryAfter;
+
+	/**
+	 * @param message
+	 * @param retryAfter milliseconds until a permit is available
+	 */
+	public RateLimitExceededException(String message, long retryAfter)
+	{
+		super(message);
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * get the milliseconds until a permit is available
+	 * @return
+	 */
+	public long getRetryAfter()
+	{
+		return retryAfter;
+	}
+}
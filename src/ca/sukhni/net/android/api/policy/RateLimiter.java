@@ -0,0 +1,307 @@
+package ca.sukhni.net.android.api.policy;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.sukhni.net.android.api.transport.CancellationSignal;
+
+/**
+ * token bucket rate limiter applied to the requests before they are sent.
+ * <p>each host has its own bucket: it holds up to burst permits and is refilled at the permits per second of its limit.
+ * a request takes one permit, when the bucket is empty the request waits for the next permit, or is rejected
+ * with a {@link RateLimitExceededException} when the wait would be longer than the max wait.</p>
+ * <p>the limit of a request is the default limit, or the limit of the longest pattern that matches its url.
+ * a pattern is a host, optionally followed by a path prefix: "api.example.com", "api.example.com/search".
+ * a host starting with "*." matches its sub domains: "*.example.com".</p>
+ * @author malsukhni
+ *
+ */
+public class RateLimiter
+{
+	public static final String					TAG					= RateLimiter.class.getSimpleName();
+
+	private final Limit							defaultLimit;
+	private final List<Limit>					limits;
+	private final long							maxWait;
+	private final Map<String, Bucket>			buckets				= new HashMap<String, Bucket>();
+	private final AtomicLong					delayed				= new AtomicLong();
+	private final AtomicLong					rejected			= new AtomicLong();
+
+	private RateLimiter(Builder builder)
+	{
+		this.defaultLimit = builder.defaultLimit;
+		this.limits = new ArrayList<Limit>(builder.limits);
+		this.maxWait = builder.maxWait;
+	}
+
+	/**
+	 * get the longest wait for a permit before a request is rejected
+	 * @return milliseconds, zero rejects the requests that find the bucket empty
+	 */
+	public long getMaxWait()
+	{
+		return maxWait;
+	}
+
+	/**
+	 * get the number of requests that waited for a permit
+	 * @return
+	 */
+	public long getDelayedCount()
+	{
+		return delayed.get();
+	}
+
+	/**
+	 * get the number of requests rejected
+	 * @return
+	 */
+	public long getRejectedCount()
+	{
+		return rejected.get();
+	}
+
+	/**
+	 * take a permit for the given url, waiting for it when the bucket is empty. this is blocking code
+	 * @param url the full request url
+	 * @param signal the signal of the request, canceling it ends the wait, may be null
+	 * @throws RateLimitExceededException if the wait would be longer than the max wait
+	 * @throws InterruptedIOException if the request is canceled or the thread interrupted while waiting
+	 */
+	public void acquire(String url, CancellationSignal signal) throws RateLimitExceededException, InterruptedIOException
+	{
+		long wait = reserve(url);
+		if(wait<=0) return;
+		final Object lock = new Object();
+		if(signal!=null)
+		{
+			signal.setOnCancelListener(new CancellationSignal.OnCancelListener()
+			{
+				@Override
+				public void onCancel()
+				{
+					synchronized(lock)
+					{
+						lock.notifyAll();
+					}
+				}
+			});
+		}
+		long deadline = System.currentTimeMillis() + wait;
+		synchronized(lock)
+		{
+			while(true)
+			{
+				if(signal!=null) signal.throwIfCanceled(url);
+				long left = deadline - System.currentTimeMillis();
+				if(left<=0) return;
+				try
+				{
+					lock.wait(left);
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for a permit for " + url);
+				}
+			}
+		}
+	}
+
+	/**
+	 * take a permit for the given url without waiting: the permit is reserved and the request must be sent
+	 * after the returned delay. SEE {@link Scheduler#schedule(Runnable, long)}
+	 * @param url the full request url
+	 * @return milliseconds to wait before the request is sent, zero to send it now
+	 * @throws RateLimitExceededException if the wait would be longer than the max wait
+	 */
+	public long reserve(String url) throws RateLimitExceededException
+	{
+		String host;
+		String path;
+		try
+		{
+			URI uri = new URI(url);
+			host = (uri.getHost()!=null) ? uri.getHost().toLowerCase(Locale.US) : "";
+			path = (uri.getRawPath()!=null) ? uri.getRawPath() : "";
+		}
+		catch(URISyntaxException e)
+		{
+			return 0;
+		}
+		Limit limit = getLimit(host, path);
+		if(limit==null) return 0;
+		Bucket bucket;
+		String key = limit.pattern + "|" + host;
+		synchronized(buckets)
+		{
+			bucket = buckets.get(key);
+			if(bucket==null)
+			{
+				bucket = new Bucket(limit);
+				buckets.put(key, bucket);
+			}
+		}
+		long wait = bucket.reserve(System.currentTimeMillis(), maxWait);
+		if(wait<0)
+		{
+			rejected.incrementAndGet();
+			throw new RateLimitExceededException("Rate limit of " + limit + " exceeded for " + url, -wait);
+		}
+		if(wait>0) delayed.incrementAndGet();
+		return wait;
+	}
+
+	private Limit getLimit(String host, String path)
+	{
+		Limit match = null;
+		for(Limit limit : limits)
+		{
+			if(limit.matches(host, path) && (match==null || limit.pattern.length()>match.pattern.length())) match = limit;
+		}
+		if(match==null) match = defaultLimit;
+		return (match!=null && match.permitsPerSecond>0) ? match : null;
+	}
+
+	@Override
+	public String toString()
+	{
+		return TAG + "(default=" + defaultLimit + ", limits=" + limits + ", maxWait=" + maxWait + "ms, delayed=" + delayed.get() + ", rejected=" + rejected.get() + ")";
+	}
+
+	/**
+	 * the rate of a host or endpoint pattern
+	 */
+	private static final class Limit
+	{
+		final String					pattern;
+		final String					host;
+		final String					path;
+		final double					permitsPerSecond;
+		final int						burst;
+
+		Limit(String pattern, double permitsPerSecond, int burst)
+		{
+			this.pattern = pattern.toLowerCase(Locale.US);
+			int slash = this.pattern.indexOf('/');
+			this.host = (slash<0) ? this.pattern : this.pattern.substring(0, slash);
+			this.path = (slash<0) ? "" : pattern.substring(slash);
+			this.permitsPerSecond = permitsPerSecond;
+			this.burst = Math.max(burst, 1);
+		}
+
+		boolean matches(String host, String path)
+		{
+			boolean hostMatches = this.host.startsWith("*.") ? host.endsWith(this.host.substring(1)) : host.equals(this.host);
+			return hostMatches && path.startsWith(this.path);
+		}
+
+		@Override
+		public String toString()
+		{
+			return pattern + " " + permitsPerSecond + "/s burst " + burst;
+		}
+	}
+
+	/**
+	 * the permits of one host, tokens go below zero for the permits reserved ahead of time
+	 */
+	private static final class Bucket
+	{
+		private final double			permitsPerMilli;
+		private final int				burst;
+		private double					tokens;
+		private long					updated;
+
+		Bucket(Limit limit)
+		{
+			this.permitsPerMilli = limit.permitsPerSecond / 1000;
+			this.burst = limit.burst;
+			this.tokens = burst;
+			this.updated = System.currentTimeMillis();
+		}
+
+		/**
+		 * @return milliseconds to wait for the reserved permit, or minus the wait when it is longer than the max wait
+		 */
+		synchronized long reserve(long now, long maxWait)
+		{
+			tokens = Math.min(burst, tokens + (now - updated) * permitsPerMilli);
+			updated = now;
+			if(tokens>=1)
+			{
+				tokens--;
+				return 0;
+			}
+			long wait = (long) Math.ceil((1 - tokens) / permitsPerMilli);
+			if(wait>maxWait) return -wait;
+			tokens--;
+			return wait;
+		}
+	}
+
+	/**
+	 * builder for {@link RateLimiter}
+	 * @author malsukhni
+	 *
+	 */
+	public static class Builder
+	{
+		private Limit					defaultLimit	= null;
+		private final List<Limit>		limits			= new ArrayList<Limit>();
+		private long					maxWait			= Long.MAX_VALUE;
+
+		/**
+		 * set the limit of the hosts that match no pattern, by default they are not limited
+		 * @param permitsPerSecond the refill rate of the bucket of each host, zero or less means no limit
+		 * @param burst the size of the bucket, the number of requests sent at once after an idle period
+		 * @return
+		 */
+		public Builder setDefaultLimit(double permitsPerSecond, int burst)
+		{
+			this.defaultLimit = new Limit("*", permitsPerSecond, burst);
+			return this;
+		}
+
+		/**
+		 * set the limit of a host or endpoint pattern, i.e. "api.example.com", "*.example.com", "api.example.com/search"
+		 * @param pattern the host, optionally followed by a path prefix
+		 * @param permitsPerSecond the refill rate of the bucket of each matching host, zero or less means no limit
+		 * @param burst the size of the bucket
+		 * @return
+		 */
+		public Builder setLimit(String pattern, double permitsPerSecond, int burst)
+		{
+			limits.add(new Limit(pattern, permitsPerSecond, burst));
+			return this;
+		}
+
+		/**
+		 * set the longest wait for a permit, a request that would wait longer is rejected. zero rejects
+		 * the requests that find the bucket empty, the default waits as long as needed
+		 * @param maxWait milliseconds
+		 * @return
+		 */
+		public Builder setMaxWait(long maxWait)
+		{
+			this.maxWait = Math.max(maxWait, 0);
+			return this;
+		}
+
+		/**
+		 * build the limiter
+		 * @return
+		 */
+		public RateLimiter build()
+		{
+			return new RateLimiter(this);
+		}
+	}
+}
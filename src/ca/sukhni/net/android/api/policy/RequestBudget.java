@@ -0,0 +1,74 @@
+package ca.sukhni.net.android.api.policy;
+
+/**
+ * limits the extra requests, like retries, to a ratio of the requests of the last 10 seconds plus a minimum per second.
+ * the requests and the extra requests are counted in one slot per second
+ * @author malsukhni
+ *
+ */
+final class RequestBudget
+{
+	private static final int		SECONDS			= 10;
+
+	private final double			ratio;
+	private final int				minPerSecond;
+	private final long[]			seconds			= new long[SECONDS];
+	private final int[]				requests		= new int[SECONDS];
+	private final int[]				extras			= new int[SECONDS];
+
+	/**
+	 * @param ratio the extra requests allowed per request
+	 * @param minPerSecond the extra requests allowed when few requests are sent
+	 */
+	RequestBudget(double ratio, int minPerSecond)
+	{
+		this.ratio = ratio;
+		this.minPerSecond = minPerSecond;
+	}
+
+	/**
+	 * count a request
+	 * @param now
+	 */
+	synchronized void onRequest(long now)
+	{
+		requests[slot(now)]++;
+	}
+
+	/**
+	 * take an extra request from the budget
+	 * @param now
+	 * @return false when the budget is used up
+	 */
+	synchronized boolean tryAcquire(long now)
+	{
+		int slot = slot(now);
+		long second = now / 1000;
+		int requestCount = 0;
+		int extraCount = 0;
+		for(int i=0; i<SECONDS; i++)
+		{
+			if(second - seconds[i]<SECONDS)
+			{
+				requestCount += requests[i];
+				extraCount += extras[i];
+			}
+		}
+		if(extraCount>=minPerSecond * SECONDS + ratio * requestCount) return false;
+		extras[slot]++;
+		return true;
+	}
+
+	private int slot(long now)
+	{
+		long second = now / 1000;
+		int slot = (int) (second % SECONDS);
+		if(seconds[slot]!=second)
+		{
+			seconds[slot] = second;
+			requests[slot] = 0;
+			extras[slot] = 0;
+		}
+		return slot;
+	}
+}
@@ -0,0 +1,280 @@
+package ca.sukhni.net.android.api.policy;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.sukhni.net.android.api.client.ExceptionStatus;
+import ca.sukhni.net.android.api.client.Method;
+import ca.sukhni.net.android.logger.Logger;
+
+/**
+ * decides which failed requests are sent again, and after how long.
+ * <p>a request is retried when it fails with one of the retry exception statuses or receives one of the retry status
+ * codes, up to the max retries. the delay before each retry grows exponentially from the initial delay up to
+ * the max delay, and a random part of it is removed so the clients that failed together do not retry together.</p>
+ * <p>only idempotent methods are retried, a POST is retried only when it failed before it could reach the server,
+ * i.e. on a connect timeout, unless non idempotent retries are allowed.</p>
+ * <p>the retries are limited by a budget shared by the clients of the policy: over the last 10 seconds the retries
+ * may not exceed a ratio of the requests plus a minimum number per second, so retries cannot multiply the load
+ * of a server that is already overloaded.</p>
+ * @author malsukhni
+ *
+ */
+public class RetryPolicy
+{
+	public static final String					TAG					= RetryPolicy.class.getSimpleName();
+
+	/** the failures of a request that did not reach the server */
+	private static final Set<ExceptionStatus>	NOT_SENT			= EnumSet.of(
+			ExceptionStatus.UNRESOLVED_ADDRESS_EXCEPTION,
+			ExceptionStatus.UNKNOWN_HOST_EXCEPTION,
+			ExceptionStatus.NO_ROUTE_TO_HOST_EXCEPTION,
+			ExceptionStatus.PORT_UNREACHABLE_EXCEPTION,
+			ExceptionStatus.CONNECT_TIMEOUT_EXCEPTION);
+
+	private final int							maxRetries;
+	private final long							initialDelay;
+	private final double						multiplier;
+	private final long							maxDelay;
+	private final double						jitter;
+	private final Set<ExceptionStatus>			retryExceptions;
+	private final Set<Integer>					retryStatusCodes;
+	private final boolean						retryNonIdempotent;
+	private final RequestBudget					budget;
+	private final Random						random				= new Random();
+	private final AtomicLong					retried				= new AtomicLong();
+	private final AtomicLong					exhausted			= new AtomicLong();
+
+	private RetryPolicy(Builder builder)
+	{
+		this.maxRetries = builder.maxRetries;
+		this.initialDelay = builder.initialDelay;
+		this.multiplier = builder.multiplier;
+		this.maxDelay = builder.maxDelay;
+		this.jitter = builder.jitter;
+		this.retryExceptions = EnumSet.copyOf(builder.retryExceptions);
+		this.retryStatusCodes = new HashSet<Integer>(builder.retryStatusCodes);
+		this.retryNonIdempotent = builder.retryNonIdempotent;
+		this.budget = new RequestBudget(builder.budgetRatio, builder.budgetMinPerSecond);
+	}
+
+	/**
+	 * get the max number of times a request is sent again
+	 * @return
+	 */
+	public int getMaxRetries()
+	{
+		return maxRetries;
+	}
+
+	/**
+	 * get the number of retries allowed
+	 * @return
+	 */
+	public long getRetryCount()
+	{
+		return retried.get();
+	}
+
+	/**
+	 * get the number of retries refused because the retry budget was used up
+	 * @return
+	 */
+	public long getBudgetExhaustedCount()
+	{
+		return exhausted.get();
+	}
+
+	/**
+	 * count a request in the retry budget, call it once per request and not for its retries
+	 */
+	public void onRequest()
+	{
+		budget.onRequest(System.currentTimeMillis());
+	}
+
+	/**
+	 * get the delay before a failed request is sent again
+	 * @param method the request method
+	 * @param status the failure of the last attempt
+	 * @param retries the number of times the request was already sent again
+	 * @return milliseconds, or -1 when the request must not be sent again
+	 */
+	public long getRetryDelay(Method method, ExceptionStatus status, int retries)
+	{
+		if(retries>=maxRetries || !retryExceptions.contains(status)) return -1;
+		if(!method.isIdempotent() && !retryNonIdempotent && !NOT_SENT.contains(status)) return -1;
+		return take(retries);
+	}
+
+	/**
+	 * get the delay before a request that received the given status code is sent again
+	 * @param method the request method
+	 * @param statusCode the status code of the last attempt
+	 * @param retries the number of times the request was already sent again
+	 * @return milliseconds, or -1 when the response must be returned
+	 */
+	public long getRetryDelay(Method method, int statusCode, int retries)
+	{
+		if(retries>=maxRetries || !retryStatusCodes.contains(statusCode)) return -1;
+		if(!method.isIdempotent() && !retryNonIdempotent) return -1;
+		return take(retries);
+	}
+
+	private long take(int retries)
+	{
+		if(!budget.tryAcquire(System.currentTimeMillis()))
+		{
+			exhausted.incrementAndGet();
+			Logger.debug(TAG + ": retry budget used up, the request is not sent again");
+			return -1;
+		}
+		retried.incrementAndGet();
+		double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, retries));
+		return (long) (delay - delay * jitter * random.nextDouble());
+	}
+
+	@Override
+	public String toString()
+	{
+		return TAG + "(maxRetries=" + maxRetries + ", backoff=" + initialDelay + "ms*" + multiplier + " up to " + maxDelay + "ms, jitter=" + jitter
+				+ ", retried=" + retried.get() + ", budgetExhausted=" + exhausted.get() + ")";
+	}
+
+	/**
+	 * builder for {@link RetryPolicy}, by default a request is sent again up to 2 times after 200ms then 400ms,
+	 * less up to half of it, on a timeout, a closed connection, an io exception or a 429, 502, 503 or 504 status code.
+	 * the default budget is 20% of the requests plus 1 retry per second
+	 * @author malsukhni
+	 *
+	 */
+	public static class Builder
+	{
+		private int						maxRetries			= 2;
+		private long					initialDelay		= 200;
+		private double					multiplier			= 2;
+		private long					maxDelay			= 10000;
+		private double					jitter				= 0.5;
+		private Set<ExceptionStatus>	retryExceptions		= EnumSet.of(
+				ExceptionStatus.NO_ROUTE_TO_HOST_EXCEPTION,
+				ExceptionStatus.CONNECT_TIMEOUT_EXCEPTION,
+				ExceptionStatus.SOCKET_TIMEOUT_EXCEPTION,
+				ExceptionStatus.CONNECTION_CLOSED_EXCEPTION,
+				ExceptionStatus.IO_EXCEPTION);
+		private Set<Integer>			retryStatusCodes	= new HashSet<Integer>();
+		private boolean					retryNonIdempotent	= false;
+		private double					budgetRatio			= 0.2;
+		private int						budgetMinPerSecond	= 1;
+
+		public Builder()
+		{
+			setRetryStatusCodes(429, 502, 503, 504);
+		}
+
+		/**
+		 * set the max number of times a request is sent again, zero turns the retries off
+		 * @param maxRetries
+		 * @return
+		 */
+		public Builder setMaxRetries(int maxRetries)
+		{
+			this.maxRetries = Math.max(maxRetries, 0);
+			return this;
+		}
+
+		/**
+		 * set the delay before each retry: the initial delay multiplied by the multiplier for each retry already made,
+		 * up to the max delay
+		 * @param initialDelay milliseconds before the first retry
+		 * @param multiplier the growth of the delay, 1 keeps it constant
+		 * @param maxDelay milliseconds
+		 * @return
+		 */
+		public Builder setBackoff(long initialDelay, double multiplier, long maxDelay)
+		{
+			this.initialDelay = Math.max(initialDelay, 0);
+			this.multiplier = Math.max(multiplier, 1);
+			this.maxDelay = Math.max(maxDelay, this.initialDelay);
+			return this;
+		}
+
+		/**
+		 * set the part of the delay that is random: each delay is shortened by a random amount up to this part of it
+		 * @param jitter in [0,1], zero keeps the delays exact
+		 * @return
+		 */
+		public Builder setJitter(double jitter)
+		{
+			if(jitter<0 || jitter>1) throw new IllegalArgumentException("The jitter must be in [0,1]: " + jitter);
+			this.jitter = jitter;
+			return this;
+		}
+
+		/**
+		 * set the exception statuses that are retried
+		 * @param statuses
+		 * @return
+		 */
+		public Builder setRetryExceptions(ExceptionStatus... statuses)
+		{
+			this.retryExceptions = EnumSet.noneOf(ExceptionStatus.class);
+			for(ExceptionStatus status : statuses)
+			{
+				retryExceptions.add(status);
+			}
+			return this;
+		}
+
+		/**
+		 * set the response status codes that are retried, the last response is returned when no retry is left
+		 * @param statusCodes
+		 * @return
+		 */
+		public Builder setRetryStatusCodes(int... statusCodes)
+		{
+			this.retryStatusCodes = new HashSet<Integer>();
+			for(int statusCode : statusCodes)
+			{
+				retryStatusCodes.add(statusCode);
+			}
+			return this;
+		}
+
+		/**
+		 * allow the retries of the requests that are not idempotent, i.e. POST, after they may have reached the server
+		 * @param retryNonIdempotent
+		 * @return
+		 */
+		public Builder setRetryNonIdempotent(boolean retryNonIdempotent)
+		{
+			this.retryNonIdempotent = retryNonIdempotent;
+			return this;
+		}
+
+		/**
+		 * set the retry budget: over the last 10 seconds the retries may not exceed the ratio of the requests
+		 * plus the minimum retries per second
+		 * @param ratio the retries allowed per request, i.e. 0.2 for 20%
+		 * @param minRetriesPerSecond the retries allowed when few requests are sent
+		 * @return
+		 */
+		public Builder setRetryBudget(double ratio, int minRetriesPerSecond)
+		{
+			this.budgetRatio = Math.max(ratio, 0);
+			this.budgetMinPerSecond = Math.max(minRetriesPerSecond, 0);
+			return this;
+		}
+
+		/**
+		 * build the retry policy
+		 * @return
+		 */
+		public RetryPolicy build()
+		{
+			return new RetryPolicy(this);
+		}
+	}
+}
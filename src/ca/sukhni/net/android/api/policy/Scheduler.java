@@ -0,0 +1,53 @@
+package ca.sukhni.net.android.api.policy;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * runs the delayed tasks of the policies, i.e. a request sent once its rate limit permit is due or once its retry
+ * backoff is over, so the requests that must not block do not hold a thread while they wait
+ * @author malsukhni
+ *
+ */
+public final class Scheduler
+{
+	public static final String					TAG					= Scheduler.class.getSimpleName();
+
+	private static ScheduledExecutorService		sScheduler;
+
+	private Scheduler()
+	{
+	}
+
+	/**
+	 * run the task after the given delay on the scheduler thread, the task must not block
+	 * @param task
+	 * @param delay milliseconds
+	 * @return the future of the task, canceling it drops the task
+	 */
+	public static Future<?> schedule(Runnable task, long delay)
+	{
+		return getScheduler().schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private static synchronized ScheduledExecutorService getScheduler()
+	{
+		if(sScheduler==null)
+		{
+			sScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, TAG);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sScheduler;
+	}
+}
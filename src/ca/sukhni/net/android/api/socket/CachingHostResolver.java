@@ -0,0 +1,267 @@
+package ca.sukhni.net.android.api.socket;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.sukhni.net.android.logger.Logger;
+
+/**
+ * host resolver that keeps successful lookups for a positive ttl and failed lookups for a negative ttl.
+ * the cache is bounded, the least recently used host is dropped first
+ * @author malsukhni
+ *
+ */
+public class CachingHostResolver implements HostResolver
+{
+	public static final String		TAG							= CachingHostResolver.class.getSimpleName();
+	public static final long		DEFAULT_POSITIVE_TTL		= 5 * 60 * 1000;
+	public static final long		DEFAULT_NEGATIVE_TTL		= 10 * 1000;
+	public static final int			DEFAULT_MAX_ENTRIES			= 128;
+
+	private static final CachingHostResolver	sDefault		= new CachingHostResolver(SystemHostResolver.getInstance(),
+			DEFAULT_POSITIVE_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_MAX_ENTRIES);
+	private static final ExecutorService		sPrefetcher		= new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(64), new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, TAG);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final HostResolver						delegate;
+	private final long								positiveTtl;
+	private final long								negativeTtl;
+	private final Map<String, CacheEntry>				entries;
+	private final Set<String>						pending			= new HashSet<String>();
+	private final AtomicLong						hits			= new AtomicLong();
+	private final AtomicLong						negativeHits	= new AtomicLong();
+	private final AtomicLong						misses			= new AtomicLong();
+	private final AtomicLong						prefetches		= new AtomicLong();
+
+	/**
+	 * @param delegate the resolver used on a cache miss
+	 * @param positiveTtl how long in milliseconds a resolved host is cached
+	 * @param negativeTtl how long in milliseconds a failed host is cached
+	 * @param maxEntries maximum number of cached hosts
+	 */
+	public CachingHostResolver(HostResolver delegate, long positiveTtl, long negativeTtl, final int maxEntries)
+	{
+		this.delegate = delegate;
+		this.positiveTtl = positiveTtl;
+		this.negativeTtl = negativeTtl;
+		this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * get the shared resolver used by default, it caches the platform resolver
+	 * @return
+	 */
+	public static CachingHostResolver getDefault()
+	{
+		return sDefault;
+	}
+
+	@Override
+	public InetAddress[] resolve(String host) throws UnknownHostException
+	{
+		CacheEntry entry = lookup(host);
+		if(entry!=null)
+		{
+			if(entry.addresses!=null)
+			{
+				hits.incrementAndGet();
+				return entry.addresses.clone();
+			}
+			negativeHits.incrementAndGet();
+			throw new UnknownHostException(host);
+		}
+		misses.incrementAndGet();
+		return load(host);
+	}
+
+	@Override
+	public void prefetch(final String host)
+	{
+		if(host==null || lookup(host)!=null) return;
+		synchronized (pending)
+		{
+			if(!pending.add(host)) return;
+		}
+		try
+		{
+			sPrefetcher.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						prefetches.incrementAndGet();
+						load(host);
+					}
+					catch(UnknownHostException e)
+					{
+						Logger.debug(TAG + ": prefetch failed for " + host);
+					}
+					finally
+					{
+						synchronized (pending)
+						{
+							pending.remove(host);
+						}
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException e)
+		{
+			synchronized (pending)
+			{
+				pending.remove(host);
+			}
+		}
+	}
+
+	/**
+	 * drop all the cached hosts, i.e. after a network change
+	 */
+	public void clear()
+	{
+		synchronized (entries)
+		{
+			entries.clear();
+		}
+	}
+
+	/**
+	 * get the number of lookups answered from a cached address
+	 * @return
+	 */
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * get the number of lookups answered from a cached failure
+	 * @return
+	 */
+	public long getNegativeHitCount()
+	{
+		return negativeHits.get();
+	}
+
+	/**
+	 * get the number of lookups that had to block on the delegate resolver
+	 * @return
+	 */
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * get the number of background prefetches
+	 * @return
+	 */
+	public long getPrefetchCount()
+	{
+		return prefetches.get();
+	}
+
+	/**
+	 * get the number of cached hosts, expired ones included
+	 * @return
+	 */
+	public int size()
+	{
+		synchronized (entries)
+		{
+			return entries.size();
+		}
+	}
+
+	/**
+	 * reset the hit, miss and prefetch counters
+	 */
+	public void resetStats()
+	{
+		hits.set(0);
+		negativeHits.set(0);
+		misses.set(0);
+		prefetches.set(0);
+	}
+
+	private CacheEntry lookup(String host)
+	{
+		synchronized (entries)
+		{
+			CacheEntry entry = entries.get(host);
+			if(entry!=null && entry.expiresAt<=System.currentTimeMillis())
+			{
+				entries.remove(host);
+				return null;
+			}
+			return entry;
+		}
+	}
+
+	private InetAddress[] load(String host) throws UnknownHostException
+	{
+		try
+		{
+			InetAddress[] addresses = delegate.resolve(host);
+			store(host, new CacheEntry(addresses.clone(), System.currentTimeMillis() + positiveTtl));
+			return addresses;
+		}
+		catch(UnknownHostException e)
+		{
+			store(host, new CacheEntry(null, System.currentTimeMillis() + negativeTtl));
+			throw e;
+		}
+	}
+
+	private void store(String host, CacheEntry entry)
+	{
+		synchronized (entries)
+		{
+			entries.put(host, entry);
+		}
+	}
+
+	private static class CacheEntry
+	{
+		final InetAddress[]	addresses;
+		final long			expiresAt;
+
+		CacheEntry(InetAddress[] addresses, long expiresAt)
+		{
+			this.addresses = addresses;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
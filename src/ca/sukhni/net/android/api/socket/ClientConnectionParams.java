@@ -0,0 +1,102 @@
+package ca.sukhni.net.android.api.socket;
+
+import org.apache.http.params.HttpParams;
+
+/**
+ * connection parameters read by {@link ResolvingClientConnectionOperator},
+ * in the same fashion as {@link org.apache.http.params.HttpConnectionParams}
+ * @author malsukhni
+ *
+ */
+public final class ClientConnectionParams
+{
+	public static final String		HOST_RESOLVER			= "ca.sukhni.net.android.host-resolver";
+	public static final String		CONNECT_ATTEMPT_DELAY	= "ca.sukhni.net.android.connect-attempt-delay";
+	public static final String		SEND_BUFFER_SIZE		= "ca.sukhni.net.android.send-buffer-size";
+	public static final String		RECEIVE_BUFFER_SIZE		= "ca.sukhni.net.android.receive-buffer-size";
+
+	private ClientConnectionParams()
+	{
+	}
+
+	/**
+	 * set the resolver used to look up the target host
+	 * @param params
+	 * @param resolver
+	 */
+	public static void setHostResolver(HttpParams params, HostResolver resolver)
+	{
+		params.setParameter(HOST_RESOLVER, resolver);
+	}
+
+	/**
+	 * get the resolver used to look up the target host, defaults to the system resolver
+	 * @param params
+	 * @return
+	 */
+	public static HostResolver getHostResolver(HttpParams params)
+	{
+		Object resolver = params.getParameter(HOST_RESOLVER);
+		return (resolver instanceof HostResolver) ? (HostResolver) resolver : SystemHostResolver.getInstance();
+	}
+
+	/**
+	 * set how long in milliseconds a connect attempt may run before the next address is tried beside it
+	 * @param params
+	 * @param attemptDelay zero or less connects to the addresses one after the other
+	 */
+	public static void setConnectAttemptDelay(HttpParams params, long attemptDelay)
+	{
+		params.setLongParameter(CONNECT_ATTEMPT_DELAY, attemptDelay);
+	}
+
+	/**
+	 * get how long in milliseconds a connect attempt may run before the next address is tried beside it, defaults to zero
+	 * @param params
+	 * @return
+	 */
+	public static long getConnectAttemptDelay(HttpParams params)
+	{
+		return params.getLongParameter(CONNECT_ATTEMPT_DELAY, 0);
+	}
+
+	/**
+	 * set the socket send buffer size of new connections
+	 * @param params
+	 * @param size zero or less keeps the system default
+	 */
+	public static void setSendBufferSize(HttpParams params, int size)
+	{
+		params.setIntParameter(SEND_BUFFER_SIZE, size);
+	}
+
+	/**
+	 * get the socket send buffer size of new connections, defaults to zero
+	 * @param params
+	 * @return
+	 */
+	public static int getSendBufferSize(HttpParams params)
+	{
+		return params.getIntParameter(SEND_BUFFER_SIZE, 0);
+	}
+
+	/**
+	 * set the socket receive buffer size of new connections
+	 * @param params
+	 * @param size zero or less keeps the system default
+	 */
+	public static void setReceiveBufferSize(HttpParams params, int size)
+	{
+		params.setIntParameter(RECEIVE_BUFFER_SIZE, size);
+	}
+
+	/**
+	 * get the socket receive buffer size of new connections, defaults to zero
+	 * @param params
+	 * @return
+	 */
+	public static int getReceiveBufferSize(HttpParams params)
+	{
+		return params.getIntParameter(RECEIVE_BUFFER_SIZE, 0);
+	}
+}
@@ -6,7 +6,15 @@ import java.net.UnknownHostException;
 import java.security.*;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
@@ -14,45 +22,168 @@ import org.apache.http.conn.ssl.SSLSocketFactory;
 
 public class EasySSLSocketFactory extends SSLSocketFactory
 {
-    SSLContext sslContext = SSLContext.getInstance("TLS");
+    public static final int                     DEFAULT_SESSION_CACHE_SIZE  = 64;
+    public static final int                     DEFAULT_SESSION_TIMEOUT     = 60 * 60;
+
+    private static final Map<String, SSLContext> sContexts                  = new HashMap<String, SSLContext>();
+    private static final AtomicLong             sResumedHandshakes          = new AtomicLong();
+    private static final AtomicLong             sFullHandshakes             = new AtomicLong();
+
+    SSLContext sslContext;
 
     public EasySSLSocketFactory(KeyStore truststore)
         throws NoSuchAlgorithmException, KeyManagementException, KeyStoreException, UnrecoverableKeyException
+    {
+        this(truststore, DEFAULT_SESSION_CACHE_SIZE, DEFAULT_SESSION_TIMEOUT);
+    }
+
+    /**
+     * create a socket factory that shares one ssl context, and so one client session cache,
+     * with every other factory created with the same session settings
+     * @param truststore
+     * @param sessionCacheSize maximum number of cached tls sessions, zero means no limit
+     * @param sessionTimeout lifetime of a cached tls session in seconds, zero means no limit
+     */
+    public EasySSLSocketFactory(KeyStore truststore, int sessionCacheSize, int sessionTimeout)
+        throws NoSuchAlgorithmException, KeyManagementException, KeyStoreException, UnrecoverableKeyException
     {
         super(truststore);
+        sslContext = getSSLContext(sessionCacheSize, sessionTimeout);
+    }
 
-        TrustManager tm = new X509TrustManager()
+    /**
+     * get the shared trust all ssl context for the given session cache settings
+     * @param sessionCacheSize maximum number of cached tls sessions, zero means no limit
+     * @param sessionTimeout lifetime of a cached tls session in seconds, zero means no limit
+     * @return
+     */
+    public static SSLContext getSSLContext(int sessionCacheSize, int sessionTimeout)
+        throws NoSuchAlgorithmException, KeyManagementException
+    {
+        String key = sessionCacheSize + ":" + sessionTimeout;
+        synchronized (sContexts)
         {
-                public void checkClientTrusted(X509Certificate[] chain, String authType)
-                    throws CertificateException
+            SSLContext context = sContexts.get(key);
+            if (context == null)
+            {
+                TrustManager tm = new X509TrustManager()
                 {
-                }
+                        public void checkClientTrusted(X509Certificate[] chain, String authType)
+                            throws CertificateException
+                        {
+                        }
 
-                public void checkServerTrusted(X509Certificate[] chain, String authType)
-                    throws CertificateException
-                {
-                }
+                        public void checkServerTrusted(X509Certificate[] chain, String authType)
+                            throws CertificateException
+                        {
+                        }
 
-                public X509Certificate[] getAcceptedIssuers()
+                        public X509Certificate[] getAcceptedIssuers()
+                        {
+                            return null;
+                        }
+                };
+
+                context = SSLContext.getInstance("TLS");
+                context.init(null, new TrustManager[] { tm }, null);
+                SSLSessionContext sessionContext = context.getClientSessionContext();
+                if (sessionContext != null)
                 {
-                    return null;
+                    sessionContext.setSessionCacheSize(sessionCacheSize);
+                    sessionContext.setSessionTimeout(sessionTimeout);
                 }
-        };
+                sContexts.put(key, context);
+            }
+            return context;
+        }
+    }
 
-        sslContext.init(null, new TrustManager[] { tm }, null);
+    /**
+     * get the number of handshakes that resumed a cached tls session
+     * @return
+     */
+    public static long getResumedHandshakeCount()
+    {
+        return sResumedHandshakes.get();
     }
 
+    /**
+     * get the number of handshakes that negotiated a new tls session
+     * @return
+     */
+    public static long getFullHandshakeCount()
+    {
+        return sFullHandshakes.get();
+    }
+
+    /**
+     * reset the handshake counters
+     */
+    public static void resetHandshakeCounters()
+    {
+        sResumedHandshakes.set(0);
+        sFullHandshakes.set(0);
+    }
+
+    /**
+     * layer tls over the connected socket and handshake right away, bounded by the socket timeout,
+     * so the connection is ready for its first request once it is opened
+     */
     @Override
     public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
         throws IOException, UnknownHostException
     {
-        return sslContext.getSocketFactory().createSocket(socket, host, port, autoClose);
+        Socket layered = countHandshake(sslContext.getSocketFactory().createSocket(socket, host, port, autoClose));
+        if (layered instanceof SSLSocket)
+        {
+            try
+            {
+                ((SSLSocket) layered).startHandshake();
+            }
+            catch (IOException e)
+            {
+                layered.close();
+                throw e;
+            }
+        }
+        return layered;
     }
 
     @Override
     public Socket createSocket()
         throws IOException
     {
-        return sslContext.getSocketFactory().createSocket();
+        return countHandshake(sslContext.getSocketFactory().createSocket());
+    }
+
+    private static Socket countHandshake(Socket socket)
+    {
+        if (socket instanceof SSLSocket)
+        {
+            ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCounter());
+        }
+        return socket;
+    }
+
+    /**
+     * a session created before its socket was resumed from the cache, otherwise the handshake was a full one
+     */
+    private static class HandshakeCounter implements HandshakeCompletedListener
+    {
+        private final long createdAt = System.currentTimeMillis();
+
+        @Override
+        public void handshakeCompleted(HandshakeCompletedEvent event)
+        {
+            event.getSocket().removeHandshakeCompletedListener(this);
+            if (event.getSession().getCreationTime() < createdAt)
+            {
+                sResumedHandshakes.incrementAndGet();
+            }
+            else
+            {
+                sFullHandshakes.incrementAndGet();
+            }
+        }
     }
 }
@@ -0,0 +1,26 @@
+package ca.sukhni.net.android.api.socket;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * interface to resolve host names when opening a new connection
+ * @author malsukhni
+ *
+ */
+public interface HostResolver
+{
+	/**
+	 * resolve all the addresses of the given host
+	 * @param host the host name
+	 * @return the resolved addresses, never empty
+	 * @throws UnknownHostException when the host can not be resolved
+	 */
+	public abstract InetAddress[] resolve(String host) throws UnknownHostException;
+	/**
+	 * resolve the given host in the background so a later {@link #resolve(String)} does not block.
+	 * resolvers that do not cache may ignore it
+	 * @param host the host name
+	 */
+	public abstract void prefetch(String host);
+}
@@ -0,0 +1,484 @@
+package ca.sukhni.net.android.api.socket;
+
+/**
+ * immutable settings used to create a pooled http client.
+ * two equal configurations share the same client and the same connection pool, SEE {@link HttpClientPool}
+ * @author malsukhni
+ *
+ */
+public final class HttpClientConfig
+{
+	public static final int		DEFAULT_CONNECTION_TIMEOUT		= 2000;
+	public static final int		DEFAULT_SOCKET_TIMEOUT			= 2000;
+	public static final int		DEFAULT_MAX_TOTAL_CONNECTIONS	= 20;
+	public static final int		DEFAULT_MAX_CONNECTIONS_PER_HOST	= 6;
+	public static final long	DEFAULT_KEEP_ALIVE_DURATION		= 30000;
+	public static final long	DEFAULT_IDLE_CONNECTION_TIMEOUT	= 30000;
+	public static final long	DEFAULT_CONNECT_ATTEMPT_DELAY	= 250;
+
+	private final int			connectionTimeout;
+	private final int			socketTimeout;
+	private final boolean		trustAllCertificates;
+	private final int			sslSessionCacheSize;
+	private final int			sslSessionTimeout;
+	private final int			maxTotalConnections;
+	private final int			maxConnectionsPerHost;
+	private final long			keepAliveDuration;
+	private final long			idleConnectionTimeout;
+	private final HostResolver	hostResolver;
+	private final long			connectAttemptDelay;
+	private final boolean		tcpNoDelay;
+	private final int			sendBufferSize;
+	private final int			receiveBufferSize;
+	private final boolean		staleCheckingEnabled;
+	private final int			socketLinger;
+
+	private HttpClientConfig(Builder builder)
+	{
+		this.connectionTimeout = builder.connectionTimeout;
+		this.socketTimeout = builder.socketTimeout;
+		this.trustAllCertificates = builder.trustAllCertificates;
+		this.sslSessionCacheSize = builder.sslSessionCacheSize;
+		this.sslSessionTimeout = builder.sslSessionTimeout;
+		this.maxTotalConnections = builder.maxTotalConnections;
+		this.maxConnectionsPerHost = builder.maxConnectionsPerHost;
+		this.keepAliveDuration = builder.keepAliveDuration;
+		this.idleConnectionTimeout = builder.idleConnectionTimeout;
+		this.hostResolver = builder.hostResolver;
+		this.connectAttemptDelay = builder.connectAttemptDelay;
+		this.tcpNoDelay = builder.tcpNoDelay;
+		this.sendBufferSize = builder.sendBufferSize;
+		this.receiveBufferSize = builder.receiveBufferSize;
+		this.staleCheckingEnabled = builder.staleCheckingEnabled;
+		this.socketLinger = builder.socketLinger;
+	}
+
+	/**
+	 * get the connection timeout in milliseconds
+	 * @return the connectionTimeout
+	 */
+	public int getConnectionTimeout()
+	{
+		return connectionTimeout;
+	}
+
+	/**
+	 * get the socket timeout in milliseconds
+	 * @return the socketTimeout
+	 */
+	public int getSocketTimeout()
+	{
+		return socketTimeout;
+	}
+
+	/**
+	 * check if every server certificate and host name is accepted
+	 * @return the trustAllCertificates
+	 */
+	public boolean isTrustAllCertificates()
+	{
+		return trustAllCertificates;
+	}
+
+	/**
+	 * get the maximum number of cached tls sessions
+	 * @return the sslSessionCacheSize
+	 */
+	public int getSslSessionCacheSize()
+	{
+		return sslSessionCacheSize;
+	}
+
+	/**
+	 * get the lifetime of a cached tls session in seconds
+	 * @return the sslSessionTimeout
+	 */
+	public int getSslSessionTimeout()
+	{
+		return sslSessionTimeout;
+	}
+
+	/**
+	 * get the maximum number of pooled connections
+	 * @return the maxTotalConnections
+	 */
+	public int getMaxTotalConnections()
+	{
+		return maxTotalConnections;
+	}
+
+	/**
+	 * get the maximum number of pooled connections to a single host
+	 * @return the maxConnectionsPerHost
+	 */
+	public int getMaxConnectionsPerHost()
+	{
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * get how long in milliseconds an idle connection is kept alive when the server does not say otherwise
+	 * @return the keepAliveDuration
+	 */
+	public long getKeepAliveDuration()
+	{
+		return keepAliveDuration;
+	}
+
+	/**
+	 * get how long in milliseconds a connection may stay idle in the pool before it is closed
+	 * @return the idleConnectionTimeout
+	 */
+	public long getIdleConnectionTimeout()
+	{
+		return idleConnectionTimeout;
+	}
+
+	/**
+	 * get the resolver used to look up hosts when opening new connections
+	 * @return the hostResolver
+	 */
+	public HostResolver getHostResolver()
+	{
+		return hostResolver;
+	}
+
+	/**
+	 * get how long in milliseconds a connect attempt may run before the next address of the host is tried beside it
+	 * @return the connectAttemptDelay
+	 */
+	public long getConnectAttemptDelay()
+	{
+		return connectAttemptDelay;
+	}
+
+	/**
+	 * check if small writes are sent right away instead of being coalesced by nagle's algorithm
+	 * @return the tcpNoDelay
+	 */
+	public boolean isTcpNoDelay()
+	{
+		return tcpNoDelay;
+	}
+
+	/**
+	 * get the socket send buffer size in bytes, zero or less means the system default
+	 * @return the sendBufferSize
+	 */
+	public int getSendBufferSize()
+	{
+		return sendBufferSize;
+	}
+
+	/**
+	 * get the socket receive buffer size in bytes, zero or less means the system default
+	 * @return the receiveBufferSize
+	 */
+	public int getReceiveBufferSize()
+	{
+		return receiveBufferSize;
+	}
+
+	/**
+	 * check if a pooled connection is tested for a server side close before it is reused
+	 * @return the staleCheckingEnabled
+	 */
+	public boolean isStaleCheckingEnabled()
+	{
+		return staleCheckingEnabled;
+	}
+
+	/**
+	 * get the linger time of a closed socket in seconds, less than zero means linger is off
+	 * @return the socketLinger
+	 */
+	public int getSocketLinger()
+	{
+		return socketLinger;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if(this==o) return true;
+		if(!(o instanceof HttpClientConfig)) return false;
+		HttpClientConfig other = (HttpClientConfig) o;
+		return connectionTimeout==other.connectionTimeout
+				&& socketTimeout==other.socketTimeout
+				&& trustAllCertificates==other.trustAllCertificates
+				&& sslSessionCacheSize==other.sslSessionCacheSize
+				&& sslSessionTimeout==other.sslSessionTimeout
+				&& maxTotalConnections==other.maxTotalConnections
+				&& maxConnectionsPerHost==other.maxConnectionsPerHost
+				&& keepAliveDuration==other.keepAliveDuration
+				&& idleConnectionTimeout==other.idleConnectionTimeout
+				&& hostResolver.equals(other.hostResolver)
+				&& connectAttemptDelay==other.connectAttemptDelay
+				&& tcpNoDelay==other.tcpNoDelay
+				&& sendBufferSize==other.sendBufferSize
+				&& receiveBufferSize==other.receiveBufferSize
+				&& staleCheckingEnabled==other.staleCheckingEnabled
+				&& socketLinger==other.socketLinger;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int result = 17;
+		result = 31 * result + connectionTimeout;
+		result = 31 * result + socketTimeout;
+		result = 31 * result + (trustAllCertificates ? 1 : 0);
+		result = 31 * result + sslSessionCacheSize;
+		result = 31 * result + sslSessionTimeout;
+		result = 31 * result + maxTotalConnections;
+		result = 31 * result + maxConnectionsPerHost;
+		result = 31 * result + (int) (keepAliveDuration ^ (keepAliveDuration >>> 32));
+		result = 31 * result + (int) (idleConnectionTimeout ^ (idleConnectionTimeout >>> 32));
+		result = 31 * result + hostResolver.hashCode();
+		result = 31 * result + (int) (connectAttemptDelay ^ (connectAttemptDelay >>> 32));
+		result = 31 * result + (tcpNoDelay ? 1 : 0);
+		result = 31 * result + sendBufferSize;
+		result = 31 * result + receiveBufferSize;
+		result = 31 * result + (staleCheckingEnabled ? 1 : 0);
+		result = 31 * result + socketLinger;
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "HttpClientConfig(connectionTimeout=" + connectionTimeout
+				+ ", socketTimeout=" + socketTimeout
+				+ ", trustAllCertificates=" + trustAllCertificates
+				+ ", sslSessionCacheSize=" + sslSessionCacheSize
+				+ ", sslSessionTimeout=" + sslSessionTimeout
+				+ ", maxTotalConnections=" + maxTotalConnections
+				+ ", maxConnectionsPerHost=" + maxConnectionsPerHost
+				+ ", keepAliveDuration=" + keepAliveDuration
+				+ ", idleConnectionTimeout=" + idleConnectionTimeout
+				+ ", hostResolver=" + hostResolver.getClass().getSimpleName()
+				+ ", connectAttemptDelay=" + connectAttemptDelay
+				+ ", tcpNoDelay=" + tcpNoDelay
+				+ ", sendBufferSize=" + sendBufferSize
+				+ ", receiveBufferSize=" + receiveBufferSize
+				+ ", staleCheckingEnabled=" + staleCheckingEnabled
+				+ ", socketLinger=" + socketLinger + ")";
+	}
+
+	/**
+	 * builder for {@link HttpClientConfig}
+	 * @author malsukhni
+	 *
+	 */
+	public static class Builder
+	{
+		private int			connectionTimeout		= DEFAULT_CONNECTION_TIMEOUT;
+		private int			socketTimeout			= DEFAULT_SOCKET_TIMEOUT;
+		private boolean		trustAllCertificates	= true;
+		private int			sslSessionCacheSize		= EasySSLSocketFactory.DEFAULT_SESSION_CACHE_SIZE;
+		private int			sslSessionTimeout		= EasySSLSocketFactory.DEFAULT_SESSION_TIMEOUT;
+		private int			maxTotalConnections		= DEFAULT_MAX_TOTAL_CONNECTIONS;
+		private int			maxConnectionsPerHost	= DEFAULT_MAX_CONNECTIONS_PER_HOST;
+		private long		keepAliveDuration		= DEFAULT_KEEP_ALIVE_DURATION;
+		private long		idleConnectionTimeout	= DEFAULT_IDLE_CONNECTION_TIMEOUT;
+		private HostResolver	hostResolver		= CachingHostResolver.getDefault();
+		private long		connectAttemptDelay		= DEFAULT_CONNECT_ATTEMPT_DELAY;
+		private boolean		tcpNoDelay				= true;
+		private int			sendBufferSize			= 0;
+		private int			receiveBufferSize		= 0;
+		private boolean		staleCheckingEnabled	= true;
+		private int			socketLinger			= -1;
+
+		/**
+		 * set the connection timeout in milliseconds
+		 * @param connectionTimeout the connectionTimeout to set
+		 * @return
+		 */
+		public Builder setConnectionTimeout(int connectionTimeout)
+		{
+			this.connectionTimeout = connectionTimeout;
+			return this;
+		}
+
+		/**
+		 * set the socket timeout in milliseconds
+		 * @param socketTimeout the socketTimeout to set
+		 * @return
+		 */
+		public Builder setSocketTimeout(int socketTimeout)
+		{
+			this.socketTimeout = socketTimeout;
+			return this;
+		}
+
+		/**
+		 * accept every server certificate and host name, default is true
+		 * @param trustAllCertificates the trustAllCertificates to set
+		 * @return
+		 */
+		public Builder setTrustAllCertificates(boolean trustAllCertificates)
+		{
+			this.trustAllCertificates = trustAllCertificates;
+			return this;
+		}
+
+		/**
+		 * set the maximum number of cached tls sessions, zero means no limit
+		 * @param sslSessionCacheSize the sslSessionCacheSize to set
+		 * @return
+		 */
+		public Builder setSslSessionCacheSize(int sslSessionCacheSize)
+		{
+			this.sslSessionCacheSize = sslSessionCacheSize;
+			return this;
+		}
+
+		/**
+		 * set the lifetime of a cached tls session in seconds, zero means no limit
+		 * @param sslSessionTimeout the sslSessionTimeout to set
+		 * @return
+		 */
+		public Builder setSslSessionTimeout(int sslSessionTimeout)
+		{
+			this.sslSessionTimeout = sslSessionTimeout;
+			return this;
+		}
+
+		/**
+		 * set the maximum number of pooled connections
+		 * @param maxTotalConnections the maxTotalConnections to set
+		 * @return
+		 */
+		public Builder setMaxTotalConnections(int maxTotalConnections)
+		{
+			this.maxTotalConnections = maxTotalConnections;
+			return this;
+		}
+
+		/**
+		 * set the maximum number of pooled connections to a single host
+		 * @param maxConnectionsPerHost the maxConnectionsPerHost to set
+		 * @return
+		 */
+		public Builder setMaxConnectionsPerHost(int maxConnectionsPerHost)
+		{
+			this.maxConnectionsPerHost = maxConnectionsPerHost;
+			return this;
+		}
+
+		/**
+		 * set how long in milliseconds an idle connection is kept alive when the server does not send a Keep-Alive timeout,
+		 * a shorter server timeout always wins. zero or less keeps the connection until the server closes it
+		 * @param keepAliveDuration the keepAliveDuration to set
+		 * @return
+		 */
+		public Builder setKeepAliveDuration(long keepAliveDuration)
+		{
+			this.keepAliveDuration = keepAliveDuration;
+			return this;
+		}
+
+		/**
+		 * set how long in milliseconds a connection may stay idle in the pool before the evictor closes it,
+		 * zero or less disables idle eviction, expired connections are still closed
+		 * @param idleConnectionTimeout the idleConnectionTimeout to set
+		 * @return
+		 */
+		public Builder setIdleConnectionTimeout(long idleConnectionTimeout)
+		{
+			this.idleConnectionTimeout = idleConnectionTimeout;
+			return this;
+		}
+
+		/**
+		 * set the resolver used to look up hosts when opening new connections,
+		 * default is the shared {@link CachingHostResolver}. null restores the default
+		 * @param hostResolver the hostResolver to set
+		 * @return
+		 */
+		public Builder setHostResolver(HostResolver hostResolver)
+		{
+			this.hostResolver = (hostResolver!=null) ? hostResolver : CachingHostResolver.getDefault();
+			return this;
+		}
+
+		/**
+		 * set how long in milliseconds a connect attempt may run before the next resolved address is tried beside it,
+		 * the first connected address wins. zero or less tries the addresses one after the other, SEE {@link RacingConnector}
+		 * @param connectAttemptDelay the connectAttemptDelay to set
+		 * @return
+		 */
+		public Builder setConnectAttemptDelay(long connectAttemptDelay)
+		{
+			this.connectAttemptDelay = connectAttemptDelay;
+			return this;
+		}
+
+		/**
+		 * send small writes right away instead of coalescing them with nagle's algorithm, default is true
+		 * @param tcpNoDelay the tcpNoDelay to set
+		 * @return
+		 */
+		public Builder setTcpNoDelay(boolean tcpNoDelay)
+		{
+			this.tcpNoDelay = tcpNoDelay;
+			return this;
+		}
+
+		/**
+		 * set the socket send buffer size in bytes, zero or less keeps the system default
+		 * @param sendBufferSize the sendBufferSize to set
+		 * @return
+		 */
+		public Builder setSendBufferSize(int sendBufferSize)
+		{
+			this.sendBufferSize = sendBufferSize;
+			return this;
+		}
+
+		/**
+		 * set the socket receive buffer size in bytes, zero or less keeps the system default.
+		 * it is set before the socket connects so the tcp window can be scaled to it
+		 * @param receiveBufferSize the receiveBufferSize to set
+		 * @return
+		 */
+		public Builder setReceiveBufferSize(int receiveBufferSize)
+		{
+			this.receiveBufferSize = receiveBufferSize;
+			return this;
+		}
+
+		/**
+		 * test a pooled connection for a server side close before it is reused, default is true.
+		 * the check costs a short blocking read on every reused connection of the apache transport,
+		 * the non-blocking transports learn about closed connections from their selector and ignore it
+		 * @param staleCheckingEnabled the staleCheckingEnabled to set
+		 * @return
+		 */
+		public Builder setStaleCheckingEnabled(boolean staleCheckingEnabled)
+		{
+			this.staleCheckingEnabled = staleCheckingEnabled;
+			return this;
+		}
+
+		/**
+		 * set how long in seconds closing a socket waits for unsent data, less than zero turns linger off (default)
+		 * @param socketLinger the socketLinger to set
+		 * @return
+		 */
+		public Builder setSocketLinger(int socketLinger)
+		{
+			this.socketLinger = socketLinger;
+			return this;
+		}
+
+		/**
+		 * build the client configuration
+		 * @return
+		 */
+		public HttpClientConfig build()
+		{
+			return new HttpClientConfig(this);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package ca.sukhni.net.android.api.socket;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+
+import ca.sukhni.net.android.logger.Logger;
+
+/**
+ * process wide pool of long lived http clients, one client per {@link HttpClientConfig}.
+ * <p>every client keeps its own thread safe connection manager, so keep-alive connections
+ * are reused by all the api clients that share the same configuration.</p>
+ * @author malsukhni
+ *
+ */
+public final class HttpClientPool
+{
+	public static final String							TAG				= HttpClientPool.class.getSimpleName();
+
+	private static final Map<HttpClientConfig, HttpClient>	sClients		= new HashMap<HttpClientConfig, HttpClient>();
+
+	private HttpClientPool()
+	{
+	}
+
+	/**
+	 * get the shared http client for the given configuration, the client is created on first use
+	 * @param config the client configuration
+	 * @return
+	 */
+	public static HttpClient getClient(HttpClientConfig config)
+	{
+		synchronized (sClients)
+		{
+			HttpClient client = sClients.get(config);
+			if(client==null)
+			{
+				Logger.debug(TAG + ": creating client for " + config);
+				client = HttpUtils.createHttpClient(config);
+				sClients.put(config, client);
+				IdleConnectionEvictor.ensureStarted();
+			}
+			return client;
+		}
+	}
+
+	/**
+	 * open connections to the host of the given url ahead of time and release them to the pool of the client
+	 * of the given configuration. connections that are already pooled count towards the number.
+	 * <p>call it at start up or after a network change, the new connections are opened in parallel
+	 * and this call blocks until they are ready. secure connections are ready once their tls handshake is done.</p>
+	 * @param config the client configuration
+	 * @param url any url on the host, only the scheme, host and port are used
+	 * @param connections how many connections to have ready, limited by the connections per host of the config
+	 * @return the number of connections ready in the pool
+	 * @throws IOException if no connection could be opened
+	 */
+	public static int prewarm(HttpClientConfig config, String url, int connections) throws IOException
+	{
+		AbstractHttpClient client = (AbstractHttpClient) getClient(config);
+		final ClientConnectionManager manager = client.getConnectionManager();
+		final HttpParams params = client.getParams();
+		final HttpRoute route;
+		try
+		{
+			// plan the route like a request does, so the pooled connections match it
+			HttpGet request = new HttpGet(url);
+			URI uri = request.getURI();
+			HttpHost target = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+			route = client.getRoutePlanner().determineRoute(target, request, new BasicHttpContext());
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new IOException("Invalid url: " + url);
+		}
+		catch(HttpException e)
+		{
+			throw new IOException("Unable to plan the route of " + url + ": " + e.getMessage());
+		}
+		int count = connections;
+		if(config.getMaxConnectionsPerHost()>0) count = Math.min(count, config.getMaxConnectionsPerHost());
+		// lease all of them first, otherwise the pool hands the same connection out again
+		List<ManagedClientConnection> leased = new ArrayList<ManagedClientConnection>(count);
+		try
+		{
+			for(int i=0;i<count;i++)
+			{
+				leased.add(manager.requestConnection(route, null).getConnection(config.getConnectionTimeout(), TimeUnit.MILLISECONDS));
+			}
+		}
+		catch(ConnectionPoolTimeoutException e)
+		{
+			Logger.debug(TAG + ": prewarm of " + route + " stopped at " + leased.size() + " connection(s), the pool is busy");
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		final IOException[] failure = new IOException[1];
+		List<Thread> openers = new ArrayList<Thread>(leased.size());
+		for(final ManagedClientConnection connection : leased)
+		{
+			if(connection.isOpen()) continue;
+			Thread opener = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						connection.open(route, new BasicHttpContext(), params);
+						connection.markReusable();
+					}
+					catch(IOException e)
+					{
+						failure[0] = e;
+					}
+				}
+			}, TAG + "-prewarm");
+			opener.setDaemon(true);
+			opener.start();
+			openers.add(opener);
+		}
+		for(Thread opener : openers)
+		{
+			try
+			{
+				opener.join();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		int ready = 0;
+		for(ManagedClientConnection connection : leased)
+		{
+			if(connection.isOpen())
+			{
+				connection.markReusable();
+				ready++;
+			}
+			manager.releaseConnection(connection, config.getKeepAliveDuration(), TimeUnit.MILLISECONDS);
+		}
+		Logger.debug(TAG + ": prewarmed " + ready + " connection(s) to " + route);
+		if(ready==0 && failure[0]!=null) throw failure[0];
+		return ready;
+	}
+
+	/**
+	 * shutdown the client of the given configuration and close all of its connections.
+	 * the next request with the same configuration gets a new client
+	 * @param config the client configuration
+	 */
+	public static void shutdown(HttpClientConfig config)
+	{
+		HttpClient client;
+		synchronized (sClients)
+		{
+			client = sClients.remove(config);
+			if(sClients.isEmpty()) IdleConnectionEvictor.stopEvictor();
+		}
+		if(client!=null)
+		{
+			client.getConnectionManager().shutdown();
+		}
+	}
+
+	/**
+	 * shutdown all the pooled clients and close all of their connections
+	 */
+	public static void shutdownAll()
+	{
+		HttpClient[] clients;
+		synchronized (sClients)
+		{
+			clients = sClients.values().toArray(new HttpClient[sClients.size()]);
+			sClients.clear();
+			IdleConnectionEvictor.stopEvictor();
+		}
+		for(HttpClient client : clients)
+		{
+			client.getConnectionManager().shutdown();
+		}
+		Logger.debug(TAG + ": shutdown " + clients.length + " client(s)");
+	}
+
+	/**
+	 * get a copy of the pooled clients
+	 * @return
+	 */
+	static Map<HttpClientConfig, HttpClient> snapshot()
+	{
+		synchronized (sClients)
+		{
+			return new HashMap<HttpClientConfig, HttpClient>(sClients);
+		}
+	}
+
+	/**
+	 * get the number of pooled clients
+	 * @return
+	 */
+	public static int size()
+	{
+		synchronized (sClients)
+		{
+			return sClients.size();
+		}
+	}
+}
@@ -4,6 +4,8 @@ import java.security.KeyStore;
 import org.apache.http.HttpVersion;
 import org.apache.http.client.HttpClient;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -11,48 +13,53 @@ import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HTTP;
 
+import ca.sukhni.net.android.logger.Logger;
+
 public class HttpUtils
 {
+    /**
+     * create a new http client for the given configuration.
+     * the client owns its connection manager, callers that do not keep it should use {@link HttpClientPool} instead
+     * @param config the client configuration
+     * @return
+     */
+    public static HttpClient createHttpClient(HttpClientConfig config)
+    {
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, config.getConnectionTimeout());
+        HttpConnectionParams.setSoTimeout(params, config.getSocketTimeout());
+        HttpConnectionParams.setTcpNoDelay(params, config.isTcpNoDelay());
+        HttpConnectionParams.setStaleCheckingEnabled(params, config.isStaleCheckingEnabled());
+        HttpConnectionParams.setLinger(params, config.getSocketLinger());
+        HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+        HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+        ConnManagerParams.setMaxTotalConnections(params, config.getMaxTotalConnections());
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(config.getMaxConnectionsPerHost()));
+        ClientConnectionParams.setHostResolver(params, config.getHostResolver());
+        ClientConnectionParams.setConnectAttemptDelay(params, config.getConnectAttemptDelay());
+        ClientConnectionParams.setSendBufferSize(params, config.getSendBufferSize());
+        ClientConnectionParams.setReceiveBufferSize(params, config.getReceiveBufferSize());
+        ClientConnectionManager ccm = new ResolvingClientConnManager(params, createSchemeRegistry(config));
+        DefaultHttpClient client = new DefaultHttpClient(ccm, params);
+        client.setKeepAliveStrategy(new KeepAliveStrategy(config.getKeepAliveDuration()));
+        return client;
+    }
+
     public static HttpClient getNewHttpClient(HttpParams reqParams)
     {
         try
         {
-            KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
-            trustStore.load(null, null);
-
-            SSLSocketFactory sf = new EasySSLSocketFactory(trustStore);
-            sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-
-            HttpParams params = new BasicHttpParams();
-            if (reqParams == null)
-            {
-                HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
-                HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
-            }
-            else
-            {
-                HttpProtocolParams.setVersion(reqParams, HttpVersion.HTTP_1_1);
-                HttpProtocolParams.setContentCharset(reqParams, HTTP.UTF_8);
-            }
-
-            SchemeRegistry registry = new SchemeRegistry();
-            registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-            registry.register(new Scheme("https", sf, 443));
+            HttpParams params = (reqParams == null) ? new BasicHttpParams() : reqParams;
+            HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+            HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
 
-            if (reqParams == null)
-            {
-            	ClientConnectionManager ccm = new ThreadSafeClientConnManager(params, registry);
-            	return new DefaultHttpClient(ccm, params);
-            }
-            else
-            {
-            	ClientConnectionManager ccm = new ThreadSafeClientConnManager(reqParams, registry);
-            	return new DefaultHttpClient(ccm, reqParams);
-            }
+            ClientConnectionManager ccm = new ThreadSafeClientConnManager(params, createSchemeRegistry(new HttpClientConfig.Builder().build()));
+            return new DefaultHttpClient(ccm, params);
         } catch (Exception e) {
             return new DefaultHttpClient();
         }
@@ -61,4 +68,27 @@ public class HttpUtils
     {
     	return getNewHttpClient(null);
     }
+
+    private static SchemeRegistry createSchemeRegistry(HttpClientConfig config)
+    {
+        SSLSocketFactory sf = SSLSocketFactory.getSocketFactory();
+        if (config.isTrustAllCertificates())
+        {
+            try
+            {
+                KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+                trustStore.load(null, null);
+
+                sf = new EasySSLSocketFactory(trustStore, config.getSslSessionCacheSize(), config.getSslSessionTimeout());
+                sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+            } catch (Exception e) {
+                Logger.printStackTrace(e);
+            }
+        }
+
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+        registry.register(new Scheme("https", sf, 443));
+        return registry;
+    }
 }
@@ -0,0 +1,94 @@
+package ca.sukhni.net.android.api.socket;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+
+import ca.sukhni.net.android.logger.Logger;
+
+/**
+ * background daemon thread that closes expired and idle connections of the pooled clients.
+ * the thread is started with the first pooled client and stops once the pool is empty
+ * @author malsukhni
+ *
+ */
+class IdleConnectionEvictor extends Thread
+{
+	public static final String		TAG						= IdleConnectionEvictor.class.getSimpleName();
+	public static final long		EVICTION_INTERVAL		= 5000;
+
+	private static IdleConnectionEvictor	sInstance		= null;
+
+	private volatile boolean				stopped			= false;
+
+	private IdleConnectionEvictor()
+	{
+		super(TAG);
+		setDaemon(true);
+	}
+
+	/**
+	 * start the evictor if it is not running
+	 */
+	static synchronized void ensureStarted()
+	{
+		if(sInstance==null)
+		{
+			sInstance = new IdleConnectionEvictor();
+			sInstance.start();
+		}
+	}
+
+	/**
+	 * stop the evictor if it is running
+	 */
+	static synchronized void stopEvictor()
+	{
+		if(sInstance!=null)
+		{
+			sInstance.stopped = true;
+			sInstance.interrupt();
+			sInstance = null;
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		while(!stopped)
+		{
+			try
+			{
+				Thread.sleep(EVICTION_INTERVAL);
+			}
+			catch(InterruptedException e)
+			{
+				continue;
+			}
+			for(Map.Entry<HttpClientConfig, HttpClient> entry : HttpClientPool.snapshot().entrySet())
+			{
+				evict(entry.getKey(), entry.getValue().getConnectionManager());
+			}
+		}
+		Logger.debug(TAG + ": stopped");
+	}
+
+	private static void evict(HttpClientConfig config, ClientConnectionManager manager)
+	{
+		try
+		{
+			manager.closeExpiredConnections();
+			if(config.getIdleConnectionTimeout()>0)
+			{
+				manager.closeIdleConnections(config.getIdleConnectionTimeout(), TimeUnit.MILLISECONDS);
+			}
+		}
+		catch(Exception ex)
+		{
+			// the manager may have been shutdown concurrently
+			Logger.printStackTrace(ex);
+		}
+	}
+}
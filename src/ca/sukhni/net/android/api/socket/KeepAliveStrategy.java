@@ -0,0 +1,53 @@
+package ca.sukhni.net.android.api.socket;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * keep-alive strategy that honours the timeout of the server Keep-Alive header,
+ * capped by the configured keep-alive duration
+ * @author malsukhni
+ *
+ */
+public class KeepAliveStrategy implements ConnectionKeepAliveStrategy
+{
+	private final long keepAliveDuration;
+
+	/**
+	 * @param keepAliveDuration the keep-alive duration in milliseconds, zero or less means until the server closes the connection
+	 */
+	public KeepAliveStrategy(long keepAliveDuration)
+	{
+		this.keepAliveDuration = keepAliveDuration;
+	}
+
+	@Override
+	public long getKeepAliveDuration(HttpResponse response, HttpContext context)
+	{
+		long serverDuration = -1;
+		HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+		while(it.hasNext())
+		{
+			HeaderElement element = it.nextElement();
+			if("timeout".equalsIgnoreCase(element.getName()) && element.getValue()!=null)
+			{
+				try
+				{
+					serverDuration = Long.parseLong(element.getValue().trim()) * 1000;
+				}
+				catch(NumberFormatException ex)
+				{
+					// ignore malformed values and fall back to the configured duration
+				}
+			}
+		}
+		if(keepAliveDuration<=0) return serverDuration;
+		if(serverDuration<0) return keepAliveDuration;
+		return Math.min(serverDuration, keepAliveDuration);
+	}
+}
@@ -0,0 +1,369 @@
+package ca.sukhni.net.android.api.socket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * connects a socket to one of the resolved addresses of a host, in the fashion of happy eyeballs (rfc 8305).
+ * <p>the addresses are interleaved by family and tried in order, a new attempt is started every attempt delay
+ * or as soon as the previous attempt fails, while the earlier attempts keep running. the first connected socket wins
+ * and the others are closed, so a dead address costs the attempt delay instead of the whole connection timeout.</p>
+ * <p>a connect in flight is aborted from another thread through its {@link Handle}, which closes the sockets of all
+ * the attempts.</p>
+ * @author malsukhni
+ *
+ */
+public final class RacingConnector
+{
+	public static final String					TAG					= RacingConnector.class.getSimpleName();
+
+	private static final ExecutorService		sAttempts			= new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+			new SynchronousQueue<Runnable>(), new ThreadFactory()
+			{
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, TAG + "-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private RacingConnector()
+	{
+	}
+
+	/**
+	 * connect a socket to one of the given addresses
+	 * @param addresses the resolved addresses of the host, in the order of preference of the resolver
+	 * @param port the remote port
+	 * @param local the local address to bind to, or null
+	 * @param timeout connect timeout of each attempt in milliseconds, zero means no timeout
+	 * @param attemptDelay milliseconds to wait for an attempt before the next one is started, zero or less connects sequentially
+	 * @param sendBufferSize the socket send buffer size, zero or less keeps the system default
+	 * @param receiveBufferSize the socket receive buffer size, zero or less keeps the system default
+	 * @return the connected socket
+	 * @throws java.net.ConnectException if every address refused the connection
+	 * @throws SocketTimeoutException if the last failed attempt timed out
+	 * @throws IOException
+	 */
+	public static Socket connect(InetAddress[] addresses, int port, InetAddress local, int timeout, long attemptDelay,
+			int sendBufferSize, int receiveBufferSize) throws IOException
+	{
+		return connect(addresses, port, local, timeout, attemptDelay, sendBufferSize, receiveBufferSize, null);
+	}
+
+	/**
+	 * connect a socket to one of the given addresses like {@link #connect(InetAddress[], int, InetAddress, int, long, int, int)},
+	 * aborting the handle closes the sockets of all the attempts
+	 * @param handle the handle every attempt socket is registered with before it connects, or null
+	 * @return the connected socket
+	 * @throws InterruptedIOException if the handle is aborted
+	 * @throws IOException
+	 */
+	public static Socket connect(InetAddress[] addresses, int port, InetAddress local, int timeout, long attemptDelay,
+			int sendBufferSize, int receiveBufferSize, Handle handle) throws IOException
+	{
+		if(addresses==null || addresses.length==0) throw new IllegalArgumentException("No address to connect to");
+		InetAddress[] ordered = interleave(addresses);
+		Target target = new Target(port, local, timeout, sendBufferSize, receiveBufferSize, handle);
+		if(ordered.length==1 || attemptDelay<=0)
+		{
+			return connectSequentially(ordered, target);
+		}
+		return new Race(ordered, target).run(attemptDelay);
+	}
+
+	/**
+	 * order the addresses so the families alternate, starting with the family of the first address
+	 * @param addresses
+	 * @return
+	 */
+	public static InetAddress[] interleave(InetAddress[] addresses)
+	{
+		LinkedList<InetAddress> first = new LinkedList<InetAddress>();
+		LinkedList<InetAddress> second = new LinkedList<InetAddress>();
+		boolean firstIsV6 = addresses[0] instanceof Inet6Address;
+		for(InetAddress address : addresses)
+		{
+			if((address instanceof Inet6Address)==firstIsV6) first.add(address);
+			else second.add(address);
+		}
+		InetAddress[] ordered = new InetAddress[addresses.length];
+		int i = 0;
+		while(!first.isEmpty() || !second.isEmpty())
+		{
+			if(!first.isEmpty()) ordered[i++] = first.removeFirst();
+			if(!second.isEmpty()) ordered[i++] = second.removeFirst();
+		}
+		return ordered;
+	}
+
+	private static Socket connectSequentially(InetAddress[] addresses, Target target) throws IOException
+	{
+		IOException last = null;
+		for(InetAddress address : addresses)
+		{
+			Socket socket = new Socket();
+			try
+			{
+				target.connect(socket, address);
+				return socket;
+			}
+			catch(IOException e)
+			{
+				closeQuietly(socket);
+				target.throwIfAborted();
+				if(e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) throw e;
+				last = e;
+			}
+		}
+		throw last;
+	}
+
+	private static void closeQuietly(Socket socket)
+	{
+		try
+		{
+			socket.close();
+		}
+		catch(IOException e)
+		{
+			// ignore, the socket is discarded anyway
+		}
+	}
+
+	/**
+	 * the port and the socket settings shared by the attempts of one connect
+	 */
+	private static final class Target
+	{
+		final int							port;
+		final InetAddress					local;
+		final int							timeout;
+		final int							sendBufferSize;
+		final int							receiveBufferSize;
+		final Handle						handle;
+
+		Target(int port, InetAddress local, int timeout, int sendBufferSize, int receiveBufferSize, Handle handle)
+		{
+			this.port = port;
+			this.local = local;
+			this.timeout = timeout;
+			this.sendBufferSize = sendBufferSize;
+			this.receiveBufferSize = receiveBufferSize;
+			this.handle = handle;
+		}
+
+		void connect(Socket socket, InetAddress address) throws IOException
+		{
+			if(handle!=null) handle.register(socket);
+			// buffer sizes are set before the connect so the tcp window can be scaled to them
+			if(sendBufferSize>0) socket.setSendBufferSize(sendBufferSize);
+			if(receiveBufferSize>0) socket.setReceiveBufferSize(receiveBufferSize);
+			if(local!=null)
+			{
+				socket.bind(new InetSocketAddress(local, 0));
+			}
+			socket.connect(new InetSocketAddress(address, port), timeout);
+		}
+
+		/**
+		 * @throws InterruptedIOException if the handle is aborted, the failure of an attempt is the abort then
+		 */
+		void throwIfAborted() throws InterruptedIOException
+		{
+			if(handle!=null && handle.isAborted()) throw new InterruptedIOException("Connect to port " + port + " aborted");
+		}
+	}
+
+	/**
+	 * the attempts of one connect, the calling thread waits for the outcomes and starts the next attempts
+	 */
+	private static final class Race
+	{
+		private final InetAddress[]						addresses;
+		private final Target							target;
+		private final BlockingQueue<Attempt>			outcomes		= new LinkedBlockingQueue<Attempt>();
+		private final List<Attempt>						running			= new ArrayList<Attempt>();
+		private boolean									finished;
+
+		Race(InetAddress[] addresses, Target target)
+		{
+			this.addresses = addresses;
+			this.target = target;
+		}
+
+		Socket run(long attemptDelay) throws IOException
+		{
+			int next = 0;
+			IOException last = null;
+			try
+			{
+				start(addresses[next++]);
+				while(true)
+				{
+					Attempt outcome;
+					if(next<addresses.length)
+					{
+						outcome = outcomes.poll(attemptDelay, TimeUnit.MILLISECONDS);
+						if(outcome==null)
+						{
+							// the running attempts are slow, start the next one beside them
+							start(addresses[next++]);
+							continue;
+						}
+					}
+					else
+					{
+						outcome = outcomes.take();
+					}
+					running.remove(outcome);
+					if(outcome.failure==null)
+					{
+						finish(outcome);
+						return outcome.socket;
+					}
+					if(target.handle!=null && target.handle.isAborted())
+					{
+						finish(null);
+						target.throwIfAborted();
+					}
+					last = outcome.failure;
+					if(next<addresses.length) start(addresses[next++]);
+					else if(running.isEmpty()) throw last;
+				}
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				finish(null);
+				throw new InterruptedIOException("Interrupted while connecting to port " + target.port);
+			}
+		}
+
+		private void start(InetAddress address)
+		{
+			final Attempt attempt = new Attempt(address);
+			running.add(attempt);
+			sAttempts.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						target.connect(attempt.socket, attempt.address);
+					}
+					catch(IOException e)
+					{
+						closeQuietly(attempt.socket);
+						attempt.failure = e;
+					}
+					synchronized(Race.this)
+					{
+						if(!finished)
+						{
+							outcomes.add(attempt);
+							return;
+						}
+					}
+					// a late winner, the race is already decided
+					closeQuietly(attempt.socket);
+				}
+			});
+		}
+
+		/**
+		 * stop the race and close the sockets of the other attempts
+		 * @param winner the winning attempt, or null
+		 */
+		private void finish(Attempt winner)
+		{
+			synchronized(this)
+			{
+				finished = true;
+			}
+			for(Attempt attempt : running)
+			{
+				if(attempt!=winner) closeQuietly(attempt.socket);
+			}
+			Attempt late;
+			while((late = outcomes.poll())!=null)
+			{
+				if(late!=winner) closeQuietly(late.socket);
+			}
+		}
+	}
+
+	/**
+	 * handle to abort a connect in flight from another thread, the socket of every attempt is registered with it
+	 * before it connects
+	 */
+	public static final class Handle
+	{
+		private final List<Socket>		sockets		= new ArrayList<Socket>();
+		private boolean					aborted;
+
+		/**
+		 * close the sockets of the attempts, the connect fails and no attempt is started afterwards.
+		 * the connected socket is closed too if the connect already returned it
+		 */
+		public void abort()
+		{
+			List<Socket> pending;
+			synchronized(this)
+			{
+				if(aborted) return;
+				aborted = true;
+				pending = new ArrayList<Socket>(sockets);
+				sockets.clear();
+			}
+			for(Socket socket : pending)
+			{
+				closeQuietly(socket);
+			}
+		}
+
+		public synchronized boolean isAborted()
+		{
+			return aborted;
+		}
+
+		synchronized void register(Socket socket) throws InterruptedIOException
+		{
+			if(aborted) throw new InterruptedIOException("Connect aborted");
+			sockets.add(socket);
+		}
+	}
+
+	private static final class Attempt
+	{
+		final InetAddress				address;
+		final Socket					socket		= new Socket();
+		volatile IOException			failure;
+
+		Attempt(InetAddress address)
+		{
+			this.address = address;
+		}
+	}
+}
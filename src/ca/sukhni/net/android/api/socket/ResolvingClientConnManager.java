@@ -0,0 +1,25 @@
+package ca.sukhni.net.android.api.socket;
+
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpParams;
+
+/**
+ * thread safe connection manager that opens its connections with a {@link ResolvingClientConnectionOperator}
+ * @author malsukhni
+ *
+ */
+public class ResolvingClientConnManager extends ThreadSafeClientConnManager
+{
+	public ResolvingClientConnManager(HttpParams params, SchemeRegistry schreg)
+	{
+		super(params, schreg);
+	}
+
+	@Override
+	protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schreg)
+	{
+		return new ResolvingClientConnectionOperator(schreg);
+	}
+}
@@ -0,0 +1,45 @@
+package ca.sukhni.net.android.api.socket;
+
+import java.io.IOException;
+
+import org.apache.http.impl.conn.DefaultClientConnection;
+
+/**
+ * client connection opened by the {@link ResolvingClientConnectionOperator}. shutting it down, which is what aborting
+ * its request does, also aborts the connect in flight, SEE {@link RacingConnector.Handle}
+ * @author malsukhni
+ *
+ */
+class ResolvingClientConnection extends DefaultClientConnection
+{
+	private RacingConnector.Handle		connecting;
+	private boolean						shutdown;
+
+	/**
+	 * set the handle of the connect in flight, it is aborted right away when the connection is already shut down
+	 * @param handle the handle, or null once the socket is connected
+	 */
+	void setConnecting(RacingConnector.Handle handle)
+	{
+		boolean abort;
+		synchronized(this)
+		{
+			connecting = handle;
+			abort = shutdown;
+		}
+		if(abort && handle!=null) handle.abort();
+	}
+
+	@Override
+	public void shutdown() throws IOException
+	{
+		RacingConnector.Handle handle;
+		synchronized(this)
+		{
+			shutdown = true;
+			handle = connecting;
+		}
+		if(handle!=null) handle.abort();
+		super.shutdown();
+	}
+}
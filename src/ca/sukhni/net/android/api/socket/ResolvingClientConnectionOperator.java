@@ -0,0 +1,102 @@
+package ca.sukhni.net.android.api.socket;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.HttpHostConnectException;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.scheme.LayeredSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * connection operator that resolves the target through the {@link HostResolver} set in the connection parameters.
+ * <p>the plain socket is connected to the first resolved address that answers, SEE {@link RacingConnector}.
+ * secure schemes are layered on top of it with the target host name so certificate checks and tls session caching
+ * keep working per host.</p>
+ * <p>the connections are {@link ResolvingClientConnection}s, aborting one while it connects closes the sockets of all
+ * the connect attempts instead of waiting for the connection timeout.</p>
+ * @author malsukhni
+ *
+ */
+public class ResolvingClientConnectionOperator extends DefaultClientConnectionOperator
+{
+	public ResolvingClientConnectionOperator(SchemeRegistry schemes)
+	{
+		super(schemes);
+	}
+
+	@Override
+	public OperatedClientConnection createConnection()
+	{
+		return new ResolvingClientConnection();
+	}
+
+	@Override
+	public void openConnection(OperatedClientConnection conn, HttpHost target, InetAddress local, HttpContext context, HttpParams params)
+			throws IOException
+	{
+		if(conn==null || target==null || params==null)
+		{
+			throw new IllegalArgumentException("Connection, target host and parameters must not be null.");
+		}
+		if(conn.isOpen())
+		{
+			throw new IllegalStateException("Connection must not be open.");
+		}
+
+		Scheme scheme = schemeRegistry.getScheme(target.getSchemeName());
+		SocketFactory sf = scheme.getSocketFactory();
+		int port = scheme.resolvePort(target.getPort());
+		// the sockets of the attempts are not known to the connection until one connects, the handle lets a shutdown close them
+		RacingConnector.Handle handle = new RacingConnector.Handle();
+		ResolvingClientConnection connecting = (conn instanceof ResolvingClientConnection) ? (ResolvingClientConnection) conn : null;
+		if(connecting!=null) connecting.setConnecting(handle);
+		Socket sock;
+		try
+		{
+			InetAddress[] addresses = ClientConnectionParams.getHostResolver(params).resolve(target.getHostName());
+			sock = RacingConnector.connect(addresses, port, local, HttpConnectionParams.getConnectionTimeout(params),
+					ClientConnectionParams.getConnectAttemptDelay(params), ClientConnectionParams.getSendBufferSize(params),
+					ClientConnectionParams.getReceiveBufferSize(params), handle);
+		}
+		catch(ConnectException ex)
+		{
+			throw new HttpHostConnectException(target, ex);
+		}
+		catch(SocketTimeoutException ex)
+		{
+			throw new ConnectTimeoutException("Connect to " + target + " timed out");
+		}
+		finally
+		{
+			if(connecting!=null) connecting.setConnecting(null);
+		}
+		// throws and closes the socket when the connection was shut down meanwhile
+		conn.opening(sock, target);
+
+		if(sf instanceof LayeredSocketFactory)
+		{
+			// the read timeout bounds the tls handshake, the layered socket inherits it
+			sock.setSoTimeout(HttpConnectionParams.getSoTimeout(params));
+			Socket layered = ((LayeredSocketFactory) sf).createSocket(sock, target.getHostName(), port, true);
+			if(layered!=sock)
+			{
+				sock = layered;
+				conn.opening(sock, target);
+			}
+		}
+		prepareSocket(sock, context, params);
+		conn.openCompleted(sf.isSecure(sock), params);
+	}
+}
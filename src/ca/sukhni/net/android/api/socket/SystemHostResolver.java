@@ -0,0 +1,34 @@
+package ca.sukhni.net.android.api.socket;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * host resolver backed by the platform resolver, nothing is cached by this class
+ * @author malsukhni
+ *
+ */
+public class SystemHostResolver implements HostResolver
+{
+	private static final SystemHostResolver sInstance = new SystemHostResolver();
+
+	/**
+	 * get the shared instance
+	 * @return
+	 */
+	public static SystemHostResolver getInstance()
+	{
+		return sInstance;
+	}
+
+	@Override
+	public InetAddress[] resolve(String host) throws UnknownHostException
+	{
+		return InetAddress.getAllByName(host);
+	}
+
+	@Override
+	public void prefetch(String host)
+	{
+	}
+}
@@ -0,0 +1,229 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+
+import ca.sukhni.net.android.api.socket.HttpClientConfig;
+import ca.sukhni.net.android.api.socket.HttpClientPool;
+import ca.sukhni.net.android.logger.Logger;
+
+/**
+ * transport backed by the apache http client, connections are pooled by {@link HttpClientPool}
+ * @author malsukhni
+ *
+ */
+public class ApacheHttpTransport implements PrewarmableTransport
+{
+	public static final String						TAG				= ApacheHttpTransport.class.getSimpleName();
+
+	private static final ApacheHttpTransport		sInstance		= new ApacheHttpTransport();
+
+	/**
+	 * get the shared instance
+	 * @return
+	 */
+	public static ApacheHttpTransport getInstance()
+	{
+		return sInstance;
+	}
+
+	@Override
+	public TransportResponse execute(TransportRequest request, HttpClientConfig config) throws IOException
+	{
+		final HttpRequestBase httpRequest = createRequest(request);
+		CancellationSignal signal = request.getCancellationSignal();
+		if(signal!=null)
+		{
+			// abort releases the connection, also while the content is read
+			signal.setOnCancelListener(new CancellationSignal.OnCancelListener()
+			{
+				@Override
+				public void onCancel()
+				{
+					httpRequest.abort();
+				}
+			});
+			signal.throwIfCanceled(request.getUrl());
+		}
+		HttpClient client = HttpClientPool.getClient(config);
+		try
+		{
+			return new ApacheTransportResponse(httpRequest, client.execute(httpRequest));
+		}
+		catch(IOException e)
+		{
+			// an abort while waiting for a pooled connection leaves the thread interrupted, the abort is reported by the failure
+			if(signal!=null && signal.isCanceled()) Thread.interrupted();
+			throw e;
+		}
+	}
+
+	@Override
+	public int prewarm(String url, int connections, HttpClientConfig config) throws IOException
+	{
+		return HttpClientPool.prewarm(config, url, connections);
+	}
+
+	@Override
+	public String getName()
+	{
+		return "apache";
+	}
+
+	/**
+	 * create the apache request for the given transport request
+	 * @param request
+	 * @return
+	 */
+	protected HttpRequestBase createRequest(TransportRequest request)
+	{
+		HttpRequestBase httpRequest;
+		switch (request.getMethod())
+		{
+			case POST:
+				httpRequest = new HttpPost(request.getUrl());
+				break;
+			case PUT:
+				httpRequest = new HttpPut(request.getUrl());
+				break;
+			case DELETE:
+				httpRequest = new HttpDelete(request.getUrl());
+				break;
+			case GET:
+			default:
+				httpRequest = new HttpGet(request.getUrl());
+				break;
+		}
+		for (NameValuePair h : request.getHeaders())
+		{
+			httpRequest.addHeader(h.getName(), h.getValue());
+		}
+		if(request.getBody()!=null && httpRequest instanceof HttpEntityEnclosingRequestBase)
+		{
+			ByteArrayEntity entity = new ByteArrayEntity(request.getBody());
+			entity.setContentType(request.getContentType());
+			entity.setContentEncoding(request.getContentEncoding());
+			((HttpEntityEnclosingRequestBase) httpRequest).setEntity(entity);
+		}
+		return httpRequest;
+	}
+
+	/**
+	 * transport response wrapping an apache http response
+	 * @author malsukhni
+	 *
+	 */
+	static class ApacheTransportResponse implements TransportResponse
+	{
+		private final HttpRequestBase	request;
+		private final HttpResponse		response;
+		private final HttpEntity		entity;
+
+		ApacheTransportResponse(HttpRequestBase request, HttpResponse response)
+		{
+			this.request = request;
+			this.response = response;
+			this.entity = response.getEntity();
+		}
+
+		@Override
+		public int getStatusCode()
+		{
+			return response.getStatusLine().getStatusCode();
+		}
+
+		@Override
+		public String getReasonPhrase()
+		{
+			return response.getStatusLine().getReasonPhrase();
+		}
+
+		@Override
+		public String getHeader(String name)
+		{
+			Header header = response.getFirstHeader(name);
+			return (header!=null) ? header.getValue() : null;
+		}
+
+		@Override
+		public boolean hasEntity()
+		{
+			return entity!=null;
+		}
+
+		@Override
+		public long getContentLength()
+		{
+			return (entity!=null) ? entity.getContentLength() : -1;
+		}
+
+		@Override
+		public String getContentType()
+		{
+			return (entity!=null && entity.getContentType()!=null) ? entity.getContentType().getValue() : null;
+		}
+
+		@Override
+		public String getContentEncoding()
+		{
+			return (entity!=null && entity.getContentEncoding()!=null) ? entity.getContentEncoding().getValue() : null;
+		}
+
+		@Override
+		public boolean isChunked()
+		{
+			return entity!=null && entity.isChunked();
+		}
+
+		@Override
+		public boolean isStreaming()
+		{
+			return entity!=null && entity.isStreaming();
+		}
+
+		@Override
+		public boolean isRepeatable()
+		{
+			return entity!=null && entity.isRepeatable();
+		}
+
+		@Override
+		public InputStream getContent() throws IOException
+		{
+			return (entity!=null) ? entity.getContent() : null;
+		}
+
+		@Override
+		public void close()
+		{
+			try
+			{
+				if(entity!=null) entity.consumeContent();
+			}
+			catch(IOException ex)
+			{
+				Logger.debug(TAG + ": consumeContent failed, aborting request");
+				request.abort();
+			}
+		}
+
+		@Override
+		public void abort()
+		{
+			request.abort();
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package ca.sukhni.net.android.api.transport;
+
+import ca.sukhni.net.android.api.socket.HttpClientConfig;
+
+/**
+ * interface to an http engine that can execute requests without blocking the calling thread.
+ * api clients that select such a transport do not spawn a thread per request
+ * @author malsukhni
+ *
+ */
+public interface AsyncHttpTransport extends HttpTransport
+{
+	/**
+	 * start the request and return immediately, the callback is never called on the calling thread
+	 * @param request the request to execute
+	 * @param config the connection settings of the calling client
+	 * @param callback receives the response or the failure
+	 */
+	public abstract void executeAsync(TransportRequest request, HttpClientConfig config, TransportCallback callback);
+}
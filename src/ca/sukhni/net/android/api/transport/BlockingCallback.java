@@ -0,0 +1,52 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * callback that lets a thread wait for the outcome of an asynchronous execution
+ * @author malsukhni
+ *
+ */
+final class BlockingCallback implements TransportCallback
+{
+	private final CountDownLatch		latch		= new CountDownLatch(1);
+	private volatile TransportResponse	response;
+	private volatile IOException		failure;
+
+	@Override
+	public void onResponse(TransportResponse response)
+	{
+		this.response = response;
+		latch.countDown();
+	}
+
+	@Override
+	public void onFailure(IOException e)
+	{
+		this.failure = e;
+		latch.countDown();
+	}
+
+	/**
+	 * wait for the outcome
+	 * @param url the request url, for the interruption message
+	 * @return the response
+	 * @throws IOException the failure of the request
+	 */
+	TransportResponse await(String url) throws IOException
+	{
+		try
+		{
+			latch.await();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + url);
+		}
+		if(failure!=null) throw failure;
+		return response;
+	}
+}
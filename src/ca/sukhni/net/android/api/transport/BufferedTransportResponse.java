@@ -0,0 +1,117 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.http.NameValuePair;
+
+/**
+ * transport response whose body was fully received in memory, no connection is held
+ * @author malsukhni
+ *
+ */
+final class BufferedTransportResponse implements TransportResponse
+{
+	private final int					statusCode;
+	private final String				reasonPhrase;
+	private final List<NameValuePair>	headers;
+	private final byte[]				body;
+	private final boolean				chunked;
+
+	/**
+	 * @param statusCode
+	 * @param reasonPhrase
+	 * @param headers the response headers
+	 * @param body the body, or null when the response has no body
+	 * @param chunked true if the body was sent with chunked transfer coding
+	 */
+	BufferedTransportResponse(int statusCode, String reasonPhrase, List<NameValuePair> headers, byte[] body, boolean chunked)
+	{
+		this.statusCode = statusCode;
+		this.reasonPhrase = reasonPhrase;
+		this.headers = headers;
+		this.body = body;
+		this.chunked = chunked;
+	}
+
+	@Override
+	public int getStatusCode()
+	{
+		return statusCode;
+	}
+
+	@Override
+	public String getReasonPhrase()
+	{
+		return reasonPhrase;
+	}
+
+	@Override
+	public String getHeader(String name)
+	{
+		for(NameValuePair header : headers)
+		{
+			if(header.getName().equalsIgnoreCase(name)) return header.getValue();
+		}
+		return null;
+	}
+
+	@Override
+	public boolean hasEntity()
+	{
+		return body!=null;
+	}
+
+	@Override
+	public long getContentLength()
+	{
+		return (body!=null) ? body.length : -1;
+	}
+
+	@Override
+	public String getContentType()
+	{
+		return getHeader("Content-Type");
+	}
+
+	@Override
+	public String getContentEncoding()
+	{
+		return getHeader("Content-Encoding");
+	}
+
+	@Override
+	public boolean isChunked()
+	{
+		return chunked;
+	}
+
+	@Override
+	public boolean isStreaming()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isRepeatable()
+	{
+		return true;
+	}
+
+	@Override
+	public InputStream getContent()
+	{
+		return (body!=null) ? new ByteArrayInputStream(body) : null;
+	}
+
+	@Override
+	public void close()
+	{
+	}
+
+	@Override
+	public void abort()
+	{
+	}
+}
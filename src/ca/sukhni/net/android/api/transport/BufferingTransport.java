@@ -0,0 +1,12 @@
+package ca.sukhni.net.android.api.transport;
+
+/**
+ * interface to an http engine that receives the whole content of a response in memory before it is delivered,
+ * so its responses can not be streamed from the connection. a large content must not be requested with it,
+ * i.e. it can not download to a file
+ * @author malsukhni
+ *
+ */
+public interface BufferingTransport extends HttpTransport
+{
+}
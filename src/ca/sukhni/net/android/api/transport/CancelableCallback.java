@@ -0,0 +1,52 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * callback that passes on the first outcome only, so a canceled request can be failed right away
+ * while the engine may still deliver its late outcome
+ * @author malsukhni
+ *
+ */
+final class CancelableCallback implements TransportCallback
+{
+	private final TransportCallback		callback;
+	private final AtomicBoolean			done		= new AtomicBoolean();
+
+	private CancelableCallback(TransportCallback callback)
+	{
+		this.callback = callback;
+	}
+
+	/**
+	 * wrap the callback of a request that can be canceled
+	 * @param request
+	 * @param callback
+	 * @return the callback itself when the request has no cancellation signal
+	 */
+	static TransportCallback wrap(TransportRequest request, TransportCallback callback)
+	{
+		if(request.getCancellationSignal()==null || callback==null || callback instanceof CancelableCallback) return callback;
+		return new CancelableCallback(callback);
+	}
+
+	@Override
+	public void onResponse(TransportResponse response)
+	{
+		if(done.compareAndSet(false, true))
+		{
+			callback.onResponse(response);
+		}
+		else
+		{
+			response.close();
+		}
+	}
+
+	@Override
+	public void onFailure(IOException e)
+	{
+		if(done.compareAndSet(false, true)) callback.onFailure(e);
+	}
+}
@@ -0,0 +1,78 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.InterruptedIOException;
+
+/**
+ * lets the caller of a request abort it from any thread, SEE {@link TransportRequest.Builder#setCancellationSignal(CancellationSignal)}.
+ * <p>the transport executing the request sets a listener that aborts the request and releases its connection,
+ * the listener runs on the thread calling {@link #cancel()}, or right away when the signal is already canceled.</p>
+ * @author malsukhni
+ *
+ */
+public final class CancellationSignal
+{
+	private boolean					canceled;
+	private OnCancelListener		listener;
+
+	/**
+	 * check if the request is canceled
+	 * @return
+	 */
+	public synchronized boolean isCanceled()
+	{
+		return canceled;
+	}
+
+	/**
+	 * throw if the request is canceled
+	 * @param url the request url, for the message
+	 * @throws InterruptedIOException
+	 */
+	public void throwIfCanceled(String url) throws InterruptedIOException
+	{
+		if(isCanceled()) throw new InterruptedIOException("Request canceled: " + url);
+	}
+
+	/**
+	 * cancel the request, the listener is called once
+	 */
+	public void cancel()
+	{
+		OnCancelListener l;
+		synchronized(this)
+		{
+			if(canceled) return;
+			canceled = true;
+			l = listener;
+		}
+		if(l!=null) l.onCancel();
+	}
+
+	/**
+	 * set the listener that aborts the request, it replaces the previous listener.
+	 * the listener is called right away when the signal is already canceled
+	 * @param listener the listener, or null
+	 */
+	public void setOnCancelListener(OnCancelListener listener)
+	{
+		synchronized(this)
+		{
+			this.listener = listener;
+			if(!canceled || listener==null) return;
+		}
+		listener.onCancel();
+	}
+
+	/**
+	 * interface to abort a request when its signal is canceled
+	 * @author malsukhni
+	 *
+	 */
+	public interface OnCancelListener
+	{
+		/**
+		 * called once when the signal is canceled
+		 */
+		public abstract void onCancel();
+	}
+}
@@ -0,0 +1,31 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * creates numbered daemon threads, so the engines never keep the process alive
+ * @author malsukhni
+ *
+ */
+final class DaemonThreadFactory implements ThreadFactory
+{
+	private final String			name;
+	private final AtomicInteger		count		= new AtomicInteger();
+
+	/**
+	 * @param name the prefix of the thread names
+	 */
+	DaemonThreadFactory(String name)
+	{
+		this.name = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable r)
+	{
+		Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
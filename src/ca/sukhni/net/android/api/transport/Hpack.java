@@ -0,0 +1,553 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+
+/**
+ * hpack header compression of http/2, see rfc 7541
+ * @author malsukhni
+ *
+ */
+final class Hpack
+{
+	static final int						DEFAULT_TABLE_SIZE		= 4096;
+	private static final int				ENTRY_OVERHEAD			= 32;
+
+	private static final NameValuePair[]	STATIC_TABLE			= {
+		header(":authority", ""),
+		header(":method", "GET"),
+		header(":method", "POST"),
+		header(":path", "/"),
+		header(":path", "/index.html"),
+		header(":scheme", "http"),
+		header(":scheme", "https"),
+		header(":status", "200"),
+		header(":status", "204"),
+		header(":status", "206"),
+		header(":status", "304"),
+		header(":status", "400"),
+		header(":status", "404"),
+		header(":status", "500"),
+		header("accept-charset", ""),
+		header("accept-encoding", "gzip, deflate"),
+		header("accept-language", ""),
+		header("accept-ranges", ""),
+		header("accept", ""),
+		header("access-control-allow-origin", ""),
+		header("age", ""),
+		header("allow", ""),
+		header("authorization", ""),
+		header("cache-control", ""),
+		header("content-disposition", ""),
+		header("content-encoding", ""),
+		header("content-language", ""),
+		header("content-length", ""),
+		header("content-location", ""),
+		header("content-range", ""),
+		header("content-type", ""),
+		header("cookie", ""),
+		header("date", ""),
+		header("etag", ""),
+		header("expect", ""),
+		header("expires", ""),
+		header("from", ""),
+		header("host", ""),
+		header("if-match", ""),
+		header("if-modified-since", ""),
+		header("if-none-match", ""),
+		header("if-range", ""),
+		header("if-unmodified-since", ""),
+		header("last-modified", ""),
+		header("link", ""),
+		header("location", ""),
+		header("max-forwards", ""),
+		header("proxy-authenticate", ""),
+		header("proxy-authorization", ""),
+		header("range", ""),
+		header("referer", ""),
+		header("refresh", ""),
+		header("retry-after", ""),
+		header("server", ""),
+		header("set-cookie", ""),
+		header("strict-transport-security", ""),
+		header("transfer-encoding", ""),
+		header("user-agent", ""),
+		header("vary", ""),
+		header("via", ""),
+		header("www-authenticate", ""),
+	};
+
+	// first static table index of each header name
+	private static final Map<String, Integer>	STATIC_NAMES		= new HashMap<String, Integer>();
+
+	// canonical huffman code of every octet, see rfc 7541 appendix b
+	private static final int[]		HUFFMAN_CODES		= {
+		0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5, 0xfffffe6, 0xfffffe7,
+		0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9, 0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec,
+		0xfffffed, 0xfffffee, 0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+		0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9, 0xffffffa, 0xffffffb,
+		0x14, 0x3f8, 0x3f9, 0xffa, 0x1ff9, 0x15, 0xf8, 0x7fa,
+		0x3fa, 0x3fb, 0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+		0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b, 0x1c, 0x1d,
+		0x1e, 0x1f, 0x5c, 0xfb, 0x7ffc, 0x20, 0xffb, 0x3fc,
+		0x1ffa, 0x21, 0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+		0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+		0x6b, 0x6c, 0x6d, 0x6e, 0x6f, 0x70, 0x71, 0x72,
+		0xfc, 0x73, 0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+		0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5, 0x25, 0x26,
+		0x27, 0x6, 0x74, 0x75, 0x28, 0x29, 0x2a, 0x7,
+		0x2b, 0x76, 0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+		0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd, 0x1ffd, 0xffffffc,
+		0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8, 0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9,
+		0x3fffd6, 0x7fffda, 0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+		0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1, 0x7fffe2, 0x7fffe3,
+		0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5, 0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef,
+		0x3fffda, 0x1fffdd, 0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+		0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf, 0x7fffeb, 0x7fffec,
+		0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2, 0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef,
+		0xfffea, 0x3fffe2, 0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+		0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2, 0x3fffe8, 0x1ffffec,
+		0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde, 0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed,
+		0x7fff2, 0x1fffe3, 0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+		0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3, 0x7ffffe4, 0x7ffffe5,
+		0xfffec, 0xfffff3, 0xfffed, 0x1fffe6, 0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3,
+		0x3fffea, 0x3fffeb, 0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+		0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8, 0x7ffffe9, 0x7ffffea,
+		0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed, 0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee
+	};
+	private static final byte[]		HUFFMAN_LENGTHS		= {
+		13, 23, 28, 28, 28, 28, 28, 28,
+		28, 24, 30, 28, 28, 30, 28, 28,
+		28, 28, 28, 28, 28, 28, 30, 28,
+		28, 28, 28, 28, 28, 28, 28, 28,
+		6, 10, 10, 12, 13, 6, 8, 11,
+		10, 10, 8, 11, 8, 6, 6, 6,
+		5, 5, 5, 6, 6, 6, 6, 6,
+		6, 6, 7, 8, 15, 6, 12, 10,
+		13, 6, 7, 7, 7, 7, 7, 7,
+		7, 7, 7, 7, 7, 7, 7, 7,
+		7, 7, 7, 7, 7, 7, 7, 7,
+		8, 7, 8, 13, 19, 13, 14, 6,
+		15, 5, 6, 5, 6, 5, 6, 6,
+		6, 5, 7, 7, 6, 6, 6, 5,
+		6, 7, 6, 5, 5, 6, 7, 7,
+		7, 7, 7, 15, 11, 14, 13, 28,
+		20, 22, 20, 20, 22, 22, 22, 23,
+		22, 23, 23, 23, 23, 23, 24, 23,
+		24, 24, 22, 23, 24, 23, 23, 23,
+		23, 21, 22, 23, 22, 23, 23, 24,
+		22, 21, 20, 22, 22, 23, 23, 21,
+		23, 22, 22, 24, 21, 22, 23, 23,
+		21, 21, 22, 21, 23, 22, 23, 23,
+		20, 22, 22, 22, 23, 22, 22, 23,
+		26, 26, 20, 19, 22, 23, 22, 25,
+		26, 26, 26, 27, 27, 26, 24, 25,
+		19, 21, 26, 27, 27, 26, 27, 24,
+		21, 21, 26, 26, 28, 27, 27, 27,
+		20, 24, 20, 21, 22, 21, 21, 23,
+		22, 22, 25, 25, 24, 24, 26, 23,
+		26, 27, 26, 26, 27, 27, 27, 27,
+		27, 28, 27, 27, 27, 27, 27, 26
+	};
+	// decoding trie, child indexes of each node, negative values are leaves holding ~symbol
+	private static final int[][]			HUFFMAN_TRIE;
+
+	static
+	{
+		for(int i=STATIC_TABLE.length-1;i>=0;i--)
+		{
+			STATIC_NAMES.put(STATIC_TABLE[i].getName(), i+1);
+		}
+		List<int[]> nodes = new ArrayList<int[]>();
+		nodes.add(new int[2]);
+		for(int symbol=0;symbol<HUFFMAN_CODES.length;symbol++)
+		{
+			int code = HUFFMAN_CODES[symbol];
+			int length = HUFFMAN_LENGTHS[symbol];
+			int node = 0;
+			for(int bit=length-1;bit>0;bit--)
+			{
+				int b = (code >>> bit) & 1;
+				if(nodes.get(node)[b]==0)
+				{
+					nodes.add(new int[2]);
+					nodes.get(node)[b] = nodes.size()-1;
+				}
+				node = nodes.get(node)[b];
+			}
+			nodes.get(node)[code & 1] = ~symbol;
+		}
+		HUFFMAN_TRIE = nodes.toArray(new int[nodes.size()][]);
+	}
+
+	private Hpack()
+	{
+	}
+
+	private static NameValuePair header(String name, String value)
+	{
+		return new BasicNameValuePair(name, value);
+	}
+
+	private static int entrySize(NameValuePair header)
+	{
+		return header.getName().length() + header.getValue().length() + ENTRY_OVERHEAD;
+	}
+
+	/**
+	 * dynamic table shared by the header blocks of one direction of a connection, the newest entry is first
+	 */
+	private static final class DynamicTable
+	{
+		private final LinkedList<NameValuePair>		entries		= new LinkedList<NameValuePair>();
+		private int									size;
+		private int									maxSize		= DEFAULT_TABLE_SIZE;
+
+		NameValuePair get(int index) throws IOException
+		{
+			if(index<=0) throw new ProtocolException("Invalid header index " + index);
+			if(index<=STATIC_TABLE.length) return STATIC_TABLE[index-1];
+			int dynamic = index - STATIC_TABLE.length - 1;
+			if(dynamic>=entries.size()) throw new ProtocolException("Invalid header index " + index);
+			return entries.get(dynamic);
+		}
+
+		void add(NameValuePair header)
+		{
+			int entrySize = entrySize(header);
+			if(entrySize>maxSize)
+			{
+				entries.clear();
+				size = 0;
+				return;
+			}
+			entries.addFirst(header);
+			size += entrySize;
+			evict();
+		}
+
+		void setMaxSize(int maxSize)
+		{
+			this.maxSize = maxSize;
+			evict();
+		}
+
+		private void evict()
+		{
+			while(size>maxSize)
+			{
+				size -= entrySize(entries.removeLast());
+			}
+		}
+
+		/**
+		 * find the index of the header
+		 * @param header
+		 * @return the positive index of an exact match, the negative index of a name only match, or zero
+		 */
+		int find(NameValuePair header)
+		{
+			int nameIndex = 0;
+			Integer staticIndex = STATIC_NAMES.get(header.getName());
+			if(staticIndex!=null)
+			{
+				for(int i=staticIndex.intValue();i<=STATIC_TABLE.length && STATIC_TABLE[i-1].getName().equals(header.getName());i++)
+				{
+					if(STATIC_TABLE[i-1].getValue().equals(header.getValue())) return i;
+				}
+				nameIndex = staticIndex.intValue();
+			}
+			int i = STATIC_TABLE.length + 1;
+			for(NameValuePair entry : entries)
+			{
+				if(entry.getName().equals(header.getName()))
+				{
+					if(entry.getValue().equals(header.getValue())) return i;
+					if(nameIndex==0) nameIndex = i;
+				}
+				i++;
+			}
+			return -nameIndex;
+		}
+	}
+
+	/**
+	 * encodes header lists into header blocks, not thread safe, blocks must be sent in the order they are encoded
+	 */
+	static final class Encoder
+	{
+		private final DynamicTable		table				= new DynamicTable();
+		private int						pendingTableSize	= -1;
+
+		/**
+		 * apply the header table size announced by the peer, the change is signalled in the next block
+		 * @param maxSize
+		 */
+		void setMaxTableSize(int maxSize)
+		{
+			int size = Math.min(maxSize, DEFAULT_TABLE_SIZE);
+			if(size!=table.maxSize)
+			{
+				pendingTableSize = size;
+				table.setMaxSize(size);
+			}
+		}
+
+		/**
+		 * encode the header list, names must be lower case
+		 * @param headers
+		 * @param out
+		 */
+		void encode(List<NameValuePair> headers, ByteArrayOutputStream out)
+		{
+			if(pendingTableSize>=0)
+			{
+				writeInt(out, 0x20, 5, pendingTableSize);
+				pendingTableSize = -1;
+			}
+			for(NameValuePair header : headers)
+			{
+				int index = table.find(header);
+				if(index>0)
+				{
+					writeInt(out, 0x80, 7, index);
+					continue;
+				}
+				String name = header.getName();
+				if(isSensitive(name))
+				{
+					// never indexed, intermediaries must not compress it either
+					writeInt(out, 0x10, 4, -index);
+				}
+				else if(isVolatile(name))
+				{
+					writeInt(out, 0x00, 4, -index);
+				}
+				else
+				{
+					writeInt(out, 0x40, 6, -index);
+					table.add(header);
+				}
+				if(index==0) writeString(out, name);
+				writeString(out, header.getValue());
+			}
+		}
+
+		private static boolean isSensitive(String name)
+		{
+			return "authorization".equals(name) || "cookie".equals(name) || "proxy-authorization".equals(name);
+		}
+
+		private static boolean isVolatile(String name)
+		{
+			return ":path".equals(name) || "content-length".equals(name);
+		}
+	}
+
+	/**
+	 * decodes header blocks into header lists, not thread safe, blocks must be decoded in the order they are received
+	 */
+	static final class Decoder
+	{
+		private final DynamicTable		table			= new DynamicTable();
+		private final int				maxHeaderListSize;
+
+		/**
+		 * @param maxHeaderListSize limit of the decoded size of one header list
+		 */
+		Decoder(int maxHeaderListSize)
+		{
+			this.maxHeaderListSize = maxHeaderListSize;
+		}
+
+		/**
+		 * decode a complete header block
+		 * @param block
+		 * @param length
+		 * @return the header list
+		 * @throws IOException on a malformed block
+		 */
+		List<NameValuePair> decode(byte[] block, int length) throws IOException
+		{
+			List<NameValuePair> headers = new ArrayList<NameValuePair>();
+			int[] pos = new int[1];
+			int listSize = 0;
+			while(pos[0]<length)
+			{
+				int b = block[pos[0]] & 0xff;
+				NameValuePair header;
+				if((b & 0x80)!=0)
+				{
+					header = table.get(readInt(block, length, pos, 7));
+				}
+				else if((b & 0x40)!=0)
+				{
+					header = readLiteral(block, length, pos, 6);
+					table.add(header);
+				}
+				else if((b & 0x20)!=0)
+				{
+					int size = readInt(block, length, pos, 5);
+					if(size>DEFAULT_TABLE_SIZE) throw new ProtocolException("Header table size " + size + " exceeds the announced limit");
+					table.setMaxSize(size);
+					continue;
+				}
+				else
+				{
+					header = readLiteral(block, length, pos, 4);
+				}
+				listSize += entrySize(header);
+				if(listSize>maxHeaderListSize) throw new ProtocolException("Header list too large");
+				headers.add(header);
+			}
+			return headers;
+		}
+
+		private NameValuePair readLiteral(byte[] block, int length, int[] pos, int prefix) throws IOException
+		{
+			int index = readInt(block, length, pos, prefix);
+			String name = (index>0) ? table.get(index).getName() : readString(block, length, pos);
+			String value = readString(block, length, pos);
+			return header(name, value);
+		}
+	}
+
+	static void writeInt(ByteArrayOutputStream out, int flags, int prefix, int value)
+	{
+		int max = (1 << prefix) - 1;
+		if(value<max)
+		{
+			out.write(flags | value);
+			return;
+		}
+		out.write(flags | max);
+		value -= max;
+		while(value>=0x80)
+		{
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	static int readInt(byte[] block, int length, int[] pos, int prefix) throws IOException
+	{
+		int max = (1 << prefix) - 1;
+		int value = block[pos[0]++] & max;
+		if(value<max) return value;
+		int shift = 0;
+		while(true)
+		{
+			if(pos[0]>=length) throw new ProtocolException("Truncated header block");
+			int b = block[pos[0]++] & 0xff;
+			if(shift>=28) throw new ProtocolException("Header integer overflow");
+			value += (b & 0x7f) << shift;
+			shift += 7;
+			if((b & 0x80)==0) return value;
+		}
+	}
+
+	static void writeString(ByteArrayOutputStream out, String value)
+	{
+		byte[] bytes = latin1(value);
+		long bits = 0;
+		for(byte b : bytes)
+		{
+			bits += HUFFMAN_LENGTHS[b & 0xff];
+		}
+		int huffmanLength = (int) ((bits + 7) / 8);
+		if(huffmanLength>=bytes.length)
+		{
+			writeInt(out, 0x00, 7, bytes.length);
+			out.write(bytes, 0, bytes.length);
+			return;
+		}
+		writeInt(out, 0x80, 7, huffmanLength);
+		long current = 0;
+		int n = 0;
+		for(byte b : bytes)
+		{
+			int symbol = b & 0xff;
+			current = (current << HUFFMAN_LENGTHS[symbol]) | HUFFMAN_CODES[symbol];
+			n += HUFFMAN_LENGTHS[symbol];
+			while(n>=8)
+			{
+				n -= 8;
+				out.write((int) (current >>> n));
+			}
+		}
+		if(n>0)
+		{
+			// pad with the most significant bits of the end of string code
+			out.write((int) ((current << (8 - n)) | (0xff >>> n)));
+		}
+	}
+
+	static String readString(byte[] block, int length, int[] pos) throws IOException
+	{
+		if(pos[0]>=length) throw new ProtocolException("Truncated header block");
+		boolean huffman = (block[pos[0]] & 0x80)!=0;
+		int size = readInt(block, length, pos, 7);
+		if(size<0 || pos[0]+size>length) throw new ProtocolException("Truncated header block");
+		int start = pos[0];
+		pos[0] += size;
+		if(!huffman)
+		{
+			try
+			{
+				return new String(block, start, size, "ISO-8859-1");
+			}
+			catch(UnsupportedEncodingException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+		StringBuilder sb = new StringBuilder(size * 8 / 5);
+		int node = 0;
+		int depth = 0;
+		for(int i=start;i<start+size;i++)
+		{
+			int b = block[i] & 0xff;
+			for(int bit=7;bit>=0;bit--)
+			{
+				int next = HUFFMAN_TRIE[node][(b >>> bit) & 1];
+				if(next<0)
+				{
+					sb.append((char) ~next);
+					node = 0;
+					depth = 0;
+				}
+				else
+				{
+					if(next==0) throw new ProtocolException("Invalid huffman code");
+					node = next;
+					depth++;
+				}
+			}
+		}
+		if(depth>7) throw new ProtocolException("Invalid huffman padding");
+		return sb.toString();
+	}
+
+	private static byte[] latin1(String value)
+	{
+		try
+		{
+			return value.getBytes("ISO-8859-1");
+		}
+		catch(UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,923 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.NameValuePair;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+
+/**
+ * a http/2 connection multiplexing the streams of {@link Http2Transport} over one socket, see rfc 7540.
+ * requests are written by the calling worker threads, frames are read by a dedicated reader thread
+ * <p>lock order is the write lock first, then the connection monitor. the reader thread never writes
+ * while holding the connection monitor</p>
+ * @author malsukhni
+ *
+ */
+final class Http2Connection
+{
+	public static final String			TAG						= Http2Connection.class.getSimpleName();
+
+	private static final byte[]			PREFACE					= { 'P', 'R', 'I', ' ', '*', ' ', 'H', 'T', 'T', 'P', '/', '2', '.', '0', '\r', '\n', '\r', '\n', 'S', 'M', '\r', '\n', '\r', '\n' };
+
+	private static final int			TYPE_DATA				= 0x0;
+	private static final int			TYPE_HEADERS			= 0x1;
+	private static final int			TYPE_PRIORITY			= 0x2;
+	private static final int			TYPE_RST_STREAM			= 0x3;
+	private static final int			TYPE_SETTINGS			= 0x4;
+	private static final int			TYPE_PUSH_PROMISE		= 0x5;
+	private static final int			TYPE_PING				= 0x6;
+	private static final int			TYPE_GOAWAY				= 0x7;
+	private static final int			TYPE_WINDOW_UPDATE		= 0x8;
+	private static final int			TYPE_CONTINUATION		= 0x9;
+
+	private static final int			FLAG_END_STREAM			= 0x1;
+	private static final int			FLAG_ACK				= 0x1;
+	private static final int			FLAG_END_HEADERS		= 0x4;
+	private static final int			FLAG_PADDED				= 0x8;
+	private static final int			FLAG_PRIORITY			= 0x20;
+
+	private static final int			SETTINGS_HEADER_TABLE_SIZE		= 0x1;
+	private static final int			SETTINGS_ENABLE_PUSH			= 0x2;
+	private static final int			SETTINGS_MAX_CONCURRENT_STREAMS	= 0x3;
+	private static final int			SETTINGS_INITIAL_WINDOW_SIZE	= 0x4;
+	private static final int			SETTINGS_MAX_FRAME_SIZE			= 0x5;
+	private static final int			SETTINGS_MAX_HEADER_LIST_SIZE	= 0x6;
+
+	private static final int			NO_ERROR				= 0x0;
+	private static final int			PROTOCOL_ERROR			= 0x1;
+	private static final int			REFUSED_STREAM			= 0x7;
+	private static final int			CANCEL					= 0x8;
+
+	static final int					DEFAULT_WINDOW_SIZE		= 65535;
+	private static final int			DEFAULT_MAX_FRAME_SIZE	= 16384;
+	private static final int			MAX_HEADER_LIST_SIZE	= 256 * 1024;
+
+	private final Http2Transport		transport;
+	final String						routeKey;
+	private final Socket				socket;
+	private final DataInputStream		in;
+	private final OutputStream			out;
+	private final int					streamWindowSize;
+	private final int					connectionWindowSize;
+	private final long					keepAlive;
+	private final byte[]				frameHeader				= new byte[9];
+
+	// guarded by the write lock
+	private final Object				writeLock				= new Object();
+	private final Hpack.Encoder			encoder					= new Hpack.Encoder();
+	private final byte[]				frameHeaderOut			= new byte[9];
+
+	// reader thread only
+	private final Hpack.Decoder			decoder					= new Hpack.Decoder(MAX_HEADER_LIST_SIZE);
+	private int							frameLength;
+	private int							frameType;
+	private int							frameFlags;
+	private int							frameStreamId;
+	private ByteArrayOutputStream		headerBlock;
+	private int							headerBlockStreamId;
+	private boolean						headerBlockEndStream;
+
+	// guarded by this
+	private final Map<Integer, Stream>	streams					= new HashMap<Integer, Stream>();
+	private final LinkedList<Stream>	pending					= new LinkedList<Stream>();
+	private int							nextStreamId			= 1;
+	private int							starting;
+	private int							peerMaxConcurrentStreams	= Integer.MAX_VALUE;
+	private int							peerInitialWindowSize	= DEFAULT_WINDOW_SIZE;
+	private int							peerMaxFrameSize		= DEFAULT_MAX_FRAME_SIZE;
+	private long						sendWindow				= DEFAULT_WINDOW_SIZE;
+	private int							unacknowledged;
+	private boolean						shutdown;
+	private boolean						closed;
+	private long						idleSince				= System.currentTimeMillis();
+
+	/**
+	 * @param transport the owning transport
+	 * @param routeKey the route of the connection
+	 * @param socket the connected socket, tls already negotiated h2
+	 * @param streamWindowSize the receive window of each stream
+	 * @param connectionWindowSize the receive window of the connection
+	 * @param keepAlive how long the connection may stay idle in milliseconds
+	 * @throws IOException
+	 */
+	Http2Connection(Http2Transport transport, String routeKey, Socket socket, int streamWindowSize, int connectionWindowSize, long keepAlive) throws IOException
+	{
+		this.transport = transport;
+		this.routeKey = routeKey;
+		this.socket = socket;
+		this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 16 * 1024));
+		this.out = new BufferedOutputStream(socket.getOutputStream(), DEFAULT_MAX_FRAME_SIZE + 9);
+		this.streamWindowSize = Math.max(streamWindowSize, DEFAULT_WINDOW_SIZE);
+		this.connectionWindowSize = Math.max(connectionWindowSize, DEFAULT_WINDOW_SIZE);
+		this.keepAlive = keepAlive;
+	}
+
+	/**
+	 * send the connection preface and wait for the settings of the server
+	 * @param timeout how long to wait for the server settings in milliseconds
+	 * @throws Http2Transport.ProtocolNotSupportedException if the server does not answer with http/2 settings
+	 * @throws IOException
+	 */
+	void handshake(int timeout) throws IOException
+	{
+		synchronized(writeLock)
+		{
+			out.write(PREFACE);
+			byte[] settings = new byte[18];
+			putSetting(settings, 0, SETTINGS_ENABLE_PUSH, 0);
+			putSetting(settings, 6, SETTINGS_INITIAL_WINDOW_SIZE, streamWindowSize);
+			putSetting(settings, 12, SETTINGS_MAX_HEADER_LIST_SIZE, MAX_HEADER_LIST_SIZE);
+			writeFrame(TYPE_SETTINGS, 0, 0, settings, 0, settings.length);
+			if(connectionWindowSize>DEFAULT_WINDOW_SIZE)
+			{
+				writeWindowUpdate(0, connectionWindowSize - DEFAULT_WINDOW_SIZE);
+			}
+			out.flush();
+		}
+		socket.setSoTimeout(timeout);
+		try
+		{
+			readFrameHeader();
+		}
+		catch(SocketTimeoutException e)
+		{
+			throw new Http2Transport.ProtocolNotSupportedException("No http/2 settings received from " + routeKey);
+		}
+		catch(EOFException e)
+		{
+			throw new Http2Transport.ProtocolNotSupportedException("Server at " + routeKey + " closed the connection on the http/2 preface");
+		}
+		if(frameType!=TYPE_SETTINGS || (frameFlags & FLAG_ACK)!=0 || frameStreamId!=0 || frameLength%6!=0 || frameLength>DEFAULT_MAX_FRAME_SIZE)
+		{
+			throw new Http2Transport.ProtocolNotSupportedException("Server at " + routeKey + " does not speak http/2");
+		}
+		byte[] payload = new byte[frameLength];
+		in.readFully(payload);
+		onSettings(payload);
+		socket.setSoTimeout(0);
+	}
+
+	/**
+	 * start the reader thread
+	 */
+	void start()
+	{
+		Thread reader = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				readLoop();
+			}
+		}, TAG + "-" + routeKey);
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * check if new streams can be opened on this connection
+	 * @return
+	 */
+	synchronized boolean isUsable()
+	{
+		return !shutdown && !closed;
+	}
+
+	synchronized boolean isClosed()
+	{
+		return closed;
+	}
+
+	/**
+	 * open a stream for the call, the call waits in line when the server concurrency limit is reached
+	 * @param call
+	 * @return false if the connection does not accept new streams anymore
+	 */
+	boolean newStream(Http2Transport.Call call)
+	{
+		Stream stream = new Stream(call);
+		synchronized(this)
+		{
+			if(shutdown || closed) return false;
+			stream.touch();
+			if(streams.size() + starting>=peerMaxConcurrentStreams)
+			{
+				pending.add(stream);
+				return true;
+			}
+			// count the stream against the limit until its id is assigned on write
+			starting++;
+		}
+		startStream(stream);
+		return true;
+	}
+
+	/**
+	 * write the headers and the body of a stream
+	 * @param stream
+	 */
+	private void startStream(Stream stream)
+	{
+		byte[] body = stream.call.request.getBody();
+		boolean endStream = (body==null || body.length==0);
+		try
+		{
+			synchronized(writeLock)
+			{
+				synchronized(this)
+				{
+					starting--;
+					if(stream.call.canceled)
+					{
+						stream.done = true;
+						return;
+					}
+					if(closed)
+					{
+						stream.done = true;
+						transport.retry(stream.call);
+						return;
+					}
+					stream.id = nextStreamId;
+					nextStreamId += 2;
+					stream.sendWindow = peerInitialWindowSize;
+					streams.put(Integer.valueOf(stream.id), stream);
+				}
+				ByteArrayOutputStream block = new ByteArrayOutputStream(256);
+				encoder.encode(stream.call.headers, block);
+				writeHeaders(stream.id, block.toByteArray(), endStream);
+				out.flush();
+			}
+			if(!endStream) sendData(stream, body);
+		}
+		catch(IOException e)
+		{
+			close(e);
+		}
+	}
+
+	private void sendData(Stream stream, byte[] body) throws IOException
+	{
+		int offset = 0;
+		while(offset<body.length)
+		{
+			int n;
+			synchronized(this)
+			{
+				while(!stream.done && !closed && (sendWindow<=0 || stream.sendWindow<=0))
+				{
+					try
+					{
+						wait();
+					}
+					catch(InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+				if(stream.done || closed) return;
+				n = (int) Math.min(Math.min(body.length - offset, peerMaxFrameSize), Math.min(sendWindow, stream.sendWindow));
+				sendWindow -= n;
+				stream.sendWindow -= n;
+			}
+			synchronized(writeLock)
+			{
+				writeFrame(TYPE_DATA, (offset + n==body.length) ? FLAG_END_STREAM : 0, stream.id, body, offset, n);
+				out.flush();
+			}
+			offset += n;
+		}
+	}
+
+	private void writeHeaders(int streamId, byte[] block, boolean endStream) throws IOException
+	{
+		int maxFrameSize;
+		synchronized(this)
+		{
+			maxFrameSize = peerMaxFrameSize;
+		}
+		int length = Math.min(block.length, maxFrameSize);
+		int flags = (endStream ? FLAG_END_STREAM : 0) | (length==block.length ? FLAG_END_HEADERS : 0);
+		writeFrame(TYPE_HEADERS, flags, streamId, block, 0, length);
+		for(int offset=length;offset<block.length;offset+=length)
+		{
+			length = Math.min(block.length - offset, maxFrameSize);
+			writeFrame(TYPE_CONTINUATION, (offset + length==block.length) ? FLAG_END_HEADERS : 0, streamId, block, offset, length);
+		}
+	}
+
+	private void writeFrame(int type, int flags, int streamId, byte[] payload, int offset, int length) throws IOException
+	{
+		frameHeaderOut[0] = (byte) (length >>> 16);
+		frameHeaderOut[1] = (byte) (length >>> 8);
+		frameHeaderOut[2] = (byte) length;
+		frameHeaderOut[3] = (byte) type;
+		frameHeaderOut[4] = (byte) flags;
+		frameHeaderOut[5] = (byte) ((streamId >>> 24) & 0x7f);
+		frameHeaderOut[6] = (byte) (streamId >>> 16);
+		frameHeaderOut[7] = (byte) (streamId >>> 8);
+		frameHeaderOut[8] = (byte) streamId;
+		out.write(frameHeaderOut);
+		if(length>0) out.write(payload, offset, length);
+	}
+
+	private void writeWindowUpdate(int streamId, int increment) throws IOException
+	{
+		byte[] payload = new byte[4];
+		putInt(payload, 0, increment);
+		writeFrame(TYPE_WINDOW_UPDATE, 0, streamId, payload, 0, 4);
+	}
+
+	private void writeControl(int type, int flags, int streamId, byte[] payload)
+	{
+		try
+		{
+			synchronized(writeLock)
+			{
+				writeFrame(type, flags, streamId, payload, 0, payload.length);
+				out.flush();
+			}
+		}
+		catch(IOException e)
+		{
+			close(e);
+		}
+	}
+
+	private void readLoop()
+	{
+		try
+		{
+			while(true)
+			{
+				readFrameHeader();
+				if(frameLength>DEFAULT_MAX_FRAME_SIZE) throw new ProtocolException("Frame of " + frameLength + " bytes exceeds the maximum frame size");
+				byte[] payload = new byte[frameLength];
+				in.readFully(payload);
+				if(headerBlock!=null && frameType!=TYPE_CONTINUATION) throw new ProtocolException("Expected a continuation frame");
+				onFrame(payload);
+			}
+		}
+		catch(ProtocolException e)
+		{
+			byte[] goAway = new byte[8];
+			putInt(goAway, 4, PROTOCOL_ERROR);
+			writeControl(TYPE_GOAWAY, 0, 0, goAway);
+			close(e);
+		}
+		catch(IOException e)
+		{
+			close(e);
+		}
+		catch(RuntimeException e)
+		{
+			close(new IOException(e.toString()));
+		}
+	}
+
+	private void readFrameHeader() throws IOException
+	{
+		in.readFully(frameHeader);
+		frameLength = ((frameHeader[0] & 0xff) << 16) | ((frameHeader[1] & 0xff) << 8) | (frameHeader[2] & 0xff);
+		frameType = frameHeader[3] & 0xff;
+		frameFlags = frameHeader[4] & 0xff;
+		frameStreamId = getInt(frameHeader, 5) & 0x7fffffff;
+	}
+
+	private void onFrame(byte[] payload) throws IOException
+	{
+		switch (frameType)
+		{
+			case TYPE_DATA:
+				onData(payload);
+				break;
+			case TYPE_HEADERS:
+			{
+				if(frameStreamId==0) throw new ProtocolException("Headers on stream 0");
+				int offset = 0;
+				int length = payload.length;
+				if((frameFlags & FLAG_PADDED)!=0)
+				{
+					if(length<1) throw new ProtocolException("Invalid padding");
+					int padding = payload[0] & 0xff;
+					offset = 1;
+					length -= 1 + padding;
+				}
+				if((frameFlags & FLAG_PRIORITY)!=0)
+				{
+					offset += 5;
+					length -= 5;
+				}
+				if(length<0) throw new ProtocolException("Invalid headers frame");
+				headerBlock = new ByteArrayOutputStream(Math.max(length, 64));
+				headerBlock.write(payload, offset, length);
+				headerBlockStreamId = frameStreamId;
+				headerBlockEndStream = (frameFlags & FLAG_END_STREAM)!=0;
+				if((frameFlags & FLAG_END_HEADERS)!=0) onHeaderBlock();
+				break;
+			}
+			case TYPE_CONTINUATION:
+				if(headerBlock==null || frameStreamId!=headerBlockStreamId) throw new ProtocolException("Unexpected continuation frame");
+				if(headerBlock.size() + payload.length>MAX_HEADER_LIST_SIZE) throw new ProtocolException("Header block too large");
+				headerBlock.write(payload, 0, payload.length);
+				if((frameFlags & FLAG_END_HEADERS)!=0) onHeaderBlock();
+				break;
+			case TYPE_RST_STREAM:
+			{
+				if(payload.length!=4) throw new ProtocolException("Invalid rst_stream frame");
+				int code = getInt(payload, 0);
+				Stream stream = removeStream(frameStreamId);
+				if(stream!=null)
+				{
+					if(code==REFUSED_STREAM)
+					{
+						transport.retry(stream.call);
+					}
+					else
+					{
+						transport.fail(stream.call, new IOException("Stream reset by server, error code " + code));
+					}
+				}
+				break;
+			}
+			case TYPE_SETTINGS:
+				if(frameStreamId!=0 || payload.length%6!=0) throw new ProtocolException("Invalid settings frame");
+				if((frameFlags & FLAG_ACK)==0) onSettings(payload);
+				break;
+			case TYPE_PING:
+				if(payload.length!=8) throw new ProtocolException("Invalid ping frame");
+				if((frameFlags & FLAG_ACK)==0) writeControl(TYPE_PING, FLAG_ACK, 0, payload);
+				break;
+			case TYPE_GOAWAY:
+				if(payload.length<8) throw new ProtocolException("Invalid goaway frame");
+				onGoAway(getInt(payload, 0) & 0x7fffffff);
+				break;
+			case TYPE_WINDOW_UPDATE:
+			{
+				if(payload.length!=4) throw new ProtocolException("Invalid window_update frame");
+				int increment = getInt(payload, 0) & 0x7fffffff;
+				synchronized(this)
+				{
+					if(frameStreamId==0)
+					{
+						if(increment==0) throw new ProtocolException("Invalid window increment");
+						sendWindow += increment;
+					}
+					else
+					{
+						Stream stream = streams.get(Integer.valueOf(frameStreamId));
+						if(stream!=null) stream.sendWindow += increment;
+					}
+					notifyAll();
+				}
+				break;
+			}
+			case TYPE_PUSH_PROMISE:
+				throw new ProtocolException("Push promise received although push is disabled");
+			case TYPE_PRIORITY:
+			default:
+				// priority and unknown frames are ignored
+				break;
+		}
+	}
+
+	private void onData(byte[] payload) throws IOException
+	{
+		if(frameStreamId==0) throw new ProtocolException("Data on stream 0");
+		int offset = 0;
+		int length = payload.length;
+		if((frameFlags & FLAG_PADDED)!=0)
+		{
+			if(length<1) throw new ProtocolException("Invalid padding");
+			offset = 1;
+			length -= 1 + (payload[0] & 0xff);
+			if(length<0) throw new ProtocolException("Invalid padding");
+		}
+		boolean endStream = (frameFlags & FLAG_END_STREAM)!=0;
+		int connectionIncrement = 0;
+		int streamIncrement = 0;
+		Stream stream;
+		synchronized(this)
+		{
+			stream = streams.get(Integer.valueOf(frameStreamId));
+			unacknowledged += payload.length;
+			if(unacknowledged>=connectionWindowSize/2)
+			{
+				connectionIncrement = unacknowledged;
+				unacknowledged = 0;
+			}
+			if(stream!=null)
+			{
+				stream.touch();
+				stream.body.write(payload, offset, length);
+				stream.unacknowledged += payload.length;
+				if(!endStream && stream.unacknowledged>=streamWindowSize/2)
+				{
+					streamIncrement = stream.unacknowledged;
+					stream.unacknowledged = 0;
+				}
+			}
+		}
+		if(connectionIncrement>0 || streamIncrement>0)
+		{
+			synchronized(writeLock)
+			{
+				if(connectionIncrement>0) writeWindowUpdate(0, connectionIncrement);
+				if(streamIncrement>0) writeWindowUpdate(frameStreamId, streamIncrement);
+				out.flush();
+			}
+		}
+		if(stream!=null && endStream) onEndStream(stream);
+	}
+
+	private void onHeaderBlock() throws IOException
+	{
+		byte[] block = headerBlock.toByteArray();
+		headerBlock = null;
+		// always decode so the dynamic table stays in sync, even for streams that are gone
+		List<NameValuePair> headers = decoder.decode(block, block.length);
+		Stream stream;
+		synchronized(this)
+		{
+			stream = streams.get(Integer.valueOf(headerBlockStreamId));
+		}
+		if(stream==null) return;
+		stream.touch();
+		if(stream.status==0)
+		{
+			int status = 0;
+			List<NameValuePair> regular = new ArrayList<NameValuePair>(headers.size());
+			for(NameValuePair header : headers)
+			{
+				if(":status".equals(header.getName()))
+				{
+					try
+					{
+						status = Integer.parseInt(header.getValue());
+					}
+					catch(NumberFormatException e)
+					{
+						throw new ProtocolException("Invalid status " + header.getValue());
+					}
+				}
+				else if(!header.getName().startsWith(":"))
+				{
+					regular.add(header);
+				}
+			}
+			if(status==0) throw new ProtocolException("Response without status");
+			if(status>=100 && status<200)
+			{
+				// interim response, the final one follows
+				return;
+			}
+			stream.status = status;
+			stream.headers = regular;
+		}
+		if(headerBlockEndStream) onEndStream(stream);
+	}
+
+	private void onEndStream(Stream stream)
+	{
+		if(removeStream(stream.id)==null) return;
+		if(stream.status==0)
+		{
+			transport.fail(stream.call, new ConnectionClosedException("Stream ended without a response"));
+			return;
+		}
+		byte[] body = (stream.body.size()>0 || stream.getHeader("content-length")!=null) ? stream.body.toByteArray() : null;
+		String reason = EnglishReasonPhraseCatalog.INSTANCE.getReason(stream.status, null);
+		transport.complete(stream.call, new BufferedTransportResponse(stream.status, (reason!=null) ? reason : "", stream.headers, body, false));
+	}
+
+	private void onSettings(byte[] payload) throws IOException
+	{
+		synchronized(writeLock)
+		{
+			synchronized(this)
+			{
+				for(int i=0;i<payload.length;i+=6)
+				{
+					int id = ((payload[i] & 0xff) << 8) | (payload[i+1] & 0xff);
+					int value = getInt(payload, i+2);
+					switch (id)
+					{
+						case SETTINGS_HEADER_TABLE_SIZE:
+							encoder.setMaxTableSize(value);
+							break;
+						case SETTINGS_MAX_CONCURRENT_STREAMS:
+							peerMaxConcurrentStreams = value;
+							break;
+						case SETTINGS_INITIAL_WINDOW_SIZE:
+						{
+							if(value<0) throw new ProtocolException("Invalid initial window size");
+							int delta = value - peerInitialWindowSize;
+							peerInitialWindowSize = value;
+							for(Stream stream : streams.values())
+							{
+								stream.sendWindow += delta;
+							}
+							break;
+						}
+						case SETTINGS_MAX_FRAME_SIZE:
+							if(value<DEFAULT_MAX_FRAME_SIZE || value>0xffffff) throw new ProtocolException("Invalid max frame size");
+							peerMaxFrameSize = value;
+							break;
+						default:
+							break;
+					}
+				}
+				notifyAll();
+			}
+			writeFrame(TYPE_SETTINGS, FLAG_ACK, 0, payload, 0, 0);
+			out.flush();
+		}
+		startPending();
+	}
+
+	private void onGoAway(int lastStreamId)
+	{
+		List<Stream> refused = new ArrayList<Stream>();
+		boolean idle;
+		synchronized(this)
+		{
+			shutdown = true;
+			for(Stream stream : new ArrayList<Stream>(streams.values()))
+			{
+				if(stream.id>lastStreamId)
+				{
+					streams.remove(Integer.valueOf(stream.id));
+					stream.done = true;
+					refused.add(stream);
+				}
+			}
+			refused.addAll(pending);
+			pending.clear();
+			idle = streams.isEmpty();
+		}
+		// the server did not process these, send them again on a new connection
+		for(Stream stream : refused)
+		{
+			transport.retry(stream.call);
+		}
+		if(idle) shutdown();
+	}
+
+	private Stream removeStream(int id)
+	{
+		Stream stream;
+		boolean idle;
+		synchronized(this)
+		{
+			stream = streams.remove(Integer.valueOf(id));
+			if(stream==null || stream.done) return null;
+			stream.done = true;
+			if(streams.isEmpty()) idleSince = System.currentTimeMillis();
+			idle = shutdown && streams.isEmpty();
+			notifyAll();
+		}
+		if(idle)
+		{
+			shutdown();
+		}
+		else
+		{
+			startPending();
+		}
+		return stream;
+	}
+
+	/**
+	 * start the streams that wait for a free slot
+	 */
+	private void startPending()
+	{
+		while(true)
+		{
+			final Stream stream;
+			synchronized(this)
+			{
+				if(pending.isEmpty() || shutdown || closed || streams.size() + starting>=peerMaxConcurrentStreams) return;
+				stream = pending.removeFirst();
+				starting++;
+			}
+			transport.runOnWorker(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					startStream(stream);
+				}
+			});
+		}
+	}
+
+	/**
+	 * fail the streams whose deadline passed
+	 * @param now
+	 * @return true if the connection was idle longer than its keep alive duration
+	 */
+	boolean checkTimeouts(long now)
+	{
+		List<Stream> expired = new ArrayList<Stream>();
+		synchronized(this)
+		{
+			for(Stream stream : streams.values())
+			{
+				if(stream.deadline<now) expired.add(stream);
+			}
+			for(Stream stream : pending)
+			{
+				if(stream.deadline<now) expired.add(stream);
+			}
+			pending.removeAll(expired);
+		}
+		for(Stream stream : expired)
+		{
+			if(stream.id!=0)
+			{
+				if(removeStream(stream.id)==null) continue;
+				byte[] code = new byte[4];
+				putInt(code, 0, CANCEL);
+				writeControl(TYPE_RST_STREAM, 0, stream.id, code);
+			}
+			transport.fail(stream.call, new SocketTimeoutException("Read timed out"));
+		}
+		synchronized(this)
+		{
+			return streams.isEmpty() && pending.isEmpty() && keepAlive>0 && now - idleSince>keepAlive;
+		}
+	}
+
+	/**
+	 * drop the stream of a canceled call, a stream in flight is reset
+	 * @param call
+	 */
+	void cancel(Http2Transport.Call call)
+	{
+		Stream target = null;
+		synchronized(this)
+		{
+			for(Iterator<Stream> it = pending.iterator(); it.hasNext();)
+			{
+				if(it.next().call==call)
+				{
+					it.remove();
+					return;
+				}
+			}
+			for(Stream stream : streams.values())
+			{
+				if(stream.call==call)
+				{
+					target = stream;
+					break;
+				}
+			}
+		}
+		if(target==null || removeStream(target.id)==null) return;
+		byte[] code = new byte[4];
+		putInt(code, 0, CANCEL);
+		writeControl(TYPE_RST_STREAM, 0, target.id, code);
+	}
+
+	/**
+	 * close the connection gracefully, streams in flight are not waited for
+	 */
+	void shutdown()
+	{
+		byte[] goAway = new byte[8];
+		putInt(goAway, 4, NO_ERROR);
+		synchronized(this)
+		{
+			if(closed) return;
+			shutdown = true;
+		}
+		writeControl(TYPE_GOAWAY, 0, 0, goAway);
+		close(new IOException("Connection shut down"));
+	}
+
+	/**
+	 * close the connection and fail its streams
+	 * @param cause
+	 */
+	void close(IOException cause)
+	{
+		List<Stream> failed;
+		List<Stream> unsent;
+		synchronized(this)
+		{
+			if(closed) return;
+			closed = true;
+			shutdown = true;
+			failed = new ArrayList<Stream>(streams.values());
+			unsent = new ArrayList<Stream>(pending);
+			streams.clear();
+			pending.clear();
+			notifyAll();
+		}
+		try
+		{
+			socket.close();
+		}
+		catch(IOException e)
+		{
+			// ignore, the socket is discarded anyway
+		}
+		for(Stream stream : failed)
+		{
+			if(stream.done) continue;
+			stream.done = true;
+			if(stream.id==0)
+			{
+				transport.retry(stream.call);
+			}
+			else
+			{
+				transport.fail(stream.call, cause);
+			}
+		}
+		for(Stream stream : unsent)
+		{
+			transport.retry(stream.call);
+		}
+		transport.onClosed(this);
+	}
+
+	private static void putSetting(byte[] buffer, int offset, int id, int value)
+	{
+		buffer[offset] = (byte) (id >>> 8);
+		buffer[offset+1] = (byte) id;
+		putInt(buffer, offset+2, value);
+	}
+
+	private static void putInt(byte[] buffer, int offset, int value)
+	{
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset+1] = (byte) (value >>> 16);
+		buffer[offset+2] = (byte) (value >>> 8);
+		buffer[offset+3] = (byte) value;
+	}
+
+	private static int getInt(byte[] buffer, int offset)
+	{
+		return ((buffer[offset] & 0xff) << 24) | ((buffer[offset+1] & 0xff) << 16) | ((buffer[offset+2] & 0xff) << 8) | (buffer[offset+3] & 0xff);
+	}
+
+	/**
+	 * a request and its response on the connection
+	 */
+	private final class Stream
+	{
+		final Http2Transport.Call		call;
+		final ByteArrayOutputStream		body		= new ByteArrayOutputStream(1024);
+		int								id;
+		long							sendWindow;
+		int								unacknowledged;
+		int								status;
+		List<NameValuePair>				headers;
+		long							deadline;
+		boolean							done;
+
+		Stream(Http2Transport.Call call)
+		{
+			this.call = call;
+		}
+
+		/**
+		 * refresh the socket timeout deadline after some activity
+		 */
+		void touch()
+		{
+			int timeout = call.config.getSocketTimeout();
+			deadline = (timeout>0) ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+		}
+
+		String getHeader(String name)
+		{
+			if(headers==null) return null;
+			for(NameValuePair header : headers)
+			{
+				if(header.getName().equalsIgnoreCase(name)) return header.getValue();
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,656 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.message.BasicNameValuePair;
+
+import ca.sukhni.net.android.api.client.Method;
+import ca.sukhni.net.android.api.socket.EasySSLSocketFactory;
+import ca.sukhni.net.android.api.socket.RacingConnector;
+import ca.sukhni.net.android.api.socket.HttpClientConfig;
+import ca.sukhni.net.android.logger.Logger;
+
+/**
+ * http/2 transport, requests to the same route are multiplexed as streams over a single connection.
+ * <p>secure routes negotiate h2 through alpn, which needs platform support (android 10, java 9),
+ * plain routes use h2 with prior knowledge. routes whose server does not negotiate h2 are sent to the
+ * fallback http/1.1 transport for a while. headers are compressed with hpack, the receive windows of
+ * streams and connections are set on construction. responses are received in memory before they are delivered.</p>
+ * @author malsukhni
+ *
+ */
+public class Http2Transport implements AsyncHttpTransport, PrewarmableTransport, BufferingTransport
+{
+	public static final String						TAG								= Http2Transport.class.getSimpleName();
+
+	public static final int							DEFAULT_STREAM_WINDOW_SIZE		= 256 * 1024;
+	public static final int							DEFAULT_CONNECTION_WINDOW_SIZE	= 1024 * 1024;
+
+	private static final int						MAX_REDIRECTS					= 5;
+	private static final long						HTTP1_ROUTE_TTL					= 10 * 60 * 1000;
+	private static final long						CHECK_INTERVAL					= 250;
+
+	private static Http2Transport					sInstance;
+
+	private final AsyncHttpTransport				mFallback;
+	private final int								mStreamWindowSize;
+	private final int								mConnectionWindowSize;
+	private final ExecutorService					mWorkers;
+	private final ScheduledExecutorService			mTimer;
+	// guarded by itself
+	private final Map<String, Http2Connection>		mConnections					= new HashMap<String, Http2Connection>();
+	private final Map<String, Long>					mHttp1Routes					= new HashMap<String, Long>();
+	private final Map<String, Object>				mRouteLocks						= new HashMap<String, Object>();
+
+	/**
+	 * get the shared instance, falls back to {@link NioHttpTransport}
+	 * @return
+	 */
+	public static synchronized Http2Transport getInstance()
+	{
+		if(sInstance==null)
+		{
+			sInstance = new Http2Transport(NioHttpTransport.getInstance(), DEFAULT_STREAM_WINDOW_SIZE, DEFAULT_CONNECTION_WINDOW_SIZE);
+		}
+		return sInstance;
+	}
+
+	/**
+	 * @param fallback executes the requests of servers that do not speak http/2
+	 * @param streamWindowSize how many response bytes a server may send on a stream before the client acknowledges them
+	 * @param connectionWindowSize how many response bytes a server may send on a connection before the client acknowledges them
+	 */
+	public Http2Transport(AsyncHttpTransport fallback, int streamWindowSize, int connectionWindowSize)
+	{
+		mFallback = fallback;
+		mStreamWindowSize = streamWindowSize;
+		mConnectionWindowSize = connectionWindowSize;
+		mWorkers = Executors.newCachedThreadPool(new DaemonThreadFactory(TAG + "-worker"));
+		mTimer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(TAG + "-timer"));
+		mTimer.scheduleWithFixedDelay(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				checkConnections();
+			}
+		}, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public TransportResponse execute(TransportRequest request, HttpClientConfig config) throws IOException
+	{
+		BlockingCallback callback = new BlockingCallback();
+		executeAsync(request, config, callback);
+		return callback.await(request.getUrl());
+	}
+
+	@Override
+	public void executeAsync(TransportRequest request, HttpClientConfig config, TransportCallback callback)
+	{
+		callback = CancelableCallback.wrap(request, callback);
+		try
+		{
+			submit(new Call(request, config, callback, MAX_REDIRECTS));
+		}
+		catch(IOException e)
+		{
+			fail(callback, e);
+		}
+	}
+
+	/**
+	 * open the http/2 connection of the route of the url, one connection carries all of its requests
+	 * so the number of connections only matters when the server falls back to http/1.1
+	 */
+	@Override
+	public int prewarm(String url, int connections, HttpClientConfig config) throws IOException
+	{
+		Call call = new Call(new TransportRequest.Builder().setMethod(Method.GET).setUrl(url).build(), config, null, 0);
+		if(!isHttp1Route(call.serverKey) && obtainConnection(call)!=null) return 1;
+		if(mFallback instanceof PrewarmableTransport)
+		{
+			return ((PrewarmableTransport) mFallback).prewarm(url, connections, config);
+		}
+		return 0;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "http2";
+	}
+
+	/**
+	 * get the number of open http/2 connections, for diagnostics
+	 * @return
+	 */
+	public int getConnectionCount()
+	{
+		synchronized(mConnections)
+		{
+			return mConnections.size();
+		}
+	}
+
+	/**
+	 * check if the requests to the given url are currently sent to the fallback transport
+	 * @param url
+	 * @return
+	 */
+	public boolean isFallback(String url)
+	{
+		try
+		{
+			URI uri = new URI(url);
+			return isHttp1Route(Call.serverKey(uri, Call.port(uri)));
+		}
+		catch(URISyntaxException e)
+		{
+			return false;
+		}
+	}
+
+	private void submit(final Call call)
+	{
+		if(call.canceled) return;
+		CancellationSignal signal = call.request.getCancellationSignal();
+		if(signal!=null)
+		{
+			signal.setOnCancelListener(new CancellationSignal.OnCancelListener()
+			{
+				@Override
+				public void onCancel()
+				{
+					cancel(call);
+				}
+			});
+		}
+		if(isHttp1Route(call.serverKey))
+		{
+			mFallback.executeAsync(call.request, call.config, call.callback);
+			return;
+		}
+		mWorkers.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while(true)
+					{
+						Http2Connection connection = obtainConnection(call);
+						if(connection==null)
+						{
+							mFallback.executeAsync(call.request, call.config, call.callback);
+							return;
+						}
+						if(connection.newStream(call)) return;
+						// the connection is going away, get a fresh one
+						remove(connection);
+					}
+				}
+				catch(IOException e)
+				{
+					call.callback.onFailure(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * get the connection of the route of the call, a new connection is opened if none is usable
+	 * @param call
+	 * @return the connection, or null if the server does not speak http/2
+	 * @throws IOException
+	 */
+	private Http2Connection obtainConnection(Call call) throws IOException
+	{
+		Object lock;
+		synchronized(mRouteLocks)
+		{
+			lock = mRouteLocks.get(call.routeKey);
+			if(lock==null)
+			{
+				lock = new Object();
+				mRouteLocks.put(call.routeKey, lock);
+			}
+		}
+		// one connect per route at a time, concurrent calls share the new connection
+		synchronized(lock)
+		{
+			synchronized(mConnections)
+			{
+				Http2Connection connection = mConnections.get(call.routeKey);
+				if(connection!=null && connection.isUsable()) return connection;
+			}
+			if(isHttp1Route(call.serverKey)) return null;
+			try
+			{
+				Http2Connection connection = connect(call);
+				synchronized(mConnections)
+				{
+					mConnections.put(call.routeKey, connection);
+				}
+				connection.start();
+				return connection;
+			}
+			catch(ProtocolNotSupportedException e)
+			{
+				Logger.debug(TAG, e.getMessage() + ", using " + mFallback.getName());
+				synchronized(mHttp1Routes)
+				{
+					mHttp1Routes.put(call.serverKey, Long.valueOf(System.currentTimeMillis() + HTTP1_ROUTE_TTL));
+				}
+				return null;
+			}
+		}
+	}
+
+	private boolean isHttp1Route(String serverKey)
+	{
+		synchronized(mHttp1Routes)
+		{
+			Long until = mHttp1Routes.get(serverKey);
+			if(until==null) return false;
+			if(until.longValue()>System.currentTimeMillis()) return true;
+			mHttp1Routes.remove(serverKey);
+			return false;
+		}
+	}
+
+	/**
+	 * open a socket to the route of the call and negotiate http/2
+	 * @param call
+	 * @return the connection, its reader is not started yet
+	 * @throws ProtocolNotSupportedException if the server does not negotiate h2
+	 * @throws IOException
+	 */
+	protected Http2Connection connect(Call call) throws IOException
+	{
+		HttpClientConfig config = call.config;
+		String host = call.uri.getHost();
+		Socket socket = connectSocket(host, call.port, config);
+		try
+		{
+			socket.setTcpNoDelay(config.isTcpNoDelay());
+			if(config.getSocketLinger()>=0) socket.setSoLinger(true, config.getSocketLinger());
+			if(call.secure)
+			{
+				socket = negotiateTls(socket, host, call.port, config);
+			}
+			Http2Connection connection = new Http2Connection(this, call.routeKey, socket, mStreamWindowSize, mConnectionWindowSize, config.getKeepAliveDuration());
+			int timeout = (config.getSocketTimeout()>0) ? config.getSocketTimeout() : config.getConnectionTimeout();
+			connection.handshake(timeout);
+			return connection;
+		}
+		catch(IOException e)
+		{
+			closeQuietly(socket);
+			throw e;
+		}
+	}
+
+	private static Socket connectSocket(String host, int port, HttpClientConfig config) throws IOException
+	{
+		try
+		{
+			return RacingConnector.connect(config.getHostResolver().resolve(host), port, null, config.getConnectionTimeout(),
+					config.getConnectAttemptDelay(), config.getSendBufferSize(), config.getReceiveBufferSize());
+		}
+		catch(SocketTimeoutException e)
+		{
+			throw new ConnectTimeoutException("Connect to " + host + ":" + port + " timed out");
+		}
+	}
+
+	private static Socket negotiateTls(Socket socket, String host, int port, HttpClientConfig config) throws IOException
+	{
+		SSLContext context;
+		try
+		{
+			context = config.isTrustAllCertificates()
+				? EasySSLSocketFactory.getSSLContext(config.getSslSessionCacheSize(), config.getSslSessionTimeout())
+				: SSLContext.getDefault();
+		}
+		catch(Exception e)
+		{
+			throw new IOException("Unable to create the ssl context: " + e.getMessage());
+		}
+		SSLSocket ssl = (SSLSocket) context.getSocketFactory().createSocket(socket, host, port, true);
+		if(!setApplicationProtocols(ssl))
+		{
+			closeQuietly(ssl);
+			throw new ProtocolNotSupportedException("Alpn is not supported on this platform");
+		}
+		ssl.setSoTimeout(config.getSocketTimeout());
+		ssl.startHandshake();
+		if(!config.isTrustAllCertificates())
+		{
+			SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER.verify(host, ssl);
+		}
+		if(!"h2".equals(getApplicationProtocol(ssl)))
+		{
+			closeQuietly(ssl);
+			throw new ProtocolNotSupportedException("Server at " + host + ":" + port + " did not negotiate h2");
+		}
+		return ssl;
+	}
+
+	/**
+	 * offer h2 and http/1.1 through alpn, the api is looked up at runtime since older platforms lack it
+	 * @param socket
+	 * @return false if alpn is not available
+	 */
+	private static boolean setApplicationProtocols(SSLSocket socket)
+	{
+		try
+		{
+			SSLParameters parameters = socket.getSSLParameters();
+			java.lang.reflect.Method method = SSLParameters.class.getMethod("setApplicationProtocols", String[].class);
+			method.invoke(parameters, (Object) new String[] { "h2", "http/1.1" });
+			socket.setSSLParameters(parameters);
+			return true;
+		}
+		catch(Exception e)
+		{
+			return false;
+		}
+	}
+
+	private static String getApplicationProtocol(SSLSocket socket)
+	{
+		try
+		{
+			return (String) SSLSocket.class.getMethod("getApplicationProtocol").invoke(socket);
+		}
+		catch(Exception e)
+		{
+			return null;
+		}
+	}
+
+	private static void closeQuietly(Socket socket)
+	{
+		try
+		{
+			socket.close();
+		}
+		catch(IOException e)
+		{
+			// ignore, the socket is discarded anyway
+		}
+	}
+
+	private void checkConnections()
+	{
+		List<Http2Connection> connections;
+		synchronized(mConnections)
+		{
+			connections = new ArrayList<Http2Connection>(mConnections.values());
+		}
+		long now = System.currentTimeMillis();
+		for(Http2Connection connection : connections)
+		{
+			try
+			{
+				if(connection.checkTimeouts(now))
+				{
+					remove(connection);
+					connection.shutdown();
+				}
+			}
+			catch(RuntimeException e)
+			{
+				Logger.error(TAG, "connection check failed", e);
+			}
+		}
+	}
+
+	private void remove(Http2Connection connection)
+	{
+		synchronized(mConnections)
+		{
+			if(mConnections.get(connection.routeKey)==connection) mConnections.remove(connection.routeKey);
+		}
+	}
+
+	/**
+	 * fail the call right away and reset its stream, the connection stays open for the other streams
+	 * @param call
+	 */
+	private void cancel(Call call)
+	{
+		call.canceled = true;
+		fail(call.callback, new InterruptedIOException("Request canceled: " + call.request.getUrl()));
+		List<Http2Connection> connections;
+		synchronized(mConnections)
+		{
+			connections = new ArrayList<Http2Connection>(mConnections.values());
+		}
+		for(Http2Connection connection : connections)
+		{
+			connection.cancel(call);
+		}
+	}
+
+	void onClosed(Http2Connection connection)
+	{
+		remove(connection);
+	}
+
+	void runOnWorker(Runnable task)
+	{
+		mWorkers.execute(task);
+	}
+
+	/**
+	 * send a call the server did not process again
+	 * @param call
+	 */
+	void retry(Call call)
+	{
+		submit(call);
+	}
+
+	void complete(Call call, TransportResponse response)
+	{
+		String location = response.getHeader("Location");
+		if(location!=null && isRedirect(call, response.getStatusCode()))
+		{
+			try
+			{
+				submit(call.redirect(location));
+				return;
+			}
+			catch(IOException e)
+			{
+				Logger.error(TAG, "unable to follow redirect to " + location);
+			}
+		}
+		final TransportCallback callback = call.callback;
+		final TransportResponse r = response;
+		mWorkers.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				callback.onResponse(r);
+			}
+		});
+	}
+
+	void fail(Call call, IOException e)
+	{
+		fail(call.callback, e);
+	}
+
+	private void fail(final TransportCallback callback, final IOException e)
+	{
+		mWorkers.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				callback.onFailure(e);
+			}
+		});
+	}
+
+	private static boolean isRedirect(Call call, int statusCode)
+	{
+		if(call.redirectsLeft<=0 || call.request.getMethod()!=Method.GET) return false;
+		return statusCode==301 || statusCode==302 || statusCode==303 || statusCode==307 || statusCode==308;
+	}
+
+	/**
+	 * signals that the server does not speak http/2
+	 */
+	static final class ProtocolNotSupportedException extends IOException
+	{
+		private static final long	serialVersionUID	= 1L;
+
+		ProtocolNotSupportedException(String message)
+		{
+			super(message);
+		}
+	}
+
+	/**
+	 * a request and where to deliver its outcome
+	 */
+	static final class Call
+	{
+		final TransportRequest				request;
+		final HttpClientConfig				config;
+		final TransportCallback				callback;
+		final int							redirectsLeft;
+		final URI							uri;
+		final boolean						secure;
+		final int							port;
+		final String						serverKey;
+		final String						routeKey;
+		final List<NameValuePair>			headers;
+		volatile boolean					canceled;
+
+		Call(TransportRequest request, HttpClientConfig config, TransportCallback callback, int redirectsLeft) throws IOException
+		{
+			this.request = request;
+			this.config = config;
+			this.callback = callback;
+			this.redirectsLeft = redirectsLeft;
+			try
+			{
+				this.uri = new URI(request.getUrl());
+			}
+			catch(URISyntaxException e)
+			{
+				throw new IOException("Invalid url: " + request.getUrl());
+			}
+			String scheme = uri.getScheme();
+			if(uri.getHost()==null || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)))
+			{
+				throw new IOException("Unsupported url: " + request.getUrl());
+			}
+			this.secure = "https".equalsIgnoreCase(scheme);
+			this.port = port(uri);
+			this.serverKey = serverKey(uri, port);
+			this.routeKey = serverKey + (config.isTrustAllCertificates() ? "|trust" : "");
+			this.headers = createHeaders();
+		}
+
+		static int port(URI uri)
+		{
+			return (uri.getPort()>0) ? uri.getPort() : ("https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80);
+		}
+
+		static String serverKey(URI uri, int port)
+		{
+			return uri.getScheme().toLowerCase(Locale.US) + "://" + uri.getHost().toLowerCase(Locale.US) + ":" + port;
+		}
+
+		Call redirect(String location) throws IOException
+		{
+			String url;
+			try
+			{
+				url = uri.resolve(location).toString();
+			}
+			catch(IllegalArgumentException e)
+			{
+				throw new IOException("Invalid redirect location: " + location);
+			}
+			TransportRequest.Builder builder = new TransportRequest.Builder().setMethod(Method.GET).setUrl(url)
+					.setCancellationSignal(request.getCancellationSignal());
+			builder.addHeaders(request.getHeaders());
+			return new Call(builder.build(), config, callback, redirectsLeft - 1);
+		}
+
+		/**
+		 * the pseudo headers followed by the lower case request headers, connection specific headers are dropped
+		 * @return
+		 */
+		private List<NameValuePair> createHeaders()
+		{
+			List<NameValuePair> list = new ArrayList<NameValuePair>(request.getHeaders().size() + 6);
+			String path = uri.getRawPath();
+			if(path==null || path.length()==0) path = "/";
+			if(uri.getRawQuery()!=null) path += "?" + uri.getRawQuery();
+			String authority = uri.getHost();
+			if(uri.getPort()>0 && uri.getPort()!=(secure ? 443 : 80)) authority += ":" + uri.getPort();
+			list.add(new BasicNameValuePair(":method", request.getMethod().name()));
+			list.add(new BasicNameValuePair(":scheme", secure ? "https" : "http"));
+			list.add(new BasicNameValuePair(":authority", authority));
+			list.add(new BasicNameValuePair(":path", path));
+			for(NameValuePair header : request.getHeaders())
+			{
+				String name = header.getName().toLowerCase(Locale.US);
+				if("host".equals(name) || "connection".equals(name) || "keep-alive".equals(name) || "proxy-connection".equals(name)
+					|| "transfer-encoding".equals(name) || "upgrade".equals(name) || "content-length".equals(name))
+				{
+					continue;
+				}
+				list.add(new BasicNameValuePair(name, header.getValue()));
+			}
+			byte[] body = request.getBody();
+			if(body!=null)
+			{
+				if(request.getContentType()!=null && request.getHeader("Content-Type")==null)
+				{
+					list.add(new BasicNameValuePair("content-type", request.getContentType()));
+				}
+				if(request.getContentEncoding()!=null && request.getHeader("Content-Encoding")==null)
+				{
+					list.add(new BasicNameValuePair("content-encoding", request.getContentEncoding()));
+				}
+			}
+			if(body!=null || request.getMethod()==Method.POST || request.getMethod()==Method.PUT)
+			{
+				list.add(new BasicNameValuePair("content-length", String.valueOf(body!=null ? body.length : 0)));
+			}
+			return list;
+		}
+	}
+}
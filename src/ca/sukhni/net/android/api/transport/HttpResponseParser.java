@@ -0,0 +1,305 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+
+/**
+ * incremental http/1.1 response parser fed from a non-blocking channel.
+ * supports content length, chunked and read until close bodies, interim 1xx responses are skipped
+ * @author malsukhni
+ *
+ */
+final class HttpResponseParser
+{
+	private static final int		MAX_LINE_LENGTH			= 16 * 1024;
+	private static final int		MAX_HEADER_COUNT		= 256;
+	private static final int		MAX_PRESIZE				= 1024 * 1024;
+
+	private enum State
+	{
+		STATUS_LINE, HEADERS, BODY_FIXED, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, BODY_UNTIL_CLOSE, DONE
+	}
+
+	private final boolean					noBody;
+	private State							state			= State.STATUS_LINE;
+	private final ByteArrayOutputStream		line			= new ByteArrayOutputStream(128);
+	private String							protocol;
+	private int								statusCode;
+	private String							reasonPhrase;
+	private List<NameValuePair>				headers			= new ArrayList<NameValuePair>();
+	private ByteArrayOutputStream			body;
+	private long							remaining;
+	private boolean							chunked;
+	private long							received;
+
+	/**
+	 * @param noBody true if the response can not have a body, i.e. the answer to a HEAD request
+	 */
+	HttpResponseParser(boolean noBody)
+	{
+		this.noBody = noBody;
+	}
+
+	/**
+	 * consume the available bytes
+	 * @param in the received bytes, its position is advanced
+	 * @return true when the response is complete, the remaining bytes are left in the buffer
+	 * @throws IOException on a malformed response
+	 */
+	boolean feed(ByteBuffer in) throws IOException
+	{
+		received += in.remaining();
+		while(in.hasRemaining() && state!=State.DONE)
+		{
+			switch (state)
+			{
+				case STATUS_LINE:
+				case HEADERS:
+				case CHUNK_SIZE:
+				case CHUNK_END:
+				case TRAILERS:
+				{
+					String l = readLine(in);
+					if(l!=null) onLine(l);
+					break;
+				}
+				case BODY_FIXED:
+				case CHUNK_DATA:
+				{
+					int n = (int) Math.min(remaining, in.remaining());
+					copy(in, n);
+					remaining -= n;
+					if(remaining==0)
+					{
+						state = (state==State.BODY_FIXED) ? State.DONE : State.CHUNK_END;
+					}
+					break;
+				}
+				case BODY_UNTIL_CLOSE:
+					copy(in, in.remaining());
+					break;
+				default:
+					break;
+			}
+		}
+		received -= in.remaining();
+		return state==State.DONE;
+	}
+
+	/**
+	 * signal the end of the stream
+	 * @return true if the response is complete
+	 * @throws IOException if the stream ended before the response was complete
+	 */
+	boolean eof() throws IOException
+	{
+		if(state==State.BODY_UNTIL_CLOSE)
+		{
+			state = State.DONE;
+			return true;
+		}
+		if(state==State.DONE) return true;
+		throw new ConnectionClosedException("Premature end of response" + (statusCode!=0 ? " body" : ""));
+	}
+
+	boolean isComplete()
+	{
+		return state==State.DONE;
+	}
+
+	/**
+	 * get the number of response bytes consumed so far
+	 * @return
+	 */
+	long getReceived()
+	{
+		return received;
+	}
+
+	/**
+	 * check if the connection may be reused for another request once the response is complete
+	 * @return
+	 */
+	boolean isKeepAlive()
+	{
+		if(state!=State.DONE || body!=null && !chunked && remaining<0) return false;
+		String connection = getHeader("Connection");
+		if(connection!=null && connection.toLowerCase().contains("close")) return false;
+		if("HTTP/1.0".equalsIgnoreCase(protocol))
+		{
+			return connection!=null && connection.toLowerCase().contains("keep-alive");
+		}
+		return true;
+	}
+
+	BufferedTransportResponse toResponse()
+	{
+		return new BufferedTransportResponse(statusCode, reasonPhrase, headers, (body!=null) ? body.toByteArray() : null, chunked);
+	}
+
+	int getStatusCode()
+	{
+		return statusCode;
+	}
+
+	String getHeader(String name)
+	{
+		for(NameValuePair header : headers)
+		{
+			if(header.getName().equalsIgnoreCase(name)) return header.getValue();
+		}
+		return null;
+	}
+
+	private void onLine(String l) throws IOException
+	{
+		switch (state)
+		{
+			case STATUS_LINE:
+				parseStatusLine(l);
+				state = State.HEADERS;
+				break;
+			case HEADERS:
+				if(l.length()==0)
+				{
+					onHeadersComplete();
+				}
+				else
+				{
+					if(headers.size()>=MAX_HEADER_COUNT) throw new ProtocolException("Too many response headers");
+					int colon = l.indexOf(':');
+					if(colon<=0) throw new ProtocolException("Invalid response header: " + l);
+					headers.add(new BasicNameValuePair(l.substring(0, colon).trim(), l.substring(colon+1).trim()));
+				}
+				break;
+			case CHUNK_SIZE:
+			{
+				int ext = l.indexOf(';');
+				String size = (ext>=0 ? l.substring(0, ext) : l).trim();
+				try
+				{
+					remaining = Long.parseLong(size, 16);
+				}
+				catch(NumberFormatException e)
+				{
+					throw new ProtocolException("Invalid chunk size: " + l);
+				}
+				if(remaining<0) throw new ProtocolException("Invalid chunk size: " + l);
+				state = (remaining==0) ? State.TRAILERS : State.CHUNK_DATA;
+				break;
+			}
+			case CHUNK_END:
+				if(l.length()!=0) throw new ProtocolException("Missing chunk terminator");
+				state = State.CHUNK_SIZE;
+				break;
+			case TRAILERS:
+				if(l.length()==0) state = State.DONE;
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void parseStatusLine(String l) throws IOException
+	{
+		int first = l.indexOf(' ');
+		if(first<=0 || !l.startsWith("HTTP/")) throw new ProtocolException("Invalid status line: " + l);
+		protocol = l.substring(0, first);
+		int second = l.indexOf(' ', first+1);
+		String code = (second>0) ? l.substring(first+1, second) : l.substring(first+1);
+		reasonPhrase = (second>0) ? l.substring(second+1) : "";
+		try
+		{
+			statusCode = Integer.parseInt(code.trim());
+		}
+		catch(NumberFormatException e)
+		{
+			throw new ProtocolException("Invalid status line: " + l);
+		}
+	}
+
+	private void onHeadersComplete() throws IOException
+	{
+		if(statusCode>=100 && statusCode<200)
+		{
+			// interim response, the final one follows
+			headers = new ArrayList<NameValuePair>();
+			state = State.STATUS_LINE;
+			return;
+		}
+		if(noBody || statusCode==204 || statusCode==304)
+		{
+			state = State.DONE;
+			return;
+		}
+		String transferEncoding = getHeader("Transfer-Encoding");
+		String contentLength = getHeader("Content-Length");
+		if(transferEncoding!=null && transferEncoding.toLowerCase().contains("chunked"))
+		{
+			chunked = true;
+			body = new ByteArrayOutputStream(8192);
+			state = State.CHUNK_SIZE;
+		}
+		else if(contentLength!=null)
+		{
+			try
+			{
+				remaining = Long.parseLong(contentLength.trim());
+			}
+			catch(NumberFormatException e)
+			{
+				throw new ProtocolException("Invalid content length: " + contentLength);
+			}
+			body = new ByteArrayOutputStream((int) Math.min(Math.max(remaining, 32), MAX_PRESIZE));
+			state = (remaining==0) ? State.DONE : State.BODY_FIXED;
+		}
+		else
+		{
+			body = new ByteArrayOutputStream(8192);
+			remaining = -1;
+			state = State.BODY_UNTIL_CLOSE;
+		}
+	}
+
+	private String readLine(ByteBuffer in) throws IOException
+	{
+		while(in.hasRemaining())
+		{
+			byte b = in.get();
+			if(b=='\n')
+			{
+				byte[] bytes = line.toByteArray();
+				line.reset();
+				int length = bytes.length;
+				if(length>0 && bytes[length-1]=='\r') length--;
+				return new String(bytes, 0, length, "ISO-8859-1");
+			}
+			if(line.size()>=MAX_LINE_LENGTH) throw new ProtocolException("Response line too long");
+			line.write(b);
+		}
+		return null;
+	}
+
+	private void copy(ByteBuffer in, int n)
+	{
+		if(in.hasArray())
+		{
+			body.write(in.array(), in.arrayOffset() + in.position(), n);
+			in.position(in.position() + n);
+		}
+		else
+		{
+			byte[] tmp = new byte[n];
+			in.get(tmp);
+			body.write(tmp, 0, n);
+		}
+	}
+}
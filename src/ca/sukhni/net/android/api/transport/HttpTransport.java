@@ -0,0 +1,28 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.IOException;
+
+import ca.sukhni.net.android.api.socket.HttpClientConfig;
+
+/**
+ * interface to an http engine that executes the requests of the api clients.
+ * implementations must be thread safe, one instance serves every client that selects it
+ * @author malsukhni
+ *
+ */
+public interface HttpTransport
+{
+	/**
+	 * execute the request and return once the response headers are received
+	 * @param request the request to execute
+	 * @param config the connection settings of the calling client
+	 * @return the response, its content must be read or closed to release the connection
+	 * @throws IOException
+	 */
+	public abstract TransportResponse execute(TransportRequest request, HttpClientConfig config) throws IOException;
+	/**
+	 * get a short name of the engine, used in logs
+	 * @return
+	 */
+	public abstract String getName();
+}
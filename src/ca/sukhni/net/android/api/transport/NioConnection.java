@@ -0,0 +1,577 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+
+import ca.sukhni.net.android.api.socket.HttpClientConfig;
+import ca.sukhni.net.android.api.socket.RacingConnector;
+
+/**
+ * a non-blocking http connection driven by the reactor thread of {@link NioHttpTransport}.
+ * secure connections run the tls protocol through an {@link SSLEngine}
+ * @author malsukhni
+ *
+ */
+final class NioConnection
+{
+	private static final ByteBuffer		EMPTY				= ByteBuffer.allocate(0);
+	private static final int			PLAIN_BUFFER_SIZE	= 16 * 1024;
+
+	final NioHttpTransport.Route		route;
+	private final SSLEngine				engine;
+	private final boolean				verifyHostname;
+	private SocketChannel				channel;
+	private SelectionKey				key;
+	private ByteBuffer					netIn;
+	private ByteBuffer					netOut;
+	private ByteBuffer					appIn;
+	private ByteBuffer					out;
+
+	private Selector					selector;
+	private final List<SelectionKey>	attempts			= new ArrayList<SelectionKey>(2);
+	private InetAddress[]				addresses;
+	private int							addressIndex;
+	private HttpClientConfig			config;
+	private long						connectDeadline;
+	private boolean						connected;
+	private boolean						handshaking;
+
+	NioHttpTransport.Exchange			exchange;
+	NioHttpTransport.Warmup				warmup;
+	int									served;
+	long								deadline;
+	boolean								idle;
+
+	/**
+	 * @param route the route of the connection
+	 * @param engine the tls engine for secure routes, or null
+	 * @param verifyHostname check the certificate against the route host once the handshake is done
+	 */
+	NioConnection(NioHttpTransport.Route route, SSLEngine engine, boolean verifyHostname)
+	{
+		this.route = route;
+		this.engine = engine;
+		this.verifyHostname = verifyHostname;
+		if(engine!=null)
+		{
+			netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+			netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+			netOut.flip();
+			appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+		}
+		else
+		{
+			appIn = ByteBuffer.allocate(PLAIN_BUFFER_SIZE);
+		}
+	}
+
+	boolean isConnected()
+	{
+		return connected && channel!=null && channel.isOpen();
+	}
+
+	boolean isBusy()
+	{
+		return exchange!=null;
+	}
+
+	/**
+	 * check if the connection is established and the tls handshake is done
+	 * @return
+	 */
+	boolean isReady()
+	{
+		return isConnected() && !handshaking;
+	}
+
+	/**
+	 * start connecting to the given addresses, a new attempt is started beside the running ones every attempt delay
+	 * or as soon as an attempt fails. the first connected address wins, SEE {@link RacingConnector}
+	 * @param selector
+	 * @param addresses the resolved addresses of the route host
+	 * @param config the connect timeout, the attempt delay and the socket options
+	 * @throws IOException when no connection attempt could be started
+	 */
+	void connect(Selector selector, InetAddress[] addresses, HttpClientConfig config) throws IOException
+	{
+		this.selector = selector;
+		this.addresses = RacingConnector.interleave(addresses);
+		this.addressIndex = 0;
+		this.config = config;
+		startAttempt();
+	}
+
+	/**
+	 * check if another address is left to try
+	 * @return
+	 */
+	boolean hasMoreAddresses()
+	{
+		return addresses!=null && addressIndex<addresses.length;
+	}
+
+	/**
+	 * the connect deadline passed, start the next attempt
+	 * @param now
+	 * @throws ConnectTimeoutException if no address is left to try
+	 * @throws IOException
+	 */
+	void onConnectDeadline(long now) throws IOException
+	{
+		if(!hasMoreAddresses())
+		{
+			throw new ConnectTimeoutException("Connect to " + route + " timed out");
+		}
+		if(now>=connectDeadline)
+		{
+			// the running attempts timed out, give up on them
+			closeAttempts(null);
+		}
+		startAttempt();
+	}
+
+	private void startAttempt() throws IOException
+	{
+		InetSocketAddress address = new InetSocketAddress(addresses[addressIndex++], route.port);
+		SocketChannel attempt = SocketChannel.open();
+		SelectionKey attemptKey;
+		try
+		{
+			attempt.configureBlocking(false);
+			// buffer sizes are set before the connect so the tcp window can be scaled to them
+			if(config.getSendBufferSize()>0) attempt.socket().setSendBufferSize(config.getSendBufferSize());
+			if(config.getReceiveBufferSize()>0) attempt.socket().setReceiveBufferSize(config.getReceiveBufferSize());
+			attemptKey = attempt.register(selector, SelectionKey.OP_CONNECT, this);
+			attempts.add(attemptKey);
+			long now = System.currentTimeMillis();
+			connectDeadline = (config.getConnectionTimeout()>0) ? now + config.getConnectionTimeout() : Long.MAX_VALUE;
+			long next = (config.getConnectAttemptDelay()>0 && hasMoreAddresses()) ? now + config.getConnectAttemptDelay() : Long.MAX_VALUE;
+			deadline = Math.min(connectDeadline, next);
+			if(attempt.connect(address))
+			{
+				onConnected(attemptKey);
+			}
+		}
+		catch(IOException e)
+		{
+			onAttemptFailed(attempt, e);
+		}
+	}
+
+	/**
+	 * finish a pending connect of one of the attempts
+	 * @param attemptKey
+	 * @throws IOException when the last attempt failed
+	 */
+	private void finishConnect(SelectionKey attemptKey) throws IOException
+	{
+		SocketChannel attempt = (SocketChannel) attemptKey.channel();
+		try
+		{
+			if(attempt.finishConnect())
+			{
+				onConnected(attemptKey);
+			}
+		}
+		catch(IOException e)
+		{
+			onAttemptFailed(attempt, e);
+		}
+	}
+
+	private void onAttemptFailed(SocketChannel attempt, IOException e) throws IOException
+	{
+		SelectionKey attemptKey = attempt.keyFor(selector);
+		if(attemptKey!=null) attempts.remove(attemptKey);
+		closeQuietly(attempt);
+		if(hasMoreAddresses())
+		{
+			startAttempt();
+		}
+		else if(attempts.isEmpty())
+		{
+			throw e;
+		}
+	}
+
+	private void closeAttempts(SelectionKey winner)
+	{
+		for(SelectionKey attemptKey : attempts)
+		{
+			if(attemptKey!=winner) closeQuietly(attemptKey.channel());
+		}
+		attempts.clear();
+	}
+
+	private void onConnected(SelectionKey winner) throws IOException
+	{
+		closeAttempts(winner);
+		channel = (SocketChannel) winner.channel();
+		key = winner;
+		channel.socket().setTcpNoDelay(config.isTcpNoDelay());
+		if(config.getSocketLinger()>=0) channel.socket().setSoLinger(true, config.getSocketLinger());
+		onConnected();
+	}
+
+	private void onConnected() throws IOException
+	{
+		connected = true;
+		touch();
+		if(engine!=null)
+		{
+			handshaking = true;
+			engine.beginHandshake();
+			handshake();
+		}
+		else
+		{
+			key.interestOps(exchange!=null ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * start sending the request of the given exchange on this connection
+	 * @param exchange
+	 * @throws IOException
+	 */
+	void start(NioHttpTransport.Exchange exchange) throws IOException
+	{
+		this.exchange = exchange;
+		this.warmup = null;
+		this.idle = false;
+		this.out = ByteBuffer.wrap(exchange.requestBytes);
+		appIn.clear();
+		touch();
+		if(isConnected() && !handshaking)
+		{
+			key.interestOps(SelectionKey.OP_WRITE);
+		}
+	}
+
+	/**
+	 * park the connection in the idle list, a read event now means the server closed it
+	 * @param keepAlive how long the connection may stay idle in milliseconds
+	 */
+	void park(long keepAlive)
+	{
+		exchange = null;
+		out = null;
+		idle = true;
+		deadline = (keepAlive>0) ? System.currentTimeMillis() + keepAlive : Long.MAX_VALUE;
+		if(key.isValid()) key.interestOps(SelectionKey.OP_READ);
+	}
+
+	/**
+	 * refresh the socket timeout deadline after some activity
+	 */
+	void touch()
+	{
+		int timeout = (exchange!=null) ? exchange.config.getSocketTimeout() : (warmup!=null ? warmup.config.getSocketTimeout() : 0);
+		deadline = (timeout>0) ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+	}
+
+	/**
+	 * check if the request bytes are all written
+	 * @return
+	 */
+	boolean isRequestSent()
+	{
+		return out!=null && !out.hasRemaining() && (netOut==null || !netOut.hasRemaining());
+	}
+
+	/**
+	 * handle the ready operations of the selection key
+	 * @param selected the key of the connection or of one of its connect attempts
+	 * @return true when the response of the current exchange is complete
+	 * @throws IOException
+	 */
+	boolean handle(SelectionKey selected) throws IOException
+	{
+		int readyOps = selected.readyOps();
+		if(!connected)
+		{
+			if((readyOps & SelectionKey.OP_CONNECT)!=0) finishConnect(selected);
+			return false;
+		}
+		if(handshaking)
+		{
+			handshake();
+			return false;
+		}
+		if(idle)
+		{
+			// an idle connection has nothing to read, the server closed it or sent garbage
+			if(engine==null || !readIdle()) throw new IOException("Idle connection closed by peer");
+			return false;
+		}
+		if((readyOps & SelectionKey.OP_WRITE)!=0)
+		{
+			write();
+		}
+		if((readyOps & SelectionKey.OP_READ)!=0)
+		{
+			return read();
+		}
+		return false;
+	}
+
+	private void write() throws IOException
+	{
+		touch();
+		if(engine==null)
+		{
+			channel.write(out);
+		}
+		else
+		{
+			while(true)
+			{
+				if(!flushNetOut()) break;
+				if(!out.hasRemaining()) break;
+				netOut.clear();
+				SSLEngineResult result = engine.wrap(out, netOut);
+				netOut.flip();
+				if(result.getStatus()==SSLEngineResult.Status.CLOSED) throw new SSLException("Engine closed");
+			}
+		}
+		if(isRequestSent())
+		{
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	private boolean read() throws IOException
+	{
+		touch();
+		if(engine==null)
+		{
+			int n = channel.read(appIn);
+			if(n<0) return exchange.parser.eof();
+			return deliver();
+		}
+		int n = channel.read(netIn);
+		netIn.flip();
+		try
+		{
+			while(netIn.hasRemaining())
+			{
+				SSLEngineResult result = engine.unwrap(netIn, appIn);
+				if(result.getStatus()==SSLEngineResult.Status.BUFFER_OVERFLOW)
+				{
+					if(deliver()) return true;
+					if(appIn.position()==0) appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+					continue;
+				}
+				if(result.getStatus()==SSLEngineResult.Status.BUFFER_UNDERFLOW)
+				{
+					if(netIn.limit()==netIn.capacity()) netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+					break;
+				}
+				if(result.getStatus()==SSLEngineResult.Status.CLOSED)
+				{
+					deliver();
+					return exchange.parser.eof();
+				}
+				if(deliver()) return true;
+				if(result.bytesConsumed()==0 && result.bytesProduced()==0) break;
+			}
+		}
+		finally
+		{
+			netIn.compact();
+		}
+		if(n<0) return exchange.parser.eof();
+		return false;
+	}
+
+	/**
+	 * consume the tls records an idle connection may still receive, i.e. the session tickets sent after the handshake
+	 * @return false if the server closed the connection or sent application data
+	 * @throws IOException
+	 */
+	private boolean readIdle() throws IOException
+	{
+		int n = channel.read(netIn);
+		netIn.flip();
+		try
+		{
+			while(netIn.hasRemaining())
+			{
+				SSLEngineResult result = engine.unwrap(netIn, appIn);
+				if(result.getStatus()==SSLEngineResult.Status.CLOSED || appIn.position()>0) return false;
+				if(result.getStatus()!=SSLEngineResult.Status.OK) break;
+				Runnable task;
+				while((task = engine.getDelegatedTask())!=null) task.run();
+				if(result.bytesConsumed()==0) break;
+			}
+		}
+		finally
+		{
+			netIn.compact();
+		}
+		return n>=0;
+	}
+
+	/**
+	 * hand the decoded bytes to the response parser
+	 * @return true when the response is complete
+	 * @throws IOException
+	 */
+	private boolean deliver() throws IOException
+	{
+		appIn.flip();
+		try
+		{
+			return exchange.parser.feed(appIn);
+		}
+		finally
+		{
+			appIn.compact();
+		}
+	}
+
+	private void handshake() throws IOException
+	{
+		while(true)
+		{
+			HandshakeStatus status = engine.getHandshakeStatus();
+			switch (status)
+			{
+				case NEED_TASK:
+				{
+					Runnable task;
+					while((task = engine.getDelegatedTask())!=null) task.run();
+					break;
+				}
+				case NEED_WRAP:
+				{
+					if(!flushNetOut())
+					{
+						key.interestOps(SelectionKey.OP_WRITE);
+						return;
+					}
+					netOut.clear();
+					SSLEngineResult result = engine.wrap(EMPTY, netOut);
+					netOut.flip();
+					if(result.getStatus()==SSLEngineResult.Status.CLOSED) throw new SSLException("Handshake failed, engine closed");
+					break;
+				}
+				case NEED_UNWRAP:
+				{
+					if(!flushNetOut())
+					{
+						key.interestOps(SelectionKey.OP_WRITE);
+						return;
+					}
+					netIn.flip();
+					SSLEngineResult result = engine.unwrap(netIn, appIn);
+					netIn.compact();
+					if(result.getStatus()==SSLEngineResult.Status.BUFFER_UNDERFLOW)
+					{
+						int n = channel.read(netIn);
+						if(n<0) throw new SSLException("Connection closed during handshake");
+						if(n==0)
+						{
+							key.interestOps(SelectionKey.OP_READ);
+							return;
+						}
+					}
+					else if(result.getStatus()==SSLEngineResult.Status.CLOSED)
+					{
+						throw new SSLException("Handshake failed, engine closed");
+					}
+					break;
+				}
+				case FINISHED:
+				case NOT_HANDSHAKING:
+				default:
+				{
+					if(!flushNetOut())
+					{
+						key.interestOps(SelectionKey.OP_WRITE);
+						return;
+					}
+					handshaking = false;
+					if(verifyHostname) verifyHostname();
+					touch();
+					key.interestOps(exchange!=null ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+					return;
+				}
+			}
+		}
+	}
+
+	private void verifyHostname() throws IOException
+	{
+		Certificate[] certificates = engine.getSession().getPeerCertificates();
+		if(certificates.length==0 || !(certificates[0] instanceof X509Certificate))
+		{
+			throw new SSLPeerUnverifiedException("No server certificate");
+		}
+		SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER.verify(route.host, (X509Certificate) certificates[0]);
+	}
+
+	/**
+	 * write the pending tls records
+	 * @return true if nothing is left to write
+	 * @throws IOException
+	 */
+	private boolean flushNetOut() throws IOException
+	{
+		if(netOut.hasRemaining())
+		{
+			channel.write(netOut);
+		}
+		return !netOut.hasRemaining();
+	}
+
+	private static ByteBuffer grow(ByteBuffer buffer, int minimum)
+	{
+		ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, minimum));
+		buffer.flip();
+		bigger.put(buffer);
+		return bigger;
+	}
+
+	private static void closeQuietly(Channel channel)
+	{
+		try
+		{
+			channel.close();
+		}
+		catch(IOException e)
+		{
+			// ignore, the channel is discarded anyway
+		}
+	}
+
+	/**
+	 * close the connection
+	 */
+	void close()
+	{
+		connected = false;
+		if(engine!=null) engine.closeOutbound();
+		closeAttempts(null);
+		if(channel!=null) closeQuietly(channel);
+	}
+}
@@ -0,0 +1,807 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.apache.http.NameValuePair;
+
+import ca.sukhni.net.android.api.client.Method;
+import ca.sukhni.net.android.api.socket.EasySSLSocketFactory;
+import ca.sukhni.net.android.api.socket.HttpClientConfig;
+import ca.sukhni.net.android.logger.Logger;
+
+/**
+ * non-blocking http/1.1 transport. all connections are multiplexed on a single selector thread,
+ * so an in flight request does not hold a thread while it waits for the network.
+ * <p>connections are kept alive and reused per route within the pool limits of {@link HttpClientConfig},
+ * hosts are resolved through its host resolver. responses are received in memory before they are delivered,
+ * requests are not pipelined.</p>
+ * @author malsukhni
+ *
+ */
+public class NioHttpTransport implements AsyncHttpTransport, PrewarmableTransport, BufferingTransport
+{
+	public static final String						TAG					= NioHttpTransport.class.getSimpleName();
+
+	private static final int						MAX_REDIRECTS		= 5;
+	private static final long						SELECT_INTERVAL		= 1000;
+
+	private static NioHttpTransport					sInstance;
+
+	private final Selector							mSelector;
+	private final Queue<Runnable>					mTasks				= new ConcurrentLinkedQueue<Runnable>();
+	// resolves hosts, never runs callbacks so blocking handlers can not starve it
+	private final ExecutorService					mResolvers;
+	private final ExecutorService					mCallbacks;
+	// only accessed on the reactor thread
+	private final Map<String, Route>				mRoutes				= new HashMap<String, Route>();
+	private final List<NioConnection>				mConnections		= new ArrayList<NioConnection>();
+
+	/**
+	 * get the shared instance, the reactor thread is started on first use
+	 * @return
+	 */
+	public static synchronized NioHttpTransport getInstance()
+	{
+		if(sInstance==null)
+		{
+			try
+			{
+				sInstance = new NioHttpTransport();
+			}
+			catch(IOException e)
+			{
+				throw new IllegalStateException("Unable to open selector", e);
+			}
+		}
+		return sInstance;
+	}
+
+	protected NioHttpTransport() throws IOException
+	{
+		mSelector = Selector.open();
+		mResolvers = Executors.newFixedThreadPool(2, new DaemonThreadFactory(TAG + "-resolver"));
+		mCallbacks = Executors.newCachedThreadPool(new DaemonThreadFactory(TAG + "-worker"));
+		Thread reactor = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				loop();
+			}
+		}, TAG + "-reactor");
+		reactor.setDaemon(true);
+		reactor.start();
+	}
+
+	@Override
+	public TransportResponse execute(TransportRequest request, HttpClientConfig config) throws IOException
+	{
+		BlockingCallback callback = new BlockingCallback();
+		executeAsync(request, config, callback);
+		return callback.await(request.getUrl());
+	}
+
+	@Override
+	public void executeAsync(TransportRequest request, HttpClientConfig config, TransportCallback callback)
+	{
+		callback = CancelableCallback.wrap(request, callback);
+		try
+		{
+			submit(new Exchange(request, config, callback, MAX_REDIRECTS));
+		}
+		catch(IOException e)
+		{
+			fail(callback, e);
+		}
+	}
+
+	@Override
+	public int prewarm(String url, int connections, HttpClientConfig config) throws IOException
+	{
+		final Exchange target = new Exchange(new TransportRequest.Builder().setMethod(Method.GET).setUrl(url).build(), config, null, 0);
+		target.addresses = config.getHostResolver().resolve(target.uri.getHost());
+		final Warmup warmup = new Warmup(config, connections);
+		post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				warmup(target, warmup);
+			}
+		});
+		return warmup.await(url);
+	}
+
+	@Override
+	public String getName()
+	{
+		return "nio";
+	}
+
+	/**
+	 * get the number of open connections, for diagnostics
+	 * @return
+	 */
+	public int getConnectionCount()
+	{
+		final int[] count = new int[1];
+		final CountDownLatch latch = new CountDownLatch(1);
+		post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				count[0] = mConnections.size();
+				latch.countDown();
+			}
+		});
+		try
+		{
+			latch.await();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return count[0];
+	}
+
+	/**
+	 * resolve the host of the exchange on a worker thread, then hand it to the reactor
+	 * @param exchange
+	 */
+	private void submit(final Exchange exchange)
+	{
+		CancellationSignal signal = exchange.request.getCancellationSignal();
+		if(signal!=null)
+		{
+			signal.setOnCancelListener(new CancellationSignal.OnCancelListener()
+			{
+				@Override
+				public void onCancel()
+				{
+					cancel(exchange);
+				}
+			});
+		}
+		mResolvers.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					exchange.addresses = exchange.config.getHostResolver().resolve(exchange.uri.getHost());
+				}
+				catch(IOException e)
+				{
+					fail(exchange.callback, e);
+					return;
+				}
+				post(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						dispatch(exchange);
+					}
+				});
+			}
+		});
+	}
+
+	private void post(Runnable task)
+	{
+		mTasks.add(task);
+		mSelector.wakeup();
+	}
+
+	private void loop()
+	{
+		long wait = SELECT_INTERVAL;
+		while(true)
+		{
+			try
+			{
+				mSelector.select(wait);
+				Runnable task;
+				while((task = mTasks.poll())!=null)
+				{
+					task.run();
+				}
+				Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+				while(keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+					if(!key.isValid()) continue;
+					NioConnection connection = (NioConnection) key.attachment();
+					try
+					{
+						if(connection.handle(key))
+						{
+							onComplete(connection);
+						}
+						else if(connection.warmup!=null && connection.isReady())
+						{
+							onReady(connection);
+						}
+					}
+					catch(IOException e)
+					{
+						onError(connection, e);
+					}
+					catch(RuntimeException e)
+					{
+						onError(connection, new IOException(e.toString()));
+					}
+				}
+				wait = checkDeadlines();
+			}
+			catch(Throwable t)
+			{
+				Logger.error(TAG, "reactor error", t);
+			}
+		}
+	}
+
+	/**
+	 * assign the exchange to an idle connection, a new connection or the route queue
+	 * @param exchange
+	 */
+	private void dispatch(Exchange exchange)
+	{
+		if(exchange.canceled) return;
+		Route route = getRoute(exchange);
+		while(!route.idle.isEmpty())
+		{
+			NioConnection connection = route.idle.removeLast();
+			if(!connection.isConnected())
+			{
+				discard(connection);
+				continue;
+			}
+			start(connection, exchange);
+			return;
+		}
+		int maxPerRoute = exchange.config.getMaxConnectionsPerHost();
+		int maxTotal = exchange.config.getMaxTotalConnections();
+		if((maxPerRoute>0 && route.open>=maxPerRoute) || (maxTotal>0 && mConnections.size()>=maxTotal && !evictIdle()))
+		{
+			route.pending.add(exchange);
+			return;
+		}
+		NioConnection connection;
+		try
+		{
+			connection = new NioConnection(route, createEngine(route, exchange.config), !route.trustAll && route.secure);
+		}
+		catch(IOException e)
+		{
+			fail(exchange.callback, e);
+			return;
+		}
+		route.open++;
+		mConnections.add(connection);
+		try
+		{
+			connection.start(exchange);
+			connection.connect(mSelector, exchange.addresses, exchange.config);
+		}
+		catch(IOException e)
+		{
+			onError(connection, e);
+		}
+	}
+
+	private Route getRoute(Exchange exchange)
+	{
+		Route route = mRoutes.get(exchange.routeKey);
+		if(route==null)
+		{
+			route = new Route(exchange.uri.getScheme(), exchange.uri.getHost(), exchange.port, exchange.config.isTrustAllCertificates());
+			mRoutes.put(exchange.routeKey, route);
+		}
+		return route;
+	}
+
+	/**
+	 * open connections without a request until the route of the target has the wanted number,
+	 * they are parked as idle once they are ready
+	 * @param target an exchange that is never sent, it carries the route and the addresses
+	 * @param warmup
+	 */
+	private void warmup(Exchange target, Warmup warmup)
+	{
+		Route route = getRoute(target);
+		int wanted = warmup.wanted;
+		int maxPerRoute = target.config.getMaxConnectionsPerHost();
+		int maxTotal = target.config.getMaxTotalConnections();
+		if(maxPerRoute>0) wanted = Math.min(wanted, maxPerRoute);
+		warmup.ready.set(route.idle.size());
+		IOException failure = null;
+		// hold the warm up open until every connection is started
+		warmup.opening.incrementAndGet();
+		for(int i=route.open;i<wanted && (maxTotal<=0 || mConnections.size()<maxTotal);i++)
+		{
+			NioConnection connection;
+			try
+			{
+				connection = new NioConnection(route, createEngine(route, target.config), !route.trustAll && route.secure);
+			}
+			catch(IOException e)
+			{
+				failure = e;
+				break;
+			}
+			connection.warmup = warmup;
+			route.open++;
+			mConnections.add(connection);
+			warmup.opening.incrementAndGet();
+			try
+			{
+				connection.connect(mSelector, target.addresses, target.config);
+				if(connection.isReady()) onReady(connection);
+			}
+			catch(IOException e)
+			{
+				onError(connection, e);
+			}
+		}
+		if(warmup.opening.decrementAndGet()==0) warmup.done(failure);
+	}
+
+	/**
+	 * a connection opened by a warm up is ready, give it to a queued exchange or park it
+	 * @param connection
+	 */
+	private void onReady(NioConnection connection)
+	{
+		Warmup warmup = connection.warmup;
+		connection.warmup = null;
+		Exchange next = connection.route.pending.poll();
+		if(next!=null)
+		{
+			start(connection, next);
+		}
+		else
+		{
+			connection.park(warmup.config.getKeepAliveDuration());
+			connection.route.idle.add(connection);
+		}
+		warmup.ready.incrementAndGet();
+		if(warmup.opening.decrementAndGet()==0) warmup.done(null);
+	}
+
+	/**
+	 * fail the exchange right away and free its place on the reactor: it leaves the route queue,
+	 * or its connection is closed when the request is in flight
+	 * @param exchange
+	 */
+	private void cancel(final Exchange exchange)
+	{
+		fail(exchange.callback, new InterruptedIOException("Request canceled: " + exchange.request.getUrl()));
+		post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				exchange.canceled = true;
+				getRoute(exchange).pending.remove(exchange);
+				for(NioConnection connection : new ArrayList<NioConnection>(mConnections))
+				{
+					if(connection.exchange==exchange && !connection.idle)
+					{
+						connection.route.idle.remove(connection);
+						discard(connection);
+					}
+				}
+			}
+		});
+	}
+
+	private void start(NioConnection connection, Exchange exchange)
+	{
+		try
+		{
+			connection.start(exchange);
+		}
+		catch(IOException e)
+		{
+			onError(connection, e);
+		}
+	}
+
+	/**
+	 * close one idle connection of any route to make room for a new one
+	 * @return true if a connection was closed
+	 */
+	private boolean evictIdle()
+	{
+		for(Route route : mRoutes.values())
+		{
+			if(!route.idle.isEmpty())
+			{
+				discard(route.idle.removeFirst());
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void onComplete(NioConnection connection)
+	{
+		Exchange exchange = connection.exchange;
+		HttpResponseParser parser = exchange.parser;
+		connection.served++;
+		Route route = connection.route;
+		if(parser.isKeepAlive())
+		{
+			Exchange next = route.pending.poll();
+			if(next!=null)
+			{
+				start(connection, next);
+			}
+			else
+			{
+				connection.park(exchange.config.getKeepAliveDuration());
+				route.idle.add(connection);
+			}
+		}
+		else
+		{
+			discard(connection);
+		}
+		String location = parser.getHeader("Location");
+		if(isRedirect(exchange, parser.getStatusCode()) && location!=null)
+		{
+			try
+			{
+				submit(exchange.redirect(location));
+				return;
+			}
+			catch(IOException e)
+			{
+				Logger.error(TAG, "unable to follow redirect to " + location);
+			}
+		}
+		deliver(exchange.callback, parser.toResponse());
+	}
+
+	private void onError(NioConnection connection, IOException e)
+	{
+		Exchange exchange = connection.exchange;
+		Warmup warmup = connection.warmup;
+		connection.route.idle.remove(connection);
+		connection.warmup = null;
+		discard(connection);
+		if(warmup!=null)
+		{
+			warmup.failure = e;
+			if(warmup.opening.decrementAndGet()==0) warmup.done(null);
+		}
+		if(exchange==null) return;
+		if(connection.served>0 && exchange.parser.getReceived()==0 && !exchange.staleRetried && exchange.isIdempotent())
+		{
+			// the server closed the kept alive connection before it saw the request, try once more on a fresh one
+			exchange.staleRetried = true;
+			exchange.parser = new HttpResponseParser(false);
+			dispatch(exchange);
+			return;
+		}
+		fail(exchange.callback, e);
+	}
+
+	/**
+	 * close the connection and let a queued exchange take its place
+	 * @param connection
+	 */
+	private void discard(NioConnection connection)
+	{
+		connection.close();
+		if(mConnections.remove(connection))
+		{
+			connection.route.open--;
+		}
+		for(Route route : mRoutes.values())
+		{
+			Exchange next = route.pending.poll();
+			if(next!=null)
+			{
+				dispatch(next);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * expire the connections whose deadline passed
+	 * @return milliseconds until the next deadline, at most the select interval
+	 */
+	private long checkDeadlines()
+	{
+		long now = System.currentTimeMillis();
+		long wait = SELECT_INTERVAL;
+		for(NioConnection connection : new ArrayList<NioConnection>(mConnections))
+		{
+			if(connection.deadline>now)
+			{
+				wait = Math.min(wait, connection.deadline - now);
+				continue;
+			}
+			if(connection.idle)
+			{
+				connection.route.idle.remove(connection);
+				discard(connection);
+			}
+			else if(!connection.isConnected())
+			{
+				try
+				{
+					connection.onConnectDeadline(now);
+					wait = Math.min(wait, Math.max(connection.deadline - now, 1));
+				}
+				catch(IOException e)
+				{
+					onError(connection, e);
+				}
+			}
+			else
+			{
+				onError(connection, new SocketTimeoutException("Read timed out"));
+			}
+		}
+		return Math.max(wait, 1);
+	}
+
+	private static SSLEngine createEngine(Route route, HttpClientConfig config) throws IOException
+	{
+		if(!route.secure) return null;
+		SSLContext context;
+		try
+		{
+			context = route.trustAll
+				? EasySSLSocketFactory.getSSLContext(config.getSslSessionCacheSize(), config.getSslSessionTimeout())
+				: SSLContext.getDefault();
+		}
+		catch(Exception e)
+		{
+			throw new IOException("Unable to create the ssl context: " + e.getMessage());
+		}
+		SSLEngine engine = context.createSSLEngine(route.host, route.port);
+		engine.setUseClientMode(true);
+		return engine;
+	}
+
+	private static boolean isRedirect(Exchange exchange, int statusCode)
+	{
+		if(exchange.redirectsLeft<=0 || exchange.request.getMethod()!=Method.GET) return false;
+		return statusCode==301 || statusCode==302 || statusCode==303 || statusCode==307 || statusCode==308;
+	}
+
+	private void deliver(final TransportCallback callback, final TransportResponse response)
+	{
+		mCallbacks.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				callback.onResponse(response);
+			}
+		});
+	}
+
+	private void fail(final TransportCallback callback, final IOException e)
+	{
+		mCallbacks.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				callback.onFailure(e);
+			}
+		});
+	}
+
+	/**
+	 * connections to the same scheme, host and port
+	 */
+	static final class Route
+	{
+		final String						host;
+		final int							port;
+		final boolean						secure;
+		final boolean						trustAll;
+		final LinkedList<NioConnection>		idle		= new LinkedList<NioConnection>();
+		final Queue<Exchange>				pending		= new LinkedList<Exchange>();
+		int									open;
+
+		Route(String scheme, String host, int port, boolean trustAll)
+		{
+			this.host = host;
+			this.port = port;
+			this.secure = "https".equalsIgnoreCase(scheme);
+			this.trustAll = trustAll;
+		}
+
+		@Override
+		public String toString()
+		{
+			return (secure ? "https://" : "http://") + host + ":" + port;
+		}
+	}
+
+	/**
+	 * the progress of a warm up, the caller waits until all of its connections are ready or failed
+	 */
+	static final class Warmup
+	{
+		final HttpClientConfig				config;
+		final int							wanted;
+		final AtomicInteger					opening		= new AtomicInteger();
+		final AtomicInteger					ready		= new AtomicInteger();
+		private final CountDownLatch		latch		= new CountDownLatch(1);
+		volatile IOException				failure;
+
+		Warmup(HttpClientConfig config, int wanted)
+		{
+			this.config = config;
+			this.wanted = wanted;
+		}
+
+		void done(IOException failure)
+		{
+			if(failure!=null) this.failure = failure;
+			latch.countDown();
+		}
+
+		int await(String url) throws IOException
+		{
+			try
+			{
+				latch.await();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while prewarming " + url);
+			}
+			if(ready.get()==0 && failure!=null) throw failure;
+			return ready.get();
+		}
+	}
+
+	/**
+	 * a request in flight and its response parser
+	 */
+	static final class Exchange
+	{
+		final TransportRequest				request;
+		final HttpClientConfig				config;
+		final TransportCallback				callback;
+		final URI							uri;
+		final int							port;
+		final String						routeKey;
+		final byte[]						requestBytes;
+		final int							redirectsLeft;
+		InetAddress[]						addresses;
+		HttpResponseParser					parser		= new HttpResponseParser(false);
+		boolean								staleRetried;
+		boolean								canceled;
+
+		Exchange(TransportRequest request, HttpClientConfig config, TransportCallback callback, int redirectsLeft) throws IOException
+		{
+			this.request = request;
+			this.config = config;
+			this.callback = callback;
+			this.redirectsLeft = redirectsLeft;
+			try
+			{
+				this.uri = new URI(request.getUrl());
+			}
+			catch(URISyntaxException e)
+			{
+				throw new IOException("Invalid url: " + request.getUrl());
+			}
+			String scheme = uri.getScheme();
+			if(uri.getHost()==null || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)))
+			{
+				throw new IOException("Unsupported url: " + request.getUrl());
+			}
+			boolean secure = "https".equalsIgnoreCase(scheme);
+			this.port = (uri.getPort()>0) ? uri.getPort() : (secure ? 443 : 80);
+			this.routeKey = scheme.toLowerCase() + "://" + uri.getHost().toLowerCase() + ":" + port + (config.isTrustAllCertificates() ? "|trust" : "");
+			this.requestBytes = encode(secure);
+		}
+
+		boolean isIdempotent()
+		{
+			return request.getMethod()!=Method.POST;
+		}
+
+		/**
+		 * create the exchange that follows the given redirect location
+		 * @param location
+		 * @return
+		 * @throws IOException
+		 */
+		Exchange redirect(String location) throws IOException
+		{
+			String url;
+			try
+			{
+				url = uri.resolve(location).toString();
+			}
+			catch(IllegalArgumentException e)
+			{
+				throw new IOException("Invalid redirect location: " + location);
+			}
+			TransportRequest.Builder builder = new TransportRequest.Builder().setMethod(Method.GET).setUrl(url)
+					.setCancellationSignal(request.getCancellationSignal());
+			builder.addHeaders(request.getHeaders());
+			return new Exchange(builder.build(), config, callback, redirectsLeft - 1);
+		}
+
+		private byte[] encode(boolean secure) throws IOException
+		{
+			StringBuilder sb = new StringBuilder(256);
+			String path = uri.getRawPath();
+			if(path==null || path.length()==0) path = "/";
+			if(uri.getRawQuery()!=null) path += "?" + uri.getRawQuery();
+			sb.append(request.getMethod().name()).append(' ').append(path).append(" HTTP/1.1\r\n");
+			sb.append("Host: ").append(uri.getHost());
+			if(uri.getPort()>0 && uri.getPort()!=(secure ? 443 : 80)) sb.append(':').append(uri.getPort());
+			sb.append("\r\n");
+			for(NameValuePair header : request.getHeaders())
+			{
+				String name = header.getName();
+				if("Host".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name) || "Transfer-Encoding".equalsIgnoreCase(name)) continue;
+				sb.append(name).append(": ").append(header.getValue()).append("\r\n");
+			}
+			byte[] body = request.getBody();
+			if(body!=null)
+			{
+				if(request.getContentType()!=null && request.getHeader("Content-Type")==null)
+				{
+					sb.append("Content-Type: ").append(request.getContentType()).append("\r\n");
+				}
+				if(request.getContentEncoding()!=null && request.getHeader("Content-Encoding")==null)
+				{
+					sb.append("Content-Encoding: ").append(request.getContentEncoding()).append("\r\n");
+				}
+			}
+			if(body!=null || request.getMethod()==Method.POST || request.getMethod()==Method.PUT)
+			{
+				sb.append("Content-Length: ").append(body!=null ? body.length : 0).append("\r\n");
+			}
+			sb.append("\r\n");
+			ByteArrayOutputStream out = new ByteArrayOutputStream(sb.length() + (body!=null ? body.length : 0));
+			out.write(sb.toString().getBytes("ISO-8859-1"));
+			if(body!=null) out.write(body);
+			return out.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.IOException;
+
+import ca.sukhni.net.android.api.socket.HttpClientConfig;
+
+/**
+ * interface to an http engine that can open connections before they are needed, so the first request
+ * does not pay for the dns lookup, the tcp connect and the tls handshake
+ * @author malsukhni
+ *
+ */
+public interface PrewarmableTransport extends HttpTransport
+{
+	/**
+	 * open connections to the host of the given url and keep them in the pool of the engine, this call blocks until they are ready
+	 * @param url any url on the host, only the scheme, host and port are used
+	 * @param connections how many connections to have ready, limited by the connections per host of the config
+	 * @param config the connection settings of the clients that will use the connections
+	 * @return the number of connections ready in the pool
+	 * @throws IOException if no connection could be opened
+	 */
+	public abstract int prewarm(String url, int connections, HttpClientConfig config) throws IOException;
+}
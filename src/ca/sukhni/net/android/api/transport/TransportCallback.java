@@ -0,0 +1,22 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.IOException;
+
+/**
+ * interface to receive the result of {@link AsyncHttpTransport#executeAsync(TransportRequest, ca.sukhni.net.android.api.socket.HttpClientConfig, TransportCallback)}
+ * @author malsukhni
+ *
+ */
+public interface TransportCallback
+{
+	/**
+	 * called once the response is received
+	 * @param response the response, its content must be read or closed
+	 */
+	public abstract void onResponse(TransportResponse response);
+	/**
+	 * called when the request failed
+	 * @param e the failure
+	 */
+	public abstract void onFailure(IOException e);
+}
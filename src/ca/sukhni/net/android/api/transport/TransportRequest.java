@@ -0,0 +1,225 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+
+import ca.sukhni.net.android.api.client.Method;
+
+/**
+ * immutable description of a single http request handed to a {@link HttpTransport}
+ * @author malsukhni
+ *
+ */
+public final class TransportRequest
+{
+	private final Method				method;
+	private final String				url;
+	private final List<NameValuePair>	headers;
+	private final byte[]				body;
+	private final String				contentType;
+	private final String				contentEncoding;
+	private final CancellationSignal	cancellationSignal;
+
+	private TransportRequest(Builder builder)
+	{
+		this.method = builder.method;
+		this.url = builder.url;
+		this.headers = Collections.unmodifiableList(new ArrayList<NameValuePair>(builder.headers));
+		this.body = builder.body;
+		this.contentType = builder.contentType;
+		this.contentEncoding = builder.contentEncoding;
+		this.cancellationSignal = builder.cancellationSignal;
+	}
+
+	/**
+	 * get the request method, SEE {@link Method}
+	 * @return
+	 */
+	public Method getMethod()
+	{
+		return method;
+	}
+
+	/**
+	 * get the full request url, paths and parameters included
+	 * @return
+	 */
+	public String getUrl()
+	{
+		return url;
+	}
+
+	/**
+	 * get the request headers in the order they were added
+	 * @return an unmodifiable list
+	 */
+	public List<NameValuePair> getHeaders()
+	{
+		return headers;
+	}
+
+	/**
+	 * get the first value of the given request header
+	 * @param name the header name, case insensitive
+	 * @return the header value, or null
+	 */
+	public String getHeader(String name)
+	{
+		for(NameValuePair header : headers)
+		{
+			if(header.getName().equalsIgnoreCase(name)) return header.getValue();
+		}
+		return null;
+	}
+
+	/**
+	 * get the request body
+	 * @return the body bytes, or null when the request has no body
+	 */
+	public byte[] getBody()
+	{
+		return body;
+	}
+
+	/**
+	 * get the content type of the body
+	 * @return
+	 */
+	public String getContentType()
+	{
+		return contentType;
+	}
+
+	/**
+	 * get the content encoding of the body
+	 * @return
+	 */
+	public String getContentEncoding()
+	{
+		return contentEncoding;
+	}
+
+	/**
+	 * get the signal that aborts the request
+	 * @return the signal, or null when the request can not be canceled
+	 */
+	public CancellationSignal getCancellationSignal()
+	{
+		return cancellationSignal;
+	}
+
+	/**
+	 * create a builder that starts from this request
+	 * @return
+	 */
+	public Builder newBuilder()
+	{
+		return new Builder()
+				.setMethod(method)
+				.setUrl(url)
+				.addHeaders(headers)
+				.setBody(body, contentType, contentEncoding)
+				.setCancellationSignal(cancellationSignal);
+	}
+
+	/**
+	 * builder for {@link TransportRequest}
+	 * @author malsukhni
+	 *
+	 */
+	public static class Builder
+	{
+		private Method					method			= Method.GET;
+		private String					url				= null;
+		private List<NameValuePair>		headers			= new ArrayList<NameValuePair>();
+		private byte[]					body			= null;
+		private String					contentType		= null;
+		private String					contentEncoding	= null;
+		private CancellationSignal		cancellationSignal	= null;
+
+		/**
+		 * set the request method
+		 * @param method
+		 * @return
+		 */
+		public Builder setMethod(Method method)
+		{
+			this.method = method;
+			return this;
+		}
+
+		/**
+		 * set the full request url
+		 * @param url
+		 * @return
+		 */
+		public Builder setUrl(String url)
+		{
+			this.url = url;
+			return this;
+		}
+
+		/**
+		 * add a request header
+		 * @param name
+		 * @param value
+		 * @return
+		 */
+		public Builder addHeader(String name, String value)
+		{
+			headers.add(new BasicNameValuePair(name, value));
+			return this;
+		}
+
+		/**
+		 * add request headers
+		 * @param headers
+		 * @return
+		 */
+		public Builder addHeaders(List<NameValuePair> headers)
+		{
+			this.headers.addAll(headers);
+			return this;
+		}
+
+		/**
+		 * set the request body
+		 * @param body the body bytes
+		 * @param contentType the content type of the body
+		 * @param contentEncoding the content encoding of the body, or null
+		 * @return
+		 */
+		public Builder setBody(byte[] body, String contentType, String contentEncoding)
+		{
+			this.body = body;
+			this.contentType = contentType;
+			this.contentEncoding = contentEncoding;
+			return this;
+		}
+
+		/**
+		 * set the signal that aborts the request
+		 * @param cancellationSignal the signal, or null
+		 * @return
+		 */
+		public Builder setCancellationSignal(CancellationSignal cancellationSignal)
+		{
+			this.cancellationSignal = cancellationSignal;
+			return this;
+		}
+
+		/**
+		 * build the request
+		 * @return
+		 */
+		public TransportRequest build()
+		{
+			if(url==null) throw new IllegalStateException("url must not be null");
+			return new TransportRequest(this);
+		}
+	}
+}
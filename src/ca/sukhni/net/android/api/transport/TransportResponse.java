@@ -0,0 +1,68 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * interface to a response returned by a {@link HttpTransport}.
+ * the response holds its connection until the content is fully read or {@link #close()} is called
+ * @author malsukhni
+ *
+ */
+public interface TransportResponse
+{
+	/**
+	 * get the response status code
+	 * @return
+	 */
+	public abstract int getStatusCode();
+	/**
+	 * get the reason phrase of the status line
+	 * @return
+	 */
+	public abstract String getReasonPhrase();
+	/**
+	 * get the first value of the given response header
+	 * @param name the header name, case insensitive
+	 * @return the header value, or null
+	 */
+	public abstract String getHeader(String name);
+	/**
+	 * check if the response has a body
+	 * @return
+	 */
+	public abstract boolean hasEntity();
+	/**
+	 * get the content length of the body
+	 * @return the length, or -1 if unknown
+	 */
+	public abstract long getContentLength();
+	/**
+	 * get the Content-Type header value of the body
+	 * @return the value, or null
+	 */
+	public abstract String getContentType();
+	/**
+	 * get the Content-Encoding header value of the body
+	 * @return the value, or null
+	 */
+	public abstract String getContentEncoding();
+	public abstract boolean isChunked();
+	public abstract boolean isStreaming();
+	public abstract boolean isRepeatable();
+	/**
+	 * get the body stream, closing it releases the connection
+	 * @return the stream, or null when the response has no body
+	 * @throws IOException
+	 */
+	public abstract InputStream getContent() throws IOException;
+	/**
+	 * release the connection of the response, the unread content is discarded
+	 */
+	public abstract void close();
+	/**
+	 * release the response without reading the rest of the content, the connection is closed instead of being reused.
+	 * use it to stop reading a large body early, {@link #close()} may read the rest of it to reuse the connection
+	 */
+	public abstract void abort();
+}
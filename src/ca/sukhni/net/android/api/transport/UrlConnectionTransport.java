@@ -0,0 +1,274 @@
+package ca.sukhni.net.android.api.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSession;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import ca.sukhni.net.android.api.socket.EasySSLSocketFactory;
+import ca.sukhni.net.android.api.socket.HttpClientConfig;
+import ca.sukhni.net.android.logger.Logger;
+
+/**
+ * transport backed by {@link HttpURLConnection}.
+ * <p>connections are pooled by the platform, so the pool limits, keep-alive settings, host resolver
+ * and socket options of {@link HttpClientConfig} do not apply to this engine. timeouts and tls settings do.</p>
+ * @author malsukhni
+ *
+ */
+public class UrlConnectionTransport implements HttpTransport
+{
+	public static final String						TAG				= UrlConnectionTransport.class.getSimpleName();
+
+	private static final UrlConnectionTransport		sInstance		= new UrlConnectionTransport();
+	private static final HostnameVerifier			ALLOW_ALL		= new HostnameVerifier()
+	{
+		@Override
+		public boolean verify(String hostname, SSLSession session)
+		{
+			return true;
+		}
+	};
+
+	/**
+	 * get the shared instance
+	 * @return
+	 */
+	public static UrlConnectionTransport getInstance()
+	{
+		return sInstance;
+	}
+
+	@Override
+	public TransportResponse execute(TransportRequest request, HttpClientConfig config) throws IOException
+	{
+		final HttpURLConnection connection = openConnection(request, config);
+		CancellationSignal signal = request.getCancellationSignal();
+		if(signal!=null)
+		{
+			signal.setOnCancelListener(new CancellationSignal.OnCancelListener()
+			{
+				@Override
+				public void onCancel()
+				{
+					connection.disconnect();
+				}
+			});
+		}
+		try
+		{
+			if(signal!=null) signal.throwIfCanceled(request.getUrl());
+			try
+			{
+				connection.connect();
+			}
+			catch(SocketTimeoutException e)
+			{
+				throw new ConnectTimeoutException("Connect to " + request.getUrl() + " timed out");
+			}
+			if(request.getBody()!=null)
+			{
+				OutputStream out = connection.getOutputStream();
+				try
+				{
+					out.write(request.getBody());
+				}
+				finally
+				{
+					out.close();
+				}
+			}
+			return new UrlConnectionResponse(connection, connection.getResponseCode());
+		}
+		catch(IOException e)
+		{
+			connection.disconnect();
+			throw e;
+		}
+	}
+
+	@Override
+	public String getName()
+	{
+		return "urlconnection";
+	}
+
+	/**
+	 * open and configure the connection of the given request, the connection is not connected yet
+	 * @param request
+	 * @param config
+	 * @return
+	 * @throws IOException
+	 */
+	protected HttpURLConnection openConnection(TransportRequest request, HttpClientConfig config) throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection) new URL(request.getUrl()).openConnection();
+		if(connection instanceof HttpsURLConnection && config.isTrustAllCertificates())
+		{
+			try
+			{
+				HttpsURLConnection https = (HttpsURLConnection) connection;
+				https.setSSLSocketFactory(EasySSLSocketFactory.getSSLContext(config.getSslSessionCacheSize(), config.getSslSessionTimeout()).getSocketFactory());
+				https.setHostnameVerifier(ALLOW_ALL);
+			}
+			catch(Exception e)
+			{
+				Logger.printStackTrace(e);
+			}
+		}
+		connection.setConnectTimeout(config.getConnectionTimeout());
+		connection.setReadTimeout(config.getSocketTimeout());
+		connection.setRequestMethod(request.getMethod().name());
+		connection.setUseCaches(false);
+		for(NameValuePair h : request.getHeaders())
+		{
+			connection.addRequestProperty(h.getName(), h.getValue());
+		}
+		if(request.getBody()!=null)
+		{
+			connection.setDoOutput(true);
+			connection.setFixedLengthStreamingMode(request.getBody().length);
+			if(request.getContentType()!=null) connection.setRequestProperty("Content-Type", request.getContentType());
+			if(request.getContentEncoding()!=null) connection.setRequestProperty("Content-Encoding", request.getContentEncoding());
+		}
+		return connection;
+	}
+
+	/**
+	 * transport response wrapping a connected {@link HttpURLConnection}
+	 * @author malsukhni
+	 *
+	 */
+	static class UrlConnectionResponse implements TransportResponse
+	{
+		private final HttpURLConnection		connection;
+		private final int					statusCode;
+		private InputStream					content;
+
+		UrlConnectionResponse(HttpURLConnection connection, int statusCode)
+		{
+			this.connection = connection;
+			this.statusCode = statusCode;
+		}
+
+		@Override
+		public int getStatusCode()
+		{
+			return statusCode;
+		}
+
+		@Override
+		public String getReasonPhrase()
+		{
+			try
+			{
+				return connection.getResponseMessage();
+			}
+			catch(IOException e)
+			{
+				return null;
+			}
+		}
+
+		@Override
+		public String getHeader(String name)
+		{
+			return connection.getHeaderField(name);
+		}
+
+		@Override
+		public boolean hasEntity()
+		{
+			if(statusCode==HttpURLConnection.HTTP_NO_CONTENT || statusCode==HttpURLConnection.HTTP_NOT_MODIFIED) return false;
+			return getContentLength()!=0;
+		}
+
+		@Override
+		public long getContentLength()
+		{
+			String length = connection.getHeaderField("Content-Length");
+			if(length==null) return -1;
+			try
+			{
+				return Long.parseLong(length.trim());
+			}
+			catch(NumberFormatException e)
+			{
+				return -1;
+			}
+		}
+
+		@Override
+		public String getContentType()
+		{
+			return connection.getContentType();
+		}
+
+		@Override
+		public String getContentEncoding()
+		{
+			return connection.getContentEncoding();
+		}
+
+		@Override
+		public boolean isChunked()
+		{
+			return "chunked".equalsIgnoreCase(connection.getHeaderField("Transfer-Encoding"));
+		}
+
+		@Override
+		public boolean isStreaming()
+		{
+			return hasEntity();
+		}
+
+		@Override
+		public boolean isRepeatable()
+		{
+			return false;
+		}
+
+		@Override
+		public synchronized InputStream getContent() throws IOException
+		{
+			if(content==null && hasEntity())
+			{
+				content = (statusCode>=400) ? connection.getErrorStream() : connection.getInputStream();
+			}
+			return content;
+		}
+
+		@Override
+		public synchronized void close()
+		{
+			if(content==null)
+			{
+				connection.disconnect();
+				return;
+			}
+			try
+			{
+				content.close();
+			}
+			catch(IOException e)
+			{
+				connection.disconnect();
+			}
+		}
+
+		@Override
+		public void abort()
+		{
+			connection.disconnect();
+		}
+	}
+}